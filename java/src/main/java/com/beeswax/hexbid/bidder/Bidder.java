@@ -11,7 +11,15 @@
  *******************************************************************************/
 package com.beeswax.hexbid.bidder;
 
-import java.util.Random;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,15 +30,26 @@ import com.beeswax.bid.Request.BidAgentResponse;
 import com.beeswax.bid.Request.BidAgentResponse.AgentData;
 import com.beeswax.bid.Request.BidAgentResponse.AgentParams;
 import com.beeswax.bid.Request.BidAgentResponse.Bid;
-import com.beeswax.bid.Request.BidAgentResponse.Creative;
+import com.beeswax.hexbid.config.BidderConfig;
+import com.beeswax.hexbid.model.ModelStore;
+import com.beeswax.hexbid.parser.BidRequestField;
+import com.beeswax.hexbid.score.HttpScoreClient;
+import com.beeswax.hexbid.score.NearCacheScoreStore;
+import com.beeswax.hexbid.score.SnapshotScoreStore;
+import com.beeswax.hexbid.score.UserScoreStore;
 import com.beeswax.hexbid.strategy.RetargetingStrategy;
+import com.beeswax.hexbid.strategy.BatchBidStrategy;
+import com.beeswax.hexbid.strategy.BidContext;
 import com.beeswax.hexbid.strategy.BidStrategy;
+import com.beeswax.hexbid.strategy.ContextBidStrategy;
 import com.beeswax.hexbid.strategy.FlatPriceStrategy;
+import com.beeswax.hexbid.strategy.LogisticRegressionStrategy;
 import com.beeswax.hexbid.strategy.RandomPriceStrategy;
 import com.beeswax.hexbid.strategy.StrategyFactory;
-import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.hexbid.strategy.StrategyRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 
 /**
  * Bidder sets bid in {@link BidAgentResponse} based on custom strategy name from {@link BidAgentRequest}.</br>
@@ -39,19 +58,91 @@ import com.google.common.base.Optional;
  * Flat Price Strategy - {@link FlatPriceStrategy}</br>
  * Random Price Strategy - {@link RandomPriceStrategy}</br>
  * Retargeting Strategy - {@link RetargetingStrategy}</br>
+ * Logistic Regression Strategy - {@link LogisticRegressionStrategy}</br>
+ * </br>
+ * Responses are assembled with the {@link ResponseBuilders} of the calling thread.</br>
+ * </br>
+ * The features of a bid request shared by its adcandidates are remembered by a {@link BidContext}
+ * of the evaluating thread, passed to the strategies which are a {@link ContextBidStrategy} and
+ * cleared once the adcandidates are priced.</br>
+ * </br>
+ * Adcandidates whose strategy is a {@link BatchBidStrategy} are priced together, in one call per
+ * strategy once the other adcandidates are priced, and bid in their order. The strategies which
+ * are not are called once per adcandidate.</br>
+ * </br>
+ * Requests with at least the parallel threshold of {@link BidderConfig} adcandidates have them
+ * evaluated in parallel on a {@link ForkJoinPool}. Bids keep the order of their adcandidates and an
+ * adcandidate with an invalid strategy is skipped as in sequential evaluation. Each adcandidate is
+ * then priced on its own, batch strategies included.
  *
  */
 public class Bidder {
   private static final Logger LOGGER = LogManager.getLogger(Bidder.class);
+  private static final AgentData AGENT_DATA = newAgentData();
   private final StrategyFactory strategyFactory;
+  private final int parallelThreshold;
+  private final ForkJoinPool pool;
 
   public Bidder() {
     this(new StrategyFactory());
   }
-  
+
+  public Bidder(BidderConfig config) {
+    this(newStrategyFactory(config), config);
+  }
+
+  /**
+   * Create a bidder which evaluates the adcandidates of requests with at least the parallel
+   * threshold adcandidates on a fork-join pool of the configured parallelism.
+   *
+   * @param strategyFactory
+   * @param config
+   */
+  public Bidder(StrategyFactory strategyFactory, BidderConfig config) {
+    this.strategyFactory = strategyFactory;
+    this.parallelThreshold = config.parallelThreshold;
+    this.pool = config.parallelThreshold > 0 ? newPool(config.parallelism) : null;
+  }
+
+  /**
+   * @return factory of the strategies, with the user scores of the configured directory and score
+   *         service and the model of the configured directory if any
+   */
+  private static StrategyFactory newStrategyFactory(BidderConfig config) {
+    UserScoreStore scores = null;
+    if (!config.userScoresDir.isEmpty()) {
+      scores = new SnapshotScoreStore(Paths.get(config.userScoresDir), config.userScoresPollMillis)
+          .start();
+    }
+    if (!config.remoteScoresUrl.isEmpty()) {
+      scores = new NearCacheScoreStore(scores, new HttpScoreClient(config.remoteScoresUrl),
+          config.remoteScoresCacheSize, config.remoteScoresTtlMillis,
+          config.remoteScoresNegativeTtlMillis, config.remoteScoresTimeoutMillis,
+          config.remoteScoresWaitMillis);
+    }
+    ModelStore models = null;
+    if (!config.lrModelDir.isEmpty()) {
+      models = new ModelStore(Paths.get(config.lrModelDir), config.lrModelPollMillis).start();
+    }
+    return scores == null && models == null ? new StrategyFactory()
+        : new StrategyFactory(StrategyRegistry.load(scores, models));
+  }
+
   @VisibleForTesting
   Bidder(StrategyFactory strategyFactory) {
     this.strategyFactory = strategyFactory;
+    this.parallelThreshold = 0;
+    this.pool = null;
+  }
+
+  /**
+   * Get the sub-messages of the bid request read by the bidding strategies, the others need not be
+   * decoded.
+   *
+   * @return sub-messages of the bid request to decode
+   */
+  public Set<BidRequestField> getRequestFields() {
+    return strategyFactory.getRequestFields();
   }
 
   /**
@@ -61,44 +152,216 @@ public class Bidder {
    * @return BidAgentResponse
    */
   public Optional<BidAgentResponse> SetBid(BidAgentRequest request) {
-    final BidAgentResponse.Builder bidResponseBuild = BidAgentResponse.newBuilder();
-    
+    return SetBid(request, Deadline.start(Ticker.systemTicker()));
+  }
+
+  /**
+   * Set bid in BidAgentResponse unless the deadline is spent before all adcandidates are
+   * evaluated.
+   *
+   * @param request
+   * @param deadline checked before each adcandidate
+   * @return BidAgentResponse, absent if there is no adcandidate or the deadline is spent
+   */
+  public Optional<BidAgentResponse> SetBid(BidAgentRequest request, Deadline deadline) {
     if (request.getAdcandidatesCount() == 0) {
       return Optional.absent();
     }
+    final long nowMillis = System.currentTimeMillis();
+    if (pool != null && request.getAdcandidatesCount() >= parallelThreshold) {
+      return setBidParallel(request, nowMillis, deadline);
+    }
+    final BidContext context = BidContext.get(request.getBidRequest(), nowMillis);
+    final CandidatePrices prices = CandidatePrices.get(request.getAdcandidatesCount());
+    final boolean priced;
+    try {
+      priced = setPrices(request, context, deadline, prices);
+    } finally {
+      context.clear();
+    }
+    if (!priced) {
+      LOGGER.debug("Deadline exceeded before all adcandidates are evaluated");
+      return Optional.absent();
+    }
+    final ResponseBuilders builders = ResponseBuilders.get();
+    final BidAgentResponse.Builder bidResponseBuild = builders.response();
 
     // Iterate through adcandidate list and set bid price in bid response based on its strategy
-    for (Adcandidate adcandidate : request.getAdcandidatesList()) {
-      final Bid.Builder bidBuilder = Bid.newBuilder();
-
-      // set line item id for the bid
-      bidBuilder.setLineItemId(adcandidate.getLineItemId());
-
-      // select creative for this Adcandidate
-      final Creative.Builder creativeBuilder = Creative.newBuilder();
-      creativeBuilder.setId(getCreativeId(adcandidate));
-      bidBuilder.setCreative(creativeBuilder);
+    for (int i = 0; i < request.getAdcandidatesCount(); i++) {
+      if (prices.strategies[i] != null) {
+        // add bid to bid agent response
+        bidResponseBuild.addBids(newBid(request.getAdcandidates(i), prices.prices[i], builders));
+      }
+    }
+    return Optional.of(bidResponseBuild.build());
+  }
 
+  /**
+   * Price the adcandidates, each with its strategy. Adcandidates of a {@link BatchBidStrategy} are
+   * priced once the others are, in one call per strategy.
+   *
+   * @param request
+   * @param context of the bid request
+   * @param deadline checked before each adcandidate and each batch
+   * @param prices receives the strategy and price of each adcandidate, no strategy if it is invalid
+   * @return false if the deadline was spent before all adcandidates are priced
+   */
+  private boolean setPrices(BidAgentRequest request, BidContext context, Deadline deadline,
+      CandidatePrices prices) {
+    boolean batched = false;
+    for (int i = 0; i < request.getAdcandidatesCount(); i++) {
+      if (deadline.isExpired()) {
+        return false;
+      }
+      final Adcandidate adcandidate = request.getAdcandidates(i);
       try {
-        // Set bid price
-        // The currency of bid price set here is assumed to be the value set by the customer via the Buzz REST API.
-        // That value is available in real time via the adcandidate.bidding.currency field.
-        bidBuilder.setBidPriceMicros(getBidPrice(adcandidate, request.getBidRequest()));
+        final BidStrategy strategy = strategyFactory.getStrategy(adcandidate);
+        prices.strategies[i] = strategy;
+        if (strategy instanceof BatchBidStrategy) {
+          prices.pending[i] = true;
+          batched = true;
+        } else {
+          prices.prices[i] = getBidPrice(strategy, adcandidate, context);
+        }
       } catch (IllegalArgumentException e) {
         LOGGER.error("Error getting bidding strategy", e);
-        // ignore this one with invalid strategy and continue processing other Adcandidates 
-        continue;
+        // ignore this one with invalid strategy and continue processing other Adcandidates
+        prices.strategies[i] = null;
+      }
+    }
+    for (int i = 0; batched && i < request.getAdcandidatesCount(); i++) {
+      if (prices.pending[i]) {
+        if (deadline.isExpired()) {
+          return false;
+        }
+        setBatchPrices(request, context, i, prices);
       }
+    }
+    return true;
+  }
 
-      // set agent data which is used for logging custom fields
-      bidBuilder.setAgentData(getAgentData(adcandidate));
+  /**
+   * Price the pending adcandidates of the batch strategy of an adcandidate in one call. When the
+   * strategy rejects the batch, its adcandidates are priced one at a time and only those it
+   * rejects are skipped.
+   *
+   * @param request
+   * @param context of the bid request
+   * @param first index of the first pending adcandidate of the strategy
+   * @param prices
+   */
+  private void setBatchPrices(BidAgentRequest request, BidContext context, int first,
+      CandidatePrices prices) {
+    final BatchBidStrategy strategy = (BatchBidStrategy) prices.strategies[first];
+    int size = 0;
+    for (int i = first; i < request.getAdcandidatesCount(); i++) {
+      if (prices.pending[i] && prices.strategies[i] == strategy) {
+        prices.pending[i] = false;
+        prices.batch[size] = request.getAdcandidates(i);
+        prices.batchIndexes[size++] = i;
+      }
+    }
+    try {
+      strategy.getBidPricesMicrosUSD(prices.batch, size, context, prices.batchPrices);
+      for (int j = 0; j < size; j++) {
+        prices.prices[prices.batchIndexes[j]] = prices.batchPrices[j];
+      }
+    } catch (IllegalArgumentException e) {
+      LOGGER.debug("Pricing adcandidates of {} one at a time", strategy.getClass()
+                                                                       .getName(), e);
+      for (int j = 0; j < size; j++) {
+        final int i = prices.batchIndexes[j];
+        try {
+          prices.prices[i] = strategy.getBidPriceMicrosUSD(prices.batch[j], context);
+        } catch (IllegalArgumentException invalid) {
+          LOGGER.error("Error getting bidding strategy", invalid);
+          prices.strategies[i] = null;
+        }
+      }
+    } finally {
+      // do not hold on to the request
+      Arrays.fill(prices.batch, 0, size, null);
+    }
+  }
 
-      // add bid to bid agent response
-      bidResponseBuild.addBids(bidBuilder.buildPartial());
+  /**
+   * Evaluate the adcandidates on the fork-join pool, the calling thread waits for them. Bids are
+   * collected by adcandidate index so that their order in the response is the order of the
+   * adcandidates whatever the thread evaluating them.
+   *
+   * @param request
+   * @param nowMillis time of the {@link BidContext} of each thread
+   * @param deadline checked before each adcandidate
+   * @return BidAgentResponse, absent if the deadline is spent
+   */
+  private Optional<BidAgentResponse> setBidParallel(BidAgentRequest request, long nowMillis,
+      Deadline deadline) {
+    final Bid[] bids = new Bid[request.getAdcandidatesCount()];
+    final int batchSize = Math.max(1, bids.length / (pool.getParallelism() * 4));
+    if (!pool.invoke(
+        new EvaluationTask(request, nowMillis, deadline, bids, 0, bids.length, batchSize))) {
+      LOGGER.debug("Deadline exceeded before all adcandidates are evaluated");
+      return Optional.absent();
+    }
+    final BidAgentResponse.Builder bidResponseBuild = ResponseBuilders.get()
+                                                                      .response();
+    for (Bid bid : bids) {
+      if (bid != null) {
+        bidResponseBuild.addBids(bid);
+      }
     }
     return Optional.of(bidResponseBuild.build());
   }
 
+  /**
+   * Build the bid of an adcandidate with the given builders.
+   *
+   * @param adcandidate
+   * @param context of the bid request on the calling thread
+   * @param builders of the calling thread
+   * @return bid, null if the bidding strategy of the adcandidate is invalid
+   */
+  private Bid getBid(Adcandidate adcandidate, BidContext context, ResponseBuilders builders) {
+    final long price;
+    try {
+      // The currency of bid price set here is assumed to be the value set by the customer via the Buzz REST API.
+      // That value is available in real time via the adcandidate.bidding.currency field.
+      price = getBidPrice(strategyFactory.getStrategy(adcandidate), adcandidate, context);
+    } catch (IllegalArgumentException e) {
+      LOGGER.error("Error getting bidding strategy", e);
+      // ignore this one with invalid strategy and continue processing other Adcandidates 
+      return null;
+    }
+    return newBid(adcandidate, price, builders);
+  }
+
+  /**
+   * Build the bid of an adcandidate at the given price with the given builders.
+   *
+   * @param adcandidate
+   * @param price bid price in micros
+   * @param builders of the calling thread
+   * @return bid
+   */
+  private Bid newBid(Adcandidate adcandidate, long price, ResponseBuilders builders) {
+    final Bid.Builder bidBuilder = builders.bid();
+
+    // set line item id for the bid
+    bidBuilder.setLineItemId(adcandidate.getLineItemId());
+
+    // select creative for this Adcandidate
+    bidBuilder.setCreative(builders.creative()
+                                   .setId(getCreativeId(adcandidate))
+                                   .buildPartial());
+
+    // Set bid price
+    bidBuilder.setBidPriceMicros(price);
+
+    // set agent data which is used for logging custom fields
+    bidBuilder.setAgentData(getAgentData(adcandidate));
+    return bidBuilder.buildPartial();
+  }
+
   /**
    * Get Creative ID selected from an Adcandidate</br>
    * for simplicity we just randomly select one here but your bidder can have more complicated logic for selection.
@@ -106,22 +369,26 @@ public class Bidder {
    * @return creative id
    */
   private long getCreativeId(Adcandidate adcandidate) {
-    final Random rand = new Random();
-    return adcandidate.getCreativeIds(rand.nextInt(adcandidate.getCreativeIdsList()
-                                                              .size()));
+    return adcandidate.getCreativeIds(ThreadLocalRandom.current()
+                                                       .nextInt(adcandidate.getCreativeIdsCount()));
   }
 
   /**
-   * Get bid price in USD micros for an Adcandidate based on its bidding strategy.
+   * Get bid price in USD micros for an Adcandidate with its bidding strategy, passed the context of
+   * the bid request if it is a {@link ContextBidStrategy}.
    * 
+   * @param strategy
    * @param adcandidate
-   * @param bid request
+   * @param context of the bid request
    * @return
    * @throws IllegalArgumentException
    */
-  private long getBidPrice(Adcandidate adcandidate, BidRequest request) throws IllegalArgumentException {
-    final BidStrategy strategy = strategyFactory.getStrategy(adcandidate);
-    return strategy.getBidPriceMicrosUSD(adcandidate, request);
+  private long getBidPrice(BidStrategy strategy, Adcandidate adcandidate, BidContext context)
+      throws IllegalArgumentException {
+    if (strategy instanceof ContextBidStrategy) {
+      return ((ContextBidStrategy) strategy).getBidPriceMicrosUSD(adcandidate, context);
+    }
+    return strategy.getBidPriceMicrosUSD(adcandidate, context.getRequest());
   }
 
   /**
@@ -129,16 +396,25 @@ public class Bidder {
    *  via bid & win logs.</br>
    *  e.g.</br>
    *  If the bidding agent uses a machine learning model to set bid price, some of its attributes
-   *  can be passed in via AgentData, like model id.
+   *  can be passed in via AgentData, like model id.</br>
+   *  </br>
+   *  Agent data which do not depend on the adcandidate are built once and shared by all bids.
    *  
    * @param adcandidate
    * @return
    */
   private AgentData getAgentData(Adcandidate adcandidate) {
-    final AgentData.Builder agentDataBuilder = AgentData.newBuilder();
     // ...
     // custom logic goes here
     // ...
+    return AGENT_DATA;
+  }
+
+  /**
+   * @return agent data with the hexbid version
+   */
+  private static AgentData newAgentData() {
+    final AgentData.Builder agentDataBuilder = AgentData.newBuilder();
     // for example, set hexbid version in agent data
     agentDataBuilder.setAgentId("beeswax-hexbid");
     final AgentParams.Builder agentParamsBuilder = AgentParams.newBuilder();
@@ -147,4 +423,77 @@ public class Bidder {
     agentDataBuilder.addAgentParams(agentParamsBuilder.buildPartial());
     return agentDataBuilder.buildPartial();
   }
+
+  /**
+   * @param parallelism
+   * @return fork-join pool with daemon threads named "bidder-parallel-N"
+   */
+  private static ForkJoinPool newPool(int parallelism) {
+    return new ForkJoinPool(parallelism, new ForkJoinWorkerThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        final ForkJoinWorkerThread thread =
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("bidder-parallel-" + count.getAndIncrement());
+        return thread;
+      }
+    }, null, false);
+  }
+
+  /**
+   * Evaluates a range of adcandidates, splitting it in halves down to the batch size.
+   */
+  private class EvaluationTask extends RecursiveTask<Boolean> {
+    private static final long serialVersionUID = 1L;
+    private final BidAgentRequest request;
+    private final long nowMillis;
+    private final Deadline deadline;
+    private final Bid[] bids;
+    private final int from;
+    private final int to;
+    private final int batchSize;
+
+    EvaluationTask(BidAgentRequest request, long nowMillis, Deadline deadline, Bid[] bids,
+        int from, int to, int batchSize) {
+      this.request = request;
+      this.nowMillis = nowMillis;
+      this.deadline = deadline;
+      this.bids = bids;
+      this.from = from;
+      this.to = to;
+      this.batchSize = batchSize;
+    }
+
+    /**
+     * @return false if the deadline was spent before all adcandidates of the range are evaluated
+     */
+    @Override
+    protected Boolean compute() {
+      if (to - from > batchSize) {
+        final int middle = (from + to) >>> 1;
+        final EvaluationTask left =
+            new EvaluationTask(request, nowMillis, deadline, bids, from, middle, batchSize);
+        left.fork();
+        final boolean right =
+            new EvaluationTask(request, nowMillis, deadline, bids, middle, to, batchSize)
+                .compute();
+        return left.join() && right;
+      }
+      final ResponseBuilders builders = ResponseBuilders.get();
+      final BidContext context = BidContext.get(request.getBidRequest(), nowMillis);
+      try {
+        for (int i = from; i < to; i++) {
+          if (deadline.isExpired()) {
+            return false;
+          }
+          bids[i] = getBid(request.getAdcandidates(i), context, builders);
+        }
+        return true;
+      } finally {
+        context.clear();
+      }
+    }
+  }
 }
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.bidder;
+
+import java.util.Arrays;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.hexbid.strategy.BatchBidStrategy;
+import com.beeswax.hexbid.strategy.BidStrategy;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Strategies and prices of the adcandidates of a request, with the arrays handed to
+ * {@link BatchBidStrategy}s, held per thread so that pricing a request allocates no arrays once
+ * they fit its adcandidates.</br>
+ * </br>
+ * Only valid until {@link #get(int)} is called again on the same thread.
+ *
+ */
+final class CandidatePrices {
+  private static final FastThreadLocal<CandidatePrices> PRICES =
+      new FastThreadLocal<CandidatePrices>() {
+        @Override
+        protected CandidatePrices initialValue() {
+          return new CandidatePrices();
+        }
+      };
+
+  /** strategy of each adcandidate, null if it is invalid */
+  BidStrategy[] strategies = new BidStrategy[16];
+  /** price of each adcandidate */
+  long[] prices = new long[16];
+  /** whether each adcandidate waits for its batch strategy */
+  boolean[] pending = new boolean[16];
+  /** adcandidates of the batch being priced */
+  Adcandidate[] batch = new Adcandidate[16];
+  /** index in the request of each adcandidate of the batch */
+  int[] batchIndexes = new int[16];
+  /** price of each adcandidate of the batch */
+  long[] batchPrices = new long[16];
+
+  private CandidatePrices() {}
+
+  /**
+   * @param count number of adcandidates of the request
+   * @return prices of the current thread with room for the adcandidates, none of them pending
+   */
+  static CandidatePrices get(int count) {
+    final CandidatePrices prices = PRICES.get();
+    if (prices.prices.length < count) {
+      prices.grow(count);
+    } else {
+      Arrays.fill(prices.pending, 0, count, false);
+    }
+    return prices;
+  }
+
+  private void grow(int count) {
+    int capacity = prices.length;
+    while (capacity < count) {
+      capacity <<= 1;
+    }
+    strategies = new BidStrategy[capacity];
+    prices = new long[capacity];
+    pending = new boolean[capacity];
+    batch = new Adcandidate[capacity];
+    batchIndexes = new int[capacity];
+    batchPrices = new long[capacity];
+  }
+}
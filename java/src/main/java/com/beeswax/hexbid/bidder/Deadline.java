@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.bidder;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Time budget of a bid request, measured from the moment the request is received.</br>
+ * </br>
+ * A deadline starts without budget and never expires until a budget is applied with
+ * {@link #withBudget(long)}. Applying several budgets keeps the smallest one, e.g. the budget of
+ * a request header and the tmax of the auction.</br>
+ * Immutable.
+ *
+ */
+public final class Deadline {
+  private static final long NO_BUDGET = Long.MAX_VALUE;
+  private final Ticker ticker;
+  private final long startNanos;
+  private final long budgetNanos;
+
+  private Deadline(Ticker ticker, long startNanos, long budgetNanos) {
+    this.ticker = ticker;
+    this.startNanos = startNanos;
+    this.budgetNanos = budgetNanos;
+  }
+
+  /**
+   * @param ticker
+   * @return deadline starting now, without budget
+   */
+  public static Deadline start(Ticker ticker) {
+    return new Deadline(ticker, ticker.read(), NO_BUDGET);
+  }
+
+  /**
+   * @param ticker
+   * @param startNanos time read from the ticker when the deadline started, e.g. when the request
+   *        was received before it was queued
+   * @return deadline starting at the given time, without budget
+   */
+  public static Deadline start(Ticker ticker, long startNanos) {
+    return new Deadline(ticker, startNanos, NO_BUDGET);
+  }
+
+  /**
+   * @param budgetMillis budget in milliseconds from the start of this deadline
+   * @return deadline expiring after the given budget or earlier if this one expires earlier
+   */
+  public Deadline withBudget(long budgetMillis) {
+    final long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(budgetMillis, 0));
+    return nanos < budgetNanos ? new Deadline(ticker, startNanos, nanos) : this;
+  }
+
+  /**
+   * @return true if a budget is applied
+   */
+  public boolean hasBudget() {
+    return budgetNanos != NO_BUDGET;
+  }
+
+  /**
+   * @return true if the budget is spent
+   */
+  public boolean isExpired() {
+    return budgetNanos != NO_BUDGET && elapsedNanos() >= budgetNanos;
+  }
+
+  /**
+   * @return nanoseconds since the start of this deadline
+   */
+  public long elapsedNanos() {
+    return ticker.read() - startNanos;
+  }
+
+  /**
+   * @return ticker this deadline reads the time from
+   */
+  public Ticker ticker() {
+    return ticker;
+  }
+}
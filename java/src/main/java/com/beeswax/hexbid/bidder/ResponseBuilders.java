@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.bidder;
+
+import com.beeswax.bid.Request.BidAgentResponse;
+import com.beeswax.bid.Request.BidAgentResponse.Bid;
+import com.beeswax.bid.Request.BidAgentResponse.Creative;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Builders of the {@link BidAgentResponse} messages held per thread, so that assembling a response
+ * allocates only the messages it returns.</br>
+ * </br>
+ * Each getter clears its builder, so a builder is only valid until the getter is called again on
+ * the same thread. Messages built with it do not refer to the builder and stay valid once it is
+ * reused.
+ *
+ */
+final class ResponseBuilders {
+  private static final FastThreadLocal<ResponseBuilders> BUILDERS =
+      new FastThreadLocal<ResponseBuilders>() {
+        @Override
+        protected ResponseBuilders initialValue() {
+          return new ResponseBuilders();
+        }
+      };
+
+  private final BidAgentResponse.Builder response = BidAgentResponse.newBuilder();
+  private final Bid.Builder bid = Bid.newBuilder();
+  private final Creative.Builder creative = Creative.newBuilder();
+
+  private ResponseBuilders() {}
+
+  /**
+   * @return builders of the current thread
+   */
+  static ResponseBuilders get() {
+    return BUILDERS.get();
+  }
+
+  /**
+   * @return cleared response builder
+   */
+  BidAgentResponse.Builder response() {
+    return response.clear();
+  }
+
+  /**
+   * @return cleared bid builder
+   */
+  Bid.Builder bid() {
+    return bid.clear();
+  }
+
+  /**
+   * @return cleared creative builder
+   */
+  Creative.Builder creative() {
+    return creative.clear();
+  }
+}
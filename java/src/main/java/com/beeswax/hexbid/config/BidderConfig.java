@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.hexbid.bidder.Bidder;
+import com.beeswax.hexbid.model.ModelStore;
+import com.beeswax.hexbid.parser.SelectiveRequestParser;
+import com.beeswax.hexbid.score.NearCacheScoreStore;
+import com.beeswax.hexbid.score.SnapshotScoreStore;
+import com.beeswax.http.config.PropertyParserUtils;
+import com.beeswax.http.handler.ExecutionMode;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * {@link BidderConfig} loads bidder configurations from a specified property file and falls back
+ * to default values when a property is missing.</br>
+ * </br>
+ * Bidder Configurable values:</br>
+ * </br>
+ * Default budget</br>
+ *   - time in milliseconds a bid request may take when neither the deadline header nor the
+ *     {@link BidRequest} tmax is set. 0 or less processes such requests without deadline.</br>
+ * </br>
+ * Deadline header</br>
+ *   - name of the request header carrying the time budget of a bid request in milliseconds.</br>
+ * </br>
+ * Deadline margin</br>
+ *   - milliseconds subtracted from the budget of a request for the network round trip to the
+ *     exchange.</br>
+ * </br>
+ * Admission control</br>
+ *   - limits above which /bid requests are shed: requests in flight, tasks pending in the event
+ *     loop of the request and recent average bid latency in milliseconds. 0 disables a limit.
+ *     Shed requests are answered with the shed status, 204 or 503.</br>
+ * </br>
+ * Execution</br>
+ *   - where /bid requests are processed, one of inline, pool or virtual, see
+ *     {@link ExecutionMode}, and the number of threads and queue size of the pool.</br>
+ * </br>
+ * Selective parsing</br>
+ *   - decode only the parts of bid requests read by the bidding strategies, see
+ *     {@link SelectiveRequestParser}.</br>
+ * </br>
+ * Parallel evaluation</br>
+ *   - number of adcandidates from which the adcandidates of a request are evaluated in parallel
+ *     by the {@link Bidder}, 0 disables, and the parallelism of its fork-join pool.</br>
+ * </br>
+ * User scores</br>
+ *   - directory of the user score snapshots served by a {@link SnapshotScoreStore}, none by
+ *     default, and the interval in milliseconds between polls for new snapshots and delta
+ *     lines.</br>
+ * </br>
+ * Remote user scores</br>
+ *   - URL of the score service looked up through a {@link NearCacheScoreStore} for the users
+ *     missing from the snapshots, none by default, the number of users cached, the time in
+ *     milliseconds scores and unknown users are cached, the timeout of a fetch and the time a bid
+ *     waits for a fetch, 0 to never wait.</br>
+ * </br>
+ * Logistic regression model</br>
+ *   - directory of the models of the logistic regression strategy served by a
+ *     {@link ModelStore}, none by default, and the interval in milliseconds between polls for new
+ *     models.</br>
+ */
+public class BidderConfig {
+  private static final Logger LOGGER = LogManager.getLogger(BidderConfig.class);
+  public final long defaultBudgetMillis;
+  public final String deadlineHeader;
+  public final long deadlineMarginMillis;
+  public final int maxInFlight;
+  public final int maxPendingTasks;
+  public final long maxLatencyMillis;
+  public final HttpResponseStatus shedStatus;
+  public final ExecutionMode executionMode;
+  public final int executorThreads;
+  public final int executorQueueSize;
+  public final boolean selectiveParsing;
+  public final int parallelThreshold;
+  public final int parallelism;
+  public final String userScoresDir;
+  public final long userScoresPollMillis;
+  public final String remoteScoresUrl;
+  public final long remoteScoresCacheSize;
+  public final long remoteScoresTtlMillis;
+  public final long remoteScoresNegativeTtlMillis;
+  public final long remoteScoresTimeoutMillis;
+  public final long remoteScoresWaitMillis;
+  public final String lrModelDir;
+  public final long lrModelPollMillis;
+
+  private BidderConfig(BidderConfigBuilder builder) {
+    this.defaultBudgetMillis = builder.defaultBudgetMillis;
+    this.deadlineHeader = builder.deadlineHeader;
+    this.deadlineMarginMillis = builder.deadlineMarginMillis;
+    this.maxInFlight = builder.maxInFlight;
+    this.maxPendingTasks = builder.maxPendingTasks;
+    this.maxLatencyMillis = builder.maxLatencyMillis;
+    this.shedStatus = builder.shedStatus;
+    this.executionMode = builder.executionMode;
+    this.executorThreads = builder.executorThreads;
+    this.executorQueueSize = builder.executorQueueSize;
+    this.selectiveParsing = builder.selectiveParsing;
+    this.parallelThreshold = builder.parallelThreshold;
+    this.parallelism = builder.parallelism;
+    this.userScoresDir = builder.userScoresDir;
+    this.userScoresPollMillis = builder.userScoresPollMillis;
+    this.remoteScoresUrl = builder.remoteScoresUrl;
+    this.remoteScoresCacheSize = builder.remoteScoresCacheSize;
+    this.remoteScoresTtlMillis = builder.remoteScoresTtlMillis;
+    this.remoteScoresNegativeTtlMillis = builder.remoteScoresNegativeTtlMillis;
+    this.remoteScoresTimeoutMillis = builder.remoteScoresTimeoutMillis;
+    this.remoteScoresWaitMillis = builder.remoteScoresWaitMillis;
+    this.lrModelDir = builder.lrModelDir;
+    this.lrModelPollMillis = builder.lrModelPollMillis;
+  }
+
+  /**
+   * Builder class builds bidder configuration from property file.</br>
+   * A builder which did not load properties builds the default configuration.
+   *
+   */
+  public static class BidderConfigBuilder {
+    private static final long DEFAULT_DEFAULT_BUDGET_MILLIS = 100;
+    private static final String DEFAULT_DEADLINE_HEADER = "X-Bid-Timeout-Ms";
+    private static final long DEFAULT_DEADLINE_MARGIN_MILLIS = 5;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+    private static final int DEFAULT_MAX_PENDING_TASKS = 1024;
+    private static final long DEFAULT_MAX_LATENCY_MILLIS = 0;
+    private static final int DEFAULT_SHED_STATUS = 204;
+    private static final ExecutionMode DEFAULT_EXECUTION_MODE = ExecutionMode.INLINE;
+    private static final int DEFAULT_EXECUTOR_THREADS = 64;
+    private static final int DEFAULT_EXECUTOR_QUEUE_SIZE = 1024;
+    private static final boolean DEFAULT_SELECTIVE_PARSING = false;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 0;
+    private static final int DEFAULT_PARALLELISM = Runtime.getRuntime()
+                                                          .availableProcessors();
+    private static final String DEFAULT_USER_SCORES_DIR = "";
+    private static final long DEFAULT_USER_SCORES_POLL_MILLIS = 10000;
+    private static final String DEFAULT_REMOTE_SCORES_URL = "";
+    private static final long DEFAULT_REMOTE_SCORES_CACHE_SIZE = 100000;
+    private static final long DEFAULT_REMOTE_SCORES_TTL_MILLIS = 60000;
+    private static final long DEFAULT_REMOTE_SCORES_NEGATIVE_TTL_MILLIS = 10000;
+    private static final long DEFAULT_REMOTE_SCORES_TIMEOUT_MILLIS = 20;
+    private static final long DEFAULT_REMOTE_SCORES_WAIT_MILLIS = 0;
+    private static final String DEFAULT_LR_MODEL_DIR = "";
+    private static final long DEFAULT_LR_MODEL_POLL_MILLIS = 10000;
+
+    private long defaultBudgetMillis = DEFAULT_DEFAULT_BUDGET_MILLIS;
+    private String deadlineHeader = DEFAULT_DEADLINE_HEADER;
+    private long deadlineMarginMillis = DEFAULT_DEADLINE_MARGIN_MILLIS;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int maxPendingTasks = DEFAULT_MAX_PENDING_TASKS;
+    private long maxLatencyMillis = DEFAULT_MAX_LATENCY_MILLIS;
+    private HttpResponseStatus shedStatus = HttpResponseStatus.valueOf(DEFAULT_SHED_STATUS);
+    private ExecutionMode executionMode = DEFAULT_EXECUTION_MODE;
+    private int executorThreads = DEFAULT_EXECUTOR_THREADS;
+    private int executorQueueSize = DEFAULT_EXECUTOR_QUEUE_SIZE;
+    private boolean selectiveParsing = DEFAULT_SELECTIVE_PARSING;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private String userScoresDir = DEFAULT_USER_SCORES_DIR;
+    private long userScoresPollMillis = DEFAULT_USER_SCORES_POLL_MILLIS;
+    private String remoteScoresUrl = DEFAULT_REMOTE_SCORES_URL;
+    private long remoteScoresCacheSize = DEFAULT_REMOTE_SCORES_CACHE_SIZE;
+    private long remoteScoresTtlMillis = DEFAULT_REMOTE_SCORES_TTL_MILLIS;
+    private long remoteScoresNegativeTtlMillis = DEFAULT_REMOTE_SCORES_NEGATIVE_TTL_MILLIS;
+    private long remoteScoresTimeoutMillis = DEFAULT_REMOTE_SCORES_TIMEOUT_MILLIS;
+    private long remoteScoresWaitMillis = DEFAULT_REMOTE_SCORES_WAIT_MILLIS;
+    private String lrModelDir = DEFAULT_LR_MODEL_DIR;
+    private long lrModelPollMillis = DEFAULT_LR_MODEL_POLL_MILLIS;
+
+    public BidderConfigBuilder() {}
+
+    /**
+     * Load bidder configurations from property files.
+     *
+     * @param propertyFile
+     * @return BidderConfigBuilder
+     */
+    public BidderConfigBuilder fromProperties(String propertyFile) throws IOException {
+      final InputStream config = BidderConfigBuilder.class.getClassLoader()
+                                                          .getResourceAsStream(propertyFile);
+      if (config == null) {
+        LOGGER.error("Failed to load bidder config file [{}]", propertyFile);
+        throw new IOException(String.format("Failed to load bidder config file [%s]", propertyFile));
+      }
+
+      return fromProperties(PropertyParserUtils.loadFromProperties(config));
+    }
+
+    /**
+     * Load bidder configurations from already loaded properties.
+     *
+     * @param properties
+     * @return BidderConfigBuilder
+     */
+    public BidderConfigBuilder fromProperties(Properties properties) {
+      defaultBudgetMillis = PropertyParserUtils.getLongProperty("bidder.default_budget_ms",
+          DEFAULT_DEFAULT_BUDGET_MILLIS, properties);
+      deadlineHeader = properties.getProperty("bidder.deadline_header", DEFAULT_DEADLINE_HEADER)
+                                 .trim();
+      deadlineMarginMillis = PropertyParserUtils.getLongProperty("bidder.deadline_margin_ms",
+          DEFAULT_DEADLINE_MARGIN_MILLIS, properties);
+      if (deadlineMarginMillis < 0) {
+        LOGGER.error("Invalid deadline margin : {}", deadlineMarginMillis);
+        deadlineMarginMillis = DEFAULT_DEADLINE_MARGIN_MILLIS;
+      }
+      maxInFlight = PropertyParserUtils.getIntegerProperty("bidder.max_in_flight",
+          DEFAULT_MAX_IN_FLIGHT, properties);
+      if (maxInFlight < 0) {
+        LOGGER.error("Invalid max in flight : {}", maxInFlight);
+        maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+      }
+      maxPendingTasks = PropertyParserUtils.getIntegerProperty("bidder.max_pending_tasks",
+          DEFAULT_MAX_PENDING_TASKS, properties);
+      if (maxPendingTasks < 0) {
+        LOGGER.error("Invalid max pending tasks : {}", maxPendingTasks);
+        maxPendingTasks = DEFAULT_MAX_PENDING_TASKS;
+      }
+      maxLatencyMillis = PropertyParserUtils.getLongProperty("bidder.max_latency_ms",
+          DEFAULT_MAX_LATENCY_MILLIS, properties);
+      if (maxLatencyMillis < 0) {
+        LOGGER.error("Invalid max latency : {}", maxLatencyMillis);
+        maxLatencyMillis = DEFAULT_MAX_LATENCY_MILLIS;
+      }
+      final int status =
+          PropertyParserUtils.getIntegerProperty("bidder.shed_status", DEFAULT_SHED_STATUS,
+              properties);
+      if (status != HttpResponseStatus.NO_CONTENT.code()
+          && status != HttpResponseStatus.SERVICE_UNAVAILABLE.code()) {
+        LOGGER.error("Invalid shed status : {}", status);
+        shedStatus = HttpResponseStatus.valueOf(DEFAULT_SHED_STATUS);
+      } else {
+        shedStatus = HttpResponseStatus.valueOf(status);
+      }
+      try {
+        executionMode = ExecutionMode.fromName(
+            properties.getProperty("bidder.execution", DEFAULT_EXECUTION_MODE.name()));
+      } catch (IllegalArgumentException e) {
+        LOGGER.error("Invalid execution mode : {}", properties.getProperty("bidder.execution"), e);
+        executionMode = DEFAULT_EXECUTION_MODE;
+      }
+      executorThreads = PropertyParserUtils.getIntegerProperty("bidder.executor_threads",
+          DEFAULT_EXECUTOR_THREADS, properties);
+      if (executorThreads <= 0) {
+        LOGGER.error("Invalid executor threads : {}", executorThreads);
+        executorThreads = DEFAULT_EXECUTOR_THREADS;
+      }
+      executorQueueSize = PropertyParserUtils.getIntegerProperty("bidder.executor_queue_size",
+          DEFAULT_EXECUTOR_QUEUE_SIZE, properties);
+      if (executorQueueSize <= 0) {
+        LOGGER.error("Invalid executor queue size : {}", executorQueueSize);
+        executorQueueSize = DEFAULT_EXECUTOR_QUEUE_SIZE;
+      }
+      selectiveParsing = PropertyParserUtils.parseBoolean("bidder.selective_parsing",
+          DEFAULT_SELECTIVE_PARSING, properties);
+      parallelThreshold = PropertyParserUtils.getIntegerProperty("bidder.parallel_threshold",
+          DEFAULT_PARALLEL_THRESHOLD, properties);
+      if (parallelThreshold < 0) {
+        LOGGER.error("Invalid parallel threshold : {}", parallelThreshold);
+        parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+      }
+      parallelism = PropertyParserUtils.getIntegerProperty("bidder.parallelism",
+          DEFAULT_PARALLELISM, properties);
+      if (parallelism <= 0) {
+        LOGGER.error("Invalid parallelism : {}", parallelism);
+        parallelism = DEFAULT_PARALLELISM;
+      }
+      userScoresDir = properties.getProperty("bidder.user_scores_dir", DEFAULT_USER_SCORES_DIR)
+                                .trim();
+      userScoresPollMillis = PropertyParserUtils.getLongProperty("bidder.user_scores_poll_ms",
+          DEFAULT_USER_SCORES_POLL_MILLIS, properties);
+      if (userScoresPollMillis <= 0) {
+        LOGGER.error("Invalid user scores poll ms : {}", userScoresPollMillis);
+        userScoresPollMillis = DEFAULT_USER_SCORES_POLL_MILLIS;
+      }
+      remoteScoresUrl =
+          properties.getProperty("bidder.remote_scores_url", DEFAULT_REMOTE_SCORES_URL)
+                    .trim();
+      remoteScoresCacheSize = PropertyParserUtils.getLongProperty(
+          "bidder.remote_scores_cache_size", DEFAULT_REMOTE_SCORES_CACHE_SIZE, properties);
+      if (remoteScoresCacheSize <= 0) {
+        LOGGER.error("Invalid remote scores cache size : {}", remoteScoresCacheSize);
+        remoteScoresCacheSize = DEFAULT_REMOTE_SCORES_CACHE_SIZE;
+      }
+      remoteScoresTtlMillis = PropertyParserUtils.getLongProperty("bidder.remote_scores_ttl_ms",
+          DEFAULT_REMOTE_SCORES_TTL_MILLIS, properties);
+      if (remoteScoresTtlMillis <= 0) {
+        LOGGER.error("Invalid remote scores ttl ms : {}", remoteScoresTtlMillis);
+        remoteScoresTtlMillis = DEFAULT_REMOTE_SCORES_TTL_MILLIS;
+      }
+      remoteScoresNegativeTtlMillis = PropertyParserUtils.getLongProperty(
+          "bidder.remote_scores_negative_ttl_ms", DEFAULT_REMOTE_SCORES_NEGATIVE_TTL_MILLIS,
+          properties);
+      if (remoteScoresNegativeTtlMillis < 0) {
+        LOGGER.error("Invalid remote scores negative ttl ms : {}", remoteScoresNegativeTtlMillis);
+        remoteScoresNegativeTtlMillis = DEFAULT_REMOTE_SCORES_NEGATIVE_TTL_MILLIS;
+      }
+      remoteScoresTimeoutMillis = PropertyParserUtils.getLongProperty(
+          "bidder.remote_scores_timeout_ms", DEFAULT_REMOTE_SCORES_TIMEOUT_MILLIS, properties);
+      if (remoteScoresTimeoutMillis <= 0) {
+        LOGGER.error("Invalid remote scores timeout ms : {}", remoteScoresTimeoutMillis);
+        remoteScoresTimeoutMillis = DEFAULT_REMOTE_SCORES_TIMEOUT_MILLIS;
+      }
+      remoteScoresWaitMillis = PropertyParserUtils.getLongProperty("bidder.remote_scores_wait_ms",
+          DEFAULT_REMOTE_SCORES_WAIT_MILLIS, properties);
+      if (remoteScoresWaitMillis < 0) {
+        LOGGER.error("Invalid remote scores wait ms : {}", remoteScoresWaitMillis);
+        remoteScoresWaitMillis = DEFAULT_REMOTE_SCORES_WAIT_MILLIS;
+      }
+      lrModelDir = properties.getProperty("bidder.lr_model_dir", DEFAULT_LR_MODEL_DIR)
+                             .trim();
+      lrModelPollMillis = PropertyParserUtils.getLongProperty("bidder.lr_model_poll_ms",
+          DEFAULT_LR_MODEL_POLL_MILLIS, properties);
+      if (lrModelPollMillis <= 0) {
+        LOGGER.error("Invalid lr model poll ms : {}", lrModelPollMillis);
+        lrModelPollMillis = DEFAULT_LR_MODEL_POLL_MILLIS;
+      }
+
+      return this;
+    }
+
+    public BidderConfig build() {
+      LOGGER.info("Default budget ms : {}", defaultBudgetMillis);
+      LOGGER.info("Deadline header : {}", deadlineHeader);
+      LOGGER.info("Deadline margin ms : {}", deadlineMarginMillis);
+      LOGGER.info("Max in flight : {}", maxInFlight);
+      LOGGER.info("Max pending tasks : {}", maxPendingTasks);
+      LOGGER.info("Max latency ms : {}", maxLatencyMillis);
+      LOGGER.info("Shed status : {}", shedStatus);
+      LOGGER.info("Execution mode : {}", executionMode);
+      LOGGER.info("Executor threads : {}", executorThreads);
+      LOGGER.info("Executor queue size : {}", executorQueueSize);
+      LOGGER.info("Selective parsing : {}", selectiveParsing);
+      LOGGER.info("Parallel threshold : {}", parallelThreshold);
+      LOGGER.info("Parallelism : {}", parallelism);
+      LOGGER.info("User scores dir : {}", userScoresDir);
+      LOGGER.info("User scores poll ms : {}", userScoresPollMillis);
+      LOGGER.info("Remote scores url : {}", remoteScoresUrl);
+      LOGGER.info("Remote scores cache size : {}", remoteScoresCacheSize);
+      LOGGER.info("Remote scores ttl ms : {}", remoteScoresTtlMillis);
+      LOGGER.info("Remote scores negative ttl ms : {}", remoteScoresNegativeTtlMillis);
+      LOGGER.info("Remote scores timeout ms : {}", remoteScoresTimeoutMillis);
+      LOGGER.info("Remote scores wait ms : {}", remoteScoresWaitMillis);
+      LOGGER.info("LR model dir : {}", lrModelDir);
+      LOGGER.info("LR model poll ms : {}", lrModelPollMillis);
+
+      return new BidderConfig(this);
+    }
+  }
+}
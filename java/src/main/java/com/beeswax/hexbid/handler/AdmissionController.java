@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.handler;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.hexbid.config.BidderConfig;
+import com.beeswax.http.handler.Admission;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * Decides whether a /bid request is processed or shed.</br>
+ * </br>
+ * Requests are admitted on the I/O thread before they are queued on the bid executor. A request
+ * is shed when any of the limits of {@link BidderConfig} is crossed:</br>
+ * - requests in flight, queued requests included</br>
+ * - tasks pending in the event loop of the request</br>
+ * - recent bid latency, an exponentially weighted moving average of processed requests from
+ * their arrival, queueing included. The average is ignored once no request completed for a
+ * second so that the server admits requests again after shedding everything because of
+ * latency.</br>
+ * An admitted request is shed as well when the queue of the bid executor is full.</br>
+ * </br>
+ * Shed requests are answered with the shed status of the {@link BidderConfig} and an empty
+ * body.</br>
+ * Exports "bid.in_flight", "bid.latency_micros" and per reason the number of shed requests
+ * ("bid.shed.REASON").</br>
+ * Thread safe.
+ *
+ */
+public class AdmissionController implements Admission {
+  private static final Logger LOGGER = LogManager.getLogger(AdmissionController.class);
+  private static final double LATENCY_WEIGHT = 0.1;
+  private static final long LATENCY_EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Reasons to shed a request.
+   */
+  public enum Reason {
+    IN_FLIGHT, PENDING_TASKS, LATENCY, QUEUE_FULL;
+
+    final String varName = name().toLowerCase(Locale.ROOT);
+  }
+
+  private final int maxInFlight;
+  private final int maxPendingTasks;
+  private final long maxLatencyNanos;
+  private final HttpResponseStatus shedStatus;
+  private final Ticker ticker;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong latencyNanos = new AtomicLong();
+  private final AtomicLong lastCompletionNanos = new AtomicLong();
+  private final Map<Reason, AtomicLong> shed = new EnumMap<>(Reason.class);
+
+  public AdmissionController(BidderConfig config, VarRegistry registry, Ticker ticker) {
+    this.maxInFlight = config.maxInFlight;
+    this.maxPendingTasks = config.maxPendingTasks;
+    this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(config.maxLatencyMillis);
+    this.shedStatus = config.shedStatus;
+    this.ticker = ticker;
+    for (Reason reason : Reason.values()) {
+      shed.put(reason, registry.counter("bid.shed." + reason.varName));
+    }
+    registry.register("bid.in_flight", new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        return inFlight.get();
+      }
+    });
+    registry.register("bid.latency_micros", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return TimeUnit.NANOSECONDS.toMicros(recentLatencyNanos());
+      }
+    });
+  }
+
+  @Override
+  public FullHttpResponse admit(ChannelHandlerContext ctx) {
+    final Reason reason = tryAdmit(ctx.executor());
+    if (reason == null) {
+      return null;
+    }
+    LOGGER.debug("Request shed : {}", reason);
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, shedStatus);
+  }
+
+  @Override
+  public FullHttpResponse reject() {
+    inFlight.decrementAndGet();
+    shed.get(Reason.QUEUE_FULL)
+        .incrementAndGet();
+    LOGGER.debug("Request shed : {}", Reason.QUEUE_FULL);
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, shedStatus);
+  }
+
+  /**
+   * Admit a request. An admitted request has to be completed with {@link #complete(long)} or
+   * {@link #reject()}.
+   *
+   * @param executor event loop of the request, may be null
+   * @return null if the request is admitted, otherwise the reason to shed it
+   */
+  public Reason tryAdmit(EventExecutor executor) {
+    Reason reason = null;
+    if (maxLatencyNanos > 0 && recentLatencyNanos() > maxLatencyNanos) {
+      reason = Reason.LATENCY;
+    } else if (maxPendingTasks > 0 && executor instanceof SingleThreadEventExecutor
+        && ((SingleThreadEventExecutor) executor).pendingTasks() > maxPendingTasks) {
+      reason = Reason.PENDING_TASKS;
+    } else if (inFlight.incrementAndGet() > maxInFlight && maxInFlight > 0) {
+      inFlight.decrementAndGet();
+      reason = Reason.IN_FLIGHT;
+    }
+
+    if (reason != null) {
+      shed.get(reason)
+          .incrementAndGet();
+    }
+    return reason;
+  }
+
+  /**
+   * Complete an admitted request.
+   *
+   * @param nanos time since the request was received, queueing included
+   */
+  @Override
+  public void complete(long nanos) {
+    inFlight.decrementAndGet();
+    long current;
+    long updated;
+    do {
+      current = latencyNanos.get();
+      updated = current + (long) ((nanos - current) * LATENCY_WEIGHT);
+    } while (!latencyNanos.compareAndSet(current, updated));
+    lastCompletionNanos.set(ticker.read());
+  }
+
+  /**
+   * @return average latency of recently completed requests, 0 if none completed recently
+   */
+  long recentLatencyNanos() {
+    if (ticker.read() - lastCompletionNanos.get() > LATENCY_EXPIRY_NANOS) {
+      return 0;
+    }
+    return latencyNanos.get();
+  }
+}
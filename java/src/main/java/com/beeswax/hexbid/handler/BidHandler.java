@@ -11,19 +11,31 @@
  *******************************************************************************/
 package com.beeswax.hexbid.handler;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.beeswax.bid.Request.BidAgentRequest;
 import com.beeswax.bid.Request.BidAgentResponse;
 import com.beeswax.hexbid.bidder.Bidder;
+import com.beeswax.hexbid.bidder.Deadline;
+import com.beeswax.hexbid.config.BidderConfig;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
+import com.beeswax.hexbid.handler.BidStageStats.Stage;
 import com.beeswax.hexbid.parser.BidProtobufParser;
-import com.beeswax.http.handler.RequestHandler;
+import com.beeswax.hexbid.parser.BidProtobufSerializer;
+import com.beeswax.hexbid.parser.SelectiveRequestParser;
+import com.beeswax.http.handler.HttpResponses;
+import com.beeswax.http.handler.TimedRequestHandler;
+import com.beeswax.http.metrics.VarRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import com.google.protobuf.InvalidProtocolBufferException;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -36,20 +48,46 @@ import io.netty.util.AsciiString;
 /**
  * The handler handles all requests to /bid end point</br>
  * Expects a serialized {@link BidAgentRequest} and returns a {@link BidAgentResponse}<br/>
+ * </br>
+ * Each request has a {@link Deadline} starting when the request is received, before it is queued
+ * on the bid executor. Its budget is the smaller of the deadline header and the tmax of the
+ * auction minus the configured margin, or the default budget when the request has neither. The
+ * deadline is checked before and after parsing and after bidding, and by the {@link Bidder}
+ * between adcandidates. Once it is spent the request is answered with 204 right away since the
+ * exchange no longer waits for the bid. Stage timings are exported by {@link BidStageStats}.</br>
+ * </br>
+ * With selective parsing the request is decoded by a {@link SelectiveRequestParser} for the
+ * sub-messages read by the strategies of the {@link Bidder}.
  *
  */
-public class BidHandler implements RequestHandler {
+public class BidHandler implements TimedRequestHandler {
   private static final Logger LOGGER = LogManager.getLogger(BidHandler.class);
   public static final String PATH = "/bid";
-  private Bidder bidder;
+  private static final byte[] BAD_REQUEST_BYTES = "Bad request".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] INTERNAL_ERROR_BYTES =
+      "Internal error when setting bid".getBytes(StandardCharsets.UTF_8);
+  private final Bidder bidder;
+  private final BidderConfig config;
+  private final BidStageStats stats;
+  private final Ticker ticker;
+  private final SelectiveRequestParser parser;
 
   public BidHandler() {
-    this(new Bidder());
+    this(new BidderConfigBuilder().build());
+  }
+
+  public BidHandler(BidderConfig config) {
+    this(new Bidder(config), config, new BidStageStats(VarRegistry.getDefault()),
+        Ticker.systemTicker());
   }
-  
+
   @VisibleForTesting
-  BidHandler(Bidder bidder) {
+  BidHandler(Bidder bidder, BidderConfig config, BidStageStats stats, Ticker ticker) {
     this.bidder = bidder;
+    this.config = config;
+    this.stats = stats;
+    this.ticker = ticker;
+    this.parser = new SelectiveRequestParser(bidder.getRequestFields());
   }
 
   /**
@@ -57,7 +95,7 @@ public class BidHandler implements RequestHandler {
    * Process full bid request with following error codes:</br>
    * </br>
    * 200 if it sets bid price in {@link BidAgentResponse} successfully.</br>
-   * 204 if no bid is made for this request</br>
+   * 204 if no bid is made for this request or its deadline is spent</br>
    * 400 if there is a parsing error {@link BidAgentRequest} or it fails to get bidding strategy.</br>
    * 500 if server experienced an error.</br>
    * 
@@ -67,33 +105,110 @@ public class BidHandler implements RequestHandler {
    * 
    */
   public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+    return processRequest(ctx, request, ticker.read());
+  }
+
+  /**
+   * Process full bid request received at the given time, see
+   * {@link #processRequest(ChannelHandlerContext, FullHttpRequest)}.
+   *
+   * @param ChannelHandlerContext
+   * @param FullHttpRequest
+   * @param arrivalNanos time read from the ticker when the request was received
+   *
+   * @return FullHttpResponse
+   */
+  public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request,
+      long arrivalNanos) {
     LOGGER.debug("/bid request");
+    stats.request();
+    Deadline deadline = Deadline.start(ticker, arrivalNanos);
+    final Long headerBudget = getHeaderBudget(request);
+    if (headerBudget != null) {
+      deadline = deadline.withBudget(headerBudget - config.deadlineMarginMillis);
+    }
+    final long startNanos = ticker.read();
+    stats.record(Stage.QUEUE, startNanos - arrivalNanos);
+    if (deadline.isExpired()) {
+      return deadlineExceeded(Stage.QUEUE, deadline);
+    }
 
     try {
-      final BidAgentRequest bidRequest =
-          (BidAgentRequest) BidProtobufParser.parseProtoBytebuf(request.content(),
+      final BidAgentRequest bidRequest = config.selectiveParsing
+          ? parser.parse(request.content())
+                  .getRequest()
+          : (BidAgentRequest) BidProtobufParser.parseProtoBytebuf(request.content(),
               BidAgentRequest.newBuilder());
-      final Optional<BidAgentResponse> bidResponse = bidder.SetBid(bidRequest);
+      final long parsedNanos = ticker.read();
+      stats.record(Stage.PARSE, parsedNanos - startNanos);
+      if (bidRequest.getBidRequest()
+                    .hasTmax()) {
+        deadline = deadline.withBudget(bidRequest.getBidRequest()
+                                                 .getTmax()
+            - config.deadlineMarginMillis);
+      } else if (headerBudget == null && config.defaultBudgetMillis > 0) {
+        deadline = deadline.withBudget(config.defaultBudgetMillis);
+      }
+      if (deadline.isExpired()) {
+        return deadlineExceeded(Stage.PARSE, deadline);
+      }
+
+      final Optional<BidAgentResponse> bidResponse = bidder.SetBid(bidRequest, deadline);
+      final long bidNanos = ticker.read();
+      stats.record(Stage.BID, bidNanos - parsedNanos);
+      if (deadline.isExpired()) {
+        return deadlineExceeded(Stage.BID, deadline);
+      }
 
       if (!bidResponse.isPresent()) {
         LOGGER.debug("No Bid");
         return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NO_CONTENT);
       }
 
-      final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
-          HttpResponseStatus.OK, Unpooled.wrappedBuffer(bidResponse.get()
-                                                                   .toByteArray()));
+      // serialize into a buffer of the channel allocator
+      final ByteBuf content = BidProtobufSerializer.serialize(ctx.alloc(), bidResponse.get());
+      stats.record(Stage.SERIALIZE, ticker.read() - bidNanos);
+      if (deadline.isExpired()) {
+        // the response is ready, sending it costs less than dropping it
+        stats.deadlineExceeded(Stage.SERIALIZE, false);
+      }
+      final FullHttpResponse response =
+          new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
       response.headers()
               .set(HttpHeaderNames.CONTENT_TYPE, new AsciiString("application/x-protobuf"));
       return response;
 
     } catch (InvalidProtocolBufferException | IllegalArgumentException e) {
-      return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.BAD_REQUEST,
-          Unpooled.wrappedBuffer("Bad request".getBytes()));
+      return HttpResponses.newResponse(ctx.alloc(), HttpResponseStatus.BAD_REQUEST,
+          BAD_REQUEST_BYTES);
     } catch (Exception e) {
       LOGGER.error("Unexpected error when setting bid", e);
-      return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.INTERNAL_SERVER_ERROR,
-          Unpooled.wrappedBuffer("Internal error when setting bid".getBytes()));
+      return HttpResponses.newResponse(ctx.alloc(), HttpResponseStatus.INTERNAL_SERVER_ERROR,
+          INTERNAL_ERROR_BYTES);
     }
   }
+
+  /**
+   * @return budget in milliseconds of the deadline header, null if absent or invalid
+   */
+  private Long getHeaderBudget(FullHttpRequest request) {
+    final String value = request.headers()
+                                .get(config.deadlineHeader);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      LOGGER.debug("Invalid deadline header : {}", value);
+      return null;
+    }
+  }
+
+  private FullHttpResponse deadlineExceeded(Stage stage, Deadline deadline) {
+    LOGGER.debug("Deadline exceeded after {} stage, {}us elapsed", stage,
+        TimeUnit.NANOSECONDS.toMicros(deadline.elapsedNanos()));
+    stats.deadlineExceeded(stage, true);
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NO_CONTENT);
+  }
 }
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.handler;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.beeswax.http.metrics.VarRegistry;
+
+/**
+ * Timing of the stages of a /bid request.</br>
+ * </br>
+ * The QUEUE stage is the time from the arrival of the request until the handler starts on it,
+ * e.g. waiting on the bid executor.</br>
+ * Exports per stage the total time spent in microseconds ("bid.stage.STAGE.micros") and the number
+ * of requests whose deadline was spent by the end of the stage ("bid.deadline_exceeded.STAGE"),
+ * next to the number of requests ("bid.requests") and of requests answered early with 204 because
+ * of their deadline ("bid.deadline_no_bids").
+ *
+ */
+public class BidStageStats {
+
+  /**
+   * Stages of a /bid request in processing order.
+   */
+  public enum Stage {
+    QUEUE, PARSE, BID, SERIALIZE;
+
+    final String varName = name().toLowerCase(Locale.ROOT);
+  }
+
+  private final AtomicLong requests;
+  private final AtomicLong deadlineNoBids;
+  private final Map<Stage, AtomicLong> stageMicros = new EnumMap<>(Stage.class);
+  private final Map<Stage, AtomicLong> deadlineExceeded = new EnumMap<>(Stage.class);
+
+  public BidStageStats(VarRegistry registry) {
+    requests = registry.counter("bid.requests");
+    deadlineNoBids = registry.counter("bid.deadline_no_bids");
+    for (Stage stage : Stage.values()) {
+      stageMicros.put(stage, registry.counter("bid.stage." + stage.varName + ".micros"));
+      deadlineExceeded.put(stage, registry.counter("bid.deadline_exceeded." + stage.varName));
+    }
+  }
+
+  public void request() {
+    requests.incrementAndGet();
+  }
+
+  /**
+   * @param stage
+   * @param nanos time spent in the stage
+   */
+  public void record(Stage stage, long nanos) {
+    stageMicros.get(stage)
+               .addAndGet(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  /**
+   * @param stage at the end of which the deadline was spent
+   * @param noBid true if the request is answered with 204 because of the deadline
+   */
+  public void deadlineExceeded(Stage stage, boolean noBid) {
+    deadlineExceeded.get(stage)
+                    .incrementAndGet();
+    if (noBid) {
+      deadlineNoBids.incrementAndGet();
+    }
+  }
+}
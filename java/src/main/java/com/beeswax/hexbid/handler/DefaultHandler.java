@@ -14,15 +14,15 @@ package com.beeswax.hexbid.handler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.charset.StandardCharsets;
+
+import com.beeswax.http.handler.HttpResponses;
 import com.beeswax.http.handler.RequestHandler;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.QueryStringDecoder;
 
 /**
@@ -33,13 +33,13 @@ import io.netty.handler.codec.http.QueryStringDecoder;
 public class DefaultHandler implements RequestHandler {
   private static final Logger LOGGER = LogManager.getLogger(DefaultHandler.class);
   private static final String CONTENT_MESSAGE = "page not found";
+  private static final byte[] CONTENT_BYTES = CONTENT_MESSAGE.getBytes(StandardCharsets.UTF_8);
 
   public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
     final QueryStringDecoder queryDecoder = new QueryStringDecoder(request.uri());
     LOGGER.debug("Responding with 404: not found path {}", queryDecoder.path());
 
-    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND,
-        Unpooled.wrappedBuffer(CONTENT_MESSAGE.getBytes()));
+    return HttpResponses.newResponse(ctx.alloc(), HttpResponseStatus.NOT_FOUND, CONTENT_BYTES);
   }
 
 }
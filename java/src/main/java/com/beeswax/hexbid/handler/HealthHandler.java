@@ -14,15 +14,15 @@ package com.beeswax.hexbid.handler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.charset.StandardCharsets;
+
+import com.beeswax.http.handler.HttpResponses;
 import com.beeswax.http.handler.RequestHandler;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.HttpVersion;
 
 /**
  * The handler which handles /health requests.</br>
@@ -34,11 +34,11 @@ public class HealthHandler implements RequestHandler {
   private static final Logger LOGGER = LogManager.getLogger(HealthHandler.class);
   public static final String PATH = "/health";
   public static final String CONTENT_MESSAGE = "ok";
+  private static final byte[] CONTENT_BYTES = CONTENT_MESSAGE.getBytes(StandardCharsets.UTF_8);
 
   public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
     LOGGER.debug("/health request");
 
-    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
-        Unpooled.wrappedBuffer(CONTENT_MESSAGE.getBytes()));
+    return HttpResponses.newResponse(ctx.alloc(), HttpResponseStatus.OK, CONTENT_BYTES);
   }
 }
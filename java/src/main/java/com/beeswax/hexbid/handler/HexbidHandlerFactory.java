@@ -11,31 +11,63 @@
  *******************************************************************************/
 package com.beeswax.hexbid.handler;
 
-import com.beeswax.http.handler.HandlerFactory;
-import com.beeswax.http.handler.RequestHandler;
+import java.util.concurrent.Executor;
+
+import com.beeswax.hexbid.config.BidderConfig;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
+import com.beeswax.http.handler.ExecutionMode;
+import com.beeswax.http.handler.ExecutorHandlerFactory;
+import com.beeswax.http.handler.Route;
+import com.beeswax.http.handler.Router;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
 
 /**
  * Following end points are currently supported by the Hexbid HTTP server:</br>
  *</br>
- * /bid - request to set bid price for bid agent request</br>
+ * /bid - request to set bid price for bid agent request, shed by an {@link AdmissionController}
+ * under overload</br>
  * /health - request to check server health</br>
  * /var - request to check server variables</br>
+ *</br>
+ * /bid runs with the {@link ExecutionMode} of the {@link BidderConfig} so that slow strategies,
+ * such as a user score lookup, do not stall the I/O threads. The other end points are cheap and
+ * run inline. /bid requests are admitted before they are queued on the executor, which is shut
+ * down with the server.
  *
  */
-public class HexbidHandlerFactory implements HandlerFactory {
+public class HexbidHandlerFactory implements ExecutorHandlerFactory {
 
-  private final ImmutableMap<String, RequestHandler> registry;
+  private final Router<Route> routes;
+  private final Executor executor;
 
   public HexbidHandlerFactory() {
-    registry = ImmutableMap.<String, RequestHandler>builder()
-                           .put(HealthHandler.PATH, new HealthHandler())
-                           .put(VarHandler.PATH, new VarHandler())
-                           .put(BidHandler.PATH, new BidHandler())
-                           .build();
+    this(new BidderConfigBuilder().build());
+  }
+
+  public HexbidHandlerFactory(BidderConfig bidderConfig) {
+    executor = bidderConfig.executionMode.newExecutor("bidder", bidderConfig.executorThreads,
+        bidderConfig.executorQueueSize);
+    final Route bidRoute = new Route(new BidHandler(bidderConfig), executor,
+        new AdmissionController(bidderConfig, VarRegistry.getDefault(), Ticker.systemTicker()));
+    final ImmutableMap<String, Route> registry =
+        ImmutableMap.<String, Route>builder()
+                    .put(HealthHandler.PATH, new Route(new HealthHandler()))
+                    .put(VarHandler.PATH, new Route(new VarHandler()))
+                    .put(BidHandler.PATH, bidRoute)
+                    .build();
+    routes = new Router<>(registry, new Route(new DefaultHandler()));
+  }
+
+  public Route getRoute(String uri) {
+    return routes.route(uri);
   }
 
-  public RequestHandler getHandler(String path) {
-    return registry.getOrDefault(path, new DefaultHandler());
+  /**
+   * @return executor of /bid
+   */
+  public Executor getExecutor() {
+    return executor;
   }
 }
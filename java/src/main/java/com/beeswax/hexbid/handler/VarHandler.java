@@ -11,36 +11,60 @@
  *******************************************************************************/
 package com.beeswax.hexbid.handler;
 
+import java.util.Map;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.beeswax.http.handler.HttpResponses;
 import com.beeswax.http.handler.RequestHandler;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.annotations.VisibleForTesting;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.HttpVersion;
 
 /**
  * Handler which handles /var requests. to show server variables.</br>
  * </br>
- * Hexbid server doesn't have internal variables so it simply returns 200 "ok" but
- * this handler can show metrics like request count, bids and etc.</br>
+ * Returns 200 with all variables registered in {@link VarRegistry} as plain text,
+ * one "name value" pair per line sorted by name.</br>
  * 
  */
 public class VarHandler implements RequestHandler {
   private static final Logger LOGGER = LogManager.getLogger(VarHandler.class);
   public static final String PATH = "/var";
-  public static final String CONTENT_MESSAGE = "var";
+  private final VarRegistry registry;
+
+  public VarHandler() {
+    this(VarRegistry.getDefault());
+  }
+
+  @VisibleForTesting
+  VarHandler(VarRegistry registry) {
+    this.registry = registry;
+  }
 
   public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
     LOGGER.debug("/var request");
 
-    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
-        Unpooled.wrappedBuffer(CONTENT_MESSAGE.getBytes()));
+    final StringBuilder content = new StringBuilder();
+    for (Map.Entry<String, Object> var : registry.snapshot()
+                                                 .entrySet()) {
+      content.append(var.getKey())
+             .append(' ')
+             .append(var.getValue())
+             .append('\n');
+    }
+    final FullHttpResponse response =
+        HttpResponses.newResponse(ctx.alloc(), HttpResponseStatus.OK, content);
+    response.headers()
+            .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN);
+    return response;
   }
 
 }
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * CRC32 of the buffers of model and score files.</br>
+ * </br>
+ * This Java version cannot update a {@link CRC32} from a {@link ByteBuffer}, so direct and mapped
+ * buffers are copied through a heap chunk.
+ *
+ */
+public final class Checksums {
+  private static final int CHUNK_BYTES = 1 << 16;
+
+  private Checksums() {}
+
+  /**
+   * @param buffers read from position to limit, their positions are left unchanged
+   * @return CRC32 of the buffers in order
+   */
+  public static long crc32(ByteBuffer... buffers) {
+    final CRC32 crc = new CRC32();
+    byte[] chunk = null;
+    for (ByteBuffer buffer : buffers) {
+      if (buffer.hasArray()) {
+        crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      } else {
+        if (chunk == null) {
+          chunk = new byte[CHUNK_BYTES];
+        }
+        final ByteBuffer source = buffer.duplicate();
+        while (source.hasRemaining()) {
+          final int length = Math.min(chunk.length, source.remaining());
+          source.get(chunk, 0, length);
+          crc.update(chunk, 0, length);
+        }
+      }
+    }
+    return crc.getValue();
+  }
+}
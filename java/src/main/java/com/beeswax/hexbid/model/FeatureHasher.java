@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Hashes of the features of a {@link LogisticModel}.</br>
+ * </br>
+ * A feature is the 64 bit {@link Fnv1a} hash of its namespace followed by the bytes of its value, a
+ * string as its UTF-8 bytes and a number as its 8 little endian bytes, finished by the murmur3
+ * finalizer. Strings are hashed from the {@link ByteString} of the protobuf field in place, so
+ * hashing neither decodes nor allocates. Two features are crossed by hashing their hashes.
+ *
+ */
+public final class FeatureHasher {
+  // feature namespaces, part of the model file contract
+  public static final long SITE = 1;
+  public static final long APP = 2;
+  public static final long DEVICE_OS = 3;
+  public static final long DEVICE_TYPE = 4;
+  public static final long DEVICE_MAKE = 5;
+  public static final long GEO_COUNTRY = 6;
+  public static final long GEO_REGION = 7;
+  public static final long HOUR = 8;
+  public static final long LINE_ITEM = 9;
+  public static final long CAMPAIGN = 10;
+
+  private FeatureHasher() {}
+
+  /**
+   * @param namespace
+   * @param value
+   * @return hash of the string feature
+   */
+  public static long hash(long namespace, ByteString value) {
+    return Fnv1a.mix(Fnv1a.update(start(namespace), value));
+  }
+
+  /**
+   * @param namespace
+   * @param value
+   * @return hash of the number feature
+   */
+  public static long hash(long namespace, long value) {
+    return Fnv1a.mix(Fnv1a.updateLong(start(namespace), value));
+  }
+
+  /**
+   * @param first hash of a feature
+   * @param second hash of a feature
+   * @return hash of the cross of the features
+   */
+  public static long cross(long first, long second) {
+    return Fnv1a.mix(Fnv1a.updateLong(Fnv1a.updateLong(Fnv1a.OFFSET_BASIS, first), second));
+  }
+
+  private static long start(long namespace) {
+    return Fnv1a.updateLong(Fnv1a.OFFSET_BASIS, namespace);
+  }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * 64 bit FNV-1a hashing, shared by the hashes of features, user ids and strategy
+ * parameters.</br>
+ * </br>
+ * A hash starts from {@link #OFFSET_BASIS} and is updated with each value in turn. FNV-1a only
+ * spreads the bits of a value towards the high bits of the hash, so hashes whose bits select
+ * slots or segments are finished with {@link #mix(long)}, the murmur3 finalizer. None of the
+ * methods allocate.
+ *
+ */
+public final class Fnv1a {
+  public static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
+  private Fnv1a() {}
+
+  /**
+   * @param hash
+   * @param value byte or character
+   * @return hash updated with the value
+   */
+  public static long update(long hash, int value) {
+    return (hash ^ value) * PRIME;
+  }
+
+  /**
+   * @param hash
+   * @param bytes
+   * @return hash updated with the bytes, read in place
+   */
+  public static long update(long hash, ByteString bytes) {
+    final int size = bytes.size();
+    for (int i = 0; i < size; i++) {
+      hash = (hash ^ (bytes.byteAt(i) & 0xff)) * PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * @param hash
+   * @param value
+   * @return hash updated with the 8 little endian bytes of the value
+   */
+  public static long updateLong(long hash, long value) {
+    for (int i = 0; i < 8; i++) {
+      hash = (hash ^ ((value >>> (i * 8)) & 0xff)) * PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * @param hash
+   * @return hash whose bits each depend on every bit of the given hash
+   */
+  public static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9cc1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
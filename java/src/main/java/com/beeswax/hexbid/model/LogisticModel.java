@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sparse logistic regression model over hashed features, memory-mapped from a model file.</br>
+ * </br>
+ * The model has 2^bits weights indexed by the low bits of the feature hashes, see
+ * {@link FeatureHasher}, and a bias. The probability of a set of features is the sigmoid of the
+ * bias plus their weights. A model file is a little endian header of 64 bytes followed by the
+ * weights as 32 bit floats:</br>
+ *   - magic "HEXMODEL" and format 1</br>
+ *   - bits, from 1 to 29</br>
+ *   - version of the model, bias as a double and CRC32 of the weights</br>
+ * </br>
+ * Weights are read from the mapped file in place, so a lookup neither allocates nor copies the
+ * model to the heap. Immutable and thread safe.
+ *
+ */
+public final class LogisticModel {
+  public static final int HEADER_BYTES = 64;
+  public static final int MAX_BITS = 29;
+  private static final long MAGIC = 0x4c45444f4d584548L; // "HEXMODEL" little endian
+  private static final int FORMAT = 1;
+
+  private final ByteBuffer weights;
+  private final int mask;
+  private final double bias;
+  private final long version;
+
+  private LogisticModel(ByteBuffer weights, int bits, double bias, long version) {
+    this.weights = weights.order(ByteOrder.LITTLE_ENDIAN);
+    this.mask = (1 << bits) - 1;
+    this.bias = bias;
+    this.version = version;
+  }
+
+  /**
+   * @param featureHash
+   * @return weight of the feature
+   */
+  public double weight(long featureHash) {
+    return weights.getFloat(((int) featureHash & mask) << 2);
+  }
+
+  public double bias() {
+    return bias;
+  }
+
+  public long version() {
+    return version;
+  }
+
+  /**
+   * @param logit bias plus the weights of the features
+   * @return probability
+   */
+  public static double sigmoid(double logit) {
+    return 1 / (1 + Math.exp(-logit));
+  }
+
+  /**
+   * Write a model file through a temporary file which is then renamed.
+   *
+   * @param file
+   * @param version
+   * @param bias
+   * @param weights 2^bits weights
+   * @throws IOException
+   * @throws IllegalArgumentException if the number of weights is not a power of 2 up to 2^29
+   */
+  public static void write(Path file, long version, double bias, float[] weights)
+      throws IOException, IllegalArgumentException {
+    if (Integer.bitCount(weights.length) != 1 || weights.length > 1 << MAX_BITS
+        || weights.length < 2) {
+      throw new IllegalArgumentException("Invalid number of weights : " + weights.length);
+    }
+    final ByteBuffer body = ByteBuffer.allocate(weights.length * 4)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+    body.asFloatBuffer()
+        .put(weights);
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                                        .order(ByteOrder.LITTLE_ENDIAN);
+    header.putLong(MAGIC)
+          .putInt(FORMAT)
+          .putInt(Integer.numberOfTrailingZeros(weights.length))
+          .putLong(version)
+          .putDouble(bias)
+          .putLong(Checksums.crc32(body))
+          .clear();
+
+    final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      while (body.hasRemaining()) {
+        channel.write(body);
+      }
+      channel.force(false);
+    }
+    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Map a model file and check its header and checksum.
+   *
+   * @param file
+   * @param version expected version of the model
+   * @return model over the mapped weights
+   * @throws IOException if the file cannot be read or is not a valid model of the version
+   */
+  public static LogisticModel map(Path file, long version) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long length = channel.size();
+      if (length < HEADER_BYTES) {
+        throw new IOException("Truncated model header : " + length + " bytes");
+      }
+      final ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_BYTES)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+      if (header.getLong() != MAGIC) {
+        throw new IOException("Not a model file");
+      }
+      final int format = header.getInt();
+      if (format != FORMAT) {
+        throw new IOException("Unsupported model format : " + format);
+      }
+      final int bits = header.getInt();
+      final long modelVersion = header.getLong();
+      final double bias = header.getDouble();
+      final long checksum = header.getLong();
+      if (bits < 1 || bits > MAX_BITS) {
+        throw new IOException("Invalid model bits : " + bits);
+      }
+      if (modelVersion != version) {
+        throw new IOException("Model version " + modelVersion + " instead of " + version);
+      }
+      final long weightBytes = 4L << bits;
+      if (length != HEADER_BYTES + weightBytes) {
+        throw new IOException("Model length " + length + " does not match its bits");
+      }
+      final ByteBuffer weights = channel.map(MapMode.READ_ONLY, HEADER_BYTES, weightBytes);
+      if (Checksums.crc32(weights) != checksum) {
+        throw new IOException("Model checksum mismatch");
+      }
+      return new LogisticModel(weights, bits, bias, modelVersion);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Supplier of the latest {@link LogisticModel} of a directory, hot swapped while bidding.</br>
+ * </br>
+ * The directory holds model files named model-VERSION.lr. A background thread polls the directory,
+ * maps and checks a model of a higher version and swaps it in through a volatile field, so readers
+ * never block and the previous model serves until then. An invalid model is logged and skipped.
+ * </br>
+ * </br>
+ * Exports lr_model.version, lr_model.swap_ms (time to map and check the last model swapped in),
+ * lr_model.swaps and lr_model.load_failures.
+ *
+ */
+public final class ModelStore implements Supplier<LogisticModel>, Closeable {
+  private static final Logger LOGGER = LogManager.getLogger(ModelStore.class);
+  private static final String PREFIX = "model-";
+  private static final String SUFFIX = ".lr";
+
+  private final Path directory;
+  private final long pollMillis;
+  private final Ticker ticker;
+  private final AtomicLong swaps;
+  private final AtomicLong loadFailures;
+  private volatile LogisticModel model;
+  private volatile long swapMillis;
+  private long failedVersion = -1;
+  private ScheduledExecutorService executor;
+
+  /**
+   * @param directory directory of the model files
+   * @param pollMillis interval between polls of the directory
+   */
+  public ModelStore(Path directory, long pollMillis) {
+    this(directory, pollMillis, VarRegistry.getDefault(), Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  ModelStore(Path directory, long pollMillis, VarRegistry registry, Ticker ticker) {
+    this.directory = directory;
+    this.pollMillis = pollMillis;
+    this.ticker = ticker;
+    this.swaps = registry.counter("lr_model.swaps");
+    this.loadFailures = registry.counter("lr_model.load_failures");
+    registry.register("lr_model.version", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        final LogisticModel current = model;
+        return current == null ? -1 : current.version();
+      }
+    });
+    registry.register("lr_model.swap_ms", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return swapMillis;
+      }
+    });
+  }
+
+  /**
+   * Load the latest model, then keep polling the directory on a background thread.
+   *
+   * @return this store
+   */
+  public synchronized ModelStore start() {
+    poll();
+    executor =
+        Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("lr-model", true));
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        poll();
+      }
+    }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return latest model, null before the first one
+   */
+  @Override
+  public LogisticModel get() {
+    return model;
+  }
+
+  /**
+   * Swap in the latest model if it is newer than the current one.
+   */
+  @VisibleForTesting
+  synchronized void poll() {
+    try {
+      final LogisticModel current = model;
+      final long latest = getLatestVersion();
+      if (latest > (current == null ? -1 : current.version()) && latest != failedVersion) {
+        load(latest);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Failed to poll models in {}", directory, e);
+    }
+  }
+
+  private void load(long version) {
+    final long startNanos = ticker.read();
+    final Path file = directory.resolve(PREFIX + version + SUFFIX);
+    try {
+      model = LogisticModel.map(file, version);
+    } catch (IOException e) {
+      LOGGER.error("Invalid model {}", file, e);
+      failedVersion = version;
+      loadFailures.incrementAndGet();
+      return;
+    }
+    swapMillis = TimeUnit.NANOSECONDS.toMillis(ticker.read() - startNanos);
+    swaps.incrementAndGet();
+    LOGGER.info("Swapped in model {} in {}ms", version, swapMillis);
+  }
+
+  /**
+   * @return highest version of the model files, -1 if there is none
+   */
+  private long getLatestVersion() throws IOException {
+    long latest = -1;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+      for (Path file : files) {
+        final String name = file.getFileName()
+                                .toString();
+        try {
+          latest = Math.max(latest,
+              Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          LOGGER.debug("Ignoring {}", file);
+        }
+      }
+    }
+    return latest;
+  }
+}
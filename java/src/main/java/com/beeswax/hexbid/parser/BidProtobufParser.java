@@ -11,10 +11,17 @@
  *******************************************************************************/
 package com.beeswax.hexbid.parser;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.handler.codec.protobuf.ProtobufDecoder;
 
 /**
@@ -22,10 +29,27 @@ import io.netty.handler.codec.protobuf.ProtobufDecoder;
  *
  */
 public class BidProtobufParser {
+  /**
+   * Maximum nesting of messages, well above the depth of {@link BidAgentRequest}.
+   */
+  public static final int RECURSION_LIMIT = 32;
 
   /**
    * Parse serialized protocol buffer Bytebuf to protobuf object.</br>
-   * Preferencing implementation of {@link ProtobufDecoder}
+   * Preferencing implementation of {@link ProtobufDecoder}</br>
+   * </br>
+   * The message is decoded by a {@link CodedInputStream} reading the buffer in place:</br>
+   * - heap buffers through their backing array.</br>
+   * - direct buffers, and composite buffers whose readable bytes are in a single component,
+   * through their NIO {@link ByteBuffer}, which protobuf reads with Unsafe when it is available.
+   * </br>
+   * - buffers made of several components, e.g. a {@link CompositeByteBuf} collected by the
+   * streaming body handler, through a stream which protobuf fills in small chunks, so that the
+   * body is never copied into one array. This protobuf version has no decoder reading a list of
+   * NIO buffers.</br>
+   * Nesting is limited to {@link #RECURSION_LIMIT} and the input to the readable bytes of the
+   * buffer, so that a truncated message is rejected by every decoder. The parsed message copies what it keeps so the buffer can be released right after.
+   * The reader index of the buffer is left unchanged.
    * 
    * @param bytebuf
    * @return protocol buffer message
@@ -34,17 +58,53 @@ public class BidProtobufParser {
   public static <T extends Message.Builder> Message parseProtoBytebuf(ByteBuf bytebuf,
       T messageBuilder)
       throws InvalidProtocolBufferException {
-    final byte[] array;
-    final int offset;
+    mergeProtoBytebuf(bytebuf, messageBuilder);
+    return messageBuilder.buildPartial();
+  }
+
+  /**
+   * Merge the message serialized in the readable bytes of the buffer into the builder, see
+   * {@link #parseProtoBytebuf(ByteBuf, Message.Builder)}.
+   *
+   * @param bytebuf
+   * @param messageBuilder
+   * @throws InvalidProtocolBufferException
+   */
+  static void mergeProtoBytebuf(ByteBuf bytebuf, Message.Builder messageBuilder)
+      throws InvalidProtocolBufferException {
+    final CodedInputStream input = newCodedInputStream(bytebuf);
+    try {
+      messageBuilder.mergeFrom(input);
+      input.checkLastTagWas(0);
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e.getMessage());
+    }
+  }
+
+  /**
+   * @param bytebuf
+   * @return input reading the readable bytes of the buffer in place, limited to them and to
+   *         {@link #RECURSION_LIMIT}
+   * @throws InvalidProtocolBufferException
+   */
+  static CodedInputStream newCodedInputStream(ByteBuf bytebuf)
+      throws InvalidProtocolBufferException {
     final int length = bytebuf.readableBytes();
+    final CodedInputStream input;
     if (bytebuf.hasArray()) {
-        array = bytebuf.array();
-        offset = bytebuf.arrayOffset() + bytebuf.readerIndex();
+      input = CodedInputStream.newInstance(bytebuf.array(),
+          bytebuf.arrayOffset() + bytebuf.readerIndex(), length);
+    } else if (bytebuf.nioBufferCount() == 1) {
+      input = CodedInputStream.newInstance(bytebuf.nioBuffer(bytebuf.readerIndex(), length));
     } else {
-        array = new byte[length];
-        bytebuf.getBytes(bytebuf.readerIndex(), array, 0, length);
-        offset = 0;
+      input = CodedInputStream.newInstance(new ByteBufInputStream(bytebuf.duplicate()));
     }
-    return messageBuilder.mergeFrom(array, offset, length).buildPartial();
+    input.setRecursionLimit(RECURSION_LIMIT);
+    // the NIO and stream decoders take the end of input inside an embedded message as its end,
+    // the limit makes them reject embedded messages longer than the remaining bytes instead
+    input.pushLimit(length);
+    return input;
   }
 }
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.parser;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * BidProtobufSerializer serializes protocol buffer messages into buffers of a
+ * {@link ByteBufAllocator}.
+ *
+ */
+public class BidProtobufSerializer {
+
+  /**
+   * Serialize the message into a buffer of its serialized size taken from the allocator, pooled
+   * and direct for the channel allocator of the server.</br>
+   * </br>
+   * A {@link CodedOutputStream} writes into the memory of the buffer: the backing array of heap
+   * buffers or the NIO buffer of direct ones, which protobuf writes with Unsafe when it is
+   * available. Unlike writing through an output stream no intermediate array is allocated.</br>
+   * The caller owns the returned buffer, which is released when serialization fails.
+   *
+   * @param alloc
+   * @param message
+   * @return buffer holding the serialized message
+   * @throws IOException
+   */
+  public static ByteBuf serialize(ByteBufAllocator alloc, MessageLite message) throws IOException {
+    final int size = message.getSerializedSize();
+    final ByteBuf bytebuf = alloc.buffer(size);
+    try {
+      final int writerIndex = bytebuf.writerIndex();
+      final CodedOutputStream output;
+      if (bytebuf.hasArray()) {
+        output = CodedOutputStream.newInstance(bytebuf.array(),
+            bytebuf.arrayOffset() + writerIndex, size);
+      } else {
+        output = CodedOutputStream.newInstance(bytebuf.internalNioBuffer(writerIndex, size));
+      }
+      message.writeTo(output);
+      output.checkNoSpaceLeft();
+      bytebuf.writerIndex(writerIndex + size);
+      return bytebuf;
+    } catch (IOException | RuntimeException e) {
+      bytebuf.release();
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.parser;
+
+import com.beeswax.hexbid.strategy.SelectiveBidStrategy;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+
+/**
+ * Sub-messages of the OpenRTB {@link BidRequest} which a {@link SelectiveBidStrategy} declares it
+ * reads.</br>
+ * {@link SelectiveRequestParser} decodes only the declared ones, the other fields of the
+ * {@link BidRequest} are always decoded.
+ *
+ */
+public enum BidRequestField {
+  IMP(BidRequest.IMP_FIELD_NUMBER),
+  SITE(BidRequest.SITE_FIELD_NUMBER),
+  APP(BidRequest.APP_FIELD_NUMBER),
+  DEVICE(BidRequest.DEVICE_FIELD_NUMBER),
+  USER(BidRequest.USER_FIELD_NUMBER);
+
+  private final int number;
+
+  private BidRequestField(int number) {
+    this.number = number;
+  }
+
+  /**
+   * @return protobuf field number in {@link BidRequest}
+   */
+  public int getNumber() {
+    return number;
+  }
+}
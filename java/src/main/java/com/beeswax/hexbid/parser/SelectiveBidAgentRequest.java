@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.parser;
+
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * A {@link BidAgentRequest} parsed by {@link SelectiveRequestParser}: the request with the
+ * selected fields of its {@link BidRequest}, and the full {@link BidRequest} which is decoded on
+ * first access, e.g. when a bid request has to be logged in full.
+ *
+ */
+public class SelectiveBidAgentRequest {
+  private final BidAgentRequest request;
+  // null when nothing was skipped
+  private final ByteString bidRequestBytes;
+  private volatile BidRequest fullBidRequest;
+
+  SelectiveBidAgentRequest(BidAgentRequest request, ByteString bidRequestBytes) {
+    this.request = request;
+    this.bidRequestBytes = bidRequestBytes;
+  }
+
+  /**
+   * @return request with adcandidates and the selected fields of the bid request
+   */
+  public BidAgentRequest getRequest() {
+    return request;
+  }
+
+  /**
+   * Decode the skipped sub-messages of the bid request once.
+   *
+   * @return bid request with all its fields
+   * @throws InvalidProtocolBufferException if a skipped sub-message is malformed
+   */
+  public BidRequest getFullBidRequest() throws InvalidProtocolBufferException {
+    if (bidRequestBytes == null) {
+      return request.getBidRequest();
+    }
+    BidRequest bidRequest = fullBidRequest;
+    if (bidRequest == null) {
+      bidRequest = BidRequest.parseFrom(bidRequestBytes);
+      fullBidRequest = bidRequest;
+    }
+    return bidRequest;
+  }
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.parser;
+
+import java.io.IOException;
+import java.util.Set;
+
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.App;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.Imp;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.beeswax.openrtb.Openrtb.BidRequest.User;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * SelectiveRequestParser parses a serialized {@link BidAgentRequest} for the bid path, decoding
+ * only what the bidding strategies read.</br>
+ * </br>
+ * Adcandidates are always decoded. The sub-messages of the {@link BidRequest} which are not among
+ * the given {@link BidRequestField}s are skipped, all its other fields are decoded. When there are
+ * no adcandidates there is no bid and every {@link BidRequestField} is skipped. If any sub-message
+ * was skipped, the bytes of the bid request are kept so that
+ * {@link SelectiveBidAgentRequest#getFullBidRequest()} can decode it in full on first access.
+ * Errors within skipped sub-messages are only found then.</br>
+ * </br>
+ * The buffer is read in place as by {@link BidProtobufParser} and its reader index is left
+ * unchanged.
+ *
+ */
+public class SelectiveRequestParser {
+  private static final int BID_REQUEST_TAG =
+      BidAgentRequest.BID_REQUEST_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int ID_TAG =
+      BidRequest.ID_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int IMP_TAG =
+      BidRequest.IMP_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int SITE_TAG =
+      BidRequest.SITE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int APP_TAG =
+      BidRequest.APP_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int DEVICE_TAG =
+      BidRequest.DEVICE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int USER_TAG =
+      BidRequest.USER_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int AT_TAG = BidRequest.AT_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+  private static final int TMAX_TAG =
+      BidRequest.TMAX_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+  private static final int CUR_TAG =
+      BidRequest.CUR_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+  private static final int TEST_TAG =
+      BidRequest.TEST_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+
+  // indexed by field number, true for the sub-messages left undecoded
+  private final boolean[] skipped;
+  private final boolean[] allSkipped;
+
+  /**
+   * @param fields sub-messages of the {@link BidRequest} to decode
+   */
+  public SelectiveRequestParser(Set<BidRequestField> fields) {
+    int maxNumber = 0;
+    for (BidRequestField field : BidRequestField.values()) {
+      maxNumber = Math.max(maxNumber, field.getNumber());
+    }
+    skipped = new boolean[maxNumber + 1];
+    allSkipped = new boolean[maxNumber + 1];
+    for (BidRequestField field : BidRequestField.values()) {
+      skipped[field.getNumber()] = !fields.contains(field);
+      allSkipped[field.getNumber()] = true;
+    }
+  }
+
+  /**
+   * Parse the serialized {@link BidAgentRequest} in the readable bytes of the buffer.
+   *
+   * @param bytebuf
+   * @return bid agent request with the selected fields
+   * @throws InvalidProtocolBufferException
+   */
+  public SelectiveBidAgentRequest parse(ByteBuf bytebuf) throws InvalidProtocolBufferException {
+    final int length = bytebuf.readableBytes();
+    // offsets from the reader index of the bid request field and of its message
+    int bidRequestFieldStart = length;
+    int bidRequestStart = length;
+    int bidRequestEnd = length;
+    final CodedInputStream input = BidProtobufParser.newCodedInputStream(bytebuf);
+    try {
+      boolean done = false;
+      while (!done) {
+        final int fieldStart = input.getTotalBytesRead();
+        final int tag = input.readTag();
+        if (tag == 0) {
+          done = true;
+        } else if (tag == BID_REQUEST_TAG) {
+          if (bidRequestFieldStart < length) {
+            // occurrences of the bid request have to be merged, leave it to the generated code
+            return new SelectiveBidAgentRequest(
+                (BidAgentRequest) BidProtobufParser.parseProtoBytebuf(bytebuf,
+                    BidAgentRequest.newBuilder()),
+                null);
+          }
+          bidRequestFieldStart = fieldStart;
+          final int bidRequestLength = input.readRawVarint32();
+          bidRequestStart = input.getTotalBytesRead();
+          input.skipRawBytes(bidRequestLength);
+          bidRequestEnd = input.getTotalBytesRead();
+        } else {
+          done = !input.skipField(tag);
+        }
+      }
+      input.checkLastTagWas(0);
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e.getMessage());
+    }
+
+    // the adcandidates around the bid request are left to the generated code, which allocates
+    // less than decoding them one by one here
+    final BidAgentRequest.Builder requestBuilder = BidAgentRequest.newBuilder();
+    mergeRange(bytebuf, 0, bidRequestFieldStart, requestBuilder);
+    mergeRange(bytebuf, bidRequestEnd, length, requestBuilder);
+    ByteString bidRequestBytes = null;
+    if (bidRequestFieldStart < length) {
+      // without adcandidates there is no bid, only the scalar fields are still of use
+      final boolean[] skippedFields =
+          requestBuilder.getAdcandidatesCount() > 0 ? skipped : allSkipped;
+      final BidRequest.Builder bidRequestBuilder = BidRequest.newBuilder();
+      bidRequestBytes = parseBidRequest(bytebuf.slice(bytebuf.readerIndex() + bidRequestStart,
+          bidRequestEnd - bidRequestStart), skippedFields, bidRequestBuilder);
+      requestBuilder.setBidRequest(bidRequestBuilder.buildPartial());
+    }
+    return new SelectiveBidAgentRequest(requestBuilder.buildPartial(), bidRequestBytes);
+  }
+
+  private static void mergeRange(ByteBuf bytebuf, int start, int end, Message.Builder builder)
+      throws InvalidProtocolBufferException {
+    if (end > start) {
+      BidProtobufParser.mergeProtoBytebuf(bytebuf.slice(bytebuf.readerIndex() + start,
+          end - start), builder);
+    }
+  }
+
+  /**
+   * Decode the fields of the bid request like its generated code, except for the skipped
+   * sub-messages. The fields read by the strategies are decoded here, any other field, e.g. bcat
+   * or one added to the schema after this parser, is left to the generated code.
+   *
+   * @return copy of the bid request bytes if a sub-message was skipped, null otherwise
+   */
+  private static ByteString parseBidRequest(ByteBuf bytebuf, boolean[] skipped,
+      BidRequest.Builder builder) throws InvalidProtocolBufferException {
+    final CodedInputStream input = BidProtobufParser.newCodedInputStream(bytebuf);
+    final ExtensionRegistryLite registry = ExtensionRegistryLite.getEmptyRegistry();
+    // range of the adjacent fields left to the generated code which are not merged yet, the
+    // order of fields of different numbers does not matter
+    int otherStart = 0;
+    int otherEnd = 0;
+    boolean skippedAny = false;
+    try {
+      boolean done = false;
+      while (!done) {
+        final int fieldStart = input.getTotalBytesRead();
+        final int tag = input.readTag();
+        final int number = WireFormat.getTagFieldNumber(tag);
+        if (tag == 0) {
+          done = true;
+        } else if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED
+            && number < skipped.length && skipped[number]) {
+          input.skipField(tag);
+          skippedAny = true;
+        } else if (tag == ID_TAG) {
+          builder.setIdBytes(input.readBytes());
+        } else if (tag == IMP_TAG) {
+          builder.addImp(input.readMessage(Imp.parser(), registry));
+        } else if (tag == SITE_TAG) {
+          builder.mergeSite(input.readMessage(Site.parser(), registry));
+        } else if (tag == APP_TAG) {
+          builder.mergeApp(input.readMessage(App.parser(), registry));
+        } else if (tag == DEVICE_TAG) {
+          builder.mergeDevice(input.readMessage(Device.parser(), registry));
+        } else if (tag == USER_TAG) {
+          builder.mergeUser(input.readMessage(User.parser(), registry));
+        } else if (tag == AT_TAG) {
+          builder.setAt(input.readInt32());
+        } else if (tag == TMAX_TAG) {
+          builder.setTmax(input.readInt32());
+        } else if (tag == CUR_TAG) {
+          builder.addCurBytes(input.readBytes());
+        } else if (tag == TEST_TAG) {
+          builder.setTest(input.readBool());
+        } else {
+          if (fieldStart != otherEnd) {
+            mergeRange(bytebuf, otherStart, otherEnd, builder);
+            otherStart = fieldStart;
+          }
+          done = !input.skipField(tag);
+          otherEnd = input.getTotalBytesRead();
+        }
+      }
+      input.checkLastTagWas(0);
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e.getMessage());
+    }
+    mergeRange(bytebuf, otherStart, otherEnd, builder);
+    if (!skippedAny) {
+      return null;
+    }
+    final byte[] bytes = new byte[bytebuf.readableBytes()];
+    bytebuf.getBytes(bytebuf.readerIndex(), bytes);
+    return UnsafeByteOperations.unsafeWrap(bytes);
+  }
+}
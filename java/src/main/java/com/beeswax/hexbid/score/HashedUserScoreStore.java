@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+/**
+ * Store of user scores which can be looked up by the hash of the user id, so that the strategies
+ * of a bid request hash its user id once, see
+ * {@link com.beeswax.hexbid.strategy.BidContext#getUserIdHash()}.
+ *
+ */
+public interface HashedUserScoreStore extends UserScoreStore {
+
+  /**
+   * @param userIdHash {@link OffHeapScoreTable#hash(CharSequence)} of the user id
+   * @param userId
+   * @param defaultScore returned when the store has no score for the user
+   * @return score of the user
+   */
+  public long getScore(long userIdHash, CharSequence userId, long defaultScore);
+}
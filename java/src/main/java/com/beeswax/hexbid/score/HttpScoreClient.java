@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * {@link ScoreClient} of an HTTP score service.</br>
+ * </br>
+ * The score of a user is fetched with GET URL?user=USER_ID. The service answers 200 with the
+ * decimal score as body, or 404 when it has no score for the user. Requests are pipelined on a
+ * single keep-alive connection, opened on the first fetch and reopened on the next fetch after it
+ * closes, so fetches need neither a connection each nor a thread.
+ *
+ */
+public final class HttpScoreClient implements ScoreClient, Closeable {
+  private static final int MAX_RESPONSE_BYTES = 8192;
+  private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+  private final EventLoopGroup group;
+  private final boolean ownsGroup;
+  private final String host;
+  private final int port;
+  private final String path;
+  private final int connectTimeoutMillis;
+  private ChannelFuture connection;
+
+  /**
+   * @param url URL of the service, e.g. http://localhost:9090/score
+   * @throws IllegalArgumentException if the URL is not an http URL
+   */
+  public HttpScoreClient(String url) throws IllegalArgumentException {
+    this(url, CONNECT_TIMEOUT_MILLIS,
+        new NioEventLoopGroup(1, new DefaultThreadFactory("score-client", true)), true);
+  }
+
+  @VisibleForTesting
+  HttpScoreClient(String url, int connectTimeoutMillis, EventLoopGroup group, boolean ownsGroup)
+      throws IllegalArgumentException {
+    final URI uri = URI.create(url);
+    if (!"http".equals(uri.getScheme()) || uri.getHost() == null) {
+      throw new IllegalArgumentException("Invalid score service URL : " + url);
+    }
+    this.host = uri.getHost();
+    this.port = uri.getPort() == -1 ? 80 : uri.getPort();
+    this.path = (uri.getRawPath()
+                    .isEmpty() ? "/" : uri.getRawPath())
+        + "?user=";
+    this.group = group;
+    this.ownsGroup = ownsGroup;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  @Override
+  public Future<Long> fetchScore(String userId) {
+    final Promise<Long> promise = group.next()
+                                       .newPromise();
+    final String uri;
+    try {
+      uri = path + URLEncoder.encode(userId, StandardCharsets.UTF_8.name());
+    } catch (IOException e) {
+      return promise.setFailure(e);
+    }
+    connect().addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) {
+        if (!future.isSuccess()) {
+          promise.tryFailure(future.cause());
+          return;
+        }
+        future.channel()
+              .writeAndFlush(new ScoreRequest(uri, promise))
+              .addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture write) {
+                  if (!write.isSuccess()) {
+                    promise.tryFailure(write.cause());
+                  }
+                }
+              });
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * @return connection to the service, a new one if the previous one closed
+   */
+  private synchronized ChannelFuture connect() {
+    if (connection == null || (connection.isDone() && !connection.channel()
+                                                                .isActive())) {
+      connection = new Bootstrap().group(group)
+                                  .channel(NioSocketChannel.class)
+                                  .option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                                      connectTimeoutMillis)
+                                  .option(ChannelOption.TCP_NODELAY, true)
+                                  .handler(new ChannelInitializer<SocketChannel>() {
+                                    @Override
+                                    protected void initChannel(SocketChannel ch) {
+                                      ch.pipeline()
+                                        .addLast(new HttpClientCodec())
+                                        .addLast(new HttpObjectAggregator(MAX_RESPONSE_BYTES))
+                                        .addLast(new ScoreHandler());
+                                    }
+                                  })
+                                  .connect(host, port);
+    }
+    return connection;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (connection != null) {
+      connection.channel()
+                .close();
+    }
+    if (ownsGroup) {
+      group.shutdownGracefully();
+    }
+  }
+
+  /**
+   * Request of a score written to the connection.
+   */
+  private static final class ScoreRequest {
+    private final String uri;
+    private final Promise<Long> promise;
+
+    private ScoreRequest(String uri, Promise<Long> promise) {
+      this.uri = uri;
+      this.promise = promise;
+    }
+  }
+
+  /**
+   * Writes score requests as HTTP requests and completes their promises with the responses, in
+   * order.
+   */
+  private final class ScoreHandler extends ChannelDuplexHandler {
+    private final Queue<Promise<Long>> pending = new ArrayDeque<>();
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise channelPromise)
+        throws Exception {
+      if (!(msg instanceof ScoreRequest)) {
+        ctx.write(msg, channelPromise);
+        return;
+      }
+      final ScoreRequest request = (ScoreRequest) msg;
+      final DefaultFullHttpRequest httpRequest =
+          new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, request.uri);
+      httpRequest.headers()
+                 .set(HttpHeaderNames.HOST, host)
+                 .set(HttpHeaderNames.CONTENT_LENGTH, 0);
+      pending.add(request.promise);
+      ctx.write(httpRequest, channelPromise);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      final FullHttpResponse response = (FullHttpResponse) msg;
+      try {
+        final Promise<Long> promise = pending.poll();
+        if (promise == null) {
+          ctx.close();
+        } else if (response.status()
+                           .equals(HttpResponseStatus.OK)) {
+          try {
+            promise.trySuccess(Long.parseLong(response.content()
+                                                      .toString(StandardCharsets.US_ASCII)
+                                                      .trim()));
+          } catch (NumberFormatException e) {
+            promise.tryFailure(e);
+          }
+        } else if (response.status()
+                           .equals(HttpResponseStatus.NOT_FOUND)) {
+          promise.trySuccess(null);
+        } else {
+          promise.tryFailure(new IOException("Score service answered " + response.status()));
+        }
+      } finally {
+        response.release();
+      }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      final ClosedChannelException closed = new ClosedChannelException();
+      Promise<Long> promise;
+      while ((promise = pending.poll()) != null) {
+        promise.tryFailure(closed);
+      }
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      ctx.close();
+    }
+  }
+}
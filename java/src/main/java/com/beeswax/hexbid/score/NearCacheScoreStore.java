@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * {@link UserScoreStore} looking up the users missing from a local store on a remote service
+ * through a {@link ScoreClient}, behind a bounded near-cache.</br>
+ * </br>
+ * Fetched scores are cached for the TTL and users unknown to the service for the negative TTL, up
+ * to the cache size beyond which the least recently used users are evicted. Users are keyed by
+ * the 64 bit hash of their id, as in {@link OffHeapScoreTable}. Concurrent misses for the same
+ * user share a single fetch. A fetch which does not complete within the timeout is
+ * cancelled and neither it nor a failed fetch is cached, so the next lookup retries.</br>
+ * </br>
+ * A miss returns the default score unless the fetch completes within the wait time. Bidding on an
+ * I/O thread must not wait, so the default wait of 0 only starts the fetch and lets the following
+ * requests for the user hit the cache. Offloaded bidding may wait up to the timeout.</br>
+ * </br>
+ * The local store must return its default score for the users it does not have: Long.MIN_VALUE
+ * is reserved to detect them.</br>
+ * </br>
+ * Exports user_scores.remote.hits, negative_hits, misses, coalesced, fetches, timeouts, errors,
+ * hit_rate, size, fetch_micros (total time of the completed fetches) and wait_micros (total time
+ * lookups waited for a fetch).
+ *
+ */
+public final class NearCacheScoreStore implements HashedUserScoreStore {
+  private static final Logger LOGGER = LogManager.getLogger(NearCacheScoreStore.class);
+  private static final String PREFIX = "user_scores.remote.";
+  private static final long MISSING = Long.MIN_VALUE;
+  private static final TimeoutException TIMEOUT = new TimeoutException("Score fetch timed out");
+
+  private final UserScoreStore local;
+  private final ScoreClient client;
+  private final EventExecutor timer;
+  private final Ticker ticker;
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final long timeoutMillis;
+  private final long waitMillis;
+  // keyed by the 64 bit hash of the user id so that a hit does not copy the id into a string
+  private final Cache<Long, CachedScore> cache;
+  private final ConcurrentHashMap<Long, Promise<Long>> inFlight = new ConcurrentHashMap<>();
+  private final LongCounter hits = PlatformDependent.newLongCounter();
+  private final LongCounter negativeHits = PlatformDependent.newLongCounter();
+  private final LongCounter misses = PlatformDependent.newLongCounter();
+  private final LongCounter coalesced = PlatformDependent.newLongCounter();
+  private final LongCounter fetches = PlatformDependent.newLongCounter();
+  private final LongCounter timeouts = PlatformDependent.newLongCounter();
+  private final LongCounter errors = PlatformDependent.newLongCounter();
+  private final LongCounter fetchMicros = PlatformDependent.newLongCounter();
+  private final LongCounter waitMicros = PlatformDependent.newLongCounter();
+
+  /**
+   * Cached result of a fetch.
+   */
+  private static final class CachedScore {
+    private final Long score;
+    private final long expiresNanos;
+
+    private CachedScore(Long score, long expiresNanos) {
+      this.score = score;
+      this.expiresNanos = expiresNanos;
+    }
+  }
+
+  /**
+   * @param local store looked up first, null to look up all users remotely
+   * @param client
+   * @param cacheSize maximum number of cached users
+   * @param ttlMillis time a fetched score is cached
+   * @param negativeTtlMillis time a user unknown to the service is cached
+   * @param timeoutMillis time after which a fetch is cancelled
+   * @param waitMillis time a lookup waits for a fetch, 0 to never wait
+   */
+  public NearCacheScoreStore(UserScoreStore local, ScoreClient client, long cacheSize,
+      long ttlMillis, long negativeTtlMillis, long timeoutMillis, long waitMillis) {
+    this(local, client, cacheSize, ttlMillis, negativeTtlMillis, timeoutMillis, waitMillis,
+        GlobalEventExecutor.INSTANCE, Ticker.systemTicker(), VarRegistry.getDefault());
+  }
+
+  @VisibleForTesting
+  NearCacheScoreStore(UserScoreStore local, ScoreClient client, long cacheSize, long ttlMillis,
+      long negativeTtlMillis, long timeoutMillis, long waitMillis, EventExecutor timer,
+      Ticker ticker, VarRegistry registry) {
+    this.local = local;
+    this.client = client;
+    this.timer = timer;
+    this.ticker = ticker;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+    this.timeoutMillis = timeoutMillis;
+    this.waitMillis = Math.min(waitMillis, timeoutMillis);
+    this.cache = CacheBuilder.newBuilder()
+                             .maximumSize(cacheSize)
+                             .expireAfterWrite(Math.max(ttlNanos, negativeTtlNanos),
+                                 TimeUnit.NANOSECONDS)
+                             .ticker(ticker)
+                             .build();
+    registerCounter(registry, "hits", hits);
+    registerCounter(registry, "negative_hits", negativeHits);
+    registerCounter(registry, "misses", misses);
+    registerCounter(registry, "coalesced", coalesced);
+    registerCounter(registry, "fetches", fetches);
+    registerCounter(registry, "timeouts", timeouts);
+    registerCounter(registry, "errors", errors);
+    registerCounter(registry, "fetch_micros", fetchMicros);
+    registerCounter(registry, "wait_micros", waitMicros);
+    registry.register(PREFIX + "hit_rate", new Supplier<Double>() {
+      @Override
+      public Double get() {
+        final long cached = hits.value() + negativeHits.value();
+        final long lookups = cached + misses.value();
+        return lookups == 0 ? 0 : (double) cached / lookups;
+      }
+    });
+    registry.register(PREFIX + "size", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return cache.size();
+      }
+    });
+  }
+
+  private static void registerCounter(VarRegistry registry, String name, final LongCounter counter) {
+    registry.register(PREFIX + name, new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return counter.value();
+      }
+    });
+  }
+
+  @Override
+  public long getScore(CharSequence userId, long defaultScore) {
+    return getScore(OffHeapScoreTable.hash(userId), userId, defaultScore);
+  }
+
+  @Override
+  public long getScore(long userIdHash, CharSequence userId, long defaultScore) {
+    if (local != null) {
+      final long score = local instanceof HashedUserScoreStore
+          ? ((HashedUserScoreStore) local).getScore(userIdHash, userId, MISSING)
+          : local.getScore(userId, MISSING);
+      if (score != MISSING) {
+        return score;
+      }
+    }
+    final Long key = userIdHash;
+    final CachedScore cached = cache.getIfPresent(key);
+    if (cached != null && ticker.read() - cached.expiresNanos < 0) {
+      if (cached.score == null) {
+        negativeHits.increment();
+        return defaultScore;
+      }
+      hits.increment();
+      return cached.score;
+    }
+    misses.increment();
+
+    final Future<Long> fetch = fetch(key, userId);
+    if (!fetch.isDone() && waitMillis > 0) {
+      final long startNanos = ticker.read();
+      try {
+        fetch.await(waitMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread()
+              .interrupt();
+      }
+      waitMicros.add(TimeUnit.NANOSECONDS.toMicros(ticker.read() - startNanos));
+    }
+    final Long score = fetch.getNow();
+    return score == null ? defaultScore : score;
+  }
+
+  /**
+   * @param key hash of the user id
+   * @param user
+   * @return fetch of the user score, shared with the concurrent lookups of the user
+   */
+  private Future<Long> fetch(final Long key, CharSequence user) {
+    final Promise<Long> existing = inFlight.get(key);
+    if (existing != null) {
+      coalesced.increment();
+      return existing;
+    }
+    final Promise<Long> promise = timer.newPromise();
+    final Promise<Long> raced = inFlight.putIfAbsent(key, promise);
+    if (raced != null) {
+      coalesced.increment();
+      return raced;
+    }
+    fetches.increment();
+    final String userId = user.toString();
+    final long startNanos = ticker.read();
+    final Future<Long> response;
+    try {
+      response = client.fetchScore(userId);
+    } catch (RuntimeException e) {
+      LOGGER.error("Failed to fetch score of user {}", userId, e);
+      errors.increment();
+      inFlight.remove(key, promise);
+      promise.tryFailure(e);
+      return promise;
+    }
+
+    final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (promise.tryFailure(TIMEOUT)) {
+          timeouts.increment();
+          inFlight.remove(key, promise);
+          response.cancel(false);
+        }
+      }
+    }, timeoutMillis, TimeUnit.MILLISECONDS);
+    response.addListener(new FutureListener<Long>() {
+      @Override
+      public void operationComplete(Future<Long> future) {
+        timeout.cancel(false);
+        if (promise.isDone()) {
+          // timed out
+          return;
+        }
+        final long nowNanos = ticker.read();
+        fetchMicros.add(TimeUnit.NANOSECONDS.toMicros(nowNanos - startNanos));
+        if (future.isSuccess()) {
+          final Long score = future.getNow();
+          // cache before the fetch is forgotten so that no lookup fetches again in between
+          cache.put(key,
+              new CachedScore(score, nowNanos + (score == null ? negativeTtlNanos : ttlNanos)));
+          inFlight.remove(key, promise);
+          promise.trySuccess(score);
+        } else {
+          LOGGER.debug("Failed to fetch score of user {}", userId, future.cause());
+          errors.increment();
+          inFlight.remove(key, promise);
+          promise.tryFailure(future.cause());
+        }
+      }
+    });
+    return promise;
+  }
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.beeswax.hexbid.model.Fnv1a;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Open addressing hash table of user scores held in direct memory, outside of the Java heap.</br>
+ * </br>
+ * A user id is stored as its 64 bit hash next to its score, 16 bytes per slot, and slots are
+ * probed linearly. Keys and values are primitive longs read from the buffers in place, so a lookup
+ * neither boxes nor allocates and the table adds no objects for the garbage collector to trace,
+ * whatever the number of users. Tables are sized for a load of at most 0.7 and rounded up to a
+ * power of 2 slots, so an entry takes 23 to 46 bytes, e.g. 8 GiB for 375 million users. Direct
+ * memory is bounded by -XX:MaxDirectMemorySize.</br>
+ * </br>
+ * Buffers are limited to 2 GiB, so the slots are split into segments of up to 2^27 slots selected
+ * by the high bits of the hash. The load of 0.7 bounds the whole table, a segment may reach 0.9
+ * since the hash does not split the users exactly evenly. Since only hashes are stored, two user
+ * ids with the same 64 bit hash share a score: among 500 million users the odds of any such pair
+ * are below 1%.</br>
+ * </br>
+ * Lookups are thread safe. Puts are not: fill a table on one thread, then publish it to the
+ * readers, e.g. through a volatile field.
+ *
+ */
+public final class OffHeapScoreTable implements HashedUserScoreStore {
+  public static final int SLOT_BYTES = 16;
+  private static final int MAX_SEGMENT_SLOTS = 1 << 27;
+  private static final double MAX_LOAD = 0.7;
+  private static final double MAX_SEGMENT_LOAD = 0.9;
+  private static final long EMPTY = 0;
+
+  private final ByteBuffer[] segments;
+  private final int[] segmentSizes;
+  private final int segmentMask;
+  private final int slotMask;
+  private final int maxSegmentSize;
+  private final long maxSize;
+  private long size;
+
+  /**
+   * @param expectedEntries
+   * @return table in direct memory holding the expected entries at a load of at most 0.7
+   */
+  public static OffHeapScoreTable allocate(long expectedEntries) {
+    return allocate(expectedEntries, MAX_SEGMENT_SLOTS);
+  }
+
+  @VisibleForTesting
+  static OffHeapScoreTable allocate(long expectedEntries, int maxSegmentSlots) {
+    long slots = 16;
+    while (slots * MAX_LOAD < expectedEntries) {
+      slots <<= 1;
+    }
+    final int segmentSlots = (int) Math.min(slots, maxSegmentSlots);
+    final ByteBuffer[] segments = new ByteBuffer[(int) (slots / segmentSlots)];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = ByteBuffer.allocateDirect(segmentSlots * SLOT_BYTES);
+    }
+    return new OffHeapScoreTable(segments, 0);
+  }
+
+  /**
+   * Wrap the slots of a table, e.g. mapped from a snapshot file.
+   *
+   * @param segments buffers of the same power of 2 number of slots, a power of 2 of them
+   * @param size number of entries in the slots
+   * @return table reading the buffers, which are not copied
+   */
+  static OffHeapScoreTable wrap(ByteBuffer[] segments, long size) {
+    return new OffHeapScoreTable(segments, size);
+  }
+
+  private OffHeapScoreTable(ByteBuffer[] segments, long size) {
+    this.segments = segments;
+    this.size = size;
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = segments[i].order(ByteOrder.LITTLE_ENDIAN);
+    }
+    final int segmentSlots = segments[0].capacity() / SLOT_BYTES;
+    segmentSizes = new int[segments.length];
+    segmentMask = segments.length - 1;
+    slotMask = segmentSlots - 1;
+    maxSegmentSize = (int) (segmentSlots * (segments.length == 1 ? MAX_LOAD : MAX_SEGMENT_LOAD));
+    maxSize = (long) (capacity() * MAX_LOAD);
+  }
+
+  @Override
+  public long getScore(CharSequence userId, long defaultScore) {
+    return getScore(hash(userId), defaultScore);
+  }
+
+  @Override
+  public long getScore(long userIdHash, CharSequence userId, long defaultScore) {
+    return getScore(userIdHash, defaultScore);
+  }
+
+  /**
+   * @param key hash of the user id
+   * @param defaultScore
+   * @return score of the user, the default score if the table has none
+   */
+  long getScore(long key, long defaultScore) {
+    final ByteBuffer segment = segments[segment(key)];
+    int slot = (int) key & slotMask;
+    while (true) {
+      final int offset = slot * SLOT_BYTES;
+      final long slotKey = segment.getLong(offset);
+      if (slotKey == key) {
+        return segment.getLong(offset + 8);
+      }
+      if (slotKey == EMPTY) {
+        return defaultScore;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+  }
+
+  /**
+   * Set the score of a user, replacing any previous score.
+   *
+   * @param userId
+   * @param score
+   * @throws IllegalStateException if the table is full
+   */
+  public void put(CharSequence userId, long score) throws IllegalStateException {
+    put(hash(userId), score);
+  }
+
+  /**
+   * @param key hash of the user id
+   * @return true if the table has a score for the user
+   */
+  boolean contains(long key) {
+    final ByteBuffer segment = segments[segment(key)];
+    int slot = (int) key & slotMask;
+    while (true) {
+      final long slotKey = segment.getLong(slot * SLOT_BYTES);
+      if (slotKey == key) {
+        return true;
+      }
+      if (slotKey == EMPTY) {
+        return false;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+  }
+
+  /**
+   * @param key hash of the user id
+   * @param score
+   * @throws IllegalStateException if the table is full
+   */
+  void put(long key, long score) throws IllegalStateException {
+    final int segmentIndex = segment(key);
+    final ByteBuffer segment = segments[segmentIndex];
+    int slot = (int) key & slotMask;
+    while (true) {
+      final int offset = slot * SLOT_BYTES;
+      final long slotKey = segment.getLong(offset);
+      if (slotKey == key) {
+        segment.putLong(offset + 8, score);
+        return;
+      }
+      if (slotKey == EMPTY) {
+        if (size >= maxSize || segmentSizes[segmentIndex] >= maxSegmentSize) {
+          throw new IllegalStateException("Score table is full : " + size + " entries");
+        }
+        segment.putLong(offset + 8, score);
+        segment.putLong(offset, key);
+        segmentSizes[segmentIndex]++;
+        size++;
+        return;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+  }
+
+  /**
+   * Copy the entries into a new table allocated in direct memory, e.g. to update a table which is
+   * read by other threads.
+   *
+   * @param expectedEntries entries the copy has room for, at least the size of this table
+   * @return copy of the table
+   */
+  public OffHeapScoreTable copy(long expectedEntries) {
+    final OffHeapScoreTable copy = allocate(Math.max(expectedEntries, size));
+    for (ByteBuffer segment : segments) {
+      for (int offset = 0; offset < segment.capacity(); offset += SLOT_BYTES) {
+        final long key = segment.getLong(offset);
+        if (key != EMPTY) {
+          copy.put(key, segment.getLong(offset + 8));
+        }
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * @return buffers of the slots, for snapshots
+   */
+  ByteBuffer[] segments() {
+    return segments;
+  }
+
+  /**
+   * @return number of users
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return number of slots
+   */
+  public long capacity() {
+    return (long) segments.length * (slotMask + 1);
+  }
+
+  /**
+   * @return bytes of direct memory held by the table
+   */
+  public long footprintBytes() {
+    return capacity() * SLOT_BYTES;
+  }
+
+  private int segment(long key) {
+    return (int) (key >>> 40) & segmentMask;
+  }
+
+  /**
+   * @return 64 bit hash of the user id, never 0
+   */
+  public static long hash(CharSequence userId) {
+    long hash = Fnv1a.OFFSET_BASIS;
+    for (int i = 0; i < userId.length(); i++) {
+      hash = Fnv1a.update(hash, userId.charAt(i));
+    }
+    // mix so that the slot and segment bits depend on every character
+    hash = Fnv1a.mix(hash);
+    return hash == EMPTY ? 1 : hash;
+  }
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import io.netty.util.concurrent.Future;
+
+/**
+ * Asynchronous client of a remote user score service, e.g. a key-value store.
+ *
+ */
+public interface ScoreClient {
+
+  /**
+   * Start fetching the score of a user. Must not block.
+   *
+   * @param userId
+   * @return future of the score, null if the service has no score for the user
+   */
+  public Future<Long> fetchScore(String userId);
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.hexbid.model.Checksums;
+
+/**
+ * Snapshot files of {@link OffHeapScoreTable}s.</br>
+ * </br>
+ * A snapshot is a header of 64 bytes followed by the slots of the table as they are laid out in
+ * memory, so that loading a snapshot maps the file instead of reading it and its pages are shared
+ * with the page cache rather than copied to the heap. The little endian header holds:</br>
+ *   - magic "HEXSCORE" and format 1</br>
+ *   - number of segments and slots per segment, both powers of 2</br>
+ *   - version of the snapshot, number of entries and CRC32 of the slots</br>
+ * </br>
+ * Snapshots are written to a temporary file which is then renamed, so a reader never maps a
+ * partially written snapshot.
+ *
+ */
+public final class ScoreSnapshots {
+  private static final Logger LOGGER = LogManager.getLogger(ScoreSnapshots.class);
+  public static final int HEADER_BYTES = 64;
+  private static final long MAGIC = 0x45524f4353584548L; // "HEXSCORE" little endian
+  private static final int FORMAT = 1;
+  private static final int COPY_BYTES = 1 << 20;
+
+  private ScoreSnapshots() {}
+
+  /**
+   * Write a snapshot of the table.
+   *
+   * @param table
+   * @param version version of the snapshot
+   * @param file
+   * @throws IOException
+   */
+  public static void write(OffHeapScoreTable table, long version, Path file) throws IOException {
+    final ByteBuffer[] segments = table.segments();
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                                        .order(ByteOrder.LITTLE_ENDIAN);
+    header.putLong(MAGIC)
+          .putInt(FORMAT)
+          .putInt(segments.length)
+          .putInt(segments[0].capacity() / OffHeapScoreTable.SLOT_BYTES)
+          .putInt(0)
+          .putLong(version)
+          .putLong(table.size())
+          .putLong(Checksums.crc32(segments))
+          .clear();
+
+    final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeFully(channel, header);
+      for (ByteBuffer segment : segments) {
+        writeFully(channel, segment.duplicate());
+      }
+      channel.force(false);
+    }
+    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Map a snapshot and check its header and checksum. Reading the slots for the checksum also
+   * brings them into the page cache before the table serves lookups.
+   *
+   * @param file
+   * @param version expected version of the snapshot
+   * @return read only table over the mapped slots
+   * @throws IOException if the file cannot be read or is not a valid snapshot of the version
+   */
+  public static OffHeapScoreTable map(Path file, long version) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long length = channel.size();
+      if (length < HEADER_BYTES) {
+        throw new IOException("Truncated snapshot header : " + length + " bytes");
+      }
+      final ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_BYTES)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+      if (header.getLong() != MAGIC) {
+        throw new IOException("Not a score snapshot");
+      }
+      final int format = header.getInt();
+      if (format != FORMAT) {
+        throw new IOException("Unsupported snapshot format : " + format);
+      }
+      final int segmentCount = header.getInt();
+      final int segmentSlots = header.getInt();
+      header.getInt();
+      final long snapshotVersion = header.getLong();
+      final long entries = header.getLong();
+      final long checksum = header.getLong();
+      if (Integer.bitCount(segmentCount) != 1 || Integer.bitCount(segmentSlots) != 1
+          || segmentSlots > Integer.MAX_VALUE / OffHeapScoreTable.SLOT_BYTES) {
+        throw new IOException(
+            "Invalid snapshot layout : " + segmentCount + " segments of " + segmentSlots + " slots");
+      }
+      if (snapshotVersion != version) {
+        throw new IOException("Snapshot version " + snapshotVersion + " instead of " + version);
+      }
+      final long segmentBytes = (long) segmentSlots * OffHeapScoreTable.SLOT_BYTES;
+      if (length != HEADER_BYTES + segmentCount * segmentBytes) {
+        throw new IOException("Snapshot length " + length + " does not match its layout");
+      }
+      if (entries < 0 || entries > segmentCount * (long) segmentSlots) {
+        throw new IOException("Invalid snapshot entries : " + entries);
+      }
+
+      // the mappings stay valid once the channel is closed
+      final ByteBuffer[] segments = new ByteBuffer[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        segments[i] = channel.map(MapMode.READ_ONLY, HEADER_BYTES + i * segmentBytes, segmentBytes);
+      }
+      if (Checksums.crc32(segments) != checksum) {
+        throw new IOException("Snapshot checksum mismatch");
+      }
+      return OffHeapScoreTable.wrap(segments, entries);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      final int limit = buffer.limit();
+      buffer.limit(Math.min(limit, buffer.position() + COPY_BYTES));
+      channel.write(buffer);
+      buffer.limit(limit);
+    }
+  }
+
+  /**
+   * Convert a text file of "userId score" lines into a snapshot.</br>
+   * </br>
+   * Usage: ScoreSnapshots &lt;scores file&gt; &lt;expected users&gt; &lt;version&gt; &lt;snapshot file&gt;
+   *
+   * @param args
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4) {
+      System.err.println(
+          "Usage: ScoreSnapshots <scores file> <expected users> <version> <snapshot file>");
+      System.exit(1);
+    }
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(Long.parseLong(args[1]));
+    try (BufferedReader reader =
+        Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final int separator = line.lastIndexOf(' ');
+        if (separator <= 0) {
+          LOGGER.error("Invalid score line : {}", line);
+          continue;
+        }
+        table.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+      }
+    }
+    write(table, Long.parseLong(args[2]), Paths.get(args[3]));
+    LOGGER.info("Wrote {} scores to {}", table.size(), args[3]);
+  }
+}
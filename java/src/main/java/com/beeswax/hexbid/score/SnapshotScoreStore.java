@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * {@link UserScoreStore} serving the latest snapshot of a directory, hot swapped while bidding.</br>
+ * </br>
+ * The directory holds snapshot files named scores-VERSION.snapshot, written by
+ * {@link ScoreSnapshots}, and for each of them an optional append-only delta file named
+ * scores-VERSION.delta of "userId score" lines updating the snapshot until the next one. A
+ * background thread polls the directory: it maps and checks a snapshot of a higher version, replays
+ * its delta file, then swaps it in, and between snapshots it applies the lines appended to the
+ * delta file of the current one.</br>
+ * </br>
+ * Snapshots are mapped read only rather than loaded, so a reload neither grows the heap nor holds
+ * two copies in memory besides the page cache. Delta updates go to a small overlay table in direct
+ * memory consulted before the snapshot, which is copied and updated on the background thread. The
+ * snapshot, its overlay and the delta file position are published together through a volatile
+ * field, so lookups never block and always see a complete table. An invalid snapshot is logged and
+ * skipped, the current one keeps serving.</br>
+ * </br>
+ * Exports user_scores.snapshot.version, user_scores.snapshot.entries, user_scores.delta.entries,
+ * user_scores.swap_ms (time to map, check and replay the last snapshot swapped in),
+ * user_scores.swaps, user_scores.load_failures and user_scores.delta.errors (malformed lines).
+ *
+ */
+public final class SnapshotScoreStore implements HashedUserScoreStore, Closeable {
+  private static final Logger LOGGER = LogManager.getLogger(SnapshotScoreStore.class);
+  private static final String PREFIX = "scores-";
+  private static final String SNAPSHOT_SUFFIX = ".snapshot";
+  private static final String DELTA_SUFFIX = ".delta";
+  private static final int READ_BYTES = 1 << 16;
+
+  private final Path directory;
+  private final long pollMillis;
+  private final Ticker ticker;
+  private final AtomicLong swaps;
+  private final AtomicLong loadFailures;
+  private final AtomicLong deltaErrors;
+  private volatile State state = new State(-1, null, null, 0);
+  private volatile long swapMillis;
+  private long failedVersion = -1;
+  private ScheduledExecutorService executor;
+
+  /**
+   * Snapshot served with its delta overlay.
+   */
+  private static final class State {
+    private final long version;
+    private final OffHeapScoreTable snapshot;
+    private final OffHeapScoreTable overlay;
+    private final long deltaPosition;
+
+    private State(long version, OffHeapScoreTable snapshot, OffHeapScoreTable overlay,
+        long deltaPosition) {
+      this.version = version;
+      this.snapshot = snapshot;
+      this.overlay = overlay;
+      this.deltaPosition = deltaPosition;
+    }
+  }
+
+  /**
+   * @param directory directory of the snapshot and delta files
+   * @param pollMillis interval between polls of the directory
+   */
+  public SnapshotScoreStore(Path directory, long pollMillis) {
+    this(directory, pollMillis, VarRegistry.getDefault(), Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  SnapshotScoreStore(Path directory, long pollMillis, VarRegistry registry, Ticker ticker) {
+    this.directory = directory;
+    this.pollMillis = pollMillis;
+    this.ticker = ticker;
+    this.swaps = registry.counter("user_scores.swaps");
+    this.loadFailures = registry.counter("user_scores.load_failures");
+    this.deltaErrors = registry.counter("user_scores.delta.errors");
+    registry.register("user_scores.snapshot.version", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return state.version;
+      }
+    });
+    registry.register("user_scores.snapshot.entries", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        final OffHeapScoreTable snapshot = state.snapshot;
+        return snapshot == null ? 0 : snapshot.size();
+      }
+    });
+    registry.register("user_scores.delta.entries", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        final OffHeapScoreTable overlay = state.overlay;
+        return overlay == null ? 0 : overlay.size();
+      }
+    });
+    registry.register("user_scores.swap_ms", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return swapMillis;
+      }
+    });
+  }
+
+  /**
+   * Load the latest snapshot, then keep polling the directory on a background thread.
+   *
+   * @return this store
+   */
+  public synchronized SnapshotScoreStore start() {
+    poll();
+    executor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("user-scores",
+        true));
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        poll();
+      }
+    }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public long getScore(CharSequence userId, long defaultScore) {
+    return getScore(OffHeapScoreTable.hash(userId), userId, defaultScore);
+  }
+
+  @Override
+  public long getScore(long key, CharSequence userId, long defaultScore) {
+    final State current = state;
+    if (current.snapshot == null) {
+      return defaultScore;
+    }
+    final OffHeapScoreTable overlay = current.overlay;
+    if (overlay != null && overlay.contains(key)) {
+      return overlay.getScore(key, defaultScore);
+    }
+    return current.snapshot.getScore(key, defaultScore);
+  }
+
+  /**
+   * @return version of the snapshot served, -1 before the first one
+   */
+  public long getVersion() {
+    return state.version;
+  }
+
+  /**
+   * Swap in the latest snapshot if it is newer than the current one, otherwise apply the lines
+   * appended to the delta file of the current one. Called by a single thread at a time.
+   */
+  @VisibleForTesting
+  synchronized void poll() {
+    try {
+      final State current = state;
+      final long latest = getLatestVersion();
+      if (latest > current.version && latest != failedVersion) {
+        load(latest);
+      } else if (current.snapshot != null) {
+        state = replay(current);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Failed to poll user scores in {}", directory, e);
+    }
+  }
+
+  private void load(long version) throws IOException {
+    final long startNanos = ticker.read();
+    final Path file = directory.resolve(PREFIX + version + SNAPSHOT_SUFFIX);
+    final OffHeapScoreTable snapshot;
+    try {
+      snapshot = ScoreSnapshots.map(file, version);
+    } catch (IOException e) {
+      LOGGER.error("Invalid user score snapshot {}", file, e);
+      failedVersion = version;
+      loadFailures.incrementAndGet();
+      return;
+    }
+    final State loaded = replay(new State(version, snapshot, null, 0));
+    state = loaded;
+    swapMillis = TimeUnit.NANOSECONDS.toMillis(ticker.read() - startNanos);
+    swaps.incrementAndGet();
+    LOGGER.info("Swapped in user score snapshot {} : {} entries, {} delta entries in {}ms",
+        version, snapshot.size(), loaded.overlay == null ? 0 : loaded.overlay.size(), swapMillis);
+  }
+
+  /**
+   * @return highest version of the snapshot files, -1 if there is none
+   */
+  private long getLatestVersion() throws IOException {
+    long latest = -1;
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(directory, PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+      for (Path file : files) {
+        final String name = file.getFileName()
+                                .toString();
+        try {
+          latest = Math.max(latest, Long.parseLong(
+              name.substring(PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          LOGGER.debug("Ignoring {}", file);
+        }
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * @return state with the complete lines appended to the delta file since its position applied to
+   *         a copy of its overlay, the state itself when nothing was appended
+   */
+  private State replay(State current) throws IOException {
+    long position = current.deltaPosition;
+    long[] keys = new long[16];
+    long[] scores = new long[16];
+    int count = 0;
+    final Path file = directory.resolve(PREFIX + current.version + DELTA_SUFFIX);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final ByteBuffer buffer = ByteBuffer.allocate(READ_BYTES);
+      while (channel.read(buffer, position) > 0) {
+        final byte[] bytes = buffer.array();
+        int lineStart = 0;
+        for (int i = 0; i < buffer.position(); i++) {
+          if (bytes[i] != '\n') {
+            continue;
+          }
+          final String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+          lineStart = i + 1;
+          final int separator = line.lastIndexOf(' ');
+          try {
+            if (separator <= 0) {
+              throw new NumberFormatException();
+            }
+            final long score = Long.parseLong(line.substring(separator + 1));
+            if (count == keys.length) {
+              keys = Arrays.copyOf(keys, count * 2);
+              scores = Arrays.copyOf(scores, count * 2);
+            }
+            keys[count] = OffHeapScoreTable.hash(line.substring(0, separator));
+            scores[count++] = score;
+          } catch (NumberFormatException e) {
+            LOGGER.error("Invalid user score delta in {} : {}", file, line);
+            deltaErrors.incrementAndGet();
+          }
+        }
+        if (lineStart == 0 && !buffer.hasRemaining()) {
+          LOGGER.error("User score delta line over {} bytes in {}", READ_BYTES, file);
+          deltaErrors.incrementAndGet();
+          lineStart = buffer.position();
+        }
+        if (lineStart == 0) {
+          // only an incomplete line, wait for the rest of it
+          break;
+        }
+        position += lineStart;
+        buffer.clear();
+      }
+    } catch (NoSuchFileException e) {
+      return current;
+    }
+    if (count == 0) {
+      return position == current.deltaPosition ? current
+          : new State(current.version, current.snapshot, current.overlay, position);
+    }
+    final OffHeapScoreTable overlay = current.overlay == null ? OffHeapScoreTable.allocate(count)
+        : current.overlay.copy(current.overlay.size() + count);
+    for (int i = 0; i < count; i++) {
+      overlay.put(keys[i], scores[i]);
+    }
+    return new State(current.version, current.snapshot, overlay, position);
+  }
+}
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package com.beeswax.hexbid.server;
 
+import com.beeswax.hexbid.config.BidderConfig;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
 import com.beeswax.hexbid.handler.HexbidHandlerFactory;
 import com.beeswax.http.config.ServerConfig;
 import com.beeswax.http.config.ServerConfig.ServerConfigBuilder;
@@ -31,6 +33,10 @@ public class HexbidServer extends HttpServer {
     this(serverConfig, new HexbidHandlerFactory());
   }
 
+  public HexbidServer(ServerConfig serverConfig, BidderConfig bidderConfig) {
+    this(serverConfig, new HexbidHandlerFactory(bidderConfig));
+  }
+
   @VisibleForTesting
   HexbidServer(ServerConfig serverConfig, HandlerFactory handlerFactory) {
     super(serverConfig, handlerFactory);
@@ -45,7 +51,7 @@ public class HexbidServer extends HttpServer {
    * </br>
    * Main method starts bid server to wait/process bid requests.</br>
    * The first argument should be the property file path. It falls back to
-   * default values in {@link ServerConfig} if the file/property is absent.
+   * default values in {@link ServerConfig} and {@link BidderConfig} if the file/property is absent.
    * 
    * @param args
    * @throws Exception
@@ -54,7 +60,9 @@ public class HexbidServer extends HttpServer {
 
     final ServerConfigBuilder configBuilder = new ServerConfigBuilder();
     final ServerConfig serverConfig = configBuilder.fromProperties(CONFIG_FILE).build();
+    final BidderConfig bidderConfig = new BidderConfigBuilder().fromProperties(CONFIG_FILE)
+                                                               .build();
 
-    new HexbidServer(serverConfig).run();
+    new HexbidServer(serverConfig, bidderConfig).run();
   }
 }
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+
+/**
+ * Bidding strategy pricing all of its adcandidates of a request in one call.</br>
+ * </br>
+ * The bidder hands a batch strategy every adcandidate of the request which selects it, so that
+ * work depending only on the bid request, e.g. its features, is done once per request rather than
+ * once per adcandidate, and the adcandidates are priced in a single loop. Strategies which only
+ * implement {@link BidStrategy} are called once per adcandidate.
+ *
+ */
+public interface BatchBidStrategy extends ContextBidStrategy {
+
+  /**
+   * Set the bid prices of adcandidates of the same bid request. Each price has to be the one
+   * {@link #getBidPriceMicrosUSD(Adcandidate, BidContext)} returns for the adcandidate.
+   *
+   * @param adcandidates adcandidates of which the first count are priced
+   * @param count number of adcandidates to price
+   * @param context of the bid request of the adcandidates, only valid during the call
+   * @param prices receives the bid price in micros USD of adcandidates[i] at index i
+   * @throws IllegalArgumentException if an adcandidate cannot be priced, the bidder then prices
+   *         them one at a time to skip only the invalid ones
+   */
+  public void getBidPricesMicrosUSD(Adcandidate[] adcandidates, int count, BidContext context,
+      long[] prices) throws IllegalArgumentException;
+}
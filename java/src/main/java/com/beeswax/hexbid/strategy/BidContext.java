@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import com.beeswax.hexbid.model.FeatureHasher;
+import com.beeswax.hexbid.score.HashedUserScoreStore;
+import com.beeswax.hexbid.score.OffHeapScoreTable;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.App;
+import com.beeswax.openrtb.Openrtb.BidRequest.DeviceType;
+import com.beeswax.openrtb.Openrtb.BidRequest.Geo;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.google.common.annotations.VisibleForTesting;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Features of a bid request shared by the strategies pricing its adcandidates, each computed on
+ * first use and then remembered for the other adcandidates and strategies, e.g. the user id read
+ * from the user extensions.</br>
+ * </br>
+ * A context is held per thread and reset for each request by {@link #get(BidRequest, long)}, so
+ * creating one allocates nothing. It is only valid on the thread which got it, until the bidder
+ * clears it: strategies must neither keep it nor get one themselves.
+ *
+ */
+public final class BidContext {
+  private static final FastThreadLocal<BidContext> CONTEXTS = new FastThreadLocal<BidContext>() {
+    @Override
+    protected BidContext initialValue() {
+      return new BidContext();
+    }
+  };
+  private static final long MILLIS_PER_MINUTE = 60000;
+  private static final int MINUTES_PER_DAY = 1440;
+  // a site or app hashing to 0 loses its features, once in 2^64
+  static final long NO_INVENTORY = 0;
+  // user id hashes are never 0
+  public static final long NO_USER = 0;
+
+  // features computed so far
+  private static final int USER_ID = 1;
+  private static final int INVENTORY = 1 << 1;
+  private static final int LOCAL_HOUR = 1 << 2;
+  private static final int USER_ID_HASH = 1 << 3;
+
+  private BidRequest request;
+  private long nowMillis;
+  private int computed;
+  private String userId;
+  private long userIdHash;
+  private long inventory;
+  private int localHour;
+
+  private BidContext() {}
+
+  /**
+   * @param request bid request of the adcandidates
+   * @param nowMillis time at which the request is evaluated
+   * @return context of the current thread, reset for the request
+   */
+  public static BidContext get(BidRequest request, long nowMillis) {
+    final BidContext context = CONTEXTS.get();
+    context.request = request;
+    context.nowMillis = nowMillis;
+    context.computed = 0;
+    context.userId = null;
+    return context;
+  }
+
+  /**
+   * Release the bid request once its adcandidates are priced, so that the context of an idle
+   * thread does not keep the last request reachable.
+   */
+  public void clear() {
+    request = null;
+    userId = null;
+  }
+
+  /**
+   * @return bid request
+   */
+  public BidRequest getRequest() {
+    return request;
+  }
+
+  /**
+   * @return time at which the request is evaluated
+   */
+  public long getNowMillis() {
+    return nowMillis;
+  }
+
+  /**
+   * @return user id of the user extensions, null if the request has none
+   */
+  public String getUserId() {
+    if ((computed & USER_ID) == 0) {
+      if (request.hasUser() && request.getUser()
+                                      .hasExt()
+          && request.getUser()
+                    .getExt()
+                    .hasUserId()) {
+        userId = request.getUser()
+                        .getExt()
+                        .getUserId();
+      }
+      computed |= USER_ID;
+    }
+    return userId;
+  }
+
+  /**
+   * @return {@link OffHeapScoreTable#hash(CharSequence)} of the user id, for the lookups of a
+   *         {@link HashedUserScoreStore}, {@link #NO_USER} if the request has none
+   */
+  public long getUserIdHash() {
+    if ((computed & USER_ID_HASH) == 0) {
+      final String id = getUserId();
+      userIdHash = id == null ? NO_USER : OffHeapScoreTable.hash(id);
+      computed |= USER_ID_HASH;
+    }
+    return userIdHash;
+  }
+
+  /**
+   * @return hash of the site domain, or its id, or of the app bundle, or its id, by
+   *         {@link FeatureHasher}, {@link #NO_INVENTORY} if the request has none
+   */
+  public long getInventoryHash() {
+    if ((computed & INVENTORY) == 0) {
+      inventory = getInventoryHash(request);
+      computed |= INVENTORY;
+    }
+    return inventory;
+  }
+
+  /**
+   * @return geo of the device, the default instance if the request has none
+   */
+  public Geo getGeo() {
+    return request.getDevice()
+                  .getGeo();
+  }
+
+  /**
+   * @return type of the device, null if the request has none
+   */
+  public DeviceType getDeviceType() {
+    return request.hasDevice() && request.getDevice()
+                                         .hasDevicetype()
+                                             ? request.getDevice()
+                                                      .getDevicetype()
+                                             : null;
+  }
+
+  /**
+   * @return hour of the day of the user, 0 to 23, from the time of the request and the UTC offset
+   *         of the geo of the device, UTC without one
+   */
+  public int getLocalHour() {
+    if ((computed & LOCAL_HOUR) == 0) {
+      localHour = getLocalHour(nowMillis, getGeo().getUtcoffset());
+      computed |= LOCAL_HOUR;
+    }
+    return localHour;
+  }
+
+  /**
+   * @param request
+   * @return hash of the site or app of the request, {@link #NO_INVENTORY} if it has none
+   */
+  static long getInventoryHash(BidRequest request) {
+    if (request.hasSite()) {
+      final Site site = request.getSite();
+      if (site.hasDomain()) {
+        return FeatureHasher.hash(FeatureHasher.SITE, site.getDomainBytes());
+      } else if (site.hasId()) {
+        return FeatureHasher.hash(FeatureHasher.SITE, site.getIdBytes());
+      }
+    } else if (request.hasApp()) {
+      final App app = request.getApp();
+      if (app.hasBundle()) {
+        return FeatureHasher.hash(FeatureHasher.APP, app.getBundleBytes());
+      } else if (app.hasId()) {
+        return FeatureHasher.hash(FeatureHasher.APP, app.getIdBytes());
+      }
+    }
+    return NO_INVENTORY;
+  }
+
+  /**
+   * @param nowMillis
+   * @param utcOffsetMinutes
+   * @return hour of the day, 0 to 23, at the UTC offset
+   */
+  @VisibleForTesting
+  static int getLocalHour(long nowMillis, int utcOffsetMinutes) {
+    // rounded down before 1970 as well
+    long minutes = nowMillis / MILLIS_PER_MINUTE;
+    if (nowMillis % MILLIS_PER_MINUTE < 0) {
+      minutes--;
+    }
+    int minuteOfDay = (int) ((minutes + utcOffsetMinutes) % MINUTES_PER_DAY);
+    if (minuteOfDay < 0) {
+      minuteOfDay += MINUTES_PER_DAY;
+    }
+    return minuteOfDay / 60;
+  }
+}
@@ -21,6 +21,14 @@ import com.beeswax.openrtb.Openrtb.BidRequest;
  * Custom bidder only supports {@link CustomStrategy} which is defined using Buzz API. Customers can associate multiple
  * keys, values with a strategy that are made available in the matching adcandidate so that they can implement their own
  * optimization.</br>
+ * </br>
+ * A single instance of each strategy is registered in the {@link StrategyRegistry} and shared by
+ * all requests, so implementations have to be thread safe. Implementations outside of hexbid are
+ * discovered by {@link java.util.ServiceLoader}: list them in a
+ * META-INF/services/com.beeswax.hexbid.strategy.BidStrategy file and give them a public no-arg
+ * constructor. The strategy is registered under the name set on adcandidates through the Buzz API,
+ * given by a public static String STRATEGY_NAME field, see {@link StrategyRegistry#nameOf(Class)}.
+ * </br>
  *
  */
 public interface BidStrategy {
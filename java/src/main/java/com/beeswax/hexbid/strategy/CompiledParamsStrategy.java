@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+
+/**
+ * Base of the strategies which compile the custom strategy parameters of a line item once into an
+ * immutable typed object instead of scanning and parsing them on every bid.</br>
+ * </br>
+ * Compiled parameters are cached in a {@link StrategyParamsCache} until the parameters of the line
+ * item change. Invalid parameters are reported when they are compiled, so a misconfigured line
+ * item is logged once per change of its parameters rather than on every bid.</br>
+ * </br>
+ * Priced with a {@link BidContext}, a strategy reads the bid request of the context unless it
+ * overrides {@link #getBidPriceMicrosUSD(Adcandidate, BidContext, Object)} to use its features.
+ *
+ * @param <T> type of the compiled parameters, immutable
+ */
+public abstract class CompiledParamsStrategy<T> implements ContextBidStrategy {
+  private static final Logger LOGGER = LogManager.getLogger(CompiledParamsStrategy.class);
+  private final StrategyParamsCache cache;
+
+  protected CompiledParamsStrategy() {
+    this(StrategyParamsCache.getDefault());
+  }
+
+  protected CompiledParamsStrategy(StrategyParamsCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Set the bid price from the compiled parameters of the line item of the adcandidate.
+   *
+   * @param adcandidate
+   * @param bid request
+   * @return bid price in micros USD
+   */
+  public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
+    return getBidPriceMicrosUSD(adcandidate, request, getParams(adcandidate));
+  }
+
+  /**
+   * Set the bid price from the compiled parameters of the line item of the adcandidate.
+   *
+   * @param adcandidate
+   * @param context of the bid request
+   * @return bid price in micros USD
+   */
+  public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidContext context) {
+    return getBidPriceMicrosUSD(adcandidate, context, getParams(adcandidate));
+  }
+
+  /**
+   * @param adcandidate
+   * @return compiled parameters of the line item of the adcandidate, null if they are invalid or
+   *         the adcandidate has no custom strategy
+   */
+  protected T getParams(Adcandidate adcandidate) {
+    if (adcandidate.hasBidding() && adcandidate.getBidding()
+                                               .hasCustomStrategy()) {
+      return cache.get(adcandidate.getLineItemId(), adcandidate.getBidding()
+                                                               .getCustomStrategy(),
+          this);
+    }
+    LOGGER.debug("No custom strategy for line item : {}", adcandidate.getLineItemId());
+    return null;
+  }
+
+  /**
+   * Compile the custom strategy parameters of a line item, logging the invalid ones.
+   *
+   * @param lineItemId
+   * @param customStrategy
+   * @return compiled parameters, null if they are invalid
+   */
+  protected abstract T compile(long lineItemId, CustomStrategy customStrategy);
+
+  /**
+   * Set the bid price of an adcandidate.
+   *
+   * @param adcandidate
+   * @param request
+   * @param params compiled parameters of the line item, null if they are invalid
+   * @return bid price in micros USD
+   */
+  protected abstract long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request,
+      T params);
+
+  /**
+   * Set the bid price of an adcandidate with the context of its bid request, by default from the
+   * bid request alone.
+   *
+   * @param adcandidate
+   * @param context
+   * @param params compiled parameters of the line item, null if they are invalid
+   * @return bid price in micros USD
+   */
+  protected long getBidPriceMicrosUSD(Adcandidate adcandidate, BidContext context, T params) {
+    return getBidPriceMicrosUSD(adcandidate, context.getRequest(), params);
+  }
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+
+/**
+ * Bidding strategy reading the bid request through the {@link BidContext} of the request, so that
+ * the features it shares with the other adcandidates and strategies are computed once per
+ * request. The bidder calls {@link #getBidPriceMicrosUSD(Adcandidate, BidContext)} instead of
+ * {@link #getBidPriceMicrosUSD(Adcandidate, BidRequest)}, which must return the same price.
+ *
+ */
+public interface ContextBidStrategy extends BidStrategy {
+
+  /**
+   * The method to set bid price with the context of the bid request.
+   *
+   * @param adcandidate
+   * @param context of the bid request, only valid during the call
+   * @return bid price in micros USD
+   */
+  public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidContext context);
+}
@@ -11,13 +11,17 @@
  *******************************************************************************/
 package com.beeswax.hexbid.strategy;
 
+import java.util.Set;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.parser.BidRequestField;
 import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * Flat price strategy sets a flat price for all bid requests.</br>
@@ -25,44 +29,62 @@ import com.beeswax.openrtb.Openrtb.BidRequest;
  * when iterating through the param list.</br>
  * 
  */
-public class FlatPriceStrategy implements BidStrategy {
+public class FlatPriceStrategy extends CompiledParamsStrategy<Long>
+    implements SelectiveBidStrategy {
   private static final Logger LOGGER = LogManager.getLogger(FlatPriceStrategy.class);
   private static final String FLAT_PRICE_KEY = "flat_price_micros_usd";
   public static final String STRATEGY_NAME = "FLAT_PRICE_STRATEGY";
+  private static final Set<BidRequestField> REQUEST_FIELDS = ImmutableSet.of();
 
   /**
-   * Return a flat rate from custom strategy parameter.</br>
-   * 
-   * @param bid agent request
-   * @param bid request
-   * @return bid price in micros USD
+   * Compile the first valid flat price of the custom strategy parameters.
+   *
+   * @param lineItemId
+   * @param customStrategy
+   * @return flat price in micros USD, null if there is none
    */
-  public long getBidPriceMicrosUSD(Adcandidate candidate, BidRequest request) {
-    if (candidate.hasBidding() && candidate.getBidding()
-                                           .hasCustomStrategy()) {
-      final CustomStrategy customStrategy = candidate.getBidding()
-                                                     .getCustomStrategy();
-
-      if (customStrategy.getName()
-                        .equalsIgnoreCase(STRATEGY_NAME)) {
-        for (Params param : candidate.getBidding()
-                                     .getCustomStrategy()
-                                     .getCustomParamsList()) {
-          if (param.getKey()
-                   .equalsIgnoreCase(FLAT_PRICE_KEY)) {
-            try {
-              return Long.parseLong(param.getValue());
-            } catch (NumberFormatException e) {
-              LOGGER.error("Invalid flat price : {}", param.getValue(), e);
-              // continue because there might be valid flat price in param pairs.
-              continue;
-            }
+  protected Long compile(long lineItemId, CustomStrategy customStrategy) {
+    if (customStrategy.getName()
+                      .equalsIgnoreCase(STRATEGY_NAME)) {
+      for (int i = 0; i < customStrategy.getCustomParamsCount(); i++) {
+        final Params param = customStrategy.getCustomParams(i);
+        if (param.getKey()
+                 .equalsIgnoreCase(FLAT_PRICE_KEY)) {
+          try {
+            return Long.parseLong(param.getValue());
+          } catch (NumberFormatException e) {
+            LOGGER.error("Invalid flat price for line item {} : {}", lineItemId, param.getValue(),
+                e);
+            // continue because there might be valid flat price in param pairs.
+            continue;
           }
         }
       }
     }
 
-    LOGGER.error("No flat price found for FlatPricestrategy. setting price to 0.");
-    return 0L;
+    LOGGER.error("No flat price found for FlatPricestrategy of line item {}. setting price to 0.",
+        lineItemId);
+    return null;
+  }
+
+  /**
+   * Return a flat rate from custom strategy parameter.</br>
+   * 
+   * @param adcandidate
+   * @param bid request
+   * @param flatPrice compiled flat price
+   * @return bid price in micros USD
+   */
+  protected long getBidPriceMicrosUSD(Adcandidate candidate, BidRequest request, Long flatPrice) {
+    return flatPrice == null ? 0L : flatPrice;
+  }
+
+  /**
+   * The price only depends on the custom strategy parameters.
+   *
+   * @return no sub-messages
+   */
+  public Set<BidRequestField> getRequestFields() {
+    return REQUEST_FIELDS;
   }
 }
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.model.FeatureHasher;
+import com.beeswax.hexbid.model.LogisticModel;
+import com.beeswax.hexbid.model.ModelStore;
+import com.beeswax.hexbid.parser.BidRequestField;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.Geo;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Sets;
+
+/**
+ * Logistic regression strategy bids the value of the line item weighted by the probability of a
+ * win or click predicted by a {@link LogisticModel}, e.g. served by a {@link ModelStore}.</br>
+ * </br>
+ * The features are hashed by {@link FeatureHasher} from:</br>
+ *   - the site domain, or its id, or the app bundle, or its id</br>
+ *   - the device os, type and make and the geo country and region</br>
+ *   - the local hour of the user, from the geo UTC offset</br>
+ *   - the line item and campaign of the adcandidate, the line item crossed with the site or app
+ *     and with the hour</br>
+ * </br>
+ * Missing fields add no feature. Features are hashed from the protobuf fields in place and summed
+ * as they are hashed, so scoring does not allocate. Without a model the price is 0.</br>
+ * </br>
+ * The site or app and the local hour are read from the {@link BidContext} of the request. As a
+ * {@link BatchBidStrategy} the features of the bid request are hashed and weighted once for all of
+ * its adcandidates.
+ *
+ */
+public class LogisticRegressionStrategy extends CompiledParamsStrategy<Long>
+    implements BatchBidStrategy, SelectiveBidStrategy {
+  private static final Logger LOGGER = LogManager.getLogger(LogisticRegressionStrategy.class);
+  private static final String VALUE_KEY = "value_micros_usd";
+  public static final String STRATEGY_NAME = "LOGISTIC_REGRESSION_STRATEGY";
+  private static final Set<BidRequestField> REQUEST_FIELDS =
+      Sets.immutableEnumSet(BidRequestField.SITE, BidRequestField.APP, BidRequestField.DEVICE);
+  private static final Supplier<LogisticModel> NO_MODEL = Suppliers.ofInstance(null);
+
+  private final Supplier<LogisticModel> models;
+  private final Clock clock;
+
+  /**
+   * Source of the current time, settable by tests.
+   */
+  @VisibleForTesting
+  interface Clock {
+    long millis();
+  }
+
+  private static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long millis() {
+      return System.currentTimeMillis();
+    }
+  };
+
+  public LogisticRegressionStrategy() {
+    this(NO_MODEL);
+  }
+
+  /**
+   * @param models supplier of the current model, which may return null
+   */
+  public LogisticRegressionStrategy(Supplier<LogisticModel> models) {
+    this(models, SYSTEM_CLOCK);
+  }
+
+  @VisibleForTesting
+  LogisticRegressionStrategy(Supplier<LogisticModel> models, Clock clock) {
+    this.models = models;
+    this.clock = clock;
+  }
+
+  /**
+   * Compile the first valid value of the custom strategy parameters.
+   *
+   * @param lineItemId
+   * @param customStrategy
+   * @return value in micros USD of a win or click, null if there is none
+   */
+  protected Long compile(long lineItemId, CustomStrategy customStrategy) {
+    if (customStrategy.getName()
+                      .equalsIgnoreCase(STRATEGY_NAME)) {
+      for (int i = 0; i < customStrategy.getCustomParamsCount(); i++) {
+        final Params param = customStrategy.getCustomParams(i);
+        if (param.getKey()
+                 .equalsIgnoreCase(VALUE_KEY)) {
+          try {
+            return Long.parseLong(param.getValue());
+          } catch (NumberFormatException e) {
+            LOGGER.error("Invalid value for line item {} : {}", lineItemId, param.getValue(), e);
+            continue;
+          }
+        }
+      }
+    }
+    LOGGER.error("No value found for LogisticRegressionStrategy of line item {}. setting price to 0.",
+        lineItemId);
+    return null;
+  }
+
+  /**
+   * Get the bid price by multiplying the predicted probability with the value.
+   *
+   * @param adcandidate
+   * @param bid request
+   * @param value compiled value
+   * @return bid price in micros USD
+   */
+  protected long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request, Long value) {
+    final LogisticModel model = models.get();
+    if (value == null || model == null) {
+      return 0;
+    }
+    return Math.round(predict(model, adcandidate, request, clock.millis()) * value);
+  }
+
+  /**
+   * Get the bid price from the features of the bid request remembered by the context.
+   *
+   * @param adcandidate
+   * @param context
+   * @param value compiled value
+   * @return bid price in micros USD
+   */
+  protected long getBidPriceMicrosUSD(Adcandidate adcandidate, BidContext context, Long value) {
+    final LogisticModel model = models.get();
+    if (value == null || model == null) {
+      return 0;
+    }
+    final long inventory = context.getInventoryHash();
+    final long hour = FeatureHasher.hash(FeatureHasher.HOUR, context.getLocalHour());
+    final double requestLogit = getRequestLogit(model, context.getRequest(), inventory, hour);
+    return Math.round(
+        LogisticModel.sigmoid(getLogit(model, adcandidate, inventory, hour, requestLogit)) * value);
+  }
+
+  /**
+   * Price the adcandidates from the features of the bid request, hashed and summed once, and the
+   * features of each adcandidate.
+   *
+   * @param adcandidates
+   * @param count
+   * @param context
+   * @param prices
+   */
+  public void getBidPricesMicrosUSD(Adcandidate[] adcandidates, int count, BidContext context,
+      long[] prices) {
+    final LogisticModel model = models.get();
+    if (model == null) {
+      for (int i = 0; i < count; i++) {
+        // compiled for the invalid parameters to be logged as when priced one at a time
+        getParams(adcandidates[i]);
+        prices[i] = 0;
+      }
+      return;
+    }
+    final long inventory = context.getInventoryHash();
+    final long hour = FeatureHasher.hash(FeatureHasher.HOUR, context.getLocalHour());
+    final double requestLogit = getRequestLogit(model, context.getRequest(), inventory, hour);
+    for (int i = 0; i < count; i++) {
+      final Long value = getParams(adcandidates[i]);
+      prices[i] = value == null ? 0
+          : Math.round(LogisticModel.sigmoid(
+              getLogit(model, adcandidates[i], inventory, hour, requestLogit)) * value);
+    }
+  }
+
+  /**
+   * @param model
+   * @param adcandidate
+   * @param request
+   * @param nowMillis current time
+   * @return predicted probability
+   */
+  @VisibleForTesting
+  static double predict(LogisticModel model, Adcandidate adcandidate, BidRequest request,
+      long nowMillis) {
+    final long inventory = BidContext.getInventoryHash(request);
+    final int utcOffsetMinutes = request.getDevice()
+                                        .getGeo()
+                                        .getUtcoffset();
+    final long hour =
+        FeatureHasher.hash(FeatureHasher.HOUR,
+            BidContext.getLocalHour(nowMillis, utcOffsetMinutes));
+    return LogisticModel.sigmoid(getLogit(model, adcandidate, inventory, hour,
+        getRequestLogit(model, request, inventory, hour)));
+  }
+
+  /**
+   * @param model
+   * @param request
+   * @param inventory hash of the site or app
+   * @param hour hash of the local hour
+   * @return bias plus the weights of the features of the bid request
+   */
+  private static double getRequestLogit(LogisticModel model, BidRequest request, long inventory,
+      long hour) {
+    double logit = model.bias();
+    if (inventory != BidContext.NO_INVENTORY) {
+      logit += model.weight(inventory);
+    }
+    if (request.hasDevice()) {
+      final Device device = request.getDevice();
+      if (device.hasOs()) {
+        logit += model.weight(FeatureHasher.hash(FeatureHasher.DEVICE_OS, device.getOsBytes()));
+      }
+      if (device.hasDevicetype()) {
+        logit += model.weight(FeatureHasher.hash(FeatureHasher.DEVICE_TYPE, device.getDevicetype()
+                                                                                  .getNumber()));
+      }
+      if (device.hasMake()) {
+        logit += model.weight(FeatureHasher.hash(FeatureHasher.DEVICE_MAKE, device.getMakeBytes()));
+      }
+      if (device.hasGeo()) {
+        final Geo geo = device.getGeo();
+        if (geo.hasCountry()) {
+          logit += model.weight(
+              FeatureHasher.hash(FeatureHasher.GEO_COUNTRY, geo.getCountryBytes()));
+        }
+        if (geo.hasRegion()) {
+          logit += model.weight(FeatureHasher.hash(FeatureHasher.GEO_REGION, geo.getRegionBytes()));
+        }
+      }
+    }
+    return logit + model.weight(hour);
+  }
+
+  /**
+   * @param model
+   * @param adcandidate
+   * @param inventory hash of the site or app
+   * @param hour hash of the local hour
+   * @param requestLogit logit of the features of the bid request
+   * @return logit of the adcandidate
+   */
+  private static double getLogit(LogisticModel model, Adcandidate adcandidate, long inventory,
+      long hour, double requestLogit) {
+    final long lineItem = FeatureHasher.hash(FeatureHasher.LINE_ITEM, adcandidate.getLineItemId());
+    double logit = requestLogit + model.weight(lineItem);
+    if (adcandidate.hasCampaignId()) {
+      logit += model.weight(
+          FeatureHasher.hash(FeatureHasher.CAMPAIGN, adcandidate.getCampaignId()));
+    }
+    if (inventory != BidContext.NO_INVENTORY) {
+      logit += model.weight(FeatureHasher.cross(lineItem, inventory));
+    }
+    return logit + model.weight(FeatureHasher.cross(lineItem, hour));
+  }
+
+  /**
+   * The features are read from the site, app and device of the bid request.
+   *
+   * @return {@link BidRequestField#SITE}, {@link BidRequestField#APP} and
+   *         {@link BidRequestField#DEVICE}
+   */
+  public Set<BidRequestField> getRequestFields() {
+    return REQUEST_FIELDS;
+  }
+}
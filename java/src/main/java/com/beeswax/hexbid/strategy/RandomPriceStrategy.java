@@ -11,7 +11,8 @@
  *******************************************************************************/
 package com.beeswax.hexbid.strategy;
 
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,7 +20,9 @@ import org.apache.logging.log4j.Logger;
 import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.parser.BidRequestField;
 import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * Random Price Strategy sets a random price no exceeding max price micros.</br>
@@ -27,46 +30,68 @@ import com.beeswax.openrtb.Openrtb.BidRequest;
  * through param list.</br>
  *
  */
-public class RandomPriceStrategy implements BidStrategy {
+public class RandomPriceStrategy extends CompiledParamsStrategy<Integer>
+    implements SelectiveBidStrategy {
   private static final Logger LOGGER = LogManager.getLogger(RandomPriceStrategy.class);
   private static final String MAX_PRICE_KEY = "max_price_micros_usd";
   public static final String STRATEGY_NAME = "RANDOM_PRICE_STRATEGY";
+  private static final Set<BidRequestField> REQUEST_FIELDS = ImmutableSet.of();
 
   /**
-   * Get a random bid price no exceeding a max price micros from custom strategy parameter.</br>
-   * 
-   * @param Adcandidate
-   * @param bid request
-   * @return bid price in micros USD
+   * Compile the first valid max price of the custom strategy parameters.
+   *
+   * @param lineItemId
+   * @param customStrategy
+   * @return max price in micros USD, null if there is none
    */
-  public long getBidPriceMicrosUSD(Adcandidate candidate, BidRequest request) {
-    final Random rand = new Random();
-    if (candidate.hasBidding() && candidate.getBidding()
-                                           .hasCustomStrategy()) {
-      final CustomStrategy customStrategy = candidate.getBidding()
-                                                     .getCustomStrategy();
-      if (customStrategy.getName()
-                        .equalsIgnoreCase(STRATEGY_NAME)) {
-        for (Params param : candidate.getBidding()
-                                     .getCustomStrategy()
-                                     .getCustomParamsList()) {
-          if (param.getKey()
-                   .equalsIgnoreCase(MAX_PRICE_KEY)) {
-            try {
-              final int maxPrice = Integer.parseInt(param.getValue());
-              return (1 + rand.nextInt(maxPrice));
-            } catch (NumberFormatException e) {
-              LOGGER.error("Invalid max price : {}", param.getValue(), e);
-              // continue to find other valid max price in param pairs.
-              continue;
+  protected Integer compile(long lineItemId, CustomStrategy customStrategy) {
+    if (customStrategy.getName()
+                      .equalsIgnoreCase(STRATEGY_NAME)) {
+      for (int i = 0; i < customStrategy.getCustomParamsCount(); i++) {
+        final Params param = customStrategy.getCustomParams(i);
+        if (param.getKey()
+                 .equalsIgnoreCase(MAX_PRICE_KEY)) {
+          try {
+            final int maxPrice = Integer.parseInt(param.getValue());
+            if (maxPrice > 0) {
+              return maxPrice;
             }
+            LOGGER.error("Invalid max price for line item {} : {}", lineItemId, param.getValue());
+          } catch (NumberFormatException e) {
+            LOGGER.error("Invalid max price for line item {} : {}", lineItemId, param.getValue(),
+                e);
           }
+          // continue to find other valid max price in param pairs.
         }
       }
     }
 
-    LOGGER.error("No max price found for RandomPriceStrategy. setting price to 0.");
-    return 0L;
+    LOGGER.error("No max price found for RandomPriceStrategy of line item {}. setting price to 0.",
+        lineItemId);
+    return null;
   }
 
+  /**
+   * Get a random bid price no exceeding a max price micros from custom strategy parameter.</br>
+   * 
+   * @param Adcandidate
+   * @param bid request
+   * @param maxPrice compiled max price
+   * @return bid price in micros USD
+   */
+  protected long getBidPriceMicrosUSD(Adcandidate candidate, BidRequest request,
+      Integer maxPrice) {
+    return maxPrice == null ? 0L
+        : 1 + ThreadLocalRandom.current()
+                               .nextInt(maxPrice);
+  }
+
+  /**
+   * The price only depends on the custom strategy parameters.
+   *
+   * @return no sub-messages
+   */
+  public Set<BidRequestField> getRequestFields() {
+    return REQUEST_FIELDS;
+  }
 }
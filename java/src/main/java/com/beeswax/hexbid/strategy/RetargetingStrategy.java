@@ -11,26 +11,94 @@
  *******************************************************************************/
 package com.beeswax.hexbid.strategy;
 
+import java.util.Set;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.parser.BidRequestField;
+import com.beeswax.hexbid.score.OffHeapScoreTable;
+import com.beeswax.hexbid.score.HashedUserScoreStore;
+import com.beeswax.hexbid.score.UserScoreStore;
 import com.beeswax.openrtb.Extension.UserExtensions;
 import com.beeswax.openrtb.Openrtb.BidRequest;
 import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
 
 /**
  * Retargeting Strategy assumes custom bidder maintains a key-value store which has a
  * score indicating the importance of a user. It sets the price by multiplying the score with
  * a base price from strategy parameter list.</br>
+ * </br>
+ * Scores are looked up in a {@link UserScoreStore}, e.g. an {@link OffHeapScoreTable}. Without
+ * one the sample score of a user is the length of its id. Priced with a {@link BidContext}, the
+ * user id is read once for all adcandidates of the request, and hashed once if the store is a
+ * {@link HashedUserScoreStore}.
  *
  */
-public class RetargetingStrategy implements BidStrategy {
+public class RetargetingStrategy extends CompiledParamsStrategy<Long>
+    implements SelectiveBidStrategy {
   private static final Logger LOGGER = LogManager.getLogger(RetargetingStrategy.class);
   private static final String BASE_PRICE_KEY = "base_price_micros_usd";
   public static final String STRATEGY_NAME = "RETARGETING_STRATEGY";
+  private static final Set<BidRequestField> REQUEST_FIELDS =
+      Sets.immutableEnumSet(BidRequestField.USER);
+  private static final UserScoreStore SAMPLE_SCORES = new UserScoreStore() {
+    @Override
+    public long getScore(CharSequence userId, long defaultScore) {
+      // for simplicity just set the score to be user id length.
+      return userId.length();
+    }
+  };
+  private final UserScoreStore scores;
+
+  public RetargetingStrategy() {
+    this(SAMPLE_SCORES);
+  }
+
+  /**
+   * @param scores store of the user scores
+   */
+  public RetargetingStrategy(UserScoreStore scores) {
+    this.scores = scores;
+  }
+
+  /**
+   * Compile the base price of the custom strategy parameters, the last valid one if there are
+   * several.
+   *
+   * @param lineItemId
+   * @param customStrategy
+   * @return base price in micros USD, null if there is none
+   */
+  protected Long compile(long lineItemId, CustomStrategy customStrategy) {
+    Long basePrice = null;
+    if (customStrategy.getName()
+                      .equalsIgnoreCase(STRATEGY_NAME)) {
+      for (int i = 0; i < customStrategy.getCustomParamsCount(); i++) {
+        final Params param = customStrategy.getCustomParams(i);
+        if (param.getKey()
+                 .equalsIgnoreCase(BASE_PRICE_KEY)) {
+          try {
+            basePrice = Long.parseLong(param.getValue());
+          } catch (NumberFormatException e) {
+            LOGGER.error("Base price of line item {} is in bad format : {}", lineItemId,
+                param.getValue());
+            // continue to find base price in param pairs.
+            continue;
+          }
+        }
+      }
+    }
+    if (basePrice == null) {
+      LOGGER.error("Setting price to 0 because base price is missing for RetargetingStrategy of line item {}.",
+          lineItemId);
+    }
+    return basePrice;
+  }
 
   /**
    * Get the bid price by multiplying user score that is available from bidder's key-value store with a
@@ -38,43 +106,64 @@ public class RetargetingStrategy implements BidStrategy {
    * 
    * @param adcandidate
    * @param bid request
+   * @param basePrice compiled base price
    * @return bid price in micros USD
    */
-  public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
-    if (adcandidate.hasBidding() && adcandidate.getBidding()
-                                               .hasCustomStrategy()) {
-      final CustomStrategy customStrategy = adcandidate.getBidding()
-                                                       .getCustomStrategy();
-      if (customStrategy.getName()
-                        .equalsIgnoreCase(STRATEGY_NAME)) {
-        final Optional<String> userId = getUserId(request);
-        Optional<Long> basePrice = Optional.absent();
+  protected long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request,
+      Long basePrice) {
+    if (basePrice == null) {
+      return 0;
+    }
+    final Optional<String> userId = getUserId(request);
+    return getUserPrice(userId.orNull(), basePrice);
+  }
 
-        for (Params param : adcandidate.getBidding()
-                                       .getCustomStrategy()
-                                       .getCustomParamsList()) {
-          if (param.getKey()
-                   .equalsIgnoreCase(BASE_PRICE_KEY)) {
-            try {
-              basePrice = Optional.of(Long.parseLong(param.getValue()));
-            } catch (NumberFormatException e) {
-              LOGGER.error("Base price is in bad format : {}", param.getValue());
-              // continue to find base price in param pairs.
-              continue;
-            }
-          }
-        }
+  /**
+   * Get the bid price from the user id remembered by the context, read once for all adcandidates of
+   * the request.
+   *
+   * @param adcandidate
+   * @param context
+   * @param basePrice compiled base price
+   * @return bid price in micros USD
+   */
+  protected long getBidPriceMicrosUSD(Adcandidate adcandidate, BidContext context,
+      Long basePrice) {
+    if (basePrice == null) {
+      return 0;
+    }
+    final String userId = context.getUserId();
+    if (userId != null && scores instanceof HashedUserScoreStore) {
+      // the hash is computed once for all adcandidates of the request
+      return ((HashedUserScoreStore) scores).getScore(context.getUserIdHash(), userId, 0L)
+          * basePrice;
+    }
+    return getUserPrice(userId, basePrice);
+  }
 
-        if (userId.isPresent() && basePrice.isPresent()) {
-          return getUserScore(userId) * basePrice.get();
-        }
-      }
+  /**
+   * @param userId null if the request has none
+   * @param basePrice
+   * @return user score times base price, 0 without user
+   */
+  private long getUserPrice(String userId, long basePrice) {
+    if (userId != null) {
+      return getUserScore(userId) * basePrice;
     }
 
-    LOGGER.error("Setting price to 0 because user or base price is missing for RetargetingStrategy.");
+    LOGGER.debug("Setting price to 0 because user is missing for RetargetingStrategy.");
     return 0;
   }
 
+  /**
+   * The user id is read from the user of the bid request.
+   *
+   * @return {@link BidRequestField#USER}
+   */
+  public Set<BidRequestField> getRequestFields() {
+    return REQUEST_FIELDS;
+  }
+
   /**
    * Get user ID from {@link UserExtensions#getUserId()}.
    *
@@ -95,21 +184,14 @@ public class RetargetingStrategy implements BidStrategy {
   }
 
   /**
-   * Get user score from key-value store based in user id. If user id is absent, score is 0.
+   * Get user score from key-value store based in user id. If the store has no score for the user,
+   * score is 0.
    *
    * @param userId
    * @return score
    */
-  private Long getUserScore(Optional<String> userId) {
-    if (!userId.isPresent()) {
-      return 0L;
-    }
-    // ...
-    // user score lookup logic goes here
-    // ...
-    // for simplicity just set the score to be user id length.
-    final Long score = (long) userId.get().length();
-    return score;
+  private long getUserScore(String userId) {
+    return scores.getScore(userId, 0L);
   }
 }
 
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import java.util.Set;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.hexbid.parser.BidRequestField;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+
+/**
+ * Bidding strategy declaring the sub-messages of the bid request it reads, so that selective
+ * parsing can skip the others. A strategy which is not a {@link SelectiveBidStrategy} may read
+ * any of them, so all are decoded while it is registered.
+ *
+ */
+public interface SelectiveBidStrategy extends BidStrategy {
+
+  /**
+   * Sub-messages of the bid request read by the strategy. Only the declared sub-messages and the
+   * scalar fields of the {@link BidRequest} passed to
+   * {@link #getBidPriceMicrosUSD(Adcandidate, BidRequest)} are guaranteed to be decoded.
+   *
+   * @return sub-messages read by the strategy
+   */
+  public Set<BidRequestField> getRequestFields();
+}
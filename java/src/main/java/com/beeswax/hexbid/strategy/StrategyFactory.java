@@ -11,16 +11,31 @@
  *******************************************************************************/
 package com.beeswax.hexbid.strategy;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.hexbid.parser.BidRequestField;
 
 /**
  * Strategy Factory is responsible for getting strategy object which sets bid price based on strategy info 
- * from bid agent request.
+ * from bid agent request.</br>
+ * </br>
+ * Strategies are the singletons of a {@link StrategyRegistry}, looked up by name ignoring case.
  *
  */
 public class StrategyFactory {
-  
+  private final StrategyRegistry registry;
+
+  public StrategyFactory() {
+    this(StrategyRegistry.load());
+  }
+
+  public StrategyFactory(StrategyRegistry registry) {
+    this.registry = registry;
+  }
+
   /**
    * Get strategy object for the adcandidate to set its bid price.</br>
    * </br>
@@ -41,20 +56,33 @@ public class StrategyFactory {
     if (adcandidate.hasBidding()) {
       if (adcandidate.getBidding().hasCustomStrategy()) {
         CustomStrategy customStrategy = adcandidate.getBidding().getCustomStrategy();
-        if (customStrategy.getName().equalsIgnoreCase(FlatPriceStrategy.STRATEGY_NAME)) {
-          return new FlatPriceStrategy();
-        } else if (customStrategy.getName().equalsIgnoreCase(RandomPriceStrategy.STRATEGY_NAME)) {
-          return new RandomPriceStrategy();
-        } else if (customStrategy.getName().equalsIgnoreCase(RetargetingStrategy.STRATEGY_NAME)) {
-          return new RetargetingStrategy();
-        } else {
+        final BidStrategy strategy = registry.get(customStrategy.getName());
+        if (strategy == null) {
           throw new IllegalArgumentException(
               "Unsupported custom strategy : " + customStrategy.getName());
         }
+        return strategy;
       }
       throw new IllegalArgumentException(
           "No custom strategy found for line item : " + adcandidate.getLineItemId());
     }
     throw new IllegalArgumentException("No Bidding found in Adcandidate message.");
   }
+
+  /**
+   * Get the sub-messages of the bid request read by any of the strategies this factory returns.
+   *
+   * @return union of {@link SelectiveBidStrategy#getRequestFields()}, all sub-messages if any of
+   *         the strategies is not a {@link SelectiveBidStrategy}
+   */
+  public Set<BidRequestField> getRequestFields() {
+    final Set<BidRequestField> fields = EnumSet.noneOf(BidRequestField.class);
+    for (BidStrategy strategy : registry.getStrategies()) {
+      if (!(strategy instanceof SelectiveBidStrategy)) {
+        return EnumSet.allOf(BidRequestField.class);
+      }
+      fields.addAll(((SelectiveBidStrategy) strategy).getRequestFields());
+    }
+    return fields;
+  }
 }
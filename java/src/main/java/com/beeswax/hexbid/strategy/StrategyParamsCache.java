@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.model.Fnv1a;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Supplier;
+import com.google.protobuf.ByteString;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Bounded cache of the custom strategy parameters of line items compiled by a
+ * {@link CompiledParamsStrategy}.</br>
+ * </br>
+ * Entries are keyed by line item id in a 2-way set associative table of a fixed capacity: a line
+ * item hashed to a set whose two entries are taken evicts the least recently used of them, so
+ * that two line items of the same set, e.g. both bid on by every request, do not compile their
+ * parameters again on every bid. An entry holds a 64 bit fingerprint of the
+ * raw parameter bytes and the strategy which compiled it, and is only used while both match, so
+ * that a line item whose strategy or parameters change is compiled again. Computing the
+ * fingerprint reads the parameter bytes as received without decoding them, so a hit allocates
+ * nothing.</br>
+ * </br>
+ * Hits, misses, invalidations (same line item, new parameters), evictions (entry taken by another
+ * line item), the hit rate and the number of cached line items are exported as
+ * strategy.params_cache.* variables.</br>
+ * </br>
+ * Thread safe. Strategies share {@link #getDefault()}.
+ *
+ */
+public class StrategyParamsCache {
+  private static final String PREFIX = "strategy.params_cache.";
+  public static final int DEFAULT_CAPACITY = 4096;
+  private static final int WAYS = 2;
+  private static final StrategyParamsCache DEFAULT =
+      new StrategyParamsCache(DEFAULT_CAPACITY, VarRegistry.getDefault());
+
+  private final AtomicReferenceArray<Entry> entries;
+  // per set the way to evict next, the least recently used one
+  private final AtomicIntegerArray leastRecent;
+  private final int mask;
+  private final LongCounter hits = PlatformDependent.newLongCounter();
+  private final LongCounter misses = PlatformDependent.newLongCounter();
+  private final LongCounter invalidations = PlatformDependent.newLongCounter();
+  private final LongCounter evictions = PlatformDependent.newLongCounter();
+
+  /**
+   * @return cache shared by the strategies
+   */
+  public static StrategyParamsCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * @param capacity maximum number of cached line items, rounded up to a power of 2
+   * @param registry
+   */
+  public StrategyParamsCache(int capacity, VarRegistry registry) {
+    int sets = 1;
+    while (sets * WAYS < capacity) {
+      sets <<= 1;
+    }
+    entries = new AtomicReferenceArray<>(sets * WAYS);
+    leastRecent = new AtomicIntegerArray(sets);
+    mask = sets - 1;
+    registry.register(PREFIX + "hits", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return hits.value();
+      }
+    });
+    registry.register(PREFIX + "misses", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return misses.value();
+      }
+    });
+    registry.register(PREFIX + "invalidations", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return invalidations.value();
+      }
+    });
+    registry.register(PREFIX + "evictions", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return evictions.value();
+      }
+    });
+    registry.register(PREFIX + "hit_rate", new Supplier<Double>() {
+      @Override
+      public Double get() {
+        final long hitCount = hits.value();
+        final long count = hitCount + misses.value();
+        return count == 0 ? 0.0 : (double) hitCount / count;
+      }
+    });
+    registry.register(PREFIX + "size", new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        return size();
+      }
+    });
+  }
+
+  /**
+   * Get the parameters of the line item compiled by the strategy, compiling them on a miss.
+   *
+   * @param lineItemId
+   * @param customStrategy custom strategy of the adcandidate of the line item
+   * @param strategy
+   * @return compiled parameters, null if the strategy found them invalid
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(long lineItemId, CustomStrategy customStrategy,
+      CompiledParamsStrategy<T> strategy) {
+    final long fingerprint = fingerprint(customStrategy);
+    final int set = set(lineItemId);
+    int way = -1;
+    for (int i = 0; i < WAYS; i++) {
+      final Entry entry = entries.get(set * WAYS + i);
+      if (entry != null && entry.lineItemId == lineItemId) {
+        if (entry.fingerprint == fingerprint && entry.strategy == strategy) {
+          hits.increment();
+          touch(set, i);
+          return (T) entry.params;
+        }
+        invalidations.increment();
+        way = i;
+        break;
+      }
+    }
+    if (way < 0) {
+      way = victim(set);
+      if (entries.get(set * WAYS + way) != null) {
+        evictions.increment();
+      }
+    }
+    misses.increment();
+    final T params = strategy.compile(lineItemId, customStrategy);
+    entries.lazySet(set * WAYS + way, new Entry(lineItemId, fingerprint, strategy, params));
+    touch(set, way);
+    return params;
+  }
+
+  /**
+   * @return way of the set to replace, an empty one if any, otherwise the least recently used
+   */
+  private int victim(int set) {
+    for (int i = 0; i < WAYS; i++) {
+      if (entries.get(set * WAYS + i) == null) {
+        return i;
+      }
+    }
+    return leastRecent.get(set);
+  }
+
+  private void touch(int set, int way) {
+    final int other = way ^ 1;
+    // written only when it changes, so that hits on a hot set do not write
+    if (leastRecent.get(set) != other) {
+      leastRecent.lazySet(set, other);
+    }
+  }
+
+  /**
+   * @return number of cached line items
+   */
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < entries.length(); i++) {
+      if (entries.get(i) != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private int set(long lineItemId) {
+    // spread the line item ids, often sequential, over the sets
+    final long hash = lineItemId * 0x9e3779b97f4a7c15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  /**
+   * @return {@link Fnv1a} hash of the keys and values of the parameters
+   */
+  static long fingerprint(CustomStrategy customStrategy) {
+    long hash = Fnv1a.OFFSET_BASIS;
+    for (int i = 0; i < customStrategy.getCustomParamsCount(); i++) {
+      final Params param = customStrategy.getCustomParams(i);
+      hash = hash(hash, param.getKeyBytes());
+      hash = hash(hash, param.getValueBytes());
+    }
+    return hash;
+  }
+
+  private static long hash(long hash, ByteString bytes) {
+    // the length separates the key from the value
+    return Fnv1a.update(Fnv1a.update(hash, bytes.size()), bytes);
+  }
+
+  private static class Entry {
+    private final long lineItemId;
+    private final long fingerprint;
+    private final CompiledParamsStrategy<?> strategy;
+    private final Object params;
+
+    Entry(long lineItemId, long fingerprint, CompiledParamsStrategy<?> strategy, Object params) {
+      this.lineItemId = lineItemId;
+      this.fingerprint = fingerprint;
+      this.strategy = strategy;
+      this.params = params;
+    }
+  }
+}
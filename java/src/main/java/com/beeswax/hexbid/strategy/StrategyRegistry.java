@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.hexbid.model.LogisticModel;
+import com.beeswax.hexbid.score.UserScoreStore;
+import com.beeswax.http.handler.StringTable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Registry of the {@link BidStrategy} singletons by strategy name.</br>
+ * </br>
+ * {@link #load()} registers the built-in strategies and the implementations listed in
+ * META-INF/services/com.beeswax.hexbid.strategy.BidStrategy files on the class path, see
+ * {@link ServiceLoader}. A strategy registered without a name is named by {@link #nameOf(Class)}:
+ * the public static STRATEGY_NAME field of its class, else the simple name of its class. Names are
+ * matched ignoring case in a {@link StringTable} built once, so that a lookup allocates nothing.
+ * Two strategies whose names only differ by case are rejected when the registry is built.</br>
+ * </br>
+ * Immutable and thread safe.
+ *
+ */
+public class StrategyRegistry {
+  private static final Logger LOGGER = LogManager.getLogger(StrategyRegistry.class);
+  private static final String NAME_FIELD = "STRATEGY_NAME";
+  private final List<BidStrategy> strategies;
+  private final StringTable<BidStrategy> table;
+
+  /**
+   * @param strategies strategies named by {@link #nameOf(Class)}
+   * @throws IllegalArgumentException listing the names registered more than once
+   */
+  public StrategyRegistry(Iterable<? extends BidStrategy> strategies) {
+    this(strategies, null);
+  }
+
+  /**
+   * @param strategies strategies by name
+   * @throws IllegalArgumentException listing the names registered more than once
+   */
+  public StrategyRegistry(Map<String, ? extends BidStrategy> strategies) {
+    this(strategies.values(), strategies.keySet());
+  }
+
+  private StrategyRegistry(Iterable<? extends BidStrategy> strategies, Iterable<String> names) {
+    this.strategies = ImmutableList.copyOf(strategies);
+    final StringTable.Builder<BidStrategy> builder = StringTable.builder(true);
+    final List<String> duplicates = new ArrayList<>();
+    final Iterator<String> nameIterator = names == null ? null : names.iterator();
+    for (BidStrategy strategy : this.strategies) {
+      final String name = nameIterator == null ? nameOf(strategy.getClass()) : nameIterator.next();
+      final BidStrategy registered = builder.put(name, strategy);
+      if (registered != null) {
+        duplicates.add(name + " (" + registered.getClass()
+                                               .getName()
+            + ", " + strategy.getClass()
+                             .getName()
+            + ")");
+      }
+    }
+    if (!duplicates.isEmpty()) {
+      throw new IllegalArgumentException("Duplicate strategy names : " + duplicates);
+    }
+    this.table = builder.build();
+  }
+
+  /**
+   * Name of a strategy class registered without a name.
+   *
+   * @param strategyClass
+   * @return value of the public static String STRATEGY_NAME field of the class or of a super
+   *         class, else the simple name of the class, or its binary name for an anonymous class
+   */
+  public static String nameOf(Class<? extends BidStrategy> strategyClass) {
+    try {
+      final Field field = strategyClass.getField(NAME_FIELD);
+      if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+        field.setAccessible(true);
+        final String name = (String) field.get(null);
+        if (name != null) {
+          return name;
+        }
+      }
+    } catch (NoSuchFieldException | IllegalAccessException | SecurityException e) {
+      // named after the class
+    }
+    return strategyClass.isAnonymousClass() ? strategyClass.getName()
+        : strategyClass.getSimpleName();
+  }
+
+  /**
+   * @return registry of the built-in strategies and those found by the {@link ServiceLoader}
+   * @throws IllegalArgumentException listing the names registered more than once
+   */
+  public static StrategyRegistry load() {
+    return load(Thread.currentThread()
+                      .getContextClassLoader());
+  }
+
+  /**
+   * @param scores user scores of the {@link RetargetingStrategy}, null for the sample scores
+   * @param models model of the {@link LogisticRegressionStrategy}, null to leave it out so that
+   *        selective parsing does not decode the sub-messages it reads
+   * @return registry of the built-in strategies and those found by the {@link ServiceLoader}
+   * @throws IllegalArgumentException listing the names registered more than once
+   */
+  public static StrategyRegistry load(UserScoreStore scores, Supplier<LogisticModel> models) {
+    return load(Thread.currentThread()
+                      .getContextClassLoader(),
+        scores == null ? new RetargetingStrategy() : new RetargetingStrategy(scores),
+        models == null ? null : new LogisticRegressionStrategy(models));
+  }
+
+  @VisibleForTesting
+  static StrategyRegistry load(ClassLoader classLoader) {
+    return load(classLoader, new RetargetingStrategy(), null);
+  }
+
+  private static StrategyRegistry load(ClassLoader classLoader, RetargetingStrategy retargeting,
+      LogisticRegressionStrategy logisticRegression) {
+    final List<BidStrategy> strategies = new ArrayList<>();
+    strategies.add(new FlatPriceStrategy());
+    strategies.add(new RandomPriceStrategy());
+    strategies.add(retargeting);
+    if (logisticRegression != null) {
+      strategies.add(logisticRegression);
+    }
+    for (BidStrategy strategy : ServiceLoader.load(BidStrategy.class, classLoader)) {
+      strategies.add(strategy);
+    }
+    for (BidStrategy strategy : strategies) {
+      LOGGER.info("Bid strategy {} : {}", nameOf(strategy.getClass()), strategy.getClass()
+                                                                               .getName());
+    }
+    return new StrategyRegistry(strategies);
+  }
+
+  /**
+   * @param name strategy name, case is ignored
+   * @return strategy registered with the name, null if there is none
+   */
+  public BidStrategy get(String name) {
+    return table.get(name);
+  }
+
+  /**
+   * @return registered strategies
+   */
+  public List<BidStrategy> getStrategies() {
+    return strategies;
+  }
+}
@@ -14,6 +14,8 @@ package com.beeswax.http.config;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
@@ -101,6 +103,69 @@ public class PropertyParserUtils {
     }
   }
 
+  /**
+   * Returns Float property value if exists. Else return default value.
+   *
+   * @param property
+   * @param defaultValue
+   * @param properties
+   * @return float
+   */
+  public static float getFloatProperty(String property, float defaultValue, Properties properties) {
+    final String propertyValue = properties.getProperty(property, Float.toString(defaultValue));
+    try {
+      return Float.parseFloat(propertyValue.trim());
+    } catch (NumberFormatException e) {
+      LOGGER.error(e);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Returns comma separated Integer list property value if exists. Else return an empty list.</br>
+   * Invalid values are skipped.
+   *
+   * @param property
+   * @param properties
+   * @return List of integers
+   */
+  public static List<Integer> getIntegerListProperty(String property, Properties properties) {
+    final List<Integer> values = new ArrayList<>();
+    for (String value : properties.getProperty(property, "")
+                                  .split(",")) {
+      if (value.trim()
+               .isEmpty()) {
+        continue;
+      }
+      try {
+        values.add(Integer.parseInt(value.trim()));
+      } catch (NumberFormatException e) {
+        LOGGER.error(e);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Returns comma separated String list property value if exists. Else return an empty list.</br>
+   * Values are trimmed and empty values are skipped.
+   *
+   * @param property
+   * @param properties
+   * @return List of strings
+   */
+  public static List<String> getStringListProperty(String property, Properties properties) {
+    final List<String> values = new ArrayList<>();
+    for (String value : properties.getProperty(property, "")
+                                  .split(",")) {
+      if (!value.trim()
+                .isEmpty()) {
+        values.add(value.trim());
+      }
+    }
+    return values;
+  }
+
   /**
    * Helper method used to parse boolean properties.
    *
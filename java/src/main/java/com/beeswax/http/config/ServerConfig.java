@@ -13,12 +13,27 @@ package com.beeswax.http.config;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.beeswax.http.server.EventLoopThreadFactory;
+import com.beeswax.http.server.StreamingBodyHandler;
+import com.beeswax.http.handler.AsyncRequestHandler;
+import com.beeswax.http.server.ConnectionHandler;
+import com.beeswax.http.server.Transport;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.util.ResourceLeakDetector;
 
 /**
  * {@link ServerConfig} loads configurations from a specified property file and falls back to default
@@ -32,6 +47,10 @@ import io.netty.channel.nio.NioEventLoopGroup;
  * Max request size</br>
  *   - maximum length of aggregated content in HTTP request</br>
  * </br>
+ * Streaming paths</br>
+ *   - comma separated request paths whose bodies are collected by {@link StreamingBodyHandler}
+ *     into a composite buffer instead of being aggregated. Empty aggregates all requests.</br>
+ * </br>
  * Boss group size</br>
  *   - number of threads used by boss {@link NioEventLoopGroup} which only accepts 
  *     incoming connection and registers the connection to the worker.</br>
@@ -44,24 +63,161 @@ import io.netty.channel.nio.NioEventLoopGroup;
  * </br>
  * Keep alive</br>
  *   - option to enable keep-alive packets for a socket connection</br>
+ * </br>
+ * Transport</br>
+ *   - socket transport, one of nio, epoll or auto. auto selects native epoll when it is available
+ *     and falls back to nio otherwise. See {@link Transport}.</br>
+ * </br>
+ * Acceptor count</br>
+ *   - number of listening sockets bound to the port with SO_REUSEPORT so that the kernel spreads
+ *     incoming connections across them. Only supported by the epoll transport.</br>
+ * </br>
+ * Worker group size</br>
+ *   - number of worker event loops which handle I/O and requests of accepted connections.
+ *     0 uses one loop per worker CPU when worker CPUs are set and the Netty default otherwise.</br>
+ * </br>
+ * Boss/worker thread name</br>
+ *   - name prefix of the boss/worker event loop threads.</br>
+ * </br>
+ * Boss/worker CPUs</br>
+ *   - comma separated CPU ids the boss/worker event loops are pinned to, see
+ *     {@link EventLoopThreadFactory}. Empty disables pinning. Keep the boss CPUs out of the
+ *     worker CPUs to isolate accepting connections from request processing.</br>
+ * </br>
+ * Allocator</br>
+ *   - settings of the {@link PooledByteBufAllocator} used by all channels: whether direct buffers
+ *     are preferred, number of heap/direct arenas, page size, max order (chunk size is
+ *     page size &lt;&lt; max order), tiny/small/normal thread cache sizes and whether threads
+ *     which are not event loops get a thread cache.</br>
+ * </br>
+ * Leak detection level</br>
+ *   - {@link ResourceLeakDetector.Level} of Netty buffer leak detection.</br>
+ * </br>
+ * Max flush batch</br>
+ *   - number of responses written while reading pipelined requests before they are flushed.
+ *     Remaining responses are flushed when the read completes. 0 flushes every response.</br>
+ * </br>
+ * H2C enabled</br>
+ *   - option to accept cleartext HTTP/2 connections, either with prior knowledge or upgraded from
+ *     HTTP/1.1, next to HTTP/1.1 on the same port. Disabled by default.</br>
+ * </br>
+ * HTTP/2 settings</br>
+ *   - max concurrent streams per connection, initial per stream flow control window, which the
+ *     connection window is raised to as well, max frame size and the ratio of a stream window which has to be consumed before a WINDOW_UPDATE is
+ *     sent back to the client.</br>
+ * </br>
+ * Max connections</br>
+ *   - maximum number of open connections. Connections accepted beyond it are closed right away.
+ *     0 disables the limit.</br>
+ * </br>
+ * Idle/read/write timeouts</br>
+ *   - milliseconds after which a connection is closed when nothing was read or written, when a
+ *     started request is not completely received, and when a write does not complete. See
+ *     {@link ConnectionHandler}. 0 disables a timeout.</br>
+ * </br>
+ * Async timeout</br>
+ *   - milliseconds an {@link AsyncRequestHandler} has to complete its response before the request
+ *     is answered with 503. 0 disables the timeout.</br>
  */
 public class ServerConfig {
   private static final Logger LOGGER = LogManager.getLogger(ServerConfig.class);
   public final int port;
   public final int maxRequestSize;
+  public final Set<String> streamingPaths;
   public final int bossGroupSize;
   public final int backlogSize;
   public final boolean tcpNodelay;
   public final boolean keepAlive;
+  public final Transport transport;
+  public final int acceptorCount;
+  public final int workerGroupSize;
+  public final String bossThreadName;
+  public final String workerThreadName;
+  public final List<Integer> bossCpus;
+  public final List<Integer> workerCpus;
+  public final boolean allocatorPreferDirect;
+  public final int allocatorHeapArenas;
+  public final int allocatorDirectArenas;
+  public final int allocatorPageSize;
+  public final int allocatorMaxOrder;
+  public final int allocatorTinyCacheSize;
+  public final int allocatorSmallCacheSize;
+  public final int allocatorNormalCacheSize;
+  public final boolean allocatorCacheForAllThreads;
+  public final ResourceLeakDetector.Level leakDetectionLevel;
+  public final int maxFlushBatch;
+  public final boolean h2cEnabled;
+  public final int http2MaxConcurrentStreams;
+  public final int http2InitialWindowSize;
+  public final int http2MaxFrameSize;
+  public final float http2WindowUpdateRatio;
+  public final int maxConnections;
+  public final long idleTimeoutMillis;
+  public final long readTimeoutMillis;
+  public final long writeTimeoutMillis;
+  public final long asyncTimeoutMillis;
+
+  private ServerConfig(ServerConfigBuilder builder) {
+    this.port = builder.port;
+    this.maxRequestSize = builder.maxRequestSize;
+    this.streamingPaths = builder.streamingPaths;
+    this.bossGroupSize = builder.bossGroupSize;
+    this.backlogSize = builder.backlogSize;
+    this.tcpNodelay = builder.tcpNodelay;
+    this.keepAlive = builder.keepAlive;
+    this.transport = builder.transport;
+    this.acceptorCount = builder.acceptorCount;
+    this.workerGroupSize = builder.workerGroupSize;
+    this.bossThreadName = builder.bossThreadName;
+    this.workerThreadName = builder.workerThreadName;
+    this.bossCpus = builder.bossCpus;
+    this.workerCpus = builder.workerCpus;
+    this.allocatorPreferDirect = builder.allocatorPreferDirect;
+    this.allocatorHeapArenas = builder.allocatorHeapArenas;
+    this.allocatorDirectArenas = builder.allocatorDirectArenas;
+    this.allocatorPageSize = builder.allocatorPageSize;
+    this.allocatorMaxOrder = builder.allocatorMaxOrder;
+    this.allocatorTinyCacheSize = builder.allocatorTinyCacheSize;
+    this.allocatorSmallCacheSize = builder.allocatorSmallCacheSize;
+    this.allocatorNormalCacheSize = builder.allocatorNormalCacheSize;
+    this.allocatorCacheForAllThreads = builder.allocatorCacheForAllThreads;
+    this.leakDetectionLevel = builder.leakDetectionLevel;
+    this.maxFlushBatch = builder.maxFlushBatch;
+    this.h2cEnabled = builder.h2cEnabled;
+    this.http2MaxConcurrentStreams = builder.http2MaxConcurrentStreams;
+    this.http2InitialWindowSize = builder.http2InitialWindowSize;
+    this.http2MaxFrameSize = builder.http2MaxFrameSize;
+    this.http2WindowUpdateRatio = builder.http2WindowUpdateRatio;
+    this.maxConnections = builder.maxConnections;
+    this.idleTimeoutMillis = builder.idleTimeoutMillis;
+    this.readTimeoutMillis = builder.readTimeoutMillis;
+    this.writeTimeoutMillis = builder.writeTimeoutMillis;
+    this.asyncTimeoutMillis = builder.asyncTimeoutMillis;
+  }
+
+  /**
+   * @return a new {@link PooledByteBufAllocator} with the configured settings
+   */
+  public PooledByteBufAllocator newAllocator() {
+    return new PooledByteBufAllocator(allocatorPreferDirect, allocatorHeapArenas,
+        allocatorDirectArenas, allocatorPageSize, allocatorMaxOrder, allocatorTinyCacheSize,
+        allocatorSmallCacheSize, allocatorNormalCacheSize, allocatorCacheForAllThreads);
+  }
 
-  private ServerConfig(int port, int maxRequestSize, int bossGroupSize, int backlogSize,
-      boolean tcpNodelay, boolean keepAlive) {
-    this.port = port;
-    this.maxRequestSize = maxRequestSize;
-    this.bossGroupSize = bossGroupSize;
-    this.backlogSize = backlogSize;
-    this.tcpNodelay = tcpNodelay;
-    this.keepAlive = keepAlive;
+  /**
+   * @return chunk size of the configured allocator
+   */
+  public int allocatorChunkSize() {
+    return allocatorPageSize << allocatorMaxOrder;
+  }
+
+  /**
+   * @return HTTP/2 settings sent to clients
+   */
+  public Http2Settings http2Settings() {
+    return new Http2Settings().maxConcurrentStreams(http2MaxConcurrentStreams)
+                              .initialWindowSize(http2InitialWindowSize)
+                              .maxFrameSize(http2MaxFrameSize);
   }
 
   /**
@@ -75,13 +231,61 @@ public class ServerConfig {
     private static final int DEFAULT_BACKLOG_SIZE = 200;
     private static final boolean DEFAULT_TCP_NODELAY = true;
     private static final boolean DEFAULT_KEEP_ALIVE = true;
+    private static final String DEFAULT_TRANSPORT = "auto";
+    private static final int DEFAULT_ACCEPTOR_COUNT = 1;
+    private static final int DEFAULT_WORKER_GROUP_SIZE = 0;
+    private static final String DEFAULT_BOSS_THREAD_NAME = "hexbid-boss";
+    private static final String DEFAULT_WORKER_THREAD_NAME = "hexbid-worker";
+    private static final boolean DEFAULT_ALLOCATOR_PREFER_DIRECT = true;
+    private static final boolean DEFAULT_ALLOCATOR_CACHE_FOR_ALL_THREADS = false;
+    private static final String DEFAULT_LEAK_DETECTION_LEVEL = "simple";
+    private static final int DEFAULT_MAX_FLUSH_BATCH = 16;
+    private static final boolean DEFAULT_H2C_ENABLED = false;
+    private static final int DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = 256;
+    private static final int DEFAULT_HTTP2_INITIAL_WINDOW_SIZE = 1024 * 1024; // 1MB
+    private static final int DEFAULT_HTTP2_MAX_FRAME_SIZE = Http2CodecUtil.DEFAULT_MAX_FRAME_SIZE;
+    private static final float DEFAULT_HTTP2_WINDOW_UPDATE_RATIO = 0.5f;
+    private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    private static final long DEFAULT_READ_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_ASYNC_TIMEOUT_MILLIS = 1000;
 
     private int port;
     private int maxRequestSize;
+    private Set<String> streamingPaths;
     private int bossGroupSize;
     private int backlogSize;
     private boolean tcpNodelay;
     private boolean keepAlive;
+    private Transport transport;
+    private int acceptorCount;
+    private int workerGroupSize;
+    private String bossThreadName;
+    private String workerThreadName;
+    private List<Integer> bossCpus;
+    private List<Integer> workerCpus;
+    private boolean allocatorPreferDirect;
+    private int allocatorHeapArenas;
+    private int allocatorDirectArenas;
+    private int allocatorPageSize;
+    private int allocatorMaxOrder;
+    private int allocatorTinyCacheSize;
+    private int allocatorSmallCacheSize;
+    private int allocatorNormalCacheSize;
+    private boolean allocatorCacheForAllThreads;
+    private ResourceLeakDetector.Level leakDetectionLevel;
+    private int maxFlushBatch;
+    private boolean h2cEnabled;
+    private int http2MaxConcurrentStreams;
+    private int http2InitialWindowSize;
+    private int http2MaxFrameSize;
+    private float http2WindowUpdateRatio;
+    private int maxConnections;
+    private long idleTimeoutMillis;
+    private long readTimeoutMillis;
+    private long writeTimeoutMillis;
+    private long asyncTimeoutMillis;
 
     public ServerConfigBuilder() {}
 
@@ -100,10 +304,21 @@ public class ServerConfig {
           throw new IOException(String.format("Failed to load server config file [%s]", propertyFile));
         }
 
-        final Properties properties = PropertyParserUtils.loadFromProperties(config);
+      return fromProperties(PropertyParserUtils.loadFromProperties(config));
+    }
+
+    /**
+     * Load server configurations from already loaded properties.
+     *
+     * @param properties
+     * @return ServerConfigBuilder
+     */
+    public ServerConfigBuilder fromProperties(Properties properties) {
         port = PropertyParserUtils.getIntegerProperty("server.port", DEFAULT_PORT, properties);
         maxRequestSize = PropertyParserUtils.getIntegerProperty("server.max_request_size",
             DEFAULT_MAX_REQUEST_SIZE, properties);
+        streamingPaths = ImmutableSet.copyOf(
+            PropertyParserUtils.getStringListProperty("server.streaming_paths", properties));
         bossGroupSize = PropertyParserUtils.getIntegerProperty("server.boss_group_size",
             DEFAULT_BOSS_GROUP_SIZE, properties);
         backlogSize = PropertyParserUtils.getIntegerProperty("server.backlog_size",
@@ -112,6 +327,135 @@ public class ServerConfig {
             PropertyParserUtils.parseBoolean("server.tcp_nodelay", DEFAULT_TCP_NODELAY, properties);
         keepAlive =
             PropertyParserUtils.parseBoolean("server.keep_alive", DEFAULT_KEEP_ALIVE, properties);
+        try {
+          transport = Transport.fromName(
+              properties.getProperty("server.transport", DEFAULT_TRANSPORT));
+        } catch (IllegalArgumentException e) {
+          LOGGER.error("Invalid transport : {}", properties.getProperty("server.transport"), e);
+          transport = Transport.fromName(DEFAULT_TRANSPORT);
+        }
+        acceptorCount = PropertyParserUtils.getIntegerProperty("server.acceptor_count",
+            DEFAULT_ACCEPTOR_COUNT, properties);
+        if (acceptorCount > 1 && !transport.supportsReusePort()) {
+          LOGGER.warn("Transport {} does not support SO_REUSEPORT. Using a single acceptor.",
+              transport);
+          acceptorCount = 1;
+        }
+        bossThreadName = properties.getProperty("server.boss_thread_name", DEFAULT_BOSS_THREAD_NAME);
+        workerThreadName =
+            properties.getProperty("server.worker_thread_name", DEFAULT_WORKER_THREAD_NAME);
+        bossCpus = ImmutableList.copyOf(
+            PropertyParserUtils.getIntegerListProperty("server.boss_cpus", properties));
+        workerCpus = ImmutableList.copyOf(
+            PropertyParserUtils.getIntegerListProperty("server.worker_cpus", properties));
+        workerGroupSize = PropertyParserUtils.getIntegerProperty("server.worker_group_size",
+            DEFAULT_WORKER_GROUP_SIZE, properties);
+        if (workerGroupSize == 0) {
+          workerGroupSize = workerCpus.size();
+        }
+        if (!Sets.intersection(Sets.newHashSet(bossCpus), Sets.newHashSet(workerCpus))
+                 .isEmpty()) {
+          LOGGER.warn("Boss CPUs {} overlap worker CPUs {}. Boss thread is not isolated.", bossCpus,
+              workerCpus);
+        }
+        allocatorPreferDirect = PropertyParserUtils.parseBoolean("server.allocator_prefer_direct",
+            DEFAULT_ALLOCATOR_PREFER_DIRECT, properties);
+        allocatorHeapArenas = PropertyParserUtils.getIntegerProperty(
+            "server.allocator_heap_arenas", PooledByteBufAllocator.defaultNumHeapArena(),
+            properties);
+        allocatorDirectArenas = PropertyParserUtils.getIntegerProperty(
+            "server.allocator_direct_arenas", PooledByteBufAllocator.defaultNumDirectArena(),
+            properties);
+        allocatorPageSize = PropertyParserUtils.getIntegerProperty("server.allocator_page_size",
+            PooledByteBufAllocator.defaultPageSize(), properties);
+        allocatorMaxOrder = PropertyParserUtils.getIntegerProperty("server.allocator_max_order",
+            PooledByteBufAllocator.defaultMaxOrder(), properties);
+        allocatorTinyCacheSize = PropertyParserUtils.getIntegerProperty(
+            "server.allocator_tiny_cache_size", PooledByteBufAllocator.defaultTinyCacheSize(),
+            properties);
+        allocatorSmallCacheSize = PropertyParserUtils.getIntegerProperty(
+            "server.allocator_small_cache_size", PooledByteBufAllocator.defaultSmallCacheSize(),
+            properties);
+        allocatorNormalCacheSize = PropertyParserUtils.getIntegerProperty(
+            "server.allocator_normal_cache_size", PooledByteBufAllocator.defaultNormalCacheSize(),
+            properties);
+        allocatorCacheForAllThreads = PropertyParserUtils.parseBoolean(
+            "server.allocator_cache_for_all_threads", DEFAULT_ALLOCATOR_CACHE_FOR_ALL_THREADS,
+            properties);
+        try {
+          leakDetectionLevel = ResourceLeakDetector.Level.valueOf(
+              properties.getProperty("server.leak_detection_level", DEFAULT_LEAK_DETECTION_LEVEL)
+                        .trim()
+                        .toUpperCase());
+        } catch (IllegalArgumentException e) {
+          LOGGER.error("Invalid leak detection level : {}",
+              properties.getProperty("server.leak_detection_level"), e);
+          leakDetectionLevel = ResourceLeakDetector.Level.SIMPLE;
+        }
+        maxFlushBatch = PropertyParserUtils.getIntegerProperty("server.max_flush_batch",
+            DEFAULT_MAX_FLUSH_BATCH, properties);
+        if (maxFlushBatch < 0) {
+          LOGGER.error("Invalid max flush batch : {}", maxFlushBatch);
+          maxFlushBatch = DEFAULT_MAX_FLUSH_BATCH;
+        }
+        h2cEnabled =
+            PropertyParserUtils.parseBoolean("server.h2c_enabled", DEFAULT_H2C_ENABLED, properties);
+        http2MaxConcurrentStreams = PropertyParserUtils.getIntegerProperty(
+            "server.http2_max_concurrent_streams", DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS,
+            properties);
+        if (http2MaxConcurrentStreams < 1) {
+          LOGGER.error("Invalid HTTP/2 max concurrent streams : {}", http2MaxConcurrentStreams);
+          http2MaxConcurrentStreams = DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS;
+        }
+        http2InitialWindowSize = PropertyParserUtils.getIntegerProperty(
+            "server.http2_initial_window_size", DEFAULT_HTTP2_INITIAL_WINDOW_SIZE, properties);
+        if (http2InitialWindowSize < 0) {
+          LOGGER.error("Invalid HTTP/2 initial window size : {}", http2InitialWindowSize);
+          http2InitialWindowSize = DEFAULT_HTTP2_INITIAL_WINDOW_SIZE;
+        }
+        http2MaxFrameSize = PropertyParserUtils.getIntegerProperty("server.http2_max_frame_size",
+            DEFAULT_HTTP2_MAX_FRAME_SIZE, properties);
+        if (http2MaxFrameSize < Http2CodecUtil.MAX_FRAME_SIZE_LOWER_BOUND
+            || http2MaxFrameSize > Http2CodecUtil.MAX_FRAME_SIZE_UPPER_BOUND) {
+          LOGGER.error("Invalid HTTP/2 max frame size : {}", http2MaxFrameSize);
+          http2MaxFrameSize = DEFAULT_HTTP2_MAX_FRAME_SIZE;
+        }
+        http2WindowUpdateRatio = PropertyParserUtils.getFloatProperty(
+            "server.http2_window_update_ratio", DEFAULT_HTTP2_WINDOW_UPDATE_RATIO, properties);
+        if (http2WindowUpdateRatio <= 0 || http2WindowUpdateRatio >= 1) {
+          LOGGER.error("Invalid HTTP/2 window update ratio : {}", http2WindowUpdateRatio);
+          http2WindowUpdateRatio = DEFAULT_HTTP2_WINDOW_UPDATE_RATIO;
+        }
+        maxConnections = PropertyParserUtils.getIntegerProperty("server.max_connections",
+            DEFAULT_MAX_CONNECTIONS, properties);
+        if (maxConnections < 0) {
+          LOGGER.error("Invalid max connections : {}", maxConnections);
+          maxConnections = DEFAULT_MAX_CONNECTIONS;
+        }
+        idleTimeoutMillis = PropertyParserUtils.getLongProperty("server.idle_timeout_ms",
+            DEFAULT_IDLE_TIMEOUT_MILLIS, properties);
+        if (idleTimeoutMillis < 0) {
+          LOGGER.error("Invalid idle timeout : {}", idleTimeoutMillis);
+          idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+        }
+        readTimeoutMillis = PropertyParserUtils.getLongProperty("server.read_timeout_ms",
+            DEFAULT_READ_TIMEOUT_MILLIS, properties);
+        if (readTimeoutMillis < 0) {
+          LOGGER.error("Invalid read timeout : {}", readTimeoutMillis);
+          readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        }
+        writeTimeoutMillis = PropertyParserUtils.getLongProperty("server.write_timeout_ms",
+            DEFAULT_WRITE_TIMEOUT_MILLIS, properties);
+        if (writeTimeoutMillis < 0) {
+          LOGGER.error("Invalid write timeout : {}", writeTimeoutMillis);
+          writeTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+        }
+        asyncTimeoutMillis = PropertyParserUtils.getLongProperty("server.async_timeout_ms",
+            DEFAULT_ASYNC_TIMEOUT_MILLIS, properties);
+        if (asyncTimeoutMillis < 0) {
+          LOGGER.error("Invalid async timeout : {}", asyncTimeoutMillis);
+          asyncTimeoutMillis = DEFAULT_ASYNC_TIMEOUT_MILLIS;
+        }
 
       return this;
     }
@@ -119,13 +463,39 @@ public class ServerConfig {
     public ServerConfig build() {
       LOGGER.info("Port : {}", port);
       LOGGER.info("Max request size : {}", maxRequestSize);
+      LOGGER.info("Streaming paths : {}", streamingPaths);
       LOGGER.info("Boss group size : {}", bossGroupSize);
       LOGGER.info("Backlog size : {}", backlogSize);
       LOGGER.info("TCP nodelay : {}", tcpNodelay);
       LOGGER.info("Keep alive : {}", keepAlive);
+      LOGGER.info("Transport : {}", transport);
+      LOGGER.info("Acceptor count : {}", acceptorCount);
+      LOGGER.info("Worker group size : {}", workerGroupSize);
+      LOGGER.info("Boss thread name : {}", bossThreadName);
+      LOGGER.info("Worker thread name : {}", workerThreadName);
+      LOGGER.info("Boss CPUs : {}", bossCpus);
+      LOGGER.info("Worker CPUs : {}", workerCpus);
+      LOGGER.info("Allocator prefer direct : {}", allocatorPreferDirect);
+      LOGGER.info("Allocator heap/direct arenas : {}/{}", allocatorHeapArenas,
+          allocatorDirectArenas);
+      LOGGER.info("Allocator page size : {}, max order : {}", allocatorPageSize,
+          allocatorMaxOrder);
+      LOGGER.info("Allocator tiny/small/normal cache size : {}/{}/{}", allocatorTinyCacheSize,
+          allocatorSmallCacheSize, allocatorNormalCacheSize);
+      LOGGER.info("Allocator cache for all threads : {}", allocatorCacheForAllThreads);
+      LOGGER.info("Leak detection level : {}", leakDetectionLevel);
+      LOGGER.info("Max flush batch : {}", maxFlushBatch);
+      LOGGER.info("H2C enabled : {}", h2cEnabled);
+      LOGGER.info("HTTP/2 max concurrent streams : {}", http2MaxConcurrentStreams);
+      LOGGER.info("HTTP/2 initial window size : {}", http2InitialWindowSize);
+      LOGGER.info("HTTP/2 max frame size : {}", http2MaxFrameSize);
+      LOGGER.info("HTTP/2 window update ratio : {}", http2WindowUpdateRatio);
+      LOGGER.info("Max connections : {}", maxConnections);
+      LOGGER.info("Idle/read/write timeout ms : {}/{}/{}", idleTimeoutMillis, readTimeoutMillis,
+          writeTimeoutMillis);
+      LOGGER.info("Async timeout ms : {}", asyncTimeoutMillis);
 
-      return new ServerConfig(port, maxRequestSize, bossGroupSize, backlogSize, tcpNodelay,
-          keepAlive);
+      return new ServerConfig(this);
     }
   }
 }
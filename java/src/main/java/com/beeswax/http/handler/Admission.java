@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpResponse;
+
+/**
+ * Admission control of the requests of a {@link Route}.</br>
+ * </br>
+ * Requests are admitted on the I/O thread when they are received, before they are queued on the
+ * executor of the route, so that queued requests count as in flight and the latency of a request
+ * includes the time it waited in the queue.</br>
+ * Implementations have to be thread safe.
+ *
+ */
+public interface Admission {
+
+  /**
+   * Admit a request, called on the I/O thread of the channel. An admitted request is completed
+   * with either {@link #reject()} or {@link #complete(long)}.
+   *
+   * @param ctx context of the channel which received the request
+   * @return null if the request is admitted, otherwise the response to the shed request
+   */
+  public FullHttpResponse admit(ChannelHandlerContext ctx);
+
+  /**
+   * Complete an admitted request that the executor of the route rejected.
+   *
+   * @return response to the rejected request
+   */
+  public FullHttpResponse reject();
+
+  /**
+   * Complete an admitted request once its handler returned.
+   *
+   * @param nanos time since the request was received, including the time it was queued
+   */
+  public void complete(long nanos);
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * The interface of HTTP request handlers which complete their response asynchronously, e.g. after
+ * a lookup on a remote service, without blocking the I/O thread.</br>
+ * </br>
+ * {@link GlobalHandler} calls {@link #processRequestAsync} instead of
+ * {@link #processRequest} on the I/O thread of the connection, writes the response once the
+ * returned future completes and cancels the future when it does not complete within the server
+ * async timeout. The request stays valid until the future completes.</br>
+ * </br>
+ * {@link #processRequest} remains for synchronous callers. It may wait for the future, so it must
+ * not be called on an I/O thread.
+ */
+public interface AsyncRequestHandler extends RequestHandler {
+
+  /**
+   * Start processing the HTTP request.</br>
+   * The future fails with {@link IllegalArgumentException} for requests answered with 400, and
+   * with any other exception for requests answered with 500. Handlers usually return a
+   * {@link Promise} of {@code ctx.executor()} so that the response is completed on the I/O thread
+   * of the connection.
+   *
+   * @param ChannelHandlerContext
+   * @param FullHttpRequest
+   *
+   * @return Future of the FullHttpResponse
+   */
+  public Future<FullHttpResponse> processRequestAsync(ChannelHandlerContext ctx,
+      FullHttpRequest request);
+}
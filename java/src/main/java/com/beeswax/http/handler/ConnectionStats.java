@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * Counters of a single connection: requests received, bytes read and written, when it was opened
+ * and whether a request is being received.</br>
+ * </br>
+ * There is one instance per channel, see {@link #get(Channel)}. It is not thread safe and has to
+ * be used from the event loop of its channel.
+ *
+ */
+public class ConnectionStats {
+  private static final AttributeKey<ConnectionStats> STATS =
+      AttributeKey.valueOf(ConnectionStats.class, "STATS");
+  private final long openedNanos = System.nanoTime();
+  private long requests;
+  private long bytesIn;
+  private long bytesOut;
+  private boolean requestPending;
+  private long requestStartNanos;
+
+  /**
+   * @param channel
+   * @return stats of the channel, created on first use
+   */
+  public static ConnectionStats get(Channel channel) {
+    final Attribute<ConnectionStats> attribute = channel.attr(STATS);
+    ConnectionStats stats = attribute.get();
+    if (stats == null) {
+      stats = new ConnectionStats();
+      attribute.set(stats);
+    }
+    return stats;
+  }
+
+  /**
+   * Record bytes read from the connection. The first bytes read after a complete request start
+   * the next request.
+   *
+   * @param bytes
+   * @return true if the bytes start a request
+   */
+  public boolean bytesRead(int bytes) {
+    bytesIn += bytes;
+    if (requestPending) {
+      return false;
+    }
+    requestPending = true;
+    requestStartNanos = System.nanoTime();
+    return true;
+  }
+
+  public void bytesWritten(int bytes) {
+    bytesOut += bytes;
+  }
+
+  /**
+   * Record a completely received request.
+   */
+  public void requestReceived() {
+    requests++;
+    requestPending = false;
+  }
+
+  public long requests() {
+    return requests;
+  }
+
+  public long bytesIn() {
+    return bytesIn;
+  }
+
+  public long bytesOut() {
+    return bytesOut;
+  }
+
+  public long openedNanos() {
+    return openedNanos;
+  }
+
+  /**
+   * @return true if bytes of a request which is not completely received yet were read
+   */
+  public boolean isRequestPending() {
+    return requestPending;
+  }
+
+  public long requestStartNanos() {
+    return requestStartNanos;
+  }
+}
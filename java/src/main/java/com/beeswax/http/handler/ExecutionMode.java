@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Where {@link RequestHandler#processRequest} of a path runs.</br>
+ * </br>
+ * INLINE - on the I/O thread of the connection. Cheapest for handlers that never block.</br>
+ * POOL - on a fixed pool of daemon threads with a bounded queue. A request arriving while the
+ * queue is full is rejected.</br>
+ * VIRTUAL - on a new virtual thread per request. Needs a Java 21 runtime; the executor is looked up
+ * reflectively so that the server still builds for older Java levels.</br>
+ *
+ */
+public enum ExecutionMode {
+  INLINE {
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public Executor newExecutor(String threadName, int threads, int queueSize) {
+      return MoreExecutors.directExecutor();
+    }
+  },
+
+  POOL {
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public Executor newExecutor(String threadName, int threads, int queueSize) {
+      return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(queueSize), new DefaultThreadFactory(threadName, true));
+    }
+  },
+
+  VIRTUAL {
+    @Override
+    public boolean isAvailable() {
+      return getVirtualThreadExecutorFactory() != null;
+    }
+
+    @Override
+    public Executor newExecutor(String threadName, int threads, int queueSize) {
+      final Method factory = getVirtualThreadExecutorFactory();
+      if (factory == null) {
+        throw new IllegalStateException("Virtual threads need a Java 21 runtime");
+      }
+      try {
+        return (Executor) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Could not create a virtual thread executor", e);
+      }
+    }
+  };
+
+  /**
+   * @return true if this mode can be used on the current runtime.
+   */
+  public abstract boolean isAvailable();
+
+  /**
+   * Create an executor of this mode.
+   *
+   * @param threadName thread name prefix
+   * @param threads number of threads, only used by {@link #POOL}
+   * @param queueSize maximum number of waiting requests, only used by {@link #POOL}
+   * @return Executor
+   */
+  public abstract Executor newExecutor(String threadName, int threads, int queueSize);
+
+  /**
+   * @return true if requests run by executors of this mode leave the I/O thread
+   */
+  public boolean isOffloaded() {
+    return this != INLINE;
+  }
+
+  /**
+   * Resolve mode from its configured name.</br>
+   * A mode which is not available on the current runtime falls back to {@link #POOL}.
+   *
+   * @param name inline, pool or virtual
+   * @return ExecutionMode
+   * @throws IllegalArgumentException if the name is unknown
+   */
+  public static ExecutionMode fromName(String name) throws IllegalArgumentException {
+    final ExecutionMode mode = ExecutionMode.valueOf(name.trim()
+                                                         .toUpperCase());
+    if (!mode.isAvailable()) {
+      LogManager.getLogger(ExecutionMode.class)
+                .warn("Execution mode {} is not available on this runtime. Falling back to {}.",
+                    mode, POOL);
+      return POOL;
+    }
+    return mode;
+  }
+
+  /**
+   * Look the factory of virtual thread executors up without calling it, so that probing the
+   * runtime creates no executor.
+   *
+   * @return Executors.newVirtualThreadPerTaskExecutor, null before Java 21
+   */
+  private static Method getVirtualThreadExecutorFactory() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
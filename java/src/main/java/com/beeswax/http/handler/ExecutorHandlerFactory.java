@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link HandlerFactory} owning the executor its handlers are offloaded to.</br>
+ * The server shuts the executor down when it stops, so that its threads do not outlive the server.
+ *
+ */
+public interface ExecutorHandlerFactory extends HandlerFactory {
+
+  /**
+   * @return executor the routes of the factory run on, shut down when the server stops if it is an
+   *         {@link java.util.concurrent.ExecutorService}
+   */
+  public Executor getExecutor();
+}
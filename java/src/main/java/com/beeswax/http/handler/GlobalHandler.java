@@ -11,9 +11,20 @@
  *******************************************************************************/
 package com.beeswax.http.handler;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -24,7 +35,10 @@ import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
-import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
 
 /**
  * Global handler handles all HTTP requests received by the server.</br>
@@ -38,53 +52,314 @@ import io.netty.handler.codec.http.QueryStringDecoder;
  * 204 if request has no content.</br>
  * 400 if there is a {@link IllegalArgumentException}.</br>
  * 500 if there is an internal error.</br>
+ * 503 if the executor of the path rejected the request, or the response of its
+ * {@link Admission}.</br>
+ * </br>
+ * Handlers run on the executor of the {@link Route} the {@link HandlerFactory} returns for their
+ * path, found with a single lookup. When it is not the I/O thread the request is retained until
+ * the handler returns and the response is handed back to the I/O thread of the channel to be
+ * written. Rejected requests are counted in "http.rejected".</br>
+ * </br>
+ * Requests of a route with an {@link Admission} are admitted on the I/O thread before they are
+ * queued on its executor. Shed requests are answered right away with the response of the
+ * admission, and so are requests the executor rejects once admitted. Admitted requests are
+ * completed with the time since they were received, queueing included.</br>
+ * </br>
+ * {@link TimedRequestHandler}s are given the time the request was received on the I/O thread.</br>
+ * </br>
+ * {@link AsyncRequestHandler}s are started on the I/O thread and their response is written when
+ * the returned future completes. A failed future is answered like an exception of a synchronous
+ * handler. A future which does not complete within the async timeout is cancelled and answered
+ * with 503, counted in "http.async_timeouts".</br>
+ * </br>
+ * Requests received on HTTP/2 streams carry their stream id in the
+ * {@link ExtensionHeaderNames#STREAM_ID} header which is copied to the response so that it is sent
+ * on the same stream.</br>
+ * </br>
+ * Responses to HTTP/1.1 requests are written through the {@link ResponseSequencer} of the channel
+ * so that pipelined requests are answered in order, and so is the 500 response to an exception
+ * caught on the channel. Flushes of responses written while a read is in progress are
+ * consolidated by the pipeline, see HttpServerChannelInitializer.</br>
  * 
  */
 @io.netty.channel.ChannelHandler.Sharable
 public class GlobalHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
   private static final Logger LOGGER = LogManager.getLogger(GlobalHandler.class);
+  public static final String REQUESTS = "http.requests";
   private final HandlerFactory handlerFactory;
+  private final AtomicLong requests;
+  private final AtomicLong rejected;
+  private final AtomicLong asyncTimeouts;
+  private final long asyncTimeoutMillis;
+  private final Ticker ticker;
 
-  public GlobalHandler(HandlerFactory handlerFactory) {
+  /**
+   * @param handlerFactory
+   * @param asyncTimeoutMillis time {@link AsyncRequestHandler}s have to complete, 0 for no limit
+   */
+  public GlobalHandler(HandlerFactory handlerFactory, long asyncTimeoutMillis) {
+    this(handlerFactory, asyncTimeoutMillis, VarRegistry.getDefault(), Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  GlobalHandler(HandlerFactory handlerFactory, long asyncTimeoutMillis, VarRegistry registry,
+      Ticker ticker) {
     this.handlerFactory = handlerFactory;
+    this.asyncTimeoutMillis = asyncTimeoutMillis;
+    this.ticker = ticker;
+    this.requests = registry.counter(REQUESTS);
+    this.rejected = registry.counter("http.rejected");
+    this.asyncTimeouts = registry.counter("http.async_timeouts");
   }
 
   @Override
-  protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
-    final QueryStringDecoder queryDecoder = new QueryStringDecoder(request.uri());
-    LOGGER.debug("path: {}", queryDecoder.path());
-
-    // trim trailing backslash so that the handler can recognize /PATH/
-    final RequestHandler handler = handlerFactory.getHandler(queryDecoder.path()
-                                                                         .replaceAll("/$", ""));
-    final FullHttpResponse response = handler.processRequest(ctx, request);
-    response.headers()
-            .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE)
-            .set(HttpHeaderNames.CONTENT_LENGTH, response.content()
-                                                         .readableBytes());
-
-    ctx.writeAndFlush(response);
+  protected void channelRead0(final ChannelHandlerContext ctx, final FullHttpRequest request)
+      throws Exception {
+    final long arrivalNanos = ticker.read();
+    requests.incrementAndGet();
+    ConnectionStats.get(ctx.channel())
+                   .requestReceived();
+    final String streamId = request.headers()
+                                   .get(ExtensionHeaderNames.STREAM_ID.text());
+    // HTTP/2 streams are independent, only HTTP/1.1 responses have to follow request order
+    final ResponseSequencer sequencer = streamId == null ? ResponseSequencer.get(ctx.channel())
+        : null;
+    final ResponseWriter writer = new ResponseWriter(ctx, sequencer,
+        sequencer == null ? -1 : sequencer.nextSequence(), streamId);
+
+    LOGGER.debug("uri: {}", request.uri());
+
+    // the factory routes the raw URI once, see Router
+    final Route route = handlerFactory.getRoute(request.uri());
+    final RequestHandler handler = route.getHandler();
+    // admitted before queueing so that queued requests count as in flight
+    final Admission admission = route.getAdmission();
+    if (admission != null) {
+      final FullHttpResponse shed = admission.admit(ctx);
+      if (shed != null) {
+        writer.write(shed);
+        return;
+      }
+    }
+    // the request outlives this method when the handler runs on another thread or asynchronously
+    request.retain();
+    if (handler instanceof AsyncRequestHandler) {
+      processAsync(ctx, (AsyncRequestHandler) handler, request, writer, admission, arrivalNanos);
+      return;
+    }
+
+    final Executor executor = route.getExecutor();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          FullHttpResponse response;
+          try {
+            response = handler instanceof TimedRequestHandler
+                ? ((TimedRequestHandler) handler).processRequest(ctx, request, arrivalNanos)
+                : handler.processRequest(ctx, request);
+          } catch (Exception e) {
+            LOGGER.error("Exception occurred. Returning empty error response", e);
+            response = newErrorResponse(e);
+          } finally {
+            request.release();
+            complete(admission, arrivalNanos);
+          }
+          writer.write(response);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      request.release();
+      rejected.incrementAndGet();
+      writer.write(admission != null ? admission.reject()
+          : new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+              HttpResponseStatus.SERVICE_UNAVAILABLE));
+    }
+  }
+
+  /**
+   * Complete an admitted request with the time since it was received.
+   */
+  private void complete(Admission admission, long arrivalNanos) {
+    if (admission != null) {
+      admission.complete(ticker.read() - arrivalNanos);
+    }
+  }
+
+  /**
+   * Start an asynchronous handler and write its response once its future completes, or a 503
+   * response if it does not complete within the timeout.
+   */
+  private void processAsync(ChannelHandlerContext ctx, AsyncRequestHandler handler,
+      FullHttpRequest request, ResponseWriter writer, Admission admission, long arrivalNanos) {
+    final Future<FullHttpResponse> future;
+    try {
+      future = handler.processRequestAsync(ctx, request);
+    } catch (Exception e) {
+      LOGGER.error("Exception occurred. Returning empty error response", e);
+      request.release();
+      complete(admission, arrivalNanos);
+      writer.write(newErrorResponse(e));
+      return;
+    }
+
+    final AsyncResponse response =
+        new AsyncResponse(future, request, writer, admission, arrivalNanos);
+    if (asyncTimeoutMillis > 0 && !future.isDone()) {
+      response.timeout = ctx.executor()
+                            .schedule(response, asyncTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    future.addListener(response);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    final ResponseSequencer sequencer = ResponseSequencer.find(ctx.channel());
+    if (sequencer != null) {
+      sequencer.release();
+    }
+    super.channelInactive(ctx);
   }
 
   @Override
   public void exceptionCaught(final ChannelHandlerContext ctx, Throwable cause) {
     try {
       LOGGER.error("Exception occurred. Returning empty `500` response", cause);
-      final FullHttpResponse errResponse;
-      if (cause instanceof IllegalArgumentException) {
-        errResponse =
-            new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.BAD_REQUEST);
-      } else {
-        errResponse = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
-            HttpResponseStatus.INTERNAL_SERVER_ERROR);
-      }
-
+      final FullHttpResponse errResponse = newErrorResponse(cause);
       errResponse.headers()
                  .set(HttpHeaderNames.CONTENT_LENGTH, errResponse.content()
                                                                  .readableBytes());
-      ctx.writeAndFlush(errResponse);
+      // answered after the responses to the requests read before the exception
+      final ResponseSequencer sequencer = ResponseSequencer.get(ctx.channel());
+      sequencer.write(ctx, sequencer.nextSequence(), errResponse);
     } catch (Throwable t) {
       LOGGER.error("Error occured when returning empty `500` response", t);
     }
   }
+
+  private static FullHttpResponse newErrorResponse(Throwable cause) {
+    if (cause instanceof IllegalArgumentException) {
+      return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.BAD_REQUEST);
+    }
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.INTERNAL_SERVER_ERROR);
+  }
+
+  /**
+   * Writes the response to a request on the I/O thread of its channel.
+   */
+  private static class ResponseWriter {
+    private final ChannelHandlerContext ctx;
+    private final ResponseSequencer sequencer;
+    private final int sequence;
+    private final String streamId;
+
+    ResponseWriter(ChannelHandlerContext ctx, ResponseSequencer sequencer, int sequence,
+        String streamId) {
+      this.ctx = ctx;
+      this.sequencer = sequencer;
+      this.sequence = sequence;
+      this.streamId = streamId;
+    }
+
+    void write(final FullHttpResponse response) {
+      if (!ctx.executor()
+              .inEventLoop()) {
+        try {
+          ctx.executor()
+             .execute(new Runnable() {
+               @Override
+               public void run() {
+                 write(response);
+               }
+             });
+        } catch (RejectedExecutionException e) {
+          // the event loop is shutting down
+          response.release();
+        }
+        return;
+      }
+      if (!ctx.channel()
+              .isActive()) {
+        // the connection was closed while the handler ran
+        response.release();
+        return;
+      }
+      response.headers()
+              .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE)
+              .set(HttpHeaderNames.CONTENT_LENGTH, response.content()
+                                                           .readableBytes());
+      if (sequencer != null) {
+        sequencer.write(ctx, sequence, response);
+      } else {
+        response.headers()
+                .set(ExtensionHeaderNames.STREAM_ID.text(), streamId);
+        ctx.writeAndFlush(response);
+      }
+    }
+  }
+
+  /**
+   * Completion of an asynchronous handler. Its response is written once, either when the future
+   * completes or when the timeout fires first. The request is released and its admission
+   * completed when the future completes.
+   */
+  private class AsyncResponse implements GenericFutureListener<Future<FullHttpResponse>>, Runnable {
+    private final Future<FullHttpResponse> future;
+    private final FullHttpRequest request;
+    private final ResponseWriter writer;
+    private final Admission admission;
+    private final long arrivalNanos;
+    private final AtomicBoolean responded = new AtomicBoolean();
+    private volatile ScheduledFuture<?> timeout;
+
+    AsyncResponse(Future<FullHttpResponse> future, FullHttpRequest request,
+        ResponseWriter writer, Admission admission, long arrivalNanos) {
+      this.future = future;
+      this.request = request;
+      this.writer = writer;
+      this.admission = admission;
+      this.arrivalNanos = arrivalNanos;
+    }
+
+    @Override
+    public void operationComplete(Future<FullHttpResponse> future) {
+      request.release();
+      complete(admission, arrivalNanos);
+      final ScheduledFuture<?> scheduled = timeout;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+      if (!responded.compareAndSet(false, true)) {
+        // timed out already
+        if (future.isSuccess()) {
+          ReferenceCountUtil.release(future.getNow());
+        }
+        return;
+      }
+
+      FullHttpResponse response;
+      if (future.isSuccess()) {
+        response = future.getNow();
+      } else {
+        LOGGER.error("Exception occurred. Returning empty error response", future.cause());
+        response = newErrorResponse(future.cause());
+      }
+      writer.write(response);
+    }
+
+    /**
+     * Timeout of the handler.
+     */
+    @Override
+    public void run() {
+      if (!responded.compareAndSet(false, true)) {
+        return;
+      }
+      asyncTimeouts.incrementAndGet();
+      future.cancel(false);
+      writer.write(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+          HttpResponseStatus.SERVICE_UNAVAILABLE));
+    }
+  }
 }
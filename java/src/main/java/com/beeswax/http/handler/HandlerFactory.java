@@ -13,10 +13,19 @@ package com.beeswax.http.handler;
 
 /**
  * Handler Factory is responsible for creating handler object based on path info.</br>
- * The handler owns the logic to process request.
+ * The handler owns the logic to process request.</br>
+ * The factory also decides per path where the handler runs, see {@link ExecutionMode}.</br>
+ * </br>
+ * The lookup receives the raw request URI, including a query string and a trailing slash, and
+ * runs once for every request. Implementations should resolve it with a {@link Router} of
+ * {@link Route}s so that routing does not allocate.
  *
  */
 public interface HandlerFactory {
 
-  public RequestHandler getHandler(String path);
+  /**
+   * @param uri request URI
+   * @return handler of the path of the URI and the executor it runs on
+   */
+  public Route getRoute(String uri);
 }
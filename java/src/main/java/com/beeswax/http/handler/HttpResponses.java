@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * Utility class for building HTTP responses whose content is written into buffers of the
+ * channel {@link ByteBufAllocator}, which is pooled and direct by default, instead of wrapping
+ * heap arrays.
+ *
+ */
+public class HttpResponses {
+
+  /**
+   * Build a response with the given content.
+   *
+   * @param alloc channel allocator
+   * @param status
+   * @param content
+   * @return FullHttpResponse
+   */
+  public static FullHttpResponse newResponse(ByteBufAllocator alloc, HttpResponseStatus status,
+      byte[] content) {
+    final ByteBuf buffer = alloc.buffer(content.length);
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, buffer.writeBytes(content));
+  }
+
+  /**
+   * Build a response with UTF-8 encoded text content.
+   *
+   * @param alloc channel allocator
+   * @param status
+   * @param content
+   * @return FullHttpResponse
+   */
+  public static FullHttpResponse newResponse(ByteBufAllocator alloc, HttpResponseStatus status,
+      CharSequence content) {
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+        ByteBufUtil.writeUtf8(alloc, content));
+  }
+}
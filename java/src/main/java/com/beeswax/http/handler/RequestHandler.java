@@ -19,7 +19,8 @@ import io.netty.handler.codec.http.FullHttpResponse;
  * The interface of HTTP request handlers.</br>
  * Each supported end point in the server needs to implement this handler.</br>
  * NOTE: methods in this interface are executed in I/O thread so it has to be 
- * fully asynchronous or finished very quickly.</br>
+ * fully asynchronous or finished very quickly, unless the {@link HandlerFactory} runs the handler
+ * of its path on another {@link ExecutionMode}.</br>
  */
 public interface RequestHandler {
 
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * Keeps responses to pipelined HTTP/1.1 requests in request order.</br>
+ * </br>
+ * Every request read on a connection takes the next sequence number. A response is written as
+ * soon as all responses to earlier requests are written, otherwise it is held back until they
+ * are. Responses of handlers completing synchronously are therefore written immediately while
+ * a handler completing later cannot overtake or be overtaken.</br>
+ * </br>
+ * There is one sequencer per channel, see {@link #get(Channel)}. It is not thread safe and has to
+ * be used from the event loop of its channel.
+ *
+ */
+public class ResponseSequencer {
+  private static final AttributeKey<ResponseSequencer> SEQUENCER =
+      AttributeKey.valueOf(ResponseSequencer.class, "SEQUENCER");
+  private final IntObjectMap<FullHttpResponse> pending = new IntObjectHashMap<>(4);
+  private int nextRequest;
+  private int nextResponse;
+
+  /**
+   * @param channel
+   * @return sequencer of the channel, created on first use
+   */
+  public static ResponseSequencer get(Channel channel) {
+    final Attribute<ResponseSequencer> attribute = channel.attr(SEQUENCER);
+    ResponseSequencer sequencer = attribute.get();
+    if (sequencer == null) {
+      sequencer = new ResponseSequencer();
+      attribute.set(sequencer);
+    }
+    return sequencer;
+  }
+
+  /**
+   * @param channel
+   * @return sequencer of the channel, null if none was created
+   */
+  public static ResponseSequencer find(Channel channel) {
+    return channel.attr(SEQUENCER)
+                  .get();
+  }
+
+  /**
+   * @return sequence number of the request just read
+   */
+  public int nextSequence() {
+    return nextRequest++;
+  }
+
+  /**
+   * Write the response to the request with the sequence number, after the responses to all
+   * earlier requests.
+   *
+   * @param ctx
+   * @param sequence
+   * @param response
+   */
+  public void write(ChannelHandlerContext ctx, int sequence, FullHttpResponse response) {
+    if (sequence != nextResponse) {
+      pending.put(sequence, response);
+      return;
+    }
+    ctx.writeAndFlush(response);
+    nextResponse++;
+    FullHttpResponse next;
+    while ((next = pending.remove(nextResponse)) != null) {
+      ctx.writeAndFlush(next);
+      nextResponse++;
+    }
+  }
+
+  /**
+   * @return number of responses held back
+   */
+  public int pendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Release responses which were held back when the channel is closed.
+   */
+  public void release() {
+    for (FullHttpResponse response : pending.values()) {
+      response.release();
+    }
+    pending.clear();
+  }
+}
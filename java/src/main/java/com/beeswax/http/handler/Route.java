@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import java.util.concurrent.Executor;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Handler of a path together with the executor it runs on and its optional {@link Admission},
+ * resolved by a single lookup of the {@link HandlerFactory}.</br>
+ * </br>
+ * Immutable and built once per path, so that routing a request allocates nothing.
+ *
+ */
+public final class Route {
+  private final RequestHandler handler;
+  private final Executor executor;
+  private final Admission admission;
+
+  /**
+   * Route to a handler running on the I/O thread.
+   *
+   * @param handler
+   */
+  public Route(RequestHandler handler) {
+    this(handler, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param handler
+   * @param executor running the handler, {@link MoreExecutors#directExecutor()} to run it on the
+   *        I/O thread
+   */
+  public Route(RequestHandler handler, Executor executor) {
+    this(handler, executor, null);
+  }
+
+  /**
+   * @param handler
+   * @param executor running the handler, {@link MoreExecutors#directExecutor()} to run it on the
+   *        I/O thread
+   * @param admission admitting requests before they are queued on the executor, null to admit all
+   */
+  public Route(RequestHandler handler, Executor executor, Admission admission) {
+    this.handler = handler;
+    this.executor = executor;
+    this.admission = admission;
+  }
+
+  /**
+   * @return handler of the path
+   */
+  public RequestHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * @return executor running the handler
+   */
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * @return admission of the requests, null if all are admitted
+   */
+  public Admission getAdmission() {
+    return admission;
+  }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Precompiled lookup of values, e.g. request handlers, by request path.</br>
+ * </br>
+ * {@link #route(String)} takes the raw request URI and matches the characters up to the query
+ * string against the registered paths in a {@link StringTable}, ignoring a trailing slash, so
+ * that routing a request allocates nothing. The URI is not percent-decoded:
+ * registered paths have to be plain ASCII and are matched as sent.</br>
+ * </br>
+ * Immutable and thread safe.
+ *
+ * @param <T> type of the routed values
+ */
+public class Router<T> {
+  private final StringTable<T> table;
+  private final T defaultValue;
+
+  /**
+   * @param routes values by path, trailing slashes of the paths are ignored
+   * @param defaultValue value of unknown paths
+   * @throws IllegalArgumentException if two paths only differ by a trailing slash
+   */
+  public Router(Map<String, ? extends T> routes, T defaultValue) {
+    final StringTable.Builder<T> builder = StringTable.builder(false);
+    for (Entry<String, ? extends T> route : routes.entrySet()) {
+      final String path = route.getKey();
+      if (builder.put(path.substring(0, trimTrailingSlash(path, path.length())),
+          route.getValue()) != null) {
+        throw new IllegalArgumentException("Duplicate route " + path);
+      }
+    }
+    this.table = builder.build();
+    this.defaultValue = defaultValue;
+  }
+
+  /**
+   * @param uri raw request URI, e.g. /bid/?debug=1
+   * @return value registered for the path of the URI, the default value if there is none
+   */
+  public T route(String uri) {
+    final T value = table.get(uri, trimTrailingSlash(uri, pathEnd(uri)));
+    return value == null ? defaultValue : value;
+  }
+
+  /**
+   * @return index of the query string or fragment of the URI, its length if it has neither
+   */
+  private static int pathEnd(String uri) {
+    final int length = uri.length();
+    for (int i = 0; i < length; i++) {
+      final char c = uri.charAt(i);
+      if (c == '?' || c == '#') {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  private static int trimTrailingSlash(String path, int end) {
+    return end > 0 && path.charAt(end - 1) == '/' ? end - 1 : end;
+  }
+}
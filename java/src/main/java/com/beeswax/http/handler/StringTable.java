@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open addressing hash table of values by string key, built once so that a lookup allocates
+ * nothing.</br>
+ * </br>
+ * Keys are compared either exactly or ignoring case, folding characters as
+ * {@link String#equalsIgnoreCase(String)} compares them. A lookup may match the beginning of a
+ * string, e.g. the path of a request URI, so that callers do not have to cut it.</br>
+ * </br>
+ * Immutable and thread safe.
+ *
+ * @param <T> type of the values
+ */
+public final class StringTable<T> {
+  private final boolean ignoreCase;
+  private final String[] keys;
+  private final int[] hashes;
+  private final Object[] values;
+  private final int mask;
+
+  private StringTable(Builder<T> builder) {
+    this.ignoreCase = builder.ignoreCase;
+    int capacity = 4;
+    while (capacity < builder.keys.size() * 2) {
+      capacity <<= 1;
+    }
+    keys = new String[capacity];
+    hashes = new int[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+
+    for (int i = 0; i < builder.keys.size(); i++) {
+      final String key = builder.keys.get(i);
+      final int hash = hash(key, key.length(), ignoreCase);
+      int slot = hash & mask;
+      while (keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      hashes[slot] = hash;
+      values[slot] = builder.values.get(i);
+    }
+  }
+
+  /**
+   * @param ignoreCase true to compare keys ignoring case
+   * @return builder of a table
+   */
+  public static <T> Builder<T> builder(boolean ignoreCase) {
+    return new Builder<>(ignoreCase);
+  }
+
+  /**
+   * @param key
+   * @return value of the key, null if there is none
+   */
+  public T get(String key) {
+    return get(key, key.length());
+  }
+
+  /**
+   * @param string
+   * @param end length of the key at the beginning of the string
+   * @return value of the key, null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  public T get(String string, int end) {
+    final int hash = hash(string, end, ignoreCase);
+    int slot = hash & mask;
+    while (keys[slot] != null) {
+      if (hashes[slot] == hash && keys[slot].length() == end
+          && string.regionMatches(ignoreCase, 0, keys[slot], 0, end)) {
+        return (T) values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return null;
+  }
+
+  private static int hash(String string, int end, boolean ignoreCase) {
+    int hash = 0;
+    for (int i = 0; i < end; i++) {
+      final char c = string.charAt(i);
+      hash = 31 * hash + (ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c);
+    }
+    // spread the high bits over the slot index bits
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Builder of a {@link StringTable}. Not thread safe.
+   *
+   * @param <T> type of the values
+   */
+  public static final class Builder<T> {
+    private final boolean ignoreCase;
+    private final List<String> keys = new ArrayList<>();
+    private final List<T> values = new ArrayList<>();
+
+    private Builder(boolean ignoreCase) {
+      this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Add a value unless a value was already added with an equal key.
+     *
+     * @param key
+     * @param value not null, lookups return null for missing keys
+     * @return value already added with an equal key, which is kept, null if the key is new
+     */
+    public T put(String key, T value) {
+      for (int i = 0; i < keys.size(); i++) {
+        final String existing = keys.get(i);
+        if (existing.length() == key.length()
+            && existing.regionMatches(ignoreCase, 0, key, 0, key.length())) {
+          return values.get(i);
+        }
+      }
+      keys.add(key);
+      values.add(value);
+      return null;
+    }
+
+    /**
+     * @return table of the added values
+     */
+    public StringTable<T> build() {
+      return new StringTable<>(this);
+    }
+  }
+}
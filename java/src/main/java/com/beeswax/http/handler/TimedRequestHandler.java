@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+
+/**
+ * The interface of HTTP request handlers which measure their time from the arrival of the
+ * request rather than from the moment they are called.</br>
+ * </br>
+ * {@link GlobalHandler} reads the arrival time on the I/O thread when it receives the request and
+ * calls {@link #processRequest(ChannelHandlerContext, FullHttpRequest, long)} instead of
+ * {@link #processRequest(ChannelHandlerContext, FullHttpRequest)}, so that the time a request
+ * waited on the executor of its {@link Route} counts against its budget.
+ */
+public interface TimedRequestHandler extends RequestHandler {
+
+  /**
+   * The method to process HTTP request received at the given time.
+   *
+   * @param ChannelHandlerContext
+   * @param FullHttpRequest
+   * @param arrivalNanos time read from the ticker of {@link GlobalHandler} when the request was
+   *        received
+   *
+   * @return FullHttpResponse
+   */
+  public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request,
+      long arrivalNanos);
+}
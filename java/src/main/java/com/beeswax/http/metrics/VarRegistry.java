@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+/**
+ * Registry of server variables exposed by the /var end point.</br>
+ * </br>
+ * A variable is a named {@link Supplier} evaluated when the variables are read, so registering
+ * a gauge costs nothing on the request path. Counters are plain {@link AtomicLong}s.</br>
+ * Variable names are dot separated, e.g. "eventloop.worker.0.pending_tasks".</br>
+ * </br>
+ * The registry is thread safe. Components of the server share {@link #getDefault()}.
+ *
+ */
+public class VarRegistry {
+  private static final VarRegistry DEFAULT = new VarRegistry();
+  private final ConcurrentSkipListMap<String, Supplier<?>> vars = new ConcurrentSkipListMap<>();
+
+  /**
+   * @return registry shared by the server components
+   */
+  public static VarRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Register a variable. Replaces any variable previously registered with the same name.
+   *
+   * @param name
+   * @param supplier evaluated on every read of the variables
+   */
+  public void register(String name, Supplier<?> supplier) {
+    vars.put(name, supplier);
+  }
+
+  /**
+   * Get or create a counter variable.
+   *
+   * @param name
+   * @return AtomicLong counter
+   * @throws IllegalStateException if the name is already used by a variable which is not a counter
+   */
+  public AtomicLong counter(String name) throws IllegalStateException {
+    final Supplier<?> existing = vars.get(name);
+    if (existing instanceof Counter) {
+      return ((Counter) existing).value;
+    }
+    if (existing != null) {
+      throw new IllegalStateException("Variable is not a counter : " + name);
+    }
+    final Counter counter = new Counter();
+    final Supplier<?> raced = vars.putIfAbsent(name, counter);
+    return raced == null ? counter.value : counter(name);
+  }
+
+  /**
+   * Register a constant variable.
+   *
+   * @param name
+   * @param value
+   */
+  public void constant(String name, Object value) {
+    register(name, Suppliers.ofInstance(value));
+  }
+
+  /**
+   * Remove all variables whose name starts with the prefix.
+   *
+   * @param prefix
+   */
+  public void removeAll(String prefix) {
+    vars.subMap(prefix, prefix + Character.MAX_VALUE)
+        .clear();
+  }
+
+  /**
+   * @return current values of all variables sorted by name
+   */
+  public SortedMap<String, Object> snapshot() {
+    final SortedMap<String, Object> snapshot = new TreeMap<>();
+    for (Map.Entry<String, Supplier<?>> var : vars.entrySet()) {
+      snapshot.put(var.getKey(), var.getValue()
+                                    .get());
+    }
+    return snapshot;
+  }
+
+  private static class Counter implements Supplier<Long> {
+    private final AtomicLong value = new AtomicLong();
+
+    @Override
+    public Long get() {
+      return value.get();
+    }
+  }
+}
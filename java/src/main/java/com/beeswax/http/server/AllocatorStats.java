@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Supplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+
+/**
+ * Exports {@link PooledByteBufAllocator} statistics to {@link VarRegistry}:</br>
+ * </br>
+ * allocator.chunk_size - size of the memory chunks arenas allocate from the system</br>
+ * allocator.heap|direct.arenas - number of arenas</br>
+ * allocator.heap|direct.active_bytes - bytes currently allocated from the arenas' chunks</br>
+ * allocator.heap|direct.active_allocations - buffers currently allocated and not released</br>
+ * allocator.heap|direct.allocations - buffers allocated since start</br>
+ * allocator.heap|direct.thread_caches - threads holding a cache of the arenas</br>
+ * allocator.leaks - buffers reported by {@link ResourceLeakDetector} as garbage collected
+ * without being released</br>
+ *
+ */
+public class AllocatorStats {
+  private static final String LEAKS = "allocator.leaks";
+
+  /**
+   * Register statistics of the allocator.
+   *
+   * @param allocator
+   * @param chunkSize chunk size the allocator was created with
+   * @param registry
+   */
+  public static void register(final PooledByteBufAllocator allocator, int chunkSize,
+      VarRegistry registry) {
+    registry.removeAll("allocator.heap.");
+    registry.removeAll("allocator.direct.");
+    registry.constant("allocator.chunk_size", chunkSize);
+    registerArenas("allocator.heap.", allocator.heapArenas(), registry);
+    registerArenas("allocator.direct.", allocator.directArenas(), registry);
+    registry.register("allocator.thread_local_caches", new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        return allocator.numThreadLocalCaches();
+      }
+    });
+    registry.counter(LEAKS);
+  }
+
+  /**
+   * Count leaks reported by {@link ResourceLeakDetector} in {@link VarRegistry}.</br>
+   * Must be called before the first {@link ByteBuf} is created because Netty creates its buffer
+   * leak detector once, when the buffer classes are initialized.
+   *
+   * @param registry
+   */
+  public static void installLeakCounter(VarRegistry registry) {
+    final AtomicLong leaks = registry.counter(LEAKS);
+    ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(new ResourceLeakDetectorFactory() {
+      @Override
+      public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource,
+          int samplingInterval, long maxActive) {
+        return new CountingLeakDetector<>(resource, samplingInterval, maxActive, leaks);
+      }
+    });
+  }
+
+  private static void registerArenas(String prefix, final List<PoolArenaMetric> arenas,
+      VarRegistry registry) {
+    registry.constant(prefix + "arenas", arenas.size());
+    registry.register(prefix + "active_bytes", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        long total = 0;
+        for (PoolArenaMetric arena : arenas) {
+          total += arena.numActiveBytes();
+        }
+        return total;
+      }
+    });
+    registry.register(prefix + "active_allocations", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        long total = 0;
+        for (PoolArenaMetric arena : arenas) {
+          total += arena.numActiveAllocations();
+        }
+        return total;
+      }
+    });
+    registry.register(prefix + "allocations", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        long total = 0;
+        for (PoolArenaMetric arena : arenas) {
+          total += arena.numAllocations();
+        }
+        return total;
+      }
+    });
+    registry.register(prefix + "thread_caches", new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        int total = 0;
+        for (PoolArenaMetric arena : arenas) {
+          total += arena.numThreadCaches();
+        }
+        return total;
+      }
+    });
+  }
+
+  private static class CountingLeakDetector<T> extends ResourceLeakDetector<T> {
+    private final AtomicLong leaks;
+
+    CountingLeakDetector(Class<T> resource, int samplingInterval, long maxActive,
+        AtomicLong leaks) {
+      super(resource, samplingInterval, maxActive);
+      this.leaks = leaks;
+    }
+
+    @Override
+    protected void reportTracedLeak(String resourceType, String records) {
+      leaks.incrementAndGet();
+      super.reportTracedLeak(resourceType, records);
+    }
+
+    @Override
+    protected void reportUntracedLeak(String resourceType) {
+      leaks.incrementAndGet();
+      super.reportUntracedLeak(resourceType);
+    }
+  }
+}
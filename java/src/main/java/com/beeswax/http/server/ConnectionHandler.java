@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.beeswax.http.handler.ConnectionStats;
+import com.beeswax.http.handler.GlobalHandler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.timeout.WriteTimeoutException;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+
+/**
+ * Manages the lifecycle of a connection:</br>
+ * </br>
+ * - closes connections accepted beyond the maximum of {@link ConnectionMetrics}.</br>
+ * - closes connections which stay idle, signalled by {@link IdleStateHandler}, and connections
+ * whose writes time out, signalled by {@link WriteTimeoutHandler}.</br>
+ * - closes connections which do not complete a request within the read timeout after its first
+ * bytes were read, so that clients trickling a request byte by byte cannot hold the connection.
+ * {@link GlobalHandler} marks requests as received in the {@link ConnectionStats}. HTTP/2
+ * connections also read control frames between requests so the read timeout only applies to
+ * HTTP/1.1, see {@link #stopReadTimeout()}.</br>
+ * - records bytes read and written in the {@link ConnectionStats} of the channel and reports them
+ * to the {@link ConnectionMetrics}.</br>
+ * </br>
+ * Not sharable: it holds the read timer of its channel. It has to be placed after the timeout
+ * handlers to receive their events and before the HTTP codec to see the bytes of the socket.
+ *
+ */
+public class ConnectionHandler extends ChannelDuplexHandler {
+  private static final Logger LOGGER = LogManager.getLogger(ConnectionHandler.class);
+  private final ConnectionMetrics metrics;
+  private long readTimeoutNanos;
+  private ConnectionStats stats;
+  private ScheduledFuture<?> readTimer;
+
+  /**
+   * @param metrics
+   * @param readTimeoutMillis time to receive a request after its first bytes, 0 to disable
+   */
+  public ConnectionHandler(ConnectionMetrics metrics, long readTimeoutMillis) {
+    this.metrics = metrics;
+    this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+  }
+
+  @Override
+  public void channelActive(ChannelHandlerContext ctx) throws Exception {
+    if (!metrics.tryOpen()) {
+      LOGGER.debug("Max connections reached, closing {}", ctx.channel());
+      ctx.close();
+      return;
+    }
+    stats = ConnectionStats.get(ctx.channel());
+    super.channelActive(ctx);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    cancelReadTimer();
+    if (stats != null) {
+      metrics.close(stats);
+      stats = null;
+      super.channelInactive(ctx);
+    }
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (stats != null && msg instanceof ByteBuf) {
+      final int bytes = ((ByteBuf) msg).readableBytes();
+      metrics.bytesRead(bytes);
+      if (stats.bytesRead(bytes) && readTimeoutNanos > 0 && readTimer == null) {
+        scheduleReadTimer(ctx, readTimeoutNanos);
+      }
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (stats != null && msg instanceof ByteBuf) {
+      final int bytes = ((ByteBuf) msg).readableBytes();
+      stats.bytesWritten(bytes);
+      metrics.bytesWritten(bytes);
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (evt instanceof IdleStateEvent) {
+      LOGGER.debug("Closing idle connection {}", ctx.channel());
+      metrics.idleTimeout();
+      ctx.close();
+      return;
+    }
+    super.userEventTriggered(ctx, evt);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+    if (cause instanceof WriteTimeoutException) {
+      // WriteTimeoutHandler closes the connection, there is nobody to answer
+      LOGGER.debug("Write timed out on {}", ctx.channel());
+      metrics.writeTimeout();
+      ctx.close();
+      return;
+    }
+    super.exceptionCaught(ctx, cause);
+  }
+
+  /**
+   * Stop timing requests, e.g. once the connection is upgraded to HTTP/2.
+   */
+  public void stopReadTimeout() {
+    readTimeoutNanos = 0;
+    cancelReadTimer();
+  }
+
+  private void scheduleReadTimer(final ChannelHandlerContext ctx, long delayNanos) {
+    readTimer = ctx.executor()
+                   .schedule(new Runnable() {
+                     @Override
+                     public void run() {
+                       readTimer = null;
+                       checkReadTimeout(ctx);
+                     }
+                   }, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void checkReadTimeout(ChannelHandlerContext ctx) {
+    if (stats == null || readTimeoutNanos <= 0 || !stats.isRequestPending()) {
+      return;
+    }
+    final long remainingNanos = stats.requestStartNanos() + readTimeoutNanos - System.nanoTime();
+    if (remainingNanos > 0) {
+      // an earlier request completed and a later one started since the timer was scheduled
+      scheduleReadTimer(ctx, remainingNanos);
+      return;
+    }
+    LOGGER.debug("Request not received within the read timeout, closing {}", ctx.channel());
+    metrics.readTimeout();
+    ctx.close();
+  }
+
+  private void cancelReadTimer() {
+    if (readTimer != null) {
+      readTimer.cancel(false);
+      readTimer = null;
+    }
+  }
+}
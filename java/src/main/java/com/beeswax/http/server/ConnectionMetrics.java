@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.beeswax.http.handler.ConnectionStats;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Supplier;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Aggregates the {@link ConnectionStats} of all connections into {@link VarRegistry} and enforces
+ * the maximum number of open connections:</br>
+ * </br>
+ * http.connections.open - connections currently open</br>
+ * http.connections.accepted/rejected - connections accepted and closed right away because the
+ * maximum was reached</br>
+ * http.connections.closed - accepted connections closed since</br>
+ * http.connections.idle_timeouts/read_timeouts/write_timeouts - connections closed by a
+ * timeout</br>
+ * http.connections.bytes_in/bytes_out - bytes read and written by all connections</br>
+ * http.connections.requests_per_connection - average requests received by closed
+ * connections</br>
+ * http.connections.lifetime_ms - average lifetime of closed connections</br>
+ * </br>
+ * Shared by all channels, thread safe.
+ *
+ */
+public class ConnectionMetrics {
+  private static final String PREFIX = "http.connections.";
+  private final int maxConnections;
+  private final AtomicInteger open = new AtomicInteger();
+  private final AtomicLong accepted;
+  private final AtomicLong rejected;
+  private final AtomicLong closed;
+  private final AtomicLong idleTimeouts;
+  private final AtomicLong readTimeouts;
+  private final AtomicLong writeTimeouts;
+  // added to by every event loop, striped where the runtime has a LongAdder
+  private final LongCounter bytesIn = PlatformDependent.newLongCounter();
+  private final LongCounter bytesOut = PlatformDependent.newLongCounter();
+  private final LongCounter closedRequests = PlatformDependent.newLongCounter();
+  private final LongCounter closedLifetimeNanos = PlatformDependent.newLongCounter();
+
+  /**
+   * @param maxConnections maximum number of open connections, 0 for no limit
+   * @param registry
+   */
+  public ConnectionMetrics(int maxConnections, VarRegistry registry) {
+    this.maxConnections = maxConnections;
+    accepted = registry.counter(PREFIX + "accepted");
+    rejected = registry.counter(PREFIX + "rejected");
+    closed = registry.counter(PREFIX + "closed");
+    idleTimeouts = registry.counter(PREFIX + "idle_timeouts");
+    readTimeouts = registry.counter(PREFIX + "read_timeouts");
+    writeTimeouts = registry.counter(PREFIX + "write_timeouts");
+    registry.register(PREFIX + "open", new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        return open.get();
+      }
+    });
+    registry.register(PREFIX + "bytes_in", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return bytesIn.value();
+      }
+    });
+    registry.register(PREFIX + "bytes_out", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return bytesOut.value();
+      }
+    });
+    registry.register(PREFIX + "requests_per_connection", new Supplier<Double>() {
+      @Override
+      public Double get() {
+        final long count = closed.get();
+        return count == 0 ? 0.0 : (double) closedRequests.value() / count;
+      }
+    });
+    registry.register(PREFIX + "lifetime_ms", new Supplier<Long>() {
+      @Override
+      public Long get() {
+        final long count = closed.get();
+        return count == 0 ? 0
+            : TimeUnit.NANOSECONDS.toMillis(closedLifetimeNanos.value() / count);
+      }
+    });
+  }
+
+  /**
+   * Open a connection unless the maximum number of connections is open.
+   *
+   * @return true if the connection may stay open
+   */
+  public boolean tryOpen() {
+    if (open.incrementAndGet() > maxConnections && maxConnections > 0) {
+      open.decrementAndGet();
+      rejected.incrementAndGet();
+      return false;
+    }
+    accepted.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Close a connection opened by {@link #tryOpen()}.
+   *
+   * @param stats
+   */
+  public void close(ConnectionStats stats) {
+    open.decrementAndGet();
+    closed.incrementAndGet();
+    closedRequests.add(stats.requests());
+    closedLifetimeNanos.add(System.nanoTime() - stats.openedNanos());
+  }
+
+  public void bytesRead(int bytes) {
+    bytesIn.add(bytes);
+  }
+
+  public void bytesWritten(int bytes) {
+    bytesOut.add(bytes);
+  }
+
+  public void idleTimeout() {
+    idleTimeouts.incrementAndGet();
+  }
+
+  public void readTimeout() {
+    readTimeouts.incrementAndGet();
+  }
+
+  public void writeTimeout() {
+    writeTimeouts.incrementAndGet();
+  }
+}
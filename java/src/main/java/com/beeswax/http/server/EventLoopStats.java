@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Supplier;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * Exports per event loop statistics of an {@link EventLoopGroup} to {@link VarRegistry}:</br>
+ * </br>
+ * eventloop.GROUP.N.thread - name of the loop thread</br>
+ * eventloop.GROUP.N.pending_tasks - number of tasks waiting in the loop task queue</br>
+ * eventloop.GROUP.N.busy_ms - CPU time consumed by the loop thread. An idle loop blocked in
+ * select/epoll_wait does not consume CPU so this is the time spent on I/O and tasks.</br>
+ *
+ */
+public class EventLoopStats {
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  /**
+   * Register statistics of every loop of the group.</br>
+   * Each loop records its thread with a task submitted to it, which also starts the loop.
+   *
+   * @param groupName
+   * @param group
+   * @param registry
+   */
+  public static void register(String groupName, EventLoopGroup group, VarRegistry registry) {
+    final String prefix = "eventloop." + groupName + ".";
+    registry.removeAll(prefix);
+
+    int count = 0;
+    for (EventExecutor ignored : group) {
+      count++;
+    }
+    final AtomicReferenceArray<Thread> threads = new AtomicReferenceArray<>(count);
+
+    int index = 0;
+    for (final EventExecutor loop : group) {
+      final int loopIndex = index++;
+      final String loopPrefix = prefix + loopIndex + ".";
+      loop.execute(new Runnable() {
+        @Override
+        public void run() {
+          threads.set(loopIndex, Thread.currentThread());
+        }
+      });
+
+      registry.register(loopPrefix + "thread", new Supplier<String>() {
+        @Override
+        public String get() {
+          final Thread thread = threads.get(loopIndex);
+          return thread == null ? "" : thread.getName();
+        }
+      });
+      if (loop instanceof SingleThreadEventExecutor) {
+        registry.register(loopPrefix + "pending_tasks", new Supplier<Integer>() {
+          @Override
+          public Integer get() {
+            return ((SingleThreadEventExecutor) loop).pendingTasks();
+          }
+        });
+      }
+      registry.register(loopPrefix + "busy_ms", new Supplier<Long>() {
+        @Override
+        public Long get() {
+          final Thread thread = threads.get(loopIndex);
+          if (thread == null || !THREAD_MX_BEAN.isThreadCpuTimeSupported()) {
+            return -1L;
+          }
+          return TimeUnit.NANOSECONDS.toMillis(THREAD_MX_BEAN.getThreadCpuTime(thread.getId()));
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.ImmutableList;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import net.openhft.affinity.Affinity;
+
+/**
+ * Thread factory for event loops.</br>
+ * </br>
+ * Threads are named "prefix-N" and created as {@link FastThreadLocalThread}s.
+ * When a CPU list is given, the N-th thread pins itself to CPU list[N % size] before running
+ * its event loop so that a loop and the connections it owns stay on one core.</br>
+ * Pinning is best effort: it is skipped with a warning when the platform does not support it.
+ *
+ */
+public class EventLoopThreadFactory implements ThreadFactory {
+  private static final Logger LOGGER = LogManager.getLogger(EventLoopThreadFactory.class);
+  private final String namePrefix;
+  private final List<Integer> cpus;
+  private final AtomicInteger nextId = new AtomicInteger();
+
+  /**
+   * @param namePrefix thread name prefix
+   * @param cpus CPU ids to pin threads to, empty to disable pinning
+   */
+  public EventLoopThreadFactory(String namePrefix, List<Integer> cpus) {
+    this.namePrefix = namePrefix;
+    this.cpus = ImmutableList.copyOf(cpus);
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    final int id = nextId.getAndIncrement();
+    final int cpu = cpus.isEmpty() ? -1 : cpus.get(id % cpus.size());
+    return new FastThreadLocalThread(new PinnedRunnable(runnable, cpu), namePrefix + "-" + id);
+  }
+
+  private static class PinnedRunnable implements Runnable {
+    private final Runnable runnable;
+    private final int cpu;
+
+    PinnedRunnable(Runnable runnable, int cpu) {
+      this.runnable = runnable;
+      this.cpu = cpu;
+    }
+
+    @Override
+    public void run() {
+      if (cpu >= 0) {
+        try {
+          Affinity.setAffinity(cpu);
+          LOGGER.info("Pinned {} to CPU {}", Thread.currentThread()
+                                                   .getName(), cpu);
+        } catch (Throwable t) {
+          LOGGER.warn("Failed to pin {} to CPU {}", Thread.currentThread()
+                                                          .getName(), cpu, t);
+        }
+      }
+      try {
+        runnable.run();
+      } finally {
+        FastThreadLocal.removeAll();
+      }
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.beeswax.http.handler.GlobalHandler;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Supplier;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+/**
+ * Counts flushes which reach the socket.</br>
+ * </br>
+ * Placed at the head of the pipeline, in front of the {@link FlushConsolidationHandler}, so that
+ * consolidated flushes are not counted. Exports "http.flushes" and "http.flushes_per_request",
+ * the ratio to the "http.requests" counter of the global handler. A ratio below 1 means that
+ * responses to pipelined requests share flushes.
+ *
+ */
+@Sharable
+public class FlushCounter extends ChannelOutboundHandlerAdapter {
+  private final AtomicLong flushes;
+
+  public FlushCounter(VarRegistry registry) {
+    flushes = registry.counter("http.flushes");
+    final AtomicLong requests = registry.counter(GlobalHandler.REQUESTS);
+    registry.register("http.flushes_per_request", new Supplier<Double>() {
+      @Override
+      public Double get() {
+        final long requestCount = requests.get();
+        return requestCount == 0 ? 0.0 : (double) flushes.get() / requestCount;
+      }
+    });
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) throws Exception {
+    flushes.incrementAndGet();
+    ctx.flush();
+  }
+}
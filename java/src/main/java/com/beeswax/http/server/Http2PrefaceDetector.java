@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+
+/**
+ * Detects cleartext HTTP/2 connections with prior knowledge.</br>
+ * </br>
+ * Inspects the first bytes received on a connection. When they are the HTTP/2 client connection
+ * preface the HTTP/1.1 handlers are replaced by HTTP/2 handlers, see
+ * {@link HttpServerChannelInitializer#configureHttp2(io.netty.channel.ChannelPipeline)}. In both
+ * cases the detector removes itself and passes the received bytes on untouched.</br>
+ * </br>
+ * Not sharable: it buffers the bytes received so far on its channel.
+ *
+ */
+public class Http2PrefaceDetector extends ByteToMessageDecoder {
+  private static final ByteBuf PREFACE = Http2CodecUtil.connectionPrefaceBuf();
+  private final HttpServerChannelInitializer initializer;
+
+  public Http2PrefaceDetector(HttpServerChannelInitializer initializer) {
+    this.initializer = initializer;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+    final int length = Math.min(in.readableBytes(), PREFACE.readableBytes());
+    if (!ByteBufUtil.equals(PREFACE, PREFACE.readerIndex(), in, in.readerIndex(), length)) {
+      ctx.pipeline()
+         .remove(this);
+    } else if (length == PREFACE.readableBytes()) {
+      initializer.configureHttp2(ctx.pipeline());
+      ctx.pipeline()
+         .remove(this);
+    }
+  }
+}
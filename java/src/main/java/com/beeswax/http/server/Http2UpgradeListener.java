@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeEvent;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+
+/**
+ * Completes an HTTP/1.1 to h2c upgrade.</br>
+ * </br>
+ * {@link HttpServerUpgradeHandler} answers the upgrade request with 101 and installs the HTTP/2
+ * handler but does not process the request itself. On the {@link UpgradeEvent} this handler removes
+ * the remaining HTTP/1.1 handlers and passes the upgrade request on as stream 1, which is the
+ * stream its response has to be sent on. It also raises the connection flow control window,
+ * see {@link HttpServerChannelInitializer#openConnectionWindow}.</br>
+ * Every other message passes through.
+ *
+ */
+@Sharable
+public class Http2UpgradeListener extends ChannelInboundHandlerAdapter {
+  private static final int UPGRADE_STREAM_ID = 1;
+  private final int connectionWindowSize;
+
+  /**
+   * @param connectionWindowSize HTTP/2 connection flow control window
+   */
+  public Http2UpgradeListener(int connectionWindowSize) {
+    this.connectionWindowSize = connectionWindowSize;
+  }
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (!(evt instanceof UpgradeEvent)) {
+      super.userEventTriggered(ctx, evt);
+      return;
+    }
+
+    final UpgradeEvent event = (UpgradeEvent) evt;
+    try {
+      HttpServerChannelInitializer.removeHttp1Handlers(ctx.pipeline());
+      HttpServerChannelInitializer.openConnectionWindow(ctx.pipeline(), connectionWindowSize);
+      final FullHttpRequest request = event.upgradeRequest()
+                                           .retain();
+      request.headers()
+             .setInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), UPGRADE_STREAM_ID);
+      ctx.fireChannelRead(request);
+      ctx.pipeline()
+         .remove(this);
+    } finally {
+      event.release();
+    }
+  }
+}
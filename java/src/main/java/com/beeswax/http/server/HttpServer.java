@@ -11,59 +11,146 @@
  *******************************************************************************/
 package com.beeswax.http.server;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import com.beeswax.http.config.ServerConfig;
+import com.beeswax.http.handler.ExecutorHandlerFactory;
 import com.beeswax.http.handler.HandlerFactory;
+import com.beeswax.http.metrics.VarRegistry;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.ResourceLeakDetector;
 
 /**
- * Http Server handles HTTP requests.
+ * Http Server handles HTTP requests.</br>
+ * </br>
+ * The server binds {@link ServerConfig#acceptorCount} listening sockets to the configured port.
+ * More than one acceptor requires a transport supporting SO_REUSEPORT, see {@link Transport}.</br>
+ * </br>
+ * Event loop threads are created by {@link EventLoopThreadFactory} and their statistics are
+ * exported by {@link EventLoopStats}.</br>
+ * Channels allocate buffers from a {@link PooledByteBufAllocator} configured by {@link ServerConfig}
+ * whose statistics are exported by {@link AllocatorStats}.
  *
  */
 public class HttpServer {
+  private static final Logger LOGGER = LogManager.getLogger(HttpServer.class);
+
+  static {
+    // Has to run before the first buffer is created, see AllocatorStats#installLeakCounter
+    AllocatorStats.installLeakCounter(VarRegistry.getDefault());
+  }
+
   private final ServerConfig serverConfig;
   private final HandlerFactory handlerFactory;
+  private final List<Channel> serverChannels = new ArrayList<>();
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
 
   public HttpServer(ServerConfig serverConfig, HandlerFactory handlerFactory) {
     this.serverConfig = serverConfig;
     this.handlerFactory = handlerFactory;
   }
 
+  /**
+   * Start the server and block until all listening sockets are closed.
+   *
+   * @throws InterruptedException
+   */
   public void run() throws InterruptedException {
+    try {
+      start();
+
+      // Wait until the server sockets are closed.
+      for (Channel channel : serverChannels) {
+        channel.closeFuture()
+               .sync();
+      }
+    } finally {
+      stop();
+    }
+  }
+
+  /**
+   * Bind listening sockets and return once the server accepts connections.
+   *
+   * @throws InterruptedException
+   */
+  public void start() throws InterruptedException {
+    final Transport transport = serverConfig.transport;
     // Create event loop groups. One for incoming connections handling and
-    // second for handling actual event by workers
-    final NioEventLoopGroup bossGroup = new NioEventLoopGroup(serverConfig.bossGroupSize);
-    final NioEventLoopGroup workerGroup = new NioEventLoopGroup();
+    // second for handling actual event by workers.
+    // Each listening socket is registered to its own boss event loop.
+    bossGroup = transport.newEventLoopGroup(
+        Math.max(serverConfig.bossGroupSize, serverConfig.acceptorCount),
+        new EventLoopThreadFactory(serverConfig.bossThreadName, serverConfig.bossCpus));
+    workerGroup = transport.newEventLoopGroup(serverConfig.workerGroupSize,
+        new EventLoopThreadFactory(serverConfig.workerThreadName, serverConfig.workerCpus));
+    EventLoopStats.register("boss", bossGroup, VarRegistry.getDefault());
+    EventLoopStats.register("worker", workerGroup, VarRegistry.getDefault());
 
-    try {
-      ServerBootstrap bootStrap = new ServerBootstrap();
-      bootStrap.group(bossGroup, workerGroup)
-               .channel(NioServerSocketChannel.class)
-               .handler(new LoggingHandler(LogLevel.INFO))
-               // SO_BACKLOG : The maximum queue length for incoming connections.
-               .option(ChannelOption.SO_BACKLOG, serverConfig.backlogSize)
-               // TCP_NODELAY: option to disable Nagle's algorithm to achieve lower latency on every packet sent
-               .option(ChannelOption.TCP_NODELAY, serverConfig.tcpNodelay)
-               // SO_KEEPALIVE: option to enable keep-alive packets for a socket connection
-               .childOption(ChannelOption.SO_KEEPALIVE, serverConfig.keepAlive)
-               .childHandler(new HttpServerChannelInitializer(serverConfig, handlerFactory));
+    ResourceLeakDetector.setLevel(serverConfig.leakDetectionLevel);
+    final PooledByteBufAllocator allocator = serverConfig.newAllocator();
+    AllocatorStats.register(allocator, serverConfig.allocatorChunkSize(), VarRegistry.getDefault());
 
-      // bind to port
-      final ChannelFuture channelFuture = bootStrap.bind(serverConfig.port)
-                                                   .sync();
+    final ServerBootstrap bootStrap = new ServerBootstrap();
+    bootStrap.group(bossGroup, workerGroup)
+             .channel(transport.serverChannelClass())
+             .handler(new LoggingHandler(LogLevel.INFO))
+             // SO_BACKLOG : The maximum queue length for incoming connections.
+             .option(ChannelOption.SO_BACKLOG, serverConfig.backlogSize)
+             .option(ChannelOption.ALLOCATOR, allocator)
+             .childOption(ChannelOption.ALLOCATOR, allocator)
+             // TCP_NODELAY: option to disable Nagle's algorithm to achieve lower latency on every packet sent
+             .option(ChannelOption.TCP_NODELAY, serverConfig.tcpNodelay)
+             // SO_KEEPALIVE: option to enable keep-alive packets for a socket connection
+             .childOption(ChannelOption.SO_KEEPALIVE, serverConfig.keepAlive)
+             .childHandler(new HttpServerChannelInitializer(serverConfig, handlerFactory));
+    // SO_REUSEPORT: lets the kernel balance incoming connections across listening sockets
+    transport.configure(bootStrap, serverConfig.acceptorCount > 1);
 
-      // Wait until the server socket is closed.
-      channelFuture.channel()
-                   .closeFuture()
-                   .sync();
-    } finally {
+    // bind to port
+    for (int i = 0; i < serverConfig.acceptorCount; i++) {
+      serverChannels.add(bootStrap.bind(serverConfig.port)
+                                  .sync()
+                                  .channel());
+    }
+    LOGGER.info("Listening on port {} with {} {} acceptor(s)", serverConfig.port,
+        serverConfig.acceptorCount, transport);
+  }
+
+  /**
+   * Close listening sockets, shut down the executor of an {@link ExecutorHandlerFactory} and the
+   * event loops. Requests already queued on the executor still run.
+   */
+  public void stop() {
+    for (Channel channel : serverChannels) {
+      channel.close()
+             .awaitUninterruptibly();
+    }
+    serverChannels.clear();
+    if (handlerFactory instanceof ExecutorHandlerFactory) {
+      final Executor executor = ((ExecutorHandlerFactory) handlerFactory).getExecutor();
+      if (executor instanceof ExecutorService) {
+        ((ExecutorService) executor).shutdown();
+      }
+    }
+    if (bossGroup != null) {
       bossGroup.shutdownGracefully();
+    }
+    if (workerGroup != null) {
       workerGroup.shutdownGracefully();
     }
   }
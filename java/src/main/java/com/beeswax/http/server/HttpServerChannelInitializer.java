@@ -11,51 +11,217 @@
  *******************************************************************************/
 package com.beeswax.http.server;
 
+import java.util.concurrent.TimeUnit;
+
 import com.beeswax.http.config.ServerConfig;
 import com.beeswax.http.handler.GlobalHandler;
 import com.beeswax.http.handler.HandlerFactory;
+import com.beeswax.http.metrics.VarRegistry;
 import com.google.common.annotations.VisibleForTesting;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeCodecFactory;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.DefaultHttp2LocalFlowController;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2LocalFlowController;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Stream;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import io.netty.util.AsciiString;
 
 /**
  * Initialize Pipeline Channel for HTTP Server.
  *
  */
-public class HttpServerChannelInitializer extends ChannelInitializer<SocketChannel> {
+public class HttpServerChannelInitializer extends ChannelInitializer<Channel> {
+  private static final String HTTP2_HANDLER = "http2";
   private final ServerConfig serverConfig;
   private final GlobalHandler globalHandler;
+  private final Http2UpgradeListener upgradeListener;
+  private final FlushCounter flushCounter = new FlushCounter(VarRegistry.getDefault());
+  private final ConnectionMetrics connectionMetrics;
 
   public HttpServerChannelInitializer(ServerConfig serverConfig, HandlerFactory handlerFactory) {
-    this(serverConfig, new GlobalHandler(handlerFactory));
+    this(serverConfig, new GlobalHandler(handlerFactory, serverConfig.asyncTimeoutMillis),
+        new ConnectionMetrics(serverConfig.maxConnections, VarRegistry.getDefault()));
   }
 
   @VisibleForTesting
-  private HttpServerChannelInitializer(ServerConfig config, GlobalHandler handler) {
+  HttpServerChannelInitializer(ServerConfig config, GlobalHandler handler,
+      ConnectionMetrics metrics) {
     serverConfig = config;
     globalHandler = handler;
+    connectionMetrics = metrics;
+    upgradeListener = new Http2UpgradeListener(config.http2InitialWindowSize);
   }
 
   /**
    * Configure the channel pipeline with the following handler in order:</br>
    * </br>
+   * {@link IdleStateHandler} - only when the idle timeout is above 0. Signals connections on which
+   * nothing was read or written for the idle timeout.</br>
+   * {@link WriteTimeoutHandler} - only when the write timeout is above 0. Fails writes which do not
+   * complete in time, e.g. because the client stopped reading.</br>
+   * {@link ConnectionHandler} - enforces max connections, closes timed out connections and
+   * records per connection statistics.</br>
+   * {@link FlushCounter} - counts flushes reaching the socket.</br>
+   * {@link FlushConsolidationHandler} - only when the max flush batch is above 0. Defers flushes
+   * of responses written while requests are read until the read completes or the batch is full,
+   * so that responses to pipelined requests share a write.</br>
+   * {@link Http2PrefaceDetector} - only when h2c is enabled. Switches the pipeline to HTTP/2 when
+   * the client starts with the HTTP/2 connection preface.</br>
    * {@link HttpServerCodec} - decodes/encodes {@link ByteBuf} into/from {@link HttpRequest} and
    * {@link HttpContent}</br>
+   * {@link HttpServerUpgradeHandler} and {@link Http2UpgradeListener} - only when h2c is enabled.
+   * Upgrade the connection to HTTP/2 on an "Upgrade: h2c" request.</br>
+   * {@link StreamingBodyHandler} - only when streaming paths are configured. Collects bodies of
+   * requests to those paths into a composite buffer and passes them on as {@link FullHttpRequest}
+   * which the aggregator lets through.</br>
    * {@link HttpObjectAggregator} - aggregates an {@link HttpMessage} and its following {@link HttpContent}s into a
    * single {@link FullHttpRequest} or {@link FullHttpResponse}.</br>
    * {@link GlobalHandler} - handles request processing for all end points.</br>
    */
   @Override
-  protected void initChannel(SocketChannel ch) throws Exception {
-    ch.pipeline()
-      .addLast("codec", new HttpServerCodec())
-      .addLast("http-aggregator", new HttpObjectAggregator(serverConfig.maxRequestSize))
-      .addLast("global-handler", this.globalHandler);
+  protected void initChannel(Channel ch) throws Exception {
+    final ChannelPipeline pipeline = ch.pipeline();
+    if (serverConfig.idleTimeoutMillis > 0) {
+      pipeline.addLast("idle",
+          new IdleStateHandler(0, 0, serverConfig.idleTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+    if (serverConfig.writeTimeoutMillis > 0) {
+      pipeline.addLast("write-timeout",
+          new WriteTimeoutHandler(serverConfig.writeTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+    pipeline.addLast("connection",
+        new ConnectionHandler(connectionMetrics, serverConfig.readTimeoutMillis));
+    pipeline.addLast("flush-counter", flushCounter);
+    if (serverConfig.maxFlushBatch > 0) {
+      pipeline.addLast("flush-consolidation",
+          new FlushConsolidationHandler(serverConfig.maxFlushBatch, false));
+    }
+    if (serverConfig.h2cEnabled) {
+      pipeline.addLast("h2c-preface", new Http2PrefaceDetector(this));
+    }
+    final HttpServerCodec codec = new HttpServerCodec();
+    pipeline.addLast("codec", codec);
+    if (serverConfig.h2cEnabled) {
+      pipeline.addLast("h2c-upgrade",
+          new HttpServerUpgradeHandler(codec, new UpgradeCodecFactory() {
+            @Override
+            public UpgradeCodec newUpgradeCodec(CharSequence protocol) {
+              if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                return new Http2ServerUpgradeCodec(HTTP2_HANDLER, newHttp2Handler());
+              }
+              return null;
+            }
+          }, serverConfig.maxRequestSize))
+              .addLast("h2c-upgrade-listener", upgradeListener);
+    }
+    if (!serverConfig.streamingPaths.isEmpty()) {
+      pipeline.addLast("streaming-body",
+          new StreamingBodyHandler(serverConfig.streamingPaths, serverConfig.maxRequestSize));
+    }
+    pipeline.addLast("http-aggregator", new HttpObjectAggregator(serverConfig.maxRequestSize))
+            .addLast("global-handler", this.globalHandler);
+  }
+
+  /**
+   * Replace the HTTP/1.1 handlers by an {@link HttpToHttp2ConnectionHandler} for a connection which
+   * speaks HTTP/2 from its first byte.</br>
+   * Each HTTP/2 stream reaches {@link GlobalHandler} as a {@link FullHttpRequest} carrying its
+   * stream id in the {@link io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames#STREAM_ID}
+   * header, and responses are sent on the stream of that header.
+   *
+   * @param pipeline
+   */
+  void configureHttp2(ChannelPipeline pipeline) {
+    pipeline.remove("codec");
+    pipeline.remove("h2c-upgrade");
+    pipeline.remove("h2c-upgrade-listener");
+    removeHttp1Handlers(pipeline);
+    pipeline.addBefore("global-handler", HTTP2_HANDLER, newHttp2Handler());
+    openConnectionWindow(pipeline, serverConfig.http2InitialWindowSize);
+  }
+
+  /**
+   * Raise the connection flow control window, 65535 bytes by default, to the initial stream
+   * window so that the connection window does not hold back streams whose window holds a whole
+   * request. Called once the HTTP/2 handler sent its SETTINGS, which have to come first.
+   *
+   * @param pipeline with the HTTP/2 handler
+   * @param windowSize connection window
+   */
+  static void openConnectionWindow(ChannelPipeline pipeline, int windowSize) {
+    final ChannelHandlerContext ctx = pipeline.context(HTTP2_HANDLER);
+    final Http2ConnectionHandler handler = (Http2ConnectionHandler) ctx.handler();
+    final Http2Stream connectionStream = handler.connection()
+                                                .connectionStream();
+    final Http2LocalFlowController flowController = handler.decoder()
+                                                           .flowController();
+    final int delta = windowSize - flowController.windowSize(connectionStream);
+    if (delta <= 0) {
+      return;
+    }
+    try {
+      flowController.incrementWindowSize(connectionStream, delta);
+    } catch (Http2Exception e) {
+      ctx.fireExceptionCaught(e);
+    }
+    ctx.flush();
+  }
+
+  /**
+   * Remove the HTTP/1.1 request body handlers which are not used by HTTP/2 streams and stop the
+   * HTTP/1.1 read timeout.
+   *
+   * @param pipeline
+   */
+  static void removeHttp1Handlers(ChannelPipeline pipeline) {
+    final ConnectionHandler connectionHandler = pipeline.get(ConnectionHandler.class);
+    if (connectionHandler != null) {
+      connectionHandler.stopReadTimeout();
+    }
+    if (pipeline.get("streaming-body") != null) {
+      pipeline.remove("streaming-body");
+    }
+    pipeline.remove("http-aggregator");
+  }
+
+  /**
+   * @return HTTP/2 connection handler with the flow control settings of {@link ServerConfig}
+   */
+  private HttpToHttp2ConnectionHandler newHttp2Handler() {
+    final Http2Connection connection = new DefaultHttp2Connection(true);
+    connection.local()
+              .flowController(new DefaultHttp2LocalFlowController(connection,
+                  serverConfig.http2WindowUpdateRatio, false));
+    return new HttpToHttp2ConnectionHandlerBuilder()
+        .connection(connection)
+        .initialSettings(serverConfig.http2Settings())
+        .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+            .maxContentLength(serverConfig.maxRequestSize)
+            .propagateSettings(false)
+            .build())
+        .build();
   }
 }
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+/**
+ * Collects bodies of requests to the configured streaming paths without going through
+ * {@link HttpObjectAggregator}.</br>
+ * </br>
+ * Each received {@link HttpContent} chunk is retained and appended as a component of a
+ * {@link CompositeByteBuf} that has no component limit, so the body is never consolidated into
+ * a single copy. When the last chunk arrives a {@link FullHttpRequest} holding the composite
+ * buffer is passed on; the aggregator lets already aggregated messages through.</br>
+ * </br>
+ * Requests to other paths and requests expecting 100-continue are passed on untouched.</br>
+ * Bodies larger than the maximum request size are answered with 413 and malformed HTTP chunks
+ * with 400. The connection is closed in both cases.</br>
+ * </br>
+ * Not sharable: it holds the state of the request being received on its channel.
+ *
+ */
+public class StreamingBodyHandler extends ChannelInboundHandlerAdapter {
+  private static final Logger LOGGER = LogManager.getLogger(StreamingBodyHandler.class);
+  private final Set<String> paths;
+  private final int maxContentLength;
+  private HttpRequest request;
+  private CompositeByteBuf content;
+  private boolean discarding;
+
+  /**
+   * @param paths request paths whose bodies are collected by this handler
+   * @param maxContentLength maximum body size in bytes
+   */
+  public StreamingBodyHandler(Set<String> paths, int maxContentLength) {
+    this.paths = ImmutableSet.copyOf(paths);
+    this.maxContentLength = maxContentLength;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+      final HttpRequest httpRequest = (HttpRequest) msg;
+      if (httpRequest.decoderResult()
+                     .isSuccess()
+          && !HttpUtil.is100ContinueExpected(httpRequest) && isStreamingPath(httpRequest.uri())) {
+        begin(ctx, httpRequest);
+        return;
+      }
+    } else if (msg instanceof HttpContent && (request != null || discarding)) {
+      final HttpContent httpContent = (HttpContent) msg;
+      try {
+        append(ctx, httpContent);
+      } finally {
+        httpContent.release();
+      }
+      return;
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    reset();
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+    reset();
+    super.handlerRemoved(ctx);
+  }
+
+  private void begin(ChannelHandlerContext ctx, HttpRequest httpRequest) {
+    if (HttpUtil.getContentLength(httpRequest, -1L) > maxContentLength) {
+      discarding = true;
+      reject(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+    request = httpRequest;
+    content = ctx.alloc()
+                 .compositeBuffer(Integer.MAX_VALUE);
+  }
+
+  private void append(ChannelHandlerContext ctx, HttpContent httpContent) {
+    final boolean last = httpContent instanceof LastHttpContent;
+    if (discarding) {
+      discarding = !last;
+      return;
+    }
+    if (httpContent.decoderResult()
+                   .isFailure()) {
+      LOGGER.debug("Malformed request content", httpContent.decoderResult()
+                                                           .cause());
+      reset();
+      discarding = !last;
+      reject(ctx, HttpResponseStatus.BAD_REQUEST);
+      return;
+    }
+    if (content.readableBytes() > maxContentLength - httpContent.content()
+                                                                .readableBytes()) {
+      reset();
+      discarding = !last;
+      reject(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+
+    if (httpContent.content()
+                   .isReadable()) {
+      content.addComponent(true, httpContent.content()
+                                            .retain());
+    }
+    if (last) {
+      final FullHttpRequest fullRequest = new DefaultFullHttpRequest(request.protocolVersion(),
+          request.method(), request.uri(), content);
+      fullRequest.headers()
+                 .set(request.headers());
+      fullRequest.trailingHeaders()
+                 .set(((LastHttpContent) httpContent).trailingHeaders());
+      request = null;
+      content = null;
+      ctx.fireChannelRead(fullRequest);
+    }
+  }
+
+  private void reject(ChannelHandlerContext ctx, HttpResponseStatus status) {
+    final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+    response.headers()
+            .set(HttpHeaderNames.CONTENT_LENGTH, 0)
+            .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+    ctx.writeAndFlush(response)
+       .addListener(ChannelFutureListener.CLOSE);
+  }
+
+  private void reset() {
+    if (content != null) {
+      content.release();
+      content = null;
+    }
+    request = null;
+  }
+
+  private boolean isStreamingPath(String uri) {
+    final String path = new QueryStringDecoder(uri).path();
+    return paths.contains(path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+  }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * Socket transport used by the HTTP server.</br>
+ * </br>
+ * NIO - portable JDK selector based transport. Always available.</br>
+ * EPOLL - Linux native edge-triggered epoll transport. Supports SO_REUSEPORT so that several
+ * listening sockets can be bound to the same port and the kernel spreads new connections
+ * across them.</br>
+ *
+ */
+public enum Transport {
+  NIO {
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    public boolean supportsReusePort() {
+      return false;
+    }
+
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+      return new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+      return NioServerSocketChannel.class;
+    }
+
+    @Override
+    void configure(ServerBootstrap bootstrap, boolean reusePort) {}
+  },
+
+  EPOLL {
+    @Override
+    public boolean isAvailable() {
+      return Epoll.isAvailable();
+    }
+
+    @Override
+    public boolean supportsReusePort() {
+      return true;
+    }
+
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+      return new EpollEventLoopGroup(threads, threadFactory);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+      return EpollServerSocketChannel.class;
+    }
+
+    @Override
+    void configure(ServerBootstrap bootstrap, boolean reusePort) {
+      bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+               .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+      if (reusePort) {
+        bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+      }
+    }
+  };
+
+  /**
+   * @return true if this transport can be used on the current platform.
+   */
+  public abstract boolean isAvailable();
+
+  /**
+   * @return true if this transport can bind several listening sockets to the same port.
+   */
+  public abstract boolean supportsReusePort();
+
+  /**
+   * Create an event loop group of this transport.
+   *
+   * @param threads number of event loops, 0 to use the Netty default
+   * @param threadFactory
+   * @return EventLoopGroup
+   */
+  public abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+  /**
+   * @return server socket channel class of this transport
+   */
+  public abstract Class<? extends ServerChannel> serverChannelClass();
+
+  /**
+   * Apply transport specific options to the server bootstrap.
+   */
+  abstract void configure(ServerBootstrap bootstrap, boolean reusePort);
+
+  /**
+   * Resolve transport from its configured name.</br>
+   * "auto" selects {@link #EPOLL} when the native library is available and {@link #NIO} otherwise.
+   * A transport which is not available on the current platform also falls back to {@link #NIO}.
+   *
+   * @param name nio, epoll or auto
+   * @return Transport
+   * @throws IllegalArgumentException if the name is unknown
+   */
+  public static Transport fromName(String name) throws IllegalArgumentException {
+    final String trimmed = name.trim();
+    if (trimmed.equalsIgnoreCase("auto")) {
+      return EPOLL.isAvailable() ? EPOLL : NIO;
+    }
+    final Transport transport = Transport.valueOf(trimmed.toUpperCase());
+    if (!transport.isAvailable()) {
+      LogManager.getLogger(Transport.class)
+                .warn("Transport {} is not available on this platform. Falling back to {}.",
+                    transport, NIO);
+      return NIO;
+    }
+    return transport;
+  }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.model.LogisticModel;
+import com.beeswax.hexbid.strategy.BidContext;
+import com.beeswax.hexbid.strategy.LogisticRegressionStrategy;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.DeviceType;
+import com.beeswax.openrtb.Openrtb.BidRequest.Geo;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.google.common.base.Suppliers;
+
+/**
+ * Time to price all adcandidates of a bid request with the {@link LogisticRegressionStrategy},
+ * calling it once per adcandidate against one batch call which hashes and weights the features
+ * of the request once.
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:CLASSPATH org.openjdk.jmh.Main BatchScoringBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchScoringBenchmark {
+  private static final int REQUESTS = 64;
+
+  @Param({"1", "10", "100"})
+  public int candidates;
+
+  private Path directory;
+  private LogisticRegressionStrategy strategy;
+  private BidRequest[] requests;
+  private Adcandidate[] adcandidates;
+  private long[] prices;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final Random random = new Random(42);
+    final float[] weights = new float[1 << 20];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = (float) (random.nextGaussian() * 0.1);
+    }
+    directory = Files.createTempDirectory("batch-benchmark");
+    final Path file = directory.resolve("model-1.lr");
+    LogisticModel.write(file, 1, -3, weights);
+    strategy = new LogisticRegressionStrategy(Suppliers.ofInstance(LogisticModel.map(file, 1)));
+
+    requests = new BidRequest[REQUESTS];
+    for (int i = 0; i < REQUESTS; i++) {
+      final BidRequest request = BidRequest.newBuilder()
+                                           .setSite(Site.newBuilder()
+                                                        .setDomain("site" + random.nextInt(1000)
+                                                            + ".example.com"))
+                                           .setDevice(Device.newBuilder()
+                                                            .setOs("Android")
+                                                            .setMake("Samsung")
+                                                            .setDevicetype(DeviceType.MOBILE)
+                                                            .setGeo(Geo.newBuilder()
+                                                                       .setCountry("USA")
+                                                                       .setRegion("CA")
+                                                                       .setUtcoffset(-480)))
+                                           .buildPartial();
+      // parsed so that string fields are undecoded as in production
+      requests[i] = BidRequest.parser()
+                              .parsePartialFrom(request.toByteArray());
+    }
+    adcandidates = new Adcandidate[candidates];
+    for (int i = 0; i < candidates; i++) {
+      final Params value = Params.newBuilder()
+                                 .setKey("value_micros_usd")
+                                 .setValue(String.valueOf(1000000 + i))
+                                 .buildPartial();
+      final CustomStrategy custom =
+          CustomStrategy.newBuilder()
+                        .setName(LogisticRegressionStrategy.STRATEGY_NAME)
+                        .addCustomParams(value)
+                        .buildPartial();
+      adcandidates[i] = Adcandidate.newBuilder()
+                                   .setLineItemId(i)
+                                   .setCampaignId(i / 4)
+                                   .setBidding(Bidding.newBuilder()
+                                                      .setCustomStrategy(custom))
+                                   .buildPartial();
+    }
+    prices = new long[candidates];
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(directory.resolve("model-1.lr"));
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  public long[] perCandidate() {
+    final BidRequest request = requests[next++ & (REQUESTS - 1)];
+    for (int i = 0; i < candidates; i++) {
+      prices[i] = strategy.getBidPriceMicrosUSD(adcandidates[i], request);
+    }
+    return prices;
+  }
+
+  @Benchmark
+  public long[] batch() {
+    final BidContext context =
+        BidContext.get(requests[next++ & (REQUESTS - 1)], System.currentTimeMillis());
+    strategy.getBidPricesMicrosUSD(adcandidates, candidates, context, prices);
+    return prices;
+  }
+}
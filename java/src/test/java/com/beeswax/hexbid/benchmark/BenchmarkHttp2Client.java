@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Minimal blocking h2c client holding a single prior knowledge HTTP/2 connection.</br>
+ * Thread safe: concurrent calls are multiplexed as separate streams on the connection.
+ *
+ */
+public class BenchmarkHttp2Client {
+  private static final EventLoopGroup GROUP = new NioEventLoopGroup();
+  private final Map<Integer, Promise<Integer>> pending = new ConcurrentHashMap<>();
+  private final Channel channel;
+  private HttpToHttp2ConnectionHandler http2Handler;
+
+  public BenchmarkHttp2Client(String host, int port) throws InterruptedException {
+    channel = new Bootstrap().group(GROUP)
+                             .channel(NioSocketChannel.class)
+                             .handler(new ChannelInitializer<SocketChannel>() {
+                               @Override
+                               protected void initChannel(SocketChannel ch) {
+                                 final Http2Connection connection =
+                                     new DefaultHttp2Connection(false);
+                                 http2Handler = new HttpToHttp2ConnectionHandlerBuilder()
+                                     .connection(connection)
+                                     .frameListener(
+                                         new InboundHttp2ToHttpAdapterBuilder(connection)
+                                             .maxContentLength(1024 * 1024)
+                                             .propagateSettings(false)
+                                             .build())
+                                     .build();
+                                 ch.pipeline()
+                                   .addLast(http2Handler)
+                                   .addLast(new ResponseHandler());
+                               }
+                             })
+                             .connect(host, port)
+                             .sync()
+                             .channel();
+  }
+
+  /**
+   * POST the body to the path on a new stream and wait for the response.
+   *
+   * @param path
+   * @param body
+   * @return HTTP status code
+   */
+  public int post(final String path, final byte[] body) throws Exception {
+    final Promise<Integer> promise = channel.eventLoop()
+                                            .newPromise();
+    channel.eventLoop()
+           .execute(new Runnable() {
+             @Override
+             public void run() {
+               // stream ids have to be allocated in order on the event loop
+               final int streamId = http2Handler.connection()
+                                                .local()
+                                                .incrementAndGetNextStreamId();
+               final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                   HttpMethod.POST, path, Unpooled.wrappedBuffer(body));
+               request.headers()
+                      .setInt(ExtensionHeaderNames.STREAM_ID.text(), streamId)
+                      .set(ExtensionHeaderNames.SCHEME.text(), "http");
+               pending.put(streamId, promise);
+               channel.writeAndFlush(request);
+             }
+           });
+    return promise.get();
+  }
+
+  public void close() {
+    channel.close()
+           .awaitUninterruptibly();
+  }
+
+  private class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+      final Promise<Integer> promise = pending.remove(response.headers()
+                                                              .getInt(
+                                                                  ExtensionHeaderNames.STREAM_ID.text()));
+      if (promise != null) {
+        promise.trySuccess(response.status()
+                                   .code());
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      for (Promise<Integer> promise : pending.values()) {
+        promise.tryFailure(cause);
+      }
+      ctx.close();
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Minimal blocking HTTP/1.1 client holding a single keep-alive connection.</br>
+ * Used by benchmarks to drive an in-process server. Not thread safe.
+ *
+ */
+public class BenchmarkHttpClient {
+  private static final EventLoopGroup GROUP = new NioEventLoopGroup();
+  private final Channel channel;
+  private volatile Promise<Integer> pending;
+
+  public BenchmarkHttpClient(String host, int port) throws InterruptedException {
+    channel = new Bootstrap().group(GROUP)
+                             .channel(NioSocketChannel.class)
+                             .handler(new ChannelInitializer<SocketChannel>() {
+                               @Override
+                               protected void initChannel(SocketChannel ch) {
+                                 ch.pipeline()
+                                   .addLast(new HttpClientCodec())
+                                   .addLast(new HttpObjectAggregator(1024 * 1024))
+                                   .addLast(new ResponseHandler());
+                               }
+                             })
+                             .connect(host, port)
+                             .sync()
+                             .channel();
+  }
+
+  /**
+   * POST the body to the path and wait for the response.
+   *
+   * @param path
+   * @param body
+   * @return HTTP status code
+   */
+  public int post(String path, byte[] body) throws Exception {
+    final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+        HttpMethod.POST, path, Unpooled.wrappedBuffer(body));
+    request.headers()
+           .set(HttpHeaderNames.CONTENT_LENGTH, body.length);
+    pending = channel.eventLoop()
+                     .newPromise();
+    channel.writeAndFlush(request);
+    return pending.get();
+  }
+
+  public void close() {
+    channel.close()
+           .awaitUninterruptibly();
+  }
+
+  /**
+   * @return a TCP port which was free at the time of the call
+   */
+  public static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+      pending.trySuccess(response.status()
+                                 .code());
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      pending.tryFailure(cause);
+      ctx.close();
+    }
+  }
+}
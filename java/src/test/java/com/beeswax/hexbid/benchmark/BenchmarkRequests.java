@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.hexbid.strategy.FlatPriceStrategy;
+import com.beeswax.openrtb.Extension.UserExtensions;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.Imp;
+import com.beeswax.openrtb.Openrtb.BidRequest.Imp.Banner;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.beeswax.openrtb.Openrtb.BidRequest.User;
+
+/**
+ * Builds {@link BidAgentRequest}s used by the benchmarks.
+ *
+ */
+public class BenchmarkRequests {
+
+  /**
+   * Build a bid agent request with the given number of flat price adcandidates.
+   *
+   * @param adcandidates
+   * @return BidAgentRequest
+   */
+  public static BidAgentRequest newBidAgentRequest(int adcandidates) {
+    final BidAgentRequest.Builder requestBuilder = BidAgentRequest.newBuilder();
+    final CustomStrategy strategy = CustomStrategy.newBuilder()
+                                                  .setName(FlatPriceStrategy.STRATEGY_NAME)
+                                                  .addCustomParams(Params.newBuilder()
+                                                                         .setKey("flat_price_micros_usd")
+                                                                         .setValue("1000"))
+                                                  .buildPartial();
+    for (int i = 0; i < adcandidates; i++) {
+      requestBuilder.addAdcandidates(Adcandidate.newBuilder()
+                                                .setLineItemId(1000 + i)
+                                                .addCreativeIds(2000 + i)
+                                                .addCreativeIds(3000 + i)
+                                                .setBidding(Bidding.newBuilder()
+                                                                   .setCustomStrategy(strategy))
+                                                .buildPartial());
+    }
+
+    final User user = User.newBuilder()
+                          .setExt(UserExtensions.newBuilder()
+                                                .setUserId("BITO.0123456789"))
+                          .buildPartial();
+    requestBuilder.setBidRequest(BidRequest.newBuilder()
+                                           .setId("benchmark-auction")
+                                           .setUser(user)
+                                           .buildPartial());
+    return requestBuilder.buildPartial();
+  }
+
+  /**
+   * Build a bid agent request whose bid request also carries impressions, site and device as sent
+   * by exchanges.
+   *
+   * @param adcandidates
+   * @return BidAgentRequest
+   */
+  public static BidAgentRequest newOpenRtbBidAgentRequest(int adcandidates) {
+    final BidAgentRequest request = newBidAgentRequest(adcandidates);
+    final BidRequest.Builder bidRequestBuilder = request.getBidRequest()
+                                                        .toBuilder();
+    for (int i = 0; i < 3; i++) {
+      bidRequestBuilder.addImp(Imp.newBuilder()
+                                  .setId(String.valueOf(i))
+                                  .setTagid("benchmark-tag-" + i)
+                                  .setBidfloor(0.25)
+                                  .setBanner(Banner.newBuilder()
+                                                   .setW(300)
+                                                   .setH(250)));
+    }
+    bidRequestBuilder.setSite(Site.newBuilder()
+                                  .setId("benchmark-site")
+                                  .setName("Benchmark")
+                                  .setDomain("benchmark.example.com")
+                                  .setPage("https://benchmark.example.com/articles/1"))
+                     .setDevice(Device.newBuilder()
+                                      .setUa("Mozilla/5.0 (Macintosh; Intel Mac OS X 10_12_3) "
+                                          + "AppleWebKit/537.36 (KHTML, like Gecko) "
+                                          + "Chrome/56.0.2924.87 Safari/537.36")
+                                      .setIp("203.0.113.17")
+                                      .setOs("macOS")
+                                      .setMake("Apple"))
+                     .setTmax(100)
+                     .addCur("USD");
+    return request.toBuilder()
+                  .setBidRequest(bidRequestBuilder)
+                  .buildPartial();
+  }
+}
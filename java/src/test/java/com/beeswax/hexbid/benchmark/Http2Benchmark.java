@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.hexbid.handler.HexbidHandlerFactory;
+import com.beeswax.http.config.ServerConfig.ServerConfigBuilder;
+import com.beeswax.http.server.HttpServer;
+
+/**
+ * End to end /bid load test comparing HTTP/1.1 and h2c for the same number of connections.</br>
+ * </br>
+ * 16 benchmark threads each keep one bid request in flight. With http1 a connection carries one
+ * request at a time, so when there are fewer connections than threads, threads wait for a free
+ * connection from a pool. With h2c the threads share the connections and each request is a
+ * separate stream. Compare throughput and the p99/p99.9 of the sample time mode output per
+ * connection count.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(16)
+public class Http2Benchmark {
+
+  @Param({"http1", "h2c"})
+  public String protocol;
+
+  @Param({"1", "4", "16"})
+  public int connections;
+
+  private HttpServer server;
+  private BlockingQueue<BenchmarkHttpClient> http1Clients;
+  private BenchmarkHttp2Client[] http2Clients;
+  private final AtomicInteger nextHttp2Client = new AtomicInteger();
+  private byte[] body;
+
+  @Setup(Level.Trial)
+  public void startServer() throws Exception {
+    final int port = BenchmarkHttpClient.freePort();
+    final Properties properties = new Properties();
+    properties.setProperty("server.port", Integer.toString(port));
+    properties.setProperty("server.h2c_enabled", "true");
+
+    server = new HttpServer(new ServerConfigBuilder().fromProperties(properties)
+                                                     .build(),
+        new HexbidHandlerFactory());
+    server.start();
+
+    if (protocol.equals("http1")) {
+      http1Clients = new ArrayBlockingQueue<>(connections);
+      for (int i = 0; i < connections; i++) {
+        http1Clients.add(new BenchmarkHttpClient("127.0.0.1", port));
+      }
+    } else {
+      http2Clients = new BenchmarkHttp2Client[connections];
+      for (int i = 0; i < connections; i++) {
+        http2Clients[i] = new BenchmarkHttp2Client("127.0.0.1", port);
+      }
+    }
+    body = BenchmarkRequests.newBidAgentRequest(5)
+                            .toByteArray();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() {
+    if (http1Clients != null) {
+      for (BenchmarkHttpClient client : http1Clients) {
+        client.close();
+      }
+    }
+    if (http2Clients != null) {
+      for (BenchmarkHttp2Client client : http2Clients) {
+        client.close();
+      }
+    }
+    server.stop();
+  }
+
+  @State(Scope.Thread)
+  public static class Http2Connection {
+    BenchmarkHttp2Client client;
+
+    @Setup(Level.Trial)
+    public void assign(Http2Benchmark benchmark) {
+      if (benchmark.http2Clients != null) {
+        client = benchmark.http2Clients[benchmark.nextHttp2Client.getAndIncrement()
+            % benchmark.http2Clients.length];
+      }
+    }
+  }
+
+  @Benchmark
+  public int bid(Http2Connection connection) throws Exception {
+    if (connection.client != null) {
+      return connection.client.post("/bid", body);
+    }
+    final BenchmarkHttpClient client = http1Clients.take();
+    try {
+      return client.post("/bid", body);
+    } finally {
+      http1Clients.put(client);
+    }
+  }
+}
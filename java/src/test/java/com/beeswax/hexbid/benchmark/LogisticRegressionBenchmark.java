@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.model.LogisticModel;
+import com.beeswax.hexbid.strategy.LogisticRegressionStrategy;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.DeviceType;
+import com.beeswax.openrtb.Openrtb.BidRequest.Geo;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.google.common.base.Suppliers;
+
+/**
+ * Price of an adcandidate with the {@link LogisticRegressionStrategy} over a mapped model of 2^bits
+ * weights, against a naive scorer building a string per feature and looking its hash code up in an
+ * array. Requests are parsed from bytes so that their string fields are undecoded
+ * {@link com.google.protobuf.ByteString}s as in production.</br>
+ * </br>
+ * Run with the GC profiler to check that the strategy allocates 0 bytes per adcandidate:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:CLASSPATH org.openjdk.jmh.Main LogisticRegressionBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogisticRegressionBenchmark {
+  private static final int REQUESTS = 256;
+
+  @Param({"16", "24"})
+  public int bits;
+
+  private Path directory;
+  private LogisticRegressionStrategy strategy;
+  private float[] weights;
+  private BidRequest[] requests;
+  private Adcandidate[] adcandidates;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final Random random = new Random(42);
+    weights = new float[1 << bits];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = (float) (random.nextGaussian() * 0.1);
+    }
+    directory = Files.createTempDirectory("lr-benchmark");
+    final Path file = directory.resolve("model-1.lr");
+    LogisticModel.write(file, 1, -3, weights);
+    strategy = new LogisticRegressionStrategy(Suppliers.ofInstance(LogisticModel.map(file, 1)));
+
+    requests = new BidRequest[REQUESTS];
+    adcandidates = new Adcandidate[REQUESTS];
+    for (int i = 0; i < REQUESTS; i++) {
+      final BidRequest request = BidRequest.newBuilder()
+                                           .setSite(Site.newBuilder()
+                                                        .setDomain("site" + random.nextInt(1000)
+                                                            + ".example.com"))
+                                           .setDevice(Device.newBuilder()
+                                                            .setOs("iOS")
+                                                            .setMake("Apple")
+                                                            .setDevicetype(DeviceType.MOBILE)
+                                                            .setGeo(Geo.newBuilder()
+                                                                       .setCountry("USA")
+                                                                       .setRegion("NY")
+                                                                       .setUtcoffset(-300)))
+                                           .buildPartial();
+      requests[i] = BidRequest.parser()
+                              .parsePartialFrom(request.toByteArray());
+      final Params value = Params.newBuilder()
+                                 .setKey("value_micros_usd")
+                                 .setValue("2000000")
+                                 .buildPartial();
+      final CustomStrategy custom =
+          CustomStrategy.newBuilder()
+                        .setName(LogisticRegressionStrategy.STRATEGY_NAME)
+                        .addCustomParams(value)
+                        .buildPartial();
+      adcandidates[i] = Adcandidate.newBuilder()
+                                   .setLineItemId(i % 16)
+                                   .setCampaignId(i % 4)
+                                   .setBidding(Bidding.newBuilder()
+                                                      .setCustomStrategy(custom))
+                                   .buildPartial();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(directory.resolve("model-1.lr"));
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  public long hashedFeatures() {
+    final int i = next++ & (REQUESTS - 1);
+    return strategy.getBidPriceMicrosUSD(adcandidates[i], requests[i]);
+  }
+
+  @Benchmark
+  public long stringFeatures() {
+    final int i = next++ & (REQUESTS - 1);
+    final BidRequest request = requests[i];
+    final Adcandidate adcandidate = adcandidates[i];
+    final Device device = request.getDevice();
+    final List<String> features = new ArrayList<>();
+    features.add("site=" + request.getSite()
+                                  .getDomain());
+    features.add("os=" + device.getOs());
+    features.add("make=" + device.getMake());
+    features.add("devicetype=" + device.getDevicetype()
+                                       .getNumber());
+    features.add("country=" + device.getGeo()
+                                    .getCountry());
+    features.add("region=" + device.getGeo()
+                                   .getRegion());
+    final String hour = "hour=" + (System.currentTimeMillis() / 3600000 % 24);
+    features.add(hour);
+    features.add("line_item=" + adcandidate.getLineItemId());
+    features.add("campaign=" + adcandidate.getCampaignId());
+    features.add("line_item=" + adcandidate.getLineItemId() + "&" + features.get(0));
+    features.add("line_item=" + adcandidate.getLineItemId() + "&" + hour);
+    double logit = -3;
+    for (String feature : features) {
+      logit += weights[feature.hashCode() & (weights.length - 1)];
+    }
+    return Math.round(LogisticModel.sigmoid(logit) * 2000000);
+  }
+}
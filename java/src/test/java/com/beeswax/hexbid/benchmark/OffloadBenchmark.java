@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
+import com.beeswax.hexbid.handler.HexbidHandlerFactory;
+import com.beeswax.http.config.ServerConfig.ServerConfigBuilder;
+import com.beeswax.http.handler.HandlerFactory;
+import com.beeswax.http.handler.RequestHandler;
+import com.beeswax.http.handler.Route;
+import com.beeswax.http.server.HttpServer;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+
+/**
+ * End to end /bid load test comparing execution modes when bidding blocks.</br>
+ * </br>
+ * Every bid first sleeps for the lookup time, standing in for a remote user score lookup. 32
+ * benchmark threads each keep one request in flight on their own connection to a server with 2
+ * event loops. Inline, a blocked bid stalls every connection of its loop, so throughput is bound
+ * by 2 / lookup time; pool and virtual execution overlap the lookups. Virtual needs a Java 21
+ * runtime and runs as pool otherwise.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+public class OffloadBenchmark {
+
+  @Param({"inline", "pool", "virtual"})
+  public String execution;
+
+  @Param({"1"})
+  public int lookupMillis;
+
+  private HttpServer server;
+  private int port;
+  private byte[] body;
+
+  @Setup(Level.Trial)
+  public void startServer() throws Exception {
+    port = BenchmarkHttpClient.freePort();
+    final Properties properties = new Properties();
+    properties.setProperty("server.port", Integer.toString(port));
+    properties.setProperty("server.worker_group_size", "2");
+    properties.setProperty("bidder.execution", execution);
+    properties.setProperty("bidder.max_in_flight", "0");
+    properties.setProperty("bidder.max_pending_tasks", "0");
+
+    server = new HttpServer(new ServerConfigBuilder().fromProperties(properties)
+                                                     .build(),
+        new BlockingLookupHandlerFactory(
+            new HexbidHandlerFactory(new BidderConfigBuilder().fromProperties(properties)
+                                                              .build()),
+            lookupMillis));
+    server.start();
+    body = BenchmarkRequests.newBidAgentRequest(5)
+                            .toByteArray();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() {
+    server.stop();
+  }
+
+  @State(Scope.Thread)
+  public static class Connection {
+    BenchmarkHttpClient client;
+
+    @Setup(Level.Trial)
+    public void connect(OffloadBenchmark benchmark) throws Exception {
+      client = new BenchmarkHttpClient("127.0.0.1", benchmark.port);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+      client.close();
+    }
+  }
+
+  @Benchmark
+  public int bid(Connection connection) throws Exception {
+    return connection.client.post("/bid", body);
+  }
+
+  /**
+   * Blocks every /bid request for the lookup time before bidding.
+   */
+  private static class BlockingLookupHandlerFactory implements HandlerFactory {
+    private final HandlerFactory factory;
+    private final Route bidRoute;
+
+    BlockingLookupHandlerFactory(HandlerFactory factory, final int lookupMillis) {
+      this.factory = factory;
+      final Route route = factory.getRoute("/bid");
+      final RequestHandler handler = route.getHandler();
+      this.bidRoute = new Route(new RequestHandler() {
+        @Override
+        public FullHttpResponse processRequest(ChannelHandlerContext ctx,
+            FullHttpRequest request) {
+          Uninterruptibles.sleepUninterruptibly(lookupMillis, TimeUnit.MILLISECONDS);
+          return handler.processRequest(ctx, request);
+        }
+      }, route.getExecutor());
+    }
+
+    @Override
+    public Route getRoute(String uri) {
+      return uri.startsWith("/bid") ? bidRoute : factory.getRoute(uri);
+    }
+  }
+}
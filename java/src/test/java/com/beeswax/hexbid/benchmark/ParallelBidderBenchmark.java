@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.bid.Request.BidAgentResponse;
+import com.beeswax.hexbid.bidder.Bidder;
+import com.beeswax.hexbid.bidder.Deadline;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
+import com.beeswax.hexbid.strategy.BidStrategy;
+import com.beeswax.hexbid.strategy.StrategyFactory;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+
+/**
+ * Bid latency of sequential against parallel adcandidate evaluation for growing numbers of
+ * adcandidates and strategy costs. The strategy burns the given number of
+ * {@link Blackhole#consumeCPU(long)} tokens per adcandidate, standing in for a model or a lookup.
+ * Parallel evaluation uses a fork-join pool of one thread per CPU and pays off once the work per
+ * request outweighs handing it to the pool.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelBidderBenchmark {
+
+  @Param({"1", "10", "50", "100"})
+  public int adcandidates;
+
+  @Param({"0", "1000", "10000"})
+  public long strategyTokens;
+
+  private final Deadline deadline = Deadline.start(Ticker.systemTicker());
+  private BidAgentRequest request;
+  private Bidder sequential;
+  private Bidder parallel;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    request = BenchmarkRequests.newBidAgentRequest(adcandidates);
+    final StrategyFactory factory = new CostlyStrategyFactory(strategyTokens);
+    sequential = new Bidder(factory, new BidderConfigBuilder().build());
+    final Properties properties = new Properties();
+    properties.setProperty("bidder.parallel_threshold", "1");
+    parallel = new Bidder(factory, new BidderConfigBuilder().fromProperties(properties)
+                                                            .build());
+  }
+
+  @Benchmark
+  public Optional<BidAgentResponse> sequential() {
+    return sequential.SetBid(request, deadline);
+  }
+
+  @Benchmark
+  public Optional<BidAgentResponse> parallel() {
+    return parallel.SetBid(request, deadline);
+  }
+
+  /**
+   * Returns a strategy consuming the given CPU tokens for every adcandidate.
+   */
+  private static class CostlyStrategyFactory extends StrategyFactory {
+    private final BidStrategy strategy;
+
+    CostlyStrategyFactory(final long tokens) {
+      strategy = new BidStrategy() {
+        @Override
+        public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
+          Blackhole.consumeCPU(tokens);
+          return 1000L;
+        }
+      };
+    }
+
+    @Override
+    public BidStrategy getStrategy(Adcandidate adcandidate) {
+      return strategy;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.hexbid.parser.BidProtobufParser;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Cost of decoding a {@link BidAgentRequest} with {@link BidProtobufParser} against copying the
+ * readable bytes into an array first, for request bodies held in a heap buffer, a direct buffer
+ * and a {@link CompositeByteBuf} of 1 KB direct components as collected by the streaming body
+ * handler.</br>
+ * </br>
+ * Run with the GC profiler to compare the bytes allocated per request, gc.alloc.rate.norm:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:CLASSPATH org.openjdk.jmh.Main ParserBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+  private static final int COMPONENT_SIZE = 1024;
+
+  @Param({"heap", "direct", "composite"})
+  public String buffer;
+
+  @Param({"5", "50"})
+  public int adcandidates;
+
+  private ByteBuf body;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final byte[] bytes = BenchmarkRequests.newBidAgentRequest(adcandidates)
+                                          .toByteArray();
+    final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    switch (buffer) {
+      case "heap":
+        body = alloc.heapBuffer(bytes.length)
+                    .writeBytes(bytes);
+        break;
+      case "direct":
+        body = alloc.directBuffer(bytes.length)
+                    .writeBytes(bytes);
+        break;
+      case "composite":
+        final CompositeByteBuf composite = alloc.compositeDirectBuffer(Integer.MAX_VALUE);
+        for (int offset = 0; offset < bytes.length; offset += COMPONENT_SIZE) {
+          final int length = Math.min(COMPONENT_SIZE, bytes.length - offset);
+          composite.addComponent(true, alloc.directBuffer(length)
+                                            .writeBytes(bytes, offset, length));
+        }
+        body = composite;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown buffer " + buffer);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    body.release();
+  }
+
+  @Benchmark
+  public BidAgentRequest inPlace() throws InvalidProtocolBufferException {
+    return (BidAgentRequest) BidProtobufParser.parseProtoBytebuf(body,
+        BidAgentRequest.newBuilder());
+  }
+
+  @Benchmark
+  public BidAgentRequest copy() throws InvalidProtocolBufferException {
+    final byte[] array = new byte[body.readableBytes()];
+    body.getBytes(body.readerIndex(), array);
+    return BidAgentRequest.newBuilder()
+                          .mergeFrom(array)
+                          .buildPartial();
+  }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.http.handler.Router;
+import com.google.common.collect.ImmutableMap;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+/**
+ * Per request routing cost of the {@link Router} against the former routing of GlobalHandler:
+ * {@link QueryStringDecoder}, a regular expression removing the trailing slash and a map lookup
+ * allocating a fallback value on a miss.</br>
+ * </br>
+ * Run with the GC profiler to compare the bytes allocated per route, gc.alloc.rate.norm, which is
+ * 0 for the router:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:CLASSPATH org.openjdk.jmh.Main RoutingBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+  private static final Map<String, String> ROUTES =
+      ImmutableMap.of("/bid", "bid", "/health", "health", "/var", "var");
+
+  @Param({"/bid", "/bid/?debug=1", "/unknown"})
+  public String uri;
+
+  private final Router<String> router = new Router<>(ROUTES, "default");
+
+  @Benchmark
+  public String router() {
+    return router.route(uri);
+  }
+
+  @Benchmark
+  public String decoder() {
+    final QueryStringDecoder queryDecoder = new QueryStringDecoder(uri);
+    final String route = ROUTES.get(queryDecoder.path()
+                                                .replaceAll("/$", ""));
+    return route == null ? "default" : route;
+  }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.hexbid.score.OffHeapScoreTable;
+
+/**
+ * User score lookup in an {@link OffHeapScoreTable} against a {@link HashMap} of boxed scores, for
+ * user ids from a table of the given number of users, half of them unknown. Ids are 16 character
+ * strings as decoded from bid requests. The strings are reused, so the map skips hashing them
+ * thanks to the hash cached by {@link String}, which the id of a new request does not have.</br>
+ * </br>
+ * Run with the GC profiler to check that lookups allocate nothing; the heap held by the map, some
+ * 100 bytes per user against none for the table, shows in the GC logs (-jvmArgsAppend
+ * -verbose:gc):
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:CLASSPATH org.openjdk.jmh.Main ScoreStoreBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:MaxDirectMemorySize=4g"})
+public class ScoreStoreBenchmark {
+  private static final int LOOKUPS = 1 << 16;
+
+  @Param({"100000", "10000000"})
+  public int users;
+
+  private OffHeapScoreTable table;
+  private Map<String, Long> map;
+  private String[] userIds;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    table = OffHeapScoreTable.allocate(users);
+    map = new HashMap<>();
+    for (int i = 0; i < users; i++) {
+      final String userId = userId(i);
+      table.put(userId, i);
+      map.put(userId, (long) i);
+    }
+    final Random random = new Random(42);
+    userIds = new String[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      userIds[i] = userId(random.nextInt(2 * users));
+    }
+  }
+
+  private static String userId(int i) {
+    return String.format("BITO.%011d", i);
+  }
+
+  @Benchmark
+  public long offHeap() {
+    return table.getScore(userIds[next++ & (LOOKUPS - 1)], 0L);
+  }
+
+  @Benchmark
+  public long hashMap() {
+    final Long score = map.get(userIds[next++ & (LOOKUPS - 1)]);
+    return score == null ? 0L : score;
+  }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.hexbid.parser.BidProtobufParser;
+import com.beeswax.hexbid.parser.SelectiveRequestParser;
+import com.beeswax.hexbid.strategy.StrategyFactory;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Cost of decoding a {@link BidAgentRequest} carrying impressions, site, device and user with the
+ * {@link SelectiveRequestParser} of the built-in strategies, which only decodes the user and
+ * copies the bytes of the skipped sub-messages, against decoding it in full. 0 adcandidates shows
+ * the cost of requests without bid.</br>
+ * </br>
+ * Run with the GC profiler to compare the bytes allocated per request, gc.alloc.rate.norm:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:CLASSPATH org.openjdk.jmh.Main SelectiveParserBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectiveParserBenchmark {
+
+  @Param({"0", "5", "50"})
+  public int adcandidates;
+
+  private final SelectiveRequestParser parser =
+      new SelectiveRequestParser(new StrategyFactory().getRequestFields());
+  private ByteBuf body;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final byte[] bytes = BenchmarkRequests.newOpenRtbBidAgentRequest(adcandidates)
+                                          .toByteArray();
+    body = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length)
+                                         .writeBytes(bytes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    body.release();
+  }
+
+  @Benchmark
+  public BidAgentRequest selective() throws InvalidProtocolBufferException {
+    return parser.parse(body)
+                 .getRequest();
+  }
+
+  @Benchmark
+  public BidAgentRequest full() throws InvalidProtocolBufferException {
+    return (BidAgentRequest) BidProtobufParser.parseProtoBytebuf(body,
+        BidAgentRequest.newBuilder());
+  }
+}
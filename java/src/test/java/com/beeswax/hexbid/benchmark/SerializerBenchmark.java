@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.bid.Request.BidAgentResponse;
+import com.beeswax.hexbid.bidder.Bidder;
+import com.beeswax.hexbid.bidder.Deadline;
+import com.beeswax.hexbid.parser.BidProtobufSerializer;
+import com.google.common.base.Ticker;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Cost of serializing a {@link BidAgentResponse} into a buffer of a pooled allocator, heap or
+ * direct, with {@link BidProtobufSerializer} against copying a byte array into a wrapped buffer
+ * and against writing through a {@link ByteBufOutputStream}, whose encoder allocates its own
+ * array.</br>
+ * </br>
+ * Run with the GC profiler to compare the bytes allocated per response, gc.alloc.rate.norm:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:CLASSPATH org.openjdk.jmh.Main SerializerBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+  @Param({"1", "10"})
+  public int bids;
+
+  @Param({"true", "false"})
+  public boolean direct;
+
+  private ByteBufAllocator alloc;
+  private BidAgentResponse response;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    alloc = new PooledByteBufAllocator(direct);
+    response = new Bidder().SetBid(BenchmarkRequests.newBidAgentRequest(bids),
+        Deadline.start(Ticker.systemTicker()))
+                           .get();
+  }
+
+  @Benchmark
+  public int byteArray() {
+    final ByteBuf content = Unpooled.wrappedBuffer(response.toByteArray());
+    return release(content);
+  }
+
+  @Benchmark
+  public int outputStream() throws IOException {
+    final ByteBuf content = alloc.buffer(response.getSerializedSize());
+    response.writeTo(new ByteBufOutputStream(content));
+    return release(content);
+  }
+
+  @Benchmark
+  public int coded() throws IOException {
+    return release(BidProtobufSerializer.serialize(alloc, response));
+  }
+
+  private static int release(ByteBuf content) {
+    final int size = content.readableBytes();
+    content.release();
+    return size;
+  }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.beeswax.hexbid.handler.HexbidHandlerFactory;
+import com.beeswax.http.config.ServerConfig.ServerConfigBuilder;
+import com.beeswax.http.server.HttpServer;
+
+/**
+ * End to end /bid benchmark comparing throughput and latency percentiles (p99 in the sample time
+ * mode output) of the NIO and epoll transports with one or several SO_REUSEPORT acceptors.</br>
+ * Each benchmark thread drives its own keep-alive connection. Combinations that are not supported
+ * on the running platform fall back to NIO with a single acceptor, see
+ * {@link com.beeswax.http.server.Transport#fromName(String)}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(16)
+public class TransportBenchmark {
+
+  @Param({"nio", "epoll"})
+  public String transport;
+
+  @Param({"1", "4"})
+  public int acceptors;
+
+  private HttpServer server;
+  private int port;
+  private byte[] body;
+
+  @Setup(Level.Trial)
+  public void startServer() throws Exception {
+    port = BenchmarkHttpClient.freePort();
+    final Properties properties = new Properties();
+    properties.setProperty("server.port", Integer.toString(port));
+    properties.setProperty("server.transport", transport);
+    properties.setProperty("server.acceptor_count", Integer.toString(acceptors));
+
+    server = new HttpServer(new ServerConfigBuilder().fromProperties(properties)
+                                                     .build(),
+        new HexbidHandlerFactory());
+    server.start();
+    body = BenchmarkRequests.newBidAgentRequest(5)
+                            .toByteArray();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() {
+    server.stop();
+  }
+
+  @State(Scope.Thread)
+  public static class Connection {
+    BenchmarkHttpClient client;
+
+    @Setup(Level.Trial)
+    public void connect(TransportBenchmark benchmark) throws Exception {
+      client = new BenchmarkHttpClient("127.0.0.1", benchmark.port);
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() {
+      client.close();
+    }
+  }
+
+  @Benchmark
+  public int bid(Connection connection) throws Exception {
+    return connection.client.post("/bid", body);
+  }
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.bidder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.bid.Request.BidAgentResponse;
+import com.beeswax.bid.Request.BidAgentResponse.Bid;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
+import com.beeswax.hexbid.strategy.BatchBidStrategy;
+import com.beeswax.hexbid.strategy.BidContext;
+import com.beeswax.hexbid.strategy.FlatPriceStrategy;
+import com.beeswax.hexbid.strategy.StrategyFactory;
+import com.beeswax.hexbid.strategy.StrategyRegistry;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.test.AllocationAssert;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class BidderTest {
+  private static final int ADCANDIDATES = 10;
+
+  private static BidAgentRequest newRequest(int adcandidates) {
+    final BidAgentRequest.Builder requestBuilder = BidAgentRequest.newBuilder();
+    for (int i = 0; i < adcandidates; i++) {
+      final CustomStrategy strategy = CustomStrategy.newBuilder()
+                                                    .setName(FlatPriceStrategy.STRATEGY_NAME)
+                                                    .addCustomParams(Params.newBuilder()
+                                                                           .setKey("flat_price_micros_usd")
+                                                                           .setValue(String.valueOf(1000 + i)))
+                                                    .buildPartial();
+      requestBuilder.addAdcandidates(Adcandidate.newBuilder()
+                                                .setLineItemId(100 + i)
+                                                .addCreativeIds(200 + i)
+                                                .setBidding(Bidding.newBuilder()
+                                                                   .setCustomStrategy(strategy))
+                                                .buildPartial());
+    }
+    requestBuilder.setBidRequest(BidRequest.newBuilder()
+                                           .setId("bidder-test-auction")
+                                           .buildPartial());
+    return requestBuilder.buildPartial();
+  }
+
+  @Test
+  public void SetBidTest() {
+    final Bidder bidder = new Bidder();
+    final Deadline deadline = Deadline.start(Ticker.systemTicker());
+    final BidAgentResponse first = bidder.SetBid(newRequest(ADCANDIDATES), deadline)
+                                         .get();
+    final BidAgentResponse expected = first.toBuilder()
+                                           .build();
+    // responses built later with the same builders leave the first one unchanged
+    final BidAgentResponse second = bidder.SetBid(newRequest(1), deadline)
+                                          .get();
+    Assert.assertEquals(expected, first);
+    Assert.assertEquals(1, second.getBidsCount());
+
+    Assert.assertEquals(ADCANDIDATES, first.getBidsCount());
+    for (int i = 0; i < ADCANDIDATES; i++) {
+      final Bid bid = first.getBids(i);
+      Assert.assertEquals(100 + i, bid.getLineItemId());
+      Assert.assertEquals(200 + i, bid.getCreative()
+                                      .getId());
+      Assert.assertEquals(1000 + i, bid.getBidPriceMicros());
+      Assert.assertEquals("beeswax-hexbid", bid.getAgentData()
+                                               .getAgentId());
+      // the agent data is shared by all bids
+      Assert.assertSame(first.getBids(0)
+                             .getAgentData(),
+          bid.getAgentData());
+    }
+  }
+
+  private static Bidder newParallelBidder(int threshold) {
+    final Properties properties = new Properties();
+    properties.setProperty("bidder.parallel_threshold", String.valueOf(threshold));
+    properties.setProperty("bidder.parallelism", "4");
+    return new Bidder(new StrategyFactory(), new BidderConfigBuilder().fromProperties(properties)
+                                                                      .build());
+  }
+
+  @Test
+  public void SetBidTest_Parallel() {
+    final Deadline deadline = Deadline.start(Ticker.systemTicker());
+    final BidAgentRequest request = newRequest(100);
+    final BidAgentResponse expected = new Bidder().SetBid(request, deadline)
+                                                  .get();
+    final Bidder bidder = newParallelBidder(10);
+    for (int i = 0; i < 10; i++) {
+      // bids are in adcandidate order whatever thread evaluated them
+      Assert.assertEquals(expected, bidder.SetBid(request, deadline)
+                                          .get());
+    }
+    // requests below the threshold are evaluated sequentially
+    Assert.assertEquals(5, bidder.SetBid(newRequest(5), deadline)
+                                 .get()
+                                 .getBidsCount());
+  }
+
+  @Test
+  public void SetBidTest_ParallelInvalidStrategy() {
+    final BidAgentRequest.Builder requestBuilder = newRequest(50).toBuilder();
+    // every third adcandidate has an unsupported strategy
+    for (int i = 0; i < 50; i += 3) {
+      requestBuilder.getAdcandidatesBuilder(i)
+                    .getBiddingBuilder()
+                    .getCustomStrategyBuilder()
+                    .setName("UNSUPPORTED_STRATEGY");
+    }
+    final BidAgentResponse response = newParallelBidder(1).SetBid(requestBuilder.buildPartial(),
+        Deadline.start(Ticker.systemTicker()))
+                                                          .get();
+
+    Assert.assertEquals(33, response.getBidsCount());
+    int bid = 0;
+    for (int i = 0; i < 50; i++) {
+      if (i % 3 != 0) {
+        Assert.assertEquals(100 + i, response.getBids(bid++)
+                                             .getLineItemId());
+      }
+    }
+  }
+
+  @Test
+  public void SetBidTest_ParallelDeadline() {
+    final AtomicLong now = new AtomicLong();
+    final Deadline deadline = Deadline.start(new Ticker() {
+      @Override
+      public long read() {
+        return now.get();
+      }
+    })
+                                      .withBudget(10);
+    final Bidder bidder = newParallelBidder(1);
+    final BidAgentRequest request = newRequest(50);
+    Assert.assertTrue(bidder.SetBid(request, deadline)
+                            .isPresent());
+
+    now.set(TimeUnit.MILLISECONDS.toNanos(10));
+    Assert.assertFalse(bidder.SetBid(request, deadline)
+                             .isPresent());
+  }
+
+  /**
+   * Prices adcandidates at twice their line item id, rejecting line item 105.
+   */
+  private static class DoublingStrategy implements BatchBidStrategy {
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
+      if (adcandidate.getLineItemId() == 105) {
+        throw new IllegalArgumentException("Invalid line item 105");
+      }
+      return adcandidate.getLineItemId() * 2;
+    }
+
+    public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidContext context) {
+      return getBidPriceMicrosUSD(adcandidate, context.getRequest());
+    }
+
+    public void getBidPricesMicrosUSD(Adcandidate[] adcandidates, int count, BidContext context,
+        long[] prices) {
+      batchSizes.add(count);
+      for (int i = 0; i < count; i++) {
+        prices[i] = getBidPriceMicrosUSD(adcandidates[i], context);
+      }
+    }
+  }
+
+  private static BidAgentRequest newBatchRequest(int adcandidates, int... batched) {
+    final BidAgentRequest.Builder requestBuilder = newRequest(adcandidates).toBuilder();
+    for (int i : batched) {
+      requestBuilder.getAdcandidatesBuilder(i)
+                    .getBiddingBuilder()
+                    .getCustomStrategyBuilder()
+                    .setName("doubling_strategy");
+    }
+    return requestBuilder.buildPartial();
+  }
+
+  @Test
+  public void SetBidTest_Batch() {
+    final DoublingStrategy strategy = new DoublingStrategy();
+    final Bidder bidder = new Bidder(new StrategyFactory(
+        new StrategyRegistry(ImmutableMap.of(FlatPriceStrategy.STRATEGY_NAME,
+            new FlatPriceStrategy(), "DOUBLING_STRATEGY", strategy))));
+    final BidAgentRequest.Builder requestBuilder = newBatchRequest(8, 1, 2, 4, 7).toBuilder();
+    requestBuilder.getAdcandidatesBuilder(3)
+                  .getBiddingBuilder()
+                  .getCustomStrategyBuilder()
+                  .setName("UNSUPPORTED_STRATEGY");
+    final BidAgentResponse response = bidder.SetBid(requestBuilder.buildPartial())
+                                            .get();
+
+    // one call for all adcandidates of the strategy, bids in adcandidate order
+    Assert.assertEquals(ImmutableList.of(4), strategy.batchSizes);
+    final long[] lineItems = {100, 101, 102, 104, 105, 106, 107};
+    final long[] prices = {1000, 202, 204, 208, 1005, 1006, 214};
+    Assert.assertEquals(lineItems.length, response.getBidsCount());
+    for (int i = 0; i < lineItems.length; i++) {
+      Assert.assertEquals(lineItems[i], response.getBids(i)
+                                                .getLineItemId());
+      Assert.assertEquals(prices[i], response.getBids(i)
+                                             .getBidPriceMicros());
+    }
+  }
+
+  @Test
+  public void SetBidTest_BatchInvalid() {
+    final DoublingStrategy strategy = new DoublingStrategy();
+    final Bidder bidder = new Bidder(new StrategyFactory(
+        new StrategyRegistry(ImmutableMap.of(FlatPriceStrategy.STRATEGY_NAME,
+            new FlatPriceStrategy(), "DOUBLING_STRATEGY", strategy))));
+    final BidAgentResponse response = bidder.SetBid(newBatchRequest(8, 4, 5, 6))
+                                            .get();
+
+    // the rejected batch is priced one at a time and only line item 105 is skipped
+    Assert.assertEquals(ImmutableList.of(3), strategy.batchSizes);
+    Assert.assertEquals(7, response.getBidsCount());
+    Assert.assertEquals(104, response.getBids(4)
+                                     .getLineItemId());
+    Assert.assertEquals(208, response.getBids(4)
+                                     .getBidPriceMicros());
+    Assert.assertEquals(106, response.getBids(5)
+                                     .getLineItemId());
+    Assert.assertEquals(212, response.getBids(5)
+                                     .getBidPriceMicros());
+  }
+
+  @Test
+  public void SetBidTest_NoAdcandidate() {
+    Assert.assertFalse(new Bidder().SetBid(newRequest(0))
+                                   .isPresent());
+  }
+
+  @Test
+  public void SetBidTest_Allocation() {
+    final Bidder bidder = new Bidder();
+    final BidAgentRequest request = newRequest(ADCANDIDATES);
+    final Deadline deadline = Deadline.start(Ticker.systemTicker());
+    final int iterations = 10000;
+    final AtomicReference<Optional<BidAgentResponse>> response = new AtomicReference<>();
+    final Runnable bids = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < iterations; i++) {
+          response.set(bidder.SetBid(request, deadline));
+        }
+      }
+    };
+    final long perBid = AllocationAssert.allocatedBytes(bids, bids) / iterations / ADCANDIDATES;
+    Assert.assertEquals(ADCANDIDATES, response.get()
+                                              .get()
+                                              .getBidsCount());
+    // the bid and creative messages, not the builders nor the agent data
+    Assert.assertTrue("allocated " + perBid + " bytes per bid", perBid < 256);
+  }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.bidder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class DeadlineTest {
+  private final AtomicLong now = new AtomicLong(1000);
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return now.get();
+    }
+  };
+
+  private void advanceMillis(long millis) {
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  @Test
+  public void isExpiredTest_NoBudget() {
+    final Deadline deadline = Deadline.start(ticker);
+    advanceMillis(TimeUnit.DAYS.toMillis(1));
+    Assert.assertFalse(deadline.hasBudget());
+    Assert.assertFalse(deadline.isExpired());
+  }
+
+  @Test
+  public void isExpiredTest_Budget() {
+    final Deadline deadline = Deadline.start(ticker)
+                                      .withBudget(20);
+    advanceMillis(19);
+    Assert.assertFalse(deadline.isExpired());
+    advanceMillis(1);
+    Assert.assertTrue(deadline.isExpired());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20), deadline.elapsedNanos());
+  }
+
+  @Test
+  public void withBudgetTest_KeepsSmallestBudget() {
+    final Deadline deadline = Deadline.start(ticker)
+                                      .withBudget(10)
+                                      .withBudget(50);
+    advanceMillis(10);
+    Assert.assertTrue(deadline.isExpired());
+  }
+
+  @Test
+  public void withBudgetTest_NegativeBudget() {
+    Assert.assertTrue(Deadline.start(ticker)
+                              .withBudget(-5)
+                              .isExpired());
+  }
+}
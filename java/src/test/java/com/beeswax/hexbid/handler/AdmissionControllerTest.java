@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.handler;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.beeswax.hexbid.config.BidderConfig;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
+import com.beeswax.hexbid.handler.AdmissionController.Reason;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Ticker;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+public class AdmissionControllerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return now.get();
+    }
+  };
+
+  private static BidderConfig newConfig(int maxInFlight, int maxPendingTasks,
+      long maxLatencyMillis) {
+    final Properties properties = new Properties();
+    properties.setProperty("bidder.max_in_flight", String.valueOf(maxInFlight));
+    properties.setProperty("bidder.max_pending_tasks", String.valueOf(maxPendingTasks));
+    properties.setProperty("bidder.max_latency_ms", String.valueOf(maxLatencyMillis));
+    properties.setProperty("bidder.shed_status", "503");
+    return new BidderConfigBuilder().fromProperties(properties)
+                                    .build();
+  }
+
+  @Test
+  public void tryAdmitTest_InFlight() {
+    final VarRegistry registry = new VarRegistry();
+    final AdmissionController controller =
+        new AdmissionController(newConfig(2, 0, 0), registry, ticker);
+
+    Assert.assertNull(controller.tryAdmit(null));
+    Assert.assertNull(controller.tryAdmit(null));
+    Assert.assertEquals(Reason.IN_FLIGHT, controller.tryAdmit(null));
+    Assert.assertEquals(2, registry.snapshot()
+                                   .get("bid.in_flight"));
+
+    controller.complete(0);
+    Assert.assertNull(controller.tryAdmit(null));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("bid.shed.in_flight"));
+  }
+
+  @Test
+  public void tryAdmitTest_Disabled() {
+    final AdmissionController controller =
+        new AdmissionController(newConfig(0, 0, 0), new VarRegistry(), ticker);
+    for (int i = 0; i < 10000; i++) {
+      Assert.assertNull(controller.tryAdmit(null));
+    }
+  }
+
+  @Test
+  public void tryAdmitTest_PendingTasks() throws Exception {
+    final VarRegistry registry = new VarRegistry();
+    final AdmissionController controller =
+        new AdmissionController(newConfig(0, 1, 0), registry, ticker);
+    final DefaultEventLoop loop = new DefaultEventLoop();
+    final Runnable task = new Runnable() {
+      @Override
+      public void run() {}
+    };
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch latch = new CountDownLatch(1);
+    try {
+      // the loop is stuck in its first task while the others are queued
+      loop.execute(new Runnable() {
+        @Override
+        public void run() {
+          started.countDown();
+          try {
+            latch.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+          }
+        }
+      });
+      started.await();
+      loop.execute(task);
+      Assert.assertNull(controller.tryAdmit(loop));
+      loop.execute(task);
+      Assert.assertEquals(Reason.PENDING_TASKS, controller.tryAdmit(loop));
+      Assert.assertEquals(1L, registry.snapshot()
+                                      .get("bid.shed.pending_tasks"));
+    } finally {
+      latch.countDown();
+      loop.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+          .sync();
+    }
+  }
+
+  @Test
+  public void tryAdmitTest_Latency() {
+    final VarRegistry registry = new VarRegistry();
+    final AdmissionController controller =
+        new AdmissionController(newConfig(0, 0, 10), registry, ticker);
+
+    // requests are admitted until the average latency crosses the limit
+    int admitted = 0;
+    while (controller.tryAdmit(null) == null) {
+      controller.complete(TimeUnit.MILLISECONDS.toNanos(20));
+      admitted++;
+    }
+    Assert.assertTrue(admitted > 1);
+    Assert.assertEquals(Reason.LATENCY, controller.tryAdmit(null));
+    Assert.assertEquals(2L, registry.snapshot()
+                                    .get("bid.shed.latency"));
+
+    // without completed requests the latency is forgotten
+    now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    Assert.assertNull(controller.tryAdmit(null));
+  }
+
+  @Test
+  public void admitTest_Shed() {
+    final VarRegistry registry = new VarRegistry();
+    final AdmissionController controller =
+        new AdmissionController(newConfig(1, 0, 0), registry, ticker);
+    final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+
+    Assert.assertNull(controller.admit(ctx));
+    // the only slot is taken
+    final FullHttpResponse response = controller.admit(ctx);
+    Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, response.status());
+    Assert.assertEquals(0, response.content()
+                                   .readableBytes());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("bid.shed.in_flight"));
+  }
+
+  @Test
+  public void rejectTest() {
+    final VarRegistry registry = new VarRegistry();
+    final AdmissionController controller =
+        new AdmissionController(newConfig(1, 0, 0), registry, ticker);
+
+    // a request rejected by a full queue frees its slot without updating the latency
+    Assert.assertNull(controller.tryAdmit(null));
+    Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, controller.reject()
+                                                                          .status());
+    Assert.assertEquals(0, registry.snapshot()
+                                   .get("bid.in_flight"));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("bid.shed.queue_full"));
+    Assert.assertEquals(0L, controller.recentLatencyNanos());
+    Assert.assertNull(controller.tryAdmit(null));
+  }
+}
@@ -12,10 +12,15 @@
 package com.beeswax.hexbid.handler;
 
 import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding;
@@ -23,6 +28,9 @@ import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
 import com.beeswax.bid.Request.BidAgentRequest;
 import com.beeswax.bid.Request.BidAgentResponse;
+import com.beeswax.hexbid.bidder.Bidder;
+import com.beeswax.hexbid.bidder.Deadline;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
 import com.beeswax.hexbid.handler.BidHandler;
 import com.beeswax.hexbid.parser.BidProtobufParser;
 import com.beeswax.hexbid.strategy.RetargetingStrategy;
@@ -31,11 +39,16 @@ import com.beeswax.openrtb.Openrtb.BidRequest;
 import com.beeswax.openrtb.Openrtb.BidRequest.User;
 import com.beeswax.hexbid.strategy.FlatPriceStrategy;
 import com.beeswax.hexbid.strategy.RandomPriceStrategy;
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -48,10 +61,14 @@ public class BidHandlerTest {
     final ByteBuf requestByteBuf = Unpooled.wrappedBuffer(requestBuilder.build()
                                                                         .toByteArray());
     final FullHttpRequest request = Mockito.mock(FullHttpRequest.class);
+    Mockito.when(request.headers())
+           .thenReturn(new DefaultHttpHeaders());
     Mockito.when(request.content())
            .thenReturn(requestByteBuf);
 
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
     final BidHandler handler = new BidHandler();
     final FullHttpResponse response = handler.processRequest(ctx, request);
     Assert.assertEquals(HttpResponseStatus.NO_CONTENT, response.status());
@@ -62,10 +79,14 @@ public class BidHandlerTest {
   @Test
   public void processRequestTest_InvalidProto() {
     final FullHttpRequest request = Mockito.mock(FullHttpRequest.class);
+    Mockito.when(request.headers())
+           .thenReturn(new DefaultHttpHeaders());
     Mockito.when(request.content())
            .thenReturn(Unpooled.wrappedBuffer("Invalid proto".getBytes()));
 
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
     final BidHandler handler = new BidHandler();
     final FullHttpResponse response = handler.processRequest(ctx, request);
     Assert.assertEquals(HttpResponseStatus.BAD_REQUEST, response.status());
@@ -96,10 +117,14 @@ public class BidHandlerTest {
                                                                         .toByteArray());
 
     final FullHttpRequest request = Mockito.mock(FullHttpRequest.class);
+    Mockito.when(request.headers())
+           .thenReturn(new DefaultHttpHeaders());
     Mockito.when(request.content())
            .thenReturn(requestByteBuf);
 
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
     final BidHandler handler = new BidHandler();
     final FullHttpResponse bytebufRsponse = handler.processRequest(ctx, request);
     try {
@@ -144,10 +169,14 @@ public class BidHandlerTest {
                                                                         .toByteArray());
 
     final FullHttpRequest request = Mockito.mock(FullHttpRequest.class);
+    Mockito.when(request.headers())
+           .thenReturn(new DefaultHttpHeaders());
     Mockito.when(request.content())
            .thenReturn(requestByteBuf);
 
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
     final BidHandler handler = new BidHandler();
     final FullHttpResponse bytebufRsponse = handler.processRequest(ctx, request);
     try {
@@ -207,10 +236,14 @@ public class BidHandlerTest {
                                                                         .toByteArray());
 
     final FullHttpRequest request = Mockito.mock(FullHttpRequest.class);
+    Mockito.when(request.headers())
+           .thenReturn(new DefaultHttpHeaders());
     Mockito.when(request.content())
            .thenReturn(requestByteBuf);
 
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
     final BidHandler handler = new BidHandler();
     final FullHttpResponse bytebufRsponse = handler.processRequest(ctx, request);
     try {
@@ -229,4 +262,178 @@ public class BidHandlerTest {
       Assert.fail(e.getMessage());
     }
   }
+
+  @Test
+  public void processRequestTest_CompositeContent() {
+    final BidAgentRequest.Builder requestBuilder = BidAgentRequest.newBuilder();
+    final CustomStrategy.Builder strategyBuilder = CustomStrategy.newBuilder();
+    strategyBuilder.setName(FlatPriceStrategy.STRATEGY_NAME);
+    strategyBuilder.addCustomParams(Params.newBuilder()
+                                          .setKey("flat_price_micros_usd")
+                                          .setValue("866"));
+    requestBuilder.addAdcandidates(Adcandidate.newBuilder()
+                                              .setBidding(Bidding.newBuilder()
+                                                                 .setCustomStrategy(
+                                                                     strategyBuilder))
+                                              .setLineItemId(111)
+                                              .addCreativeIds(33));
+
+    // split the body over several components as the streaming body handler collects it
+    final byte[] requestBytes = requestBuilder.build()
+                                              .toByteArray();
+    final int split = requestBytes.length / 2;
+    final ByteBuf requestByteBuf =
+        Unpooled.compositeBuffer()
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(requestBytes, 0, split))
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(requestBytes, split,
+                                                requestBytes.length - split));
+
+    final FullHttpRequest request = Mockito.mock(FullHttpRequest.class);
+    Mockito.when(request.headers())
+           .thenReturn(new DefaultHttpHeaders());
+    Mockito.when(request.content())
+           .thenReturn(requestByteBuf);
+
+    final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
+    final BidHandler handler = new BidHandler();
+    final FullHttpResponse bytebufRsponse = handler.processRequest(ctx, request);
+    Assert.assertEquals(0, requestByteBuf.readerIndex());
+    try {
+      final BidAgentResponse protoResponse =
+          (BidAgentResponse) BidProtobufParser.parseProtoBytebuf(bytebufRsponse.content(),
+              BidAgentResponse.newBuilder());
+      Assert.assertEquals(1, protoResponse.getBidsCount());
+      Assert.assertEquals(866, protoResponse.getBids(0)
+                                            .getBidPriceMicros());
+    } catch (InvalidProtocolBufferException e) {
+      Assert.fail(e.getMessage());
+    }
+  }
+
+  private static FullHttpRequest newDeadlineRequest(BidAgentRequest bidRequest, String timeout) {
+    final FullHttpRequest request = Mockito.mock(FullHttpRequest.class);
+    final DefaultHttpHeaders headers = new DefaultHttpHeaders();
+    if (timeout != null) {
+      headers.set("X-Bid-Timeout-Ms", timeout);
+    }
+    Mockito.when(request.headers())
+           .thenReturn(headers);
+    Mockito.when(request.content())
+           .thenReturn(Unpooled.wrappedBuffer(bidRequest.toByteArray()));
+    return request;
+  }
+
+  @Test
+  public void processRequestTest_DeadlineHeaderSpent() {
+    final VarRegistry registry = new VarRegistry();
+    final Bidder bidder = Mockito.mock(Bidder.class);
+    final BidHandler handler = new BidHandler(bidder, new BidderConfigBuilder().build(),
+        new BidStageStats(registry), Ticker.systemTicker());
+
+    // a budget below the deadline margin is spent on arrival, before parsing
+    final FullHttpResponse response =
+        handler.processRequest(Mockito.mock(ChannelHandlerContext.class),
+            newDeadlineRequest(BidAgentRequest.getDefaultInstance(), "3"));
+    Assert.assertEquals(HttpResponseStatus.NO_CONTENT, response.status());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("bid.deadline_exceeded.queue"));
+    Mockito.verify(bidder, Mockito.never())
+           .SetBid(Mockito.any(BidAgentRequest.class), Mockito.any(Deadline.class));
+  }
+
+  @Test
+  public void processRequestTest_TmaxSpentDuringBid() {
+    final AtomicLong now = new AtomicLong();
+    final Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return now.get();
+      }
+    };
+    final BidAgentRequest bidRequest = BidAgentRequest.newBuilder()
+                                                      .setBidRequest(BidRequest.newBuilder()
+                                                                               .setId("auction")
+                                                                               .setTmax(25))
+                                                      .build();
+    final Bidder bidder = Mockito.mock(Bidder.class);
+    Mockito.when(bidder.SetBid(Mockito.eq(bidRequest), Mockito.any(Deadline.class)))
+           .thenAnswer(new Answer<Optional<BidAgentResponse>>() {
+             @Override
+             public Optional<BidAgentResponse> answer(InvocationOnMock invocation) {
+               // bidding takes longer than tmax minus the deadline margin
+               now.addAndGet(TimeUnit.MILLISECONDS.toNanos(20));
+               return Optional.of(BidAgentResponse.getDefaultInstance());
+             }
+           });
+    final VarRegistry registry = new VarRegistry();
+    final BidHandler handler = new BidHandler(bidder, new BidderConfigBuilder().build(),
+        new BidStageStats(registry), ticker);
+
+    // the tmax of the auction is smaller than the header budget
+    final FullHttpResponse response =
+        handler.processRequest(Mockito.mock(ChannelHandlerContext.class),
+            newDeadlineRequest(bidRequest, "1000"));
+    Assert.assertEquals(HttpResponseStatus.NO_CONTENT, response.status());
+    Assert.assertEquals(0L, registry.snapshot()
+                                    .get("bid.deadline_exceeded.parse"));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("bid.deadline_exceeded.bid"));
+    Assert.assertEquals(20000L, registry.snapshot()
+                                        .get("bid.stage.bid.micros"));
+  }
+
+  @Test
+  public void processRequestTest_InvalidDeadlineHeader() {
+    final Bidder bidder = Mockito.mock(Bidder.class);
+    Mockito.when(bidder.SetBid(Mockito.any(BidAgentRequest.class), Mockito.any(Deadline.class)))
+           .thenReturn(Optional.<BidAgentResponse>absent());
+    final BidHandler handler = new BidHandler(bidder, new BidderConfigBuilder().build(),
+        new BidStageStats(new VarRegistry()), Ticker.systemTicker());
+
+    handler.processRequest(Mockito.mock(ChannelHandlerContext.class),
+        newDeadlineRequest(BidAgentRequest.getDefaultInstance(), "soon"));
+    final ArgumentCaptor<Deadline> deadline = ArgumentCaptor.forClass(Deadline.class);
+    Mockito.verify(bidder)
+           .SetBid(Mockito.any(BidAgentRequest.class), deadline.capture());
+    // falls back to the default budget
+    Assert.assertTrue(deadline.getValue()
+                              .hasBudget());
+  }
+
+  @Test
+  public void processRequestTest_QueuedPastDeadline() {
+    final AtomicLong now = new AtomicLong();
+    final Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return now.get();
+      }
+    };
+    final VarRegistry registry = new VarRegistry();
+    final Bidder bidder = Mockito.mock(Bidder.class);
+    final BidHandler handler = new BidHandler(bidder, new BidderConfigBuilder().build(),
+        new BidStageStats(registry), ticker);
+
+    // the request waited on the executor longer than its budget before it was picked up
+    final long arrivalNanos = now.get();
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+    final FullHttpResponse response =
+        handler.processRequest(Mockito.mock(ChannelHandlerContext.class),
+            newDeadlineRequest(BidAgentRequest.getDefaultInstance(), "20"), arrivalNanos);
+    Assert.assertEquals(HttpResponseStatus.NO_CONTENT, response.status());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("bid.deadline_exceeded.queue"));
+    Assert.assertEquals(30000L, registry.snapshot()
+                                        .get("bid.stage.queue.micros"));
+    Assert.assertEquals(0L, registry.snapshot()
+                                    .get("bid.deadline_exceeded.parse"));
+    Assert.assertEquals(0L, registry.snapshot()
+                                    .get("bid.stage.parse.micros"));
+    Mockito.verify(bidder, Mockito.never())
+           .SetBid(Mockito.any(BidAgentRequest.class), Mockito.any(Deadline.class));
+  }
 }
@@ -19,6 +19,7 @@ import org.mockito.Mockito;
 
 import com.beeswax.hexbid.handler.DefaultHandler;
 
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
@@ -33,6 +34,8 @@ public class DefaultHandlerTest {
     Mockito.when(request.uri())
            .thenReturn("/unknown?param=1;value=2");
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
 
     final DefaultHandler handler = new DefaultHandler();
     final FullHttpResponse response = handler.processRequest(ctx, request);
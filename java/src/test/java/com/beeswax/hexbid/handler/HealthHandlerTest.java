@@ -19,6 +19,7 @@ import org.mockito.Mockito;
 
 import com.beeswax.hexbid.handler.HealthHandler;
 
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
@@ -32,6 +33,8 @@ public class HealthHandlerTest {
     Mockito.when(request.uri())
            .thenReturn("/health");
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
 
     final HealthHandler handler = new HealthHandler();
     final FullHttpResponse response = handler.processRequest(ctx, request);
@@ -11,10 +11,13 @@
  *******************************************************************************/
 package com.beeswax.hexbid.handler;
 
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+
 import org.junit.Assert;
 import org.junit.Test;
 
-import com.beeswax.hexbid.handler.BidHandler;
+import com.beeswax.hexbid.config.BidderConfig.BidderConfigBuilder;
 import com.beeswax.hexbid.handler.DefaultHandler;
 import com.beeswax.hexbid.handler.HealthHandler;
 import com.beeswax.hexbid.handler.VarHandler;
@@ -22,11 +25,33 @@ import com.beeswax.hexbid.handler.VarHandler;
 public class HexbidHandlerFactoryTest {
 
   @Test
-  public void getHandlerTest() {
+  public void getRouteTest() {
     HexbidHandlerFactory factory = new HexbidHandlerFactory();
-    Assert.assertTrue(factory.getHandler("/bid") instanceof BidHandler);
-    Assert.assertTrue(factory.getHandler("/health") instanceof HealthHandler);
-    Assert.assertTrue(factory.getHandler("/var") instanceof VarHandler);
-    Assert.assertTrue(factory.getHandler("random") instanceof DefaultHandler);
+    Assert.assertTrue(factory.getRoute("/bid").getHandler() instanceof BidHandler);
+    Assert.assertTrue(factory.getRoute("/bid").getAdmission() instanceof AdmissionController);
+    Assert.assertTrue(factory.getRoute("/health").getHandler() instanceof HealthHandler);
+    Assert.assertNull(factory.getRoute("/health").getAdmission());
+    Assert.assertTrue(factory.getRoute("/var").getHandler() instanceof VarHandler);
+    Assert.assertNull(factory.getRoute("/var").getAdmission());
+    Assert.assertTrue(factory.getRoute("random").getHandler() instanceof DefaultHandler);
+    Assert.assertTrue(factory.getRoute("/bid/?debug=1").getHandler() instanceof BidHandler);
+  }
+
+  @Test
+  public void getExecutorTest() {
+    final Properties properties = new Properties();
+    properties.setProperty("bidder.execution", "pool");
+    final HexbidHandlerFactory factory =
+        new HexbidHandlerFactory(new BidderConfigBuilder().fromProperties(properties)
+                                                          .build());
+    final ExecutorService executor = (ExecutorService) factory.getExecutor();
+    try {
+      Assert.assertSame(executor, factory.getRoute("/bid")
+                                         .getExecutor());
+      Assert.assertNotSame(executor, factory.getRoute("/health")
+                                            .getExecutor());
+    } finally {
+      executor.shutdownNow();
+    }
   }
 }
@@ -18,7 +18,9 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import com.beeswax.hexbid.handler.VarHandler;
+import com.beeswax.http.metrics.VarRegistry;
 
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
@@ -33,12 +35,19 @@ public class VarHandlerTest {
     Mockito.when(request.uri())
            .thenReturn("/var?");
     final ChannelHandlerContext ctx = Mockito.mock(ChannelHandlerContext.class);
+    Mockito.when(ctx.alloc())
+           .thenReturn(UnpooledByteBufAllocator.DEFAULT);
 
-    final VarHandler handler = new VarHandler();
+    final VarRegistry registry = new VarRegistry();
+    registry.constant("server.version", "1.0.0");
+    registry.counter("bid.requests")
+            .addAndGet(3);
+
+    final VarHandler handler = new VarHandler(registry);
     final FullHttpResponse response = handler.processRequest(ctx, request);
     Assert.assertEquals(HttpVersion.HTTP_1_1, response.protocolVersion());
     Assert.assertEquals(HttpResponseStatus.OK, response.status());
-    Assert.assertEquals("var", response.content()
-                                       .toString(Charset.forName("UTF-8")));
+    Assert.assertEquals("bid.requests 3\nserver.version 1.0.0\n", response.content()
+                                                                    .toString(Charset.forName("UTF-8")));
   }
 }
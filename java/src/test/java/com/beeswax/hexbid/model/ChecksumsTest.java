@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChecksumsTest {
+
+  @Test
+  public void crc32Test() {
+    // spans several chunks and ends within one
+    final byte[] bytes = new byte[(3 << 16) + 5];
+    new Random(7).nextBytes(bytes);
+    final CRC32 expected = new CRC32();
+    expected.update(bytes);
+
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes, 0, 100_000)
+          .flip();
+    final ByteBuffer rest = ByteBuffer.allocateDirect(bytes.length - 100_000);
+    rest.put(bytes, 100_000, bytes.length - 100_000)
+        .flip();
+    Assert.assertEquals(expected.getValue(), Checksums.crc32(direct, rest));
+    Assert.assertEquals(0, direct.position());
+    Assert.assertEquals(expected.getValue(), Checksums.crc32(ByteBuffer.wrap(bytes)));
+    Assert.assertEquals(expected.getValue(),
+        Checksums.crc32(ByteBuffer.wrap(bytes, 0, 10), ByteBuffer.wrap(bytes, 10, 90_000)
+                                                                 .slice(),
+            ByteBuffer.wrap(bytes, 90_010, bytes.length - 90_010)));
+  }
+}
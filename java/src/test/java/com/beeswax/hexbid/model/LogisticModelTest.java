@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.protobuf.ByteString;
+
+public class LogisticModelTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path writeModel(long version) throws IOException {
+    final float[] weights = new float[16];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = i * 0.5f - 4;
+    }
+    final Path file = folder.getRoot()
+                            .toPath()
+                            .resolve("model-" + version + ".lr");
+    LogisticModel.write(file, version, -1.25, weights);
+    return file;
+  }
+
+  @Test
+  public void mapTest() throws Exception {
+    final LogisticModel model = LogisticModel.map(writeModel(3), 3);
+
+    Assert.assertEquals(3, model.version());
+    Assert.assertEquals(-1.25, model.bias(), 0);
+    // indexed by the low 4 bits of the hash
+    Assert.assertEquals(-4, model.weight(0), 0);
+    Assert.assertEquals(3.5, model.weight(15), 0);
+    Assert.assertEquals(-3.5, model.weight(0x7fff_ffff_0000_0011L), 0);
+    Assert.assertEquals(0.5, LogisticModel.sigmoid(0), 0);
+  }
+
+  @Test(expected = IOException.class)
+  public void mapTest_Version() throws Exception {
+    LogisticModel.map(writeModel(3), 4);
+  }
+
+  @Test
+  public void mapTest_Corrupted() throws Exception {
+    final Path file = writeModel(3);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(LogisticModel.HEADER_BYTES + 5);
+      raf.write(raf.read() ^ 1);
+    }
+    try {
+      LogisticModel.map(file, 3);
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("Model checksum mismatch", e.getMessage());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void writeTest_InvalidWeights() throws Exception {
+    LogisticModel.write(folder.getRoot()
+                              .toPath()
+                              .resolve("model-1.lr"),
+        1, 0, new float[12]);
+  }
+
+  @Test
+  public void hashTest() {
+    final ByteString domain = ByteString.copyFromUtf8("example.com");
+    Assert.assertEquals(FeatureHasher.hash(1, domain),
+        FeatureHasher.hash(1, ByteString.copyFromUtf8("example.com")));
+    Assert.assertNotEquals(FeatureHasher.hash(1, domain), FeatureHasher.hash(2, domain));
+    Assert.assertNotEquals(FeatureHasher.hash(1, 7), FeatureHasher.hash(1, 8));
+    Assert.assertNotEquals(FeatureHasher.cross(1, 2), FeatureHasher.cross(2, 1));
+  }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.model;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Ticker;
+
+public class ModelStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void pollTest() throws Exception {
+    final Path directory = folder.getRoot()
+                                 .toPath();
+    final VarRegistry registry = new VarRegistry();
+    final ModelStore store = new ModelStore(directory, 1000, registry, Ticker.systemTicker());
+    store.poll();
+    Assert.assertNull(store.get());
+
+    LogisticModel.write(directory.resolve("model-1.lr"), 1, 0.5, new float[8]);
+    store.poll();
+    final LogisticModel first = store.get();
+    Assert.assertEquals(1, first.version());
+    store.poll();
+    Assert.assertSame(first, store.get());
+
+    // an invalid model is skipped, the current one keeps serving
+    Files.write(directory.resolve("model-2.lr"), new byte[100]);
+    store.poll();
+    Assert.assertSame(first, store.get());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("lr_model.load_failures"));
+
+    LogisticModel.write(directory.resolve("model-3.lr"), 3, 0.5, new float[8]);
+    store.poll();
+    Assert.assertEquals(3, store.get()
+                                .version());
+    Assert.assertEquals(3L, registry.snapshot()
+                                    .get("lr_model.version"));
+    Assert.assertEquals(2L, registry.snapshot()
+                                    .get("lr_model.swaps"));
+  }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.parser;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+public class BidProtobufParserTest {
+
+  private static BidAgentRequest newRequest() {
+    final BidAgentRequest.Builder requestBuilder = BidAgentRequest.newBuilder();
+    for (int i = 0; i < 20; i++) {
+      requestBuilder.addAdcandidates(Adcandidate.newBuilder()
+                                                .setLineItemId(100 + i)
+                                                .addCreativeIds(200 + i)
+                                                .buildPartial());
+    }
+    requestBuilder.setBidRequest(BidRequest.newBuilder()
+                                           .setId("parser-test-auction")
+                                           .buildPartial());
+    return requestBuilder.buildPartial();
+  }
+
+  private static void assertParsed(BidAgentRequest expected, ByteBuf bytebuf)
+      throws InvalidProtocolBufferException {
+    final int readerIndex = bytebuf.readerIndex();
+    final BidAgentRequest parsed =
+        (BidAgentRequest) BidProtobufParser.parseProtoBytebuf(bytebuf,
+            BidAgentRequest.newBuilder());
+    Assert.assertEquals(readerIndex, bytebuf.readerIndex());
+    // the message must not refer to the buffer once it is released
+    bytebuf.release();
+    Assert.assertEquals(expected, parsed);
+  }
+
+  @Test
+  public void parseProtoBytebufTest_Heap() throws Exception {
+    final BidAgentRequest request = newRequest();
+    final byte[] bytes = request.toByteArray();
+    // readable bytes start past the beginning of the array
+    final ByteBuf bytebuf = Unpooled.buffer()
+                                    .writeZero(7)
+                                    .writeBytes(bytes);
+    bytebuf.skipBytes(7);
+    assertParsed(request, bytebuf);
+  }
+
+  @Test
+  public void parseProtoBytebufTest_Direct() throws Exception {
+    final BidAgentRequest request = newRequest();
+    final ByteBuf bytebuf = PooledByteBufAllocator.DEFAULT.directBuffer()
+                                                          .writeBytes(request.toByteArray());
+    assertParsed(request, bytebuf);
+  }
+
+  @Test
+  public void parseProtoBytebufTest_Composite() throws Exception {
+    final BidAgentRequest request = newRequest();
+    final byte[] bytes = request.toByteArray();
+    // mixed components, split within fields
+    final ByteBuf bytebuf =
+        Unpooled.compositeBuffer()
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(bytes, 0, 5))
+                .addComponent(true, Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, 5, 100)))
+                .addComponent(true, PooledByteBufAllocator.DEFAULT.directBuffer()
+                                                                  .writeBytes(bytes, 100,
+                                                                      bytes.length - 100));
+    assertParsed(request, bytebuf);
+  }
+
+  @Test
+  public void parseProtoBytebufTest_CompositeSingleComponent() throws Exception {
+    final BidAgentRequest request = newRequest();
+    final ByteBuf bytebuf =
+        Unpooled.compositeBuffer()
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(request.toByteArray()));
+    assertParsed(request, bytebuf);
+  }
+
+  @Test
+  public void parseProtoBytebufTest_Truncated() {
+    final byte[] bytes = newRequest().toByteArray();
+    final ByteBuf[] bytebufs = {
+        Unpooled.wrappedBuffer(bytes, 0, bytes.length - 3),
+        Unpooled.directBuffer()
+                .writeBytes(bytes, 0, bytes.length - 3),
+        Unpooled.compositeBuffer()
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(bytes, 0, 50))
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(bytes, 50, bytes.length - 53))};
+    for (ByteBuf bytebuf : bytebufs) {
+      try {
+        BidProtobufParser.parseProtoBytebuf(bytebuf, BidAgentRequest.newBuilder());
+        Assert.fail();
+      } catch (InvalidProtocolBufferException e) {
+      } finally {
+        bytebuf.release();
+      }
+    }
+  }
+
+  @Test
+  public void parseProtoBytebufTest_ReadableBytesOnly() throws Exception {
+    final BidAgentRequest request = newRequest();
+    final byte[] bytes = request.toByteArray();
+    // bytes past the writer index of a slice are not part of the message
+    final ByteBuf composite =
+        Unpooled.compositeBuffer()
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(bytes, 0, 50))
+                .addComponent(true, Unpooled.directBuffer()
+                                            .writeBytes(bytes, 50, bytes.length - 50)
+                                            .writeBytes(new byte[] {(byte) 0xff, (byte) 0xff}));
+    final BidAgentRequest parsed =
+        (BidAgentRequest) BidProtobufParser.parseProtoBytebuf(composite.slice(0, bytes.length),
+            BidAgentRequest.newBuilder());
+    composite.release();
+    Assert.assertEquals(request, parsed);
+  }
+}
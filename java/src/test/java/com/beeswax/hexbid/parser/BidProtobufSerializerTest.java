@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.parser;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.beeswax.bid.Request.BidAgentResponse;
+import com.beeswax.bid.Request.BidAgentResponse.AgentData;
+import com.beeswax.bid.Request.BidAgentResponse.Bid;
+import com.beeswax.bid.Request.BidAgentResponse.Creative;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+public class BidProtobufSerializerTest {
+
+  private static BidAgentResponse newResponse() {
+    final BidAgentResponse.Builder responseBuilder = BidAgentResponse.newBuilder();
+    for (int i = 0; i < 20; i++) {
+      responseBuilder.addBids(Bid.newBuilder()
+                                 .setLineItemId(100 + i)
+                                 .setCreative(Creative.newBuilder()
+                                                      .setId(200 + i))
+                                 .setBidPriceMicros(1000L * i)
+                                 .setAgentData(AgentData.newBuilder()
+                                                        .setAgentId("serializer-test"))
+                                 .buildPartial());
+    }
+    return responseBuilder.buildPartial();
+  }
+
+  private static void assertSerialized(ByteBufAllocator alloc, boolean direct) throws Exception {
+    final BidAgentResponse response = newResponse();
+    final ByteBuf bytebuf = BidProtobufSerializer.serialize(alloc, response);
+    try {
+      Assert.assertEquals(direct, bytebuf.isDirect());
+      Assert.assertEquals(1, bytebuf.refCnt());
+      Assert.assertEquals(0, bytebuf.readerIndex());
+      Assert.assertEquals(response.getSerializedSize(), bytebuf.readableBytes());
+      Assert.assertEquals(response, BidAgentResponse.parseFrom(ByteBufUtil.getBytes(bytebuf)));
+    } finally {
+      bytebuf.release();
+    }
+  }
+
+  @Test
+  public void serializeTest_PooledHeap() throws Exception {
+    assertSerialized(new PooledByteBufAllocator(false), false);
+  }
+
+  @Test
+  public void serializeTest_PooledDirect() throws Exception {
+    assertSerialized(new PooledByteBufAllocator(true), true);
+  }
+
+  @Test
+  public void serializeTest_Unpooled() throws Exception {
+    assertSerialized(new UnpooledByteBufAllocator(false), false);
+    assertSerialized(new UnpooledByteBufAllocator(true), true);
+  }
+
+  @Test
+  public void serializeTest_Empty() throws Exception {
+    final ByteBuf bytebuf = BidProtobufSerializer.serialize(PooledByteBufAllocator.DEFAULT,
+        BidAgentResponse.getDefaultInstance());
+    Assert.assertEquals(0, bytebuf.readableBytes());
+    Assert.assertTrue(bytebuf.release());
+  }
+
+  @Test
+  public void serializeTest_Failure() throws Exception {
+    final ByteBuf bytebuf = PooledByteBufAllocator.DEFAULT.heapBuffer(16);
+    final ByteBufAllocator alloc = Mockito.mock(ByteBufAllocator.class);
+    Mockito.when(alloc.buffer(Mockito.anyInt()))
+           .thenReturn(bytebuf);
+    // a message writing less than its declared size
+    final MessageLite message = Mockito.mock(MessageLite.class);
+    Mockito.when(message.getSerializedSize())
+           .thenReturn(16);
+    Mockito.doNothing()
+           .when(message)
+           .writeTo(Mockito.any(CodedOutputStream.class));
+    try {
+      BidProtobufSerializer.serialize(alloc, message);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+    }
+    // the buffer is released when serialization fails
+    Assert.assertEquals(0, bytebuf.refCnt());
+  }
+
+  @Test
+  public void serializeTest_WriteFailure() throws Exception {
+    final ByteBuf bytebuf = PooledByteBufAllocator.DEFAULT.directBuffer(16);
+    final ByteBufAllocator alloc = Mockito.mock(ByteBufAllocator.class);
+    Mockito.when(alloc.buffer(Mockito.anyInt()))
+           .thenReturn(bytebuf);
+    final MessageLite message = Mockito.mock(MessageLite.class);
+    Mockito.when(message.getSerializedSize())
+           .thenReturn(16);
+    Mockito.doThrow(new IOException())
+           .when(message)
+           .writeTo(Mockito.any(CodedOutputStream.class));
+    try {
+      BidProtobufSerializer.serialize(alloc, message);
+      Assert.fail();
+    } catch (IOException e) {
+    }
+    Assert.assertEquals(0, bytebuf.refCnt());
+  }
+}
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.parser;
+
+import java.util.EnumSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.Request.BidAgentRequest;
+import com.beeswax.openrtb.Extension.UserExtensions;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.Imp;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.beeswax.openrtb.Openrtb.BidRequest.User;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnknownFieldSet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class SelectiveRequestParserTest {
+
+  private static BidRequest newBidRequest() {
+    return BidRequest.newBuilder()
+                     .setId("selective-auction")
+                     .addImp(Imp.newBuilder()
+                                .setId("1")
+                                .setBidfloor(0.5))
+                     .addImp(Imp.newBuilder()
+                                .setId("2"))
+                     .setSite(Site.newBuilder()
+                                  .setDomain("example.com"))
+                     .setDevice(Device.newBuilder()
+                                      .setUa("Mozilla/5.0")
+                                      .setIp("10.0.0.1"))
+                     .setUser(User.newBuilder()
+                                  .setExt(UserExtensions.newBuilder()
+                                                        .setUserId("BITO.0123456789")))
+                     .setTmax(120)
+                     .addCur("USD")
+                     .buildPartial();
+  }
+
+  private static BidAgentRequest newRequest(int adcandidates) {
+    final BidAgentRequest.Builder requestBuilder = BidAgentRequest.newBuilder()
+                                                                  .setBidRequest(newBidRequest());
+    for (int i = 0; i < adcandidates; i++) {
+      requestBuilder.addAdcandidates(Adcandidate.newBuilder()
+                                                .setLineItemId(100 + i)
+                                                .addCreativeIds(200 + i));
+    }
+    return requestBuilder.buildPartial();
+  }
+
+  @Test
+  public void parseTest_DeclaredFields() throws Exception {
+    final BidAgentRequest request = newRequest(3);
+    final ByteBuf bytebuf = Unpooled.directBuffer()
+                                    .writeBytes(request.toByteArray());
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.of(BidRequestField.USER)).parse(bytebuf);
+    Assert.assertEquals(0, bytebuf.readerIndex());
+    bytebuf.release();
+
+    Assert.assertEquals(request.getAdcandidatesList(), parsed.getRequest()
+                                                             .getAdcandidatesList());
+    final BidRequest bidRequest = parsed.getRequest()
+                                        .getBidRequest();
+    Assert.assertEquals("selective-auction", bidRequest.getId());
+    Assert.assertEquals(120, bidRequest.getTmax());
+    Assert.assertEquals("USD", bidRequest.getCur(0));
+    Assert.assertEquals(request.getBidRequest()
+                               .getUser(),
+        bidRequest.getUser());
+    Assert.assertEquals(0, bidRequest.getImpCount());
+    Assert.assertFalse(bidRequest.hasSite());
+    Assert.assertFalse(bidRequest.hasDevice());
+
+    // decoded once the buffer is released
+    final BidRequest fullBidRequest = parsed.getFullBidRequest();
+    Assert.assertEquals(request.getBidRequest(), fullBidRequest);
+    Assert.assertSame(fullBidRequest, parsed.getFullBidRequest());
+  }
+
+  @Test
+  public void parseTest_AllFields() throws Exception {
+    final BidAgentRequest request = newRequest(2);
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.allOf(BidRequestField.class)).parse(
+            Unpooled.wrappedBuffer(request.toByteArray()));
+    Assert.assertEquals(request, parsed.getRequest());
+    Assert.assertSame(parsed.getRequest()
+                            .getBidRequest(),
+        parsed.getFullBidRequest());
+  }
+
+  @Test
+  public void parseTest_NoAdcandidates() throws Exception {
+    final BidAgentRequest request = newRequest(0);
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.allOf(BidRequestField.class)).parse(
+            Unpooled.wrappedBuffer(request.toByteArray()));
+    Assert.assertEquals(0, parsed.getRequest()
+                                 .getAdcandidatesCount());
+    // only the scalar fields are decoded
+    Assert.assertEquals(BidRequest.newBuilder()
+                                  .setId("selective-auction")
+                                  .setTmax(120)
+                                  .addCur("USD")
+                                  .buildPartial(),
+        parsed.getRequest()
+              .getBidRequest());
+    Assert.assertEquals(request.getBidRequest(), parsed.getFullBidRequest());
+  }
+
+  @Test
+  public void parseTest_Composite() throws Exception {
+    final BidAgentRequest request = newRequest(5);
+    final byte[] bytes = request.toByteArray();
+    // components split within the bid request and its sub-messages
+    final CompositeByteBuf bytebuf = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+    for (int offset = 0; offset < bytes.length; offset += 7) {
+      bytebuf.addComponent(true, Unpooled.directBuffer()
+                                         .writeBytes(bytes, offset,
+                                             Math.min(7, bytes.length - offset)));
+    }
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.of(BidRequestField.DEVICE)).parse(bytebuf);
+    bytebuf.release();
+    Assert.assertEquals(request.getAdcandidatesList(), parsed.getRequest()
+                                                             .getAdcandidatesList());
+    Assert.assertEquals(request.getBidRequest()
+                               .getDevice(),
+        parsed.getRequest()
+              .getBidRequest()
+              .getDevice());
+    Assert.assertEquals(request.getBidRequest(), parsed.getFullBidRequest());
+  }
+
+  @Test
+  public void parseTest_FieldOrder() throws Exception {
+    // adcandidates before the bid request and fields unknown to the parser
+    final BidAgentRequest request = newRequest(2);
+    final UnknownFieldSet unknownFields = UnknownFieldSet.newBuilder()
+                                                         .mergeVarintField(99, 7)
+                                                         .build();
+    final BidRequest bidRequest = request.getBidRequest()
+                                         .toBuilder()
+                                         .setUnknownFields(unknownFields)
+                                         .buildPartial();
+    final ByteString bytes = BidAgentRequest.newBuilder()
+                                            .addAllAdcandidates(request.getAdcandidatesList())
+                                            .buildPartial()
+                                            .toByteString()
+                                            .concat(BidAgentRequest.newBuilder()
+                                                                   .setBidRequest(bidRequest)
+                                                                   .buildPartial()
+                                                                   .toByteString());
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.allOf(BidRequestField.class)).parse(
+            Unpooled.wrappedBuffer(bytes.toByteArray()));
+    Assert.assertEquals(BidAgentRequest.parseFrom(bytes), parsed.getRequest());
+  }
+
+  @Test
+  public void parseTest_OtherFields() throws Exception {
+    // fields the parser leaves to the generated code, e.g. bcat and regs, between its own ones
+    final ByteString bidRequestBytes =
+        BidRequest.newBuilder()
+                  .setId("selective-auction")
+                  .buildPartial()
+                  .toByteString()
+                  .concat(UnknownFieldSet.newBuilder()
+                                         .mergeLengthDelimitedField(12,
+                                             ByteString.copyFromUtf8("IAB25"))
+                                         .build()
+                                         .toByteString())
+                  .concat(BidRequest.newBuilder()
+                                    .addImp(Imp.newBuilder()
+                                               .setId("1"))
+                                    .buildPartial()
+                                    .toByteString())
+                  .concat(UnknownFieldSet.newBuilder()
+                                         .mergeLengthDelimitedField(12,
+                                             ByteString.copyFromUtf8("IAB26"))
+                                         .mergeVarintField(17, 1)
+                                         .build()
+                                         .toByteString())
+                  .concat(BidRequest.newBuilder()
+                                    .setTmax(120)
+                                    .buildPartial()
+                                    .toByteString());
+    final BidRequest bidRequest = BidRequest.parseFrom(bidRequestBytes);
+    final BidAgentRequest request = BidAgentRequest.newBuilder()
+                                                   .setBidRequest(bidRequest)
+                                                   .addAdcandidates(Adcandidate.newBuilder()
+                                                                               .setLineItemId(1))
+                                                   .buildPartial();
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.allOf(BidRequestField.class)).parse(
+            Unpooled.wrappedBuffer(request.toByteArray()));
+    Assert.assertEquals(request, parsed.getRequest());
+
+    final SelectiveBidAgentRequest selected =
+        new SelectiveRequestParser(EnumSet.noneOf(BidRequestField.class)).parse(
+            Unpooled.wrappedBuffer(request.toByteArray()));
+    final BidRequest selectedBidRequest = selected.getRequest()
+                                                  .getBidRequest();
+    Assert.assertEquals(0, selectedBidRequest.getImpCount());
+    Assert.assertEquals(bidRequest.getUnknownFields(), selectedBidRequest.getUnknownFields());
+    Assert.assertEquals(bidRequest, selected.getFullBidRequest());
+  }
+
+  @Test
+  public void parseTest_RepeatedBidRequest() throws Exception {
+    final BidAgentRequest request = newRequest(1);
+    final BidRequest more = BidRequest.newBuilder()
+                                      .setTest(true)
+                                      .buildPartial();
+    // occurrences of a message field are merged
+    final ByteString bytes = request.toByteString()
+                                    .concat(BidAgentRequest.newBuilder()
+                                                           .setBidRequest(more)
+                                                           .buildPartial()
+                                                           .toByteString());
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.noneOf(BidRequestField.class)).parse(
+            Unpooled.wrappedBuffer(bytes.toByteArray()));
+    Assert.assertEquals(BidAgentRequest.parseFrom(bytes), parsed.getRequest());
+  }
+
+  @Test
+  public void parseTest_Malformed() {
+    final byte[] bytes = newRequest(1).toByteArray();
+    final SelectiveRequestParser parser =
+        new SelectiveRequestParser(EnumSet.noneOf(BidRequestField.class));
+    try {
+      parser.parse(Unpooled.directBuffer()
+                           .writeBytes(bytes, 0, bytes.length - 2));
+      Assert.fail();
+    } catch (InvalidProtocolBufferException e) {
+    }
+  }
+
+  @Test(expected = InvalidProtocolBufferException.class)
+  public void getFullBidRequestTest_Malformed() throws Exception {
+    // a truncated site is only found once the skipped fields are decoded
+    final byte[] site = Site.newBuilder()
+                            .setDomain("example.com")
+                            .buildPartial()
+                            .toByteArray();
+    final UnknownFieldSet truncatedSite =
+        UnknownFieldSet.newBuilder()
+                       .mergeLengthDelimitedField(BidRequest.SITE_FIELD_NUMBER,
+                           ByteString.copyFrom(site, 0, site.length - 2))
+                       .build();
+    final BidRequest bidRequest = BidRequest.newBuilder()
+                                            .setId("auction")
+                                            .setUnknownFields(truncatedSite)
+                                            .buildPartial();
+    final SelectiveBidAgentRequest parsed =
+        new SelectiveRequestParser(EnumSet.noneOf(BidRequestField.class)).parse(
+            Unpooled.wrappedBuffer(BidAgentRequest.newBuilder()
+                                                  .setBidRequest(bidRequest)
+                                                  .addAdcandidates(Adcandidate.newBuilder()
+                                                                              .setLineItemId(1))
+                                                  .buildPartial()
+                                                  .toByteArray()));
+    Assert.assertEquals("auction", parsed.getRequest()
+                                         .getBidRequest()
+                                         .getId());
+    parsed.getFullBidRequest();
+  }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Ticker;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+/**
+ * Tests against an in-process stub score service.
+ */
+public class HttpScoreClientTest {
+
+  private final EventLoopGroup group = new NioEventLoopGroup(1);
+  private final ConcurrentHashMap<String, Long> scores = new ConcurrentHashMap<>();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger connections = new AtomicInteger();
+  private Channel server;
+  private HttpScoreClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new ServerBootstrap().group(group)
+                                  .channel(NioServerSocketChannel.class)
+                                  .childHandler(new ChannelInitializer<SocketChannel>() {
+                                    @Override
+                                    protected void initChannel(SocketChannel ch) {
+                                      connections.incrementAndGet();
+                                      ch.pipeline()
+                                        .addLast(new HttpServerCodec())
+                                        .addLast(new HttpObjectAggregator(1024))
+                                        .addLast(new StubScoreHandler());
+                                    }
+                                  })
+                                  .bind("127.0.0.1", 0)
+                                  .sync()
+                                  .channel();
+    client = new HttpScoreClient("http://127.0.0.1:" + port() + "/score", 1000, group, false);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    server.close()
+          .sync();
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS)
+         .sync();
+  }
+
+  private int port() {
+    return ((InetSocketAddress) server.localAddress()).getPort();
+  }
+
+  /**
+   * Answers GET /score?user=ID with the score of the user, 404 for unknown users. Closes the
+   * connection after answering user "close".
+   */
+  private class StubScoreHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+      requests.incrementAndGet();
+      final String userId = new QueryStringDecoder(request.uri()).parameters()
+                                                                 .get("user")
+                                                                 .get(0);
+      final Long score = scores.get(userId);
+      final FullHttpResponse response = score == null
+          ? new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND)
+          : new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+              Unpooled.copiedBuffer(score.toString(), StandardCharsets.US_ASCII));
+      response.headers()
+              .set(HttpHeaderNames.CONTENT_LENGTH, response.content()
+                                                           .readableBytes());
+      if ("close".equals(userId)) {
+        ctx.writeAndFlush(response)
+           .addListener(ChannelFutureListener.CLOSE);
+      } else {
+        ctx.writeAndFlush(response);
+      }
+    }
+  }
+
+  @Test
+  public void fetchScoreTest() throws Exception {
+    scores.put("BITO.1", 42L);
+    scores.put("BITO 2&x=é", -3L);
+
+    final Future<Long> first = client.fetchScore("BITO.1");
+    final Future<Long> second = client.fetchScore("BITO 2&x=é");
+    final Future<Long> unknown = client.fetchScore("BITO.3");
+    Assert.assertEquals(Long.valueOf(42), first.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(Long.valueOf(-3), second.get(5, TimeUnit.SECONDS));
+    Assert.assertNull(unknown.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void fetchScoreTest_Reconnect() throws Exception {
+    scores.put("BITO.1", 42L);
+    Assert.assertNull(client.fetchScore("close")
+                            .get(5, TimeUnit.SECONDS));
+
+    // a fetch racing the close fails, the following ones use a new connection
+    Future<Long> fetch = null;
+    for (int i = 0; i < 100; i++) {
+      fetch = client.fetchScore("BITO.1")
+                    .await();
+      if (fetch.isSuccess()) {
+        break;
+      }
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(Long.valueOf(42), fetch.getNow());
+    Assert.assertEquals(2, connections.get());
+  }
+
+  @Test
+  public void getScoreTest_NearCache() throws Exception {
+    scores.put("BITO.1", 42L);
+    final NearCacheScoreStore store = new NearCacheScoreStore(null, client, 100, 60000, 60000,
+        5000, 5000, GlobalEventExecutor.INSTANCE, Ticker.systemTicker(), new VarRegistry());
+
+    Assert.assertEquals(42, store.getScore("BITO.1", -1));
+    Assert.assertEquals(-1, store.getScore("BITO.2", -1));
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(42, store.getScore("BITO.1", -1));
+      Assert.assertEquals(-1, store.getScore("BITO.2", -1));
+    }
+    Assert.assertEquals(2, requests.get());
+  }
+}
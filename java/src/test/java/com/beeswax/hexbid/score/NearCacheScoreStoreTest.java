@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Ticker;
+
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+public class NearCacheScoreStoreTest {
+
+  private final EventExecutor executor = new DefaultEventExecutor();
+  private final VarRegistry registry = new VarRegistry();
+  private final AtomicLong now = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return now.get();
+    }
+  };
+
+  /**
+   * Client whose fetches complete when the test says so.
+   */
+  private class StubClient implements ScoreClient {
+    private final Map<String, Promise<Long>> fetches = new HashMap<>();
+    private int count;
+
+    @Override
+    public synchronized Future<Long> fetchScore(String userId) {
+      count++;
+      final Promise<Long> promise = executor.newPromise();
+      fetches.put(userId, promise);
+      return promise;
+    }
+
+    synchronized Promise<Long> fetch(String userId) {
+      return fetches.get(userId);
+    }
+
+    /**
+     * Complete the fetch of the user on the executor, which runs its listeners right away.
+     */
+    void complete(final String userId, final Long score, final Throwable cause) throws Exception {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          if (cause == null) {
+            fetch(userId).setSuccess(score);
+          } else {
+            fetch(userId).setFailure(cause);
+          }
+        }
+      })
+              .sync();
+    }
+  }
+
+  private final StubClient client = new StubClient();
+
+  @After
+  public void tearDown() {
+    executor.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+  }
+
+  private NearCacheScoreStore newStore(UserScoreStore local, long timeoutMillis,
+      long waitMillis) {
+    return new NearCacheScoreStore(local, client, 2, 1000, 100, timeoutMillis, waitMillis,
+        executor, ticker, registry);
+  }
+
+  private Object var(String name) {
+    return registry.snapshot()
+                   .get("user_scores.remote." + name);
+  }
+
+  @Test
+  public void getScoreTest_Coalescing() throws Exception {
+    final NearCacheScoreStore store = newStore(null, 10000, 0);
+
+    // misses do not wait and share the fetch
+    Assert.assertEquals(-1, store.getScore("BITO.1", -1));
+    Assert.assertEquals(-1, store.getScore("BITO.1", -1));
+    Assert.assertEquals(1, client.count);
+    Assert.assertEquals(1L, var("coalesced"));
+
+    client.complete("BITO.1", 42L, null);
+    Assert.assertEquals(42, store.getScore("BITO.1", -1));
+    Assert.assertEquals(1, client.count);
+    Assert.assertEquals(1L, var("hits"));
+    Assert.assertEquals(2L, var("misses"));
+    Assert.assertEquals(1 / 3.0, (Double) var("hit_rate"), 1e-9);
+
+    // the score expires after the TTL
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+    Assert.assertEquals(-1, store.getScore("BITO.1", -1));
+    Assert.assertEquals(2, client.count);
+  }
+
+  @Test
+  public void getScoreTest_Negative() throws Exception {
+    final NearCacheScoreStore store = newStore(null, 10000, 0);
+    store.getScore("BITO.unknown", -1);
+    client.complete("BITO.unknown", null, null);
+
+    Assert.assertEquals(-1, store.getScore("BITO.unknown", -1));
+    Assert.assertEquals(1L, var("negative_hits"));
+    Assert.assertEquals(1, client.count);
+
+    // unknown users expire after the negative TTL
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(101));
+    store.getScore("BITO.unknown", -1);
+    Assert.assertEquals(2, client.count);
+  }
+
+  @Test
+  public void getScoreTest_CharSequence() throws Exception {
+    final NearCacheScoreStore store = newStore(null, 10000, 0);
+    store.getScore(new StringBuilder("BITO.").append(7), -1);
+    client.complete("BITO.7", 42L, null);
+
+    // the cache is keyed by the hash of the characters, not by the sequence
+    Assert.assertEquals(42, store.getScore("BITO.7", -1));
+    Assert.assertEquals(42, store.getScore(new AsciiString("BITO.7"), -1));
+    Assert.assertEquals(2L, var("hits"));
+    Assert.assertEquals(1, client.count);
+  }
+
+  @Test
+  public void getScoreTest_Local() {
+    final OffHeapScoreTable local = OffHeapScoreTable.allocate(10);
+    local.put("BITO.local", 7);
+    final NearCacheScoreStore store = newStore(local, 10000, 0);
+
+    Assert.assertEquals(7, store.getScore("BITO.local", -1));
+    Assert.assertEquals(0, client.count);
+    store.getScore("BITO.remote", -1);
+    Assert.assertEquals(1, client.count);
+  }
+
+  @Test
+  public void getScoreTest_Eviction() throws Exception {
+    final NearCacheScoreStore store = newStore(null, 10000, 0);
+    for (int i = 0; i < 3; i++) {
+      store.getScore("BITO." + i, -1);
+      client.complete("BITO." + i, (long) i, null);
+    }
+    Assert.assertEquals(2L, var("size"));
+  }
+
+  @Test
+  public void getScoreTest_Wait() throws Exception {
+    final NearCacheScoreStore store = newStore(null, 10000, 5000);
+    executor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        client.fetch("BITO.1")
+              .setSuccess(42L);
+      }
+    }, 50, TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals(42, store.getScore("BITO.1", -1));
+  }
+
+  @Test
+  public void getScoreTest_Timeout() throws Exception {
+    // waits are capped by the timeout
+    final NearCacheScoreStore store = newStore(null, 50, 5000);
+
+    final long startNanos = System.nanoTime();
+    Assert.assertEquals(-1, store.getScore("BITO.1", -1));
+    Assert.assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(4));
+    // the timeout task completes on the executor
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {}
+    })
+            .sync();
+    Assert.assertEquals(1L, var("timeouts"));
+    Assert.assertTrue(client.fetch("BITO.1")
+                            .isCancelled());
+
+    // the timed out fetch is not cached
+    Assert.assertEquals(-1, store.getScore("BITO.1", -1));
+    Assert.assertEquals(2, client.count);
+  }
+
+  @Test
+  public void getScoreTest_Error() throws Exception {
+    final NearCacheScoreStore store = newStore(null, 10000, 0);
+    store.getScore("BITO.1", -1);
+    client.complete("BITO.1", null, new IllegalStateException());
+
+    Assert.assertEquals(1L, var("errors"));
+    Assert.assertEquals(-1, store.getScore("BITO.1", -1));
+    Assert.assertEquals(2, client.count);
+  }
+}
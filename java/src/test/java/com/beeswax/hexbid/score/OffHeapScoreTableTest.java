@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.test.AllocationAssert;
+
+public class OffHeapScoreTableTest {
+
+  @Test
+  public void getScoreTest() {
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(100);
+    table.put("BITO.123456", 11);
+    table.put("BITO.654321", -3);
+
+    Assert.assertEquals(11, table.getScore("BITO.123456", 0));
+    Assert.assertEquals(-3, table.getScore("BITO.654321", 0));
+    // any char sequence of the same id
+    Assert.assertEquals(11, table.getScore(new StringBuilder("BITO.").append(123456), 0));
+    Assert.assertEquals(7, table.getScore("BITO.000000", 7));
+    Assert.assertEquals(7, table.getScore("", 7));
+
+    table.put("BITO.123456", 12);
+    Assert.assertEquals(12, table.getScore("BITO.123456", 0));
+    Assert.assertEquals(2, table.size());
+  }
+
+  @Test
+  public void getScoreTest_Segments() {
+    final int users = 100000;
+    // 2^14 slots per segment, several segments
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(users, 1 << 14);
+    Assert.assertTrue(table.capacity() * 0.7 >= users);
+    Assert.assertEquals(table.capacity() * OffHeapScoreTable.SLOT_BYTES, table.footprintBytes());
+    for (int i = 0; i < users; i++) {
+      table.put("user-" + i, i);
+    }
+    Assert.assertEquals(users, table.size());
+    for (int i = 0; i < users; i++) {
+      Assert.assertEquals(i, table.getScore("user-" + i, -1));
+    }
+    for (int i = users; i < 2 * users; i++) {
+      Assert.assertEquals(-1, table.getScore("user-" + i, -1));
+    }
+  }
+
+  @Test
+  public void putTest_Full() {
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(10);
+    int users = 0;
+    try {
+      while (users < 100) {
+        table.put("user-" + users, users);
+        users++;
+      }
+      Assert.fail();
+    } catch (IllegalStateException e) {
+    }
+    // the table is never filled up so lookups of missing users terminate
+    Assert.assertTrue(users < table.capacity());
+    Assert.assertEquals(-1, table.getScore("missing", -1));
+  }
+
+  @Test
+  public void putTest_FullSegments() {
+    // 8 segments of 2^10 slots, the table holds 0.7 of its slots however they spread
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(5000, 1 << 10);
+    Assert.assertEquals(8 << 10, table.capacity());
+    final long maxSize = (long) (table.capacity() * 0.7);
+    for (int i = 0; i < maxSize; i++) {
+      table.put("user-" + i, i);
+    }
+    try {
+      table.put("user-" + maxSize, maxSize);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+    }
+    Assert.assertEquals(maxSize, table.size());
+    Assert.assertEquals(-1, table.getScore("missing", -1));
+  }
+
+  @Test
+  public void getScoreTest_NoAllocation() {
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(1000);
+    final String[] userIds = new String[1024];
+    for (int i = 0; i < userIds.length; i++) {
+      userIds[i] = "user-" + i;
+      if (i % 2 == 0) {
+        table.put(userIds[i], i);
+      }
+    }
+    final long[] sum = new long[1];
+    final Runnable lookups = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100000; i++) {
+          sum[0] += table.getScore(userIds[i & 1023], 0);
+        }
+      }
+    };
+    AllocationAssert.assertAllocatesLessThan(1024, lookups, lookups);
+    Assert.assertTrue(sum[0] > 0);
+  }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScoreSnapshotsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path writeSnapshot(long version) throws IOException {
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(1000, 256);
+    for (int i = 0; i < 1000; i++) {
+      table.put("BITO." + i, i);
+    }
+    final Path file = folder.getRoot()
+                            .toPath()
+                            .resolve("scores-" + version + ".snapshot");
+    ScoreSnapshots.write(table, version, file);
+    return file;
+  }
+
+  @Test
+  public void mapTest() throws Exception {
+    final Path file = writeSnapshot(7);
+    final OffHeapScoreTable table = ScoreSnapshots.map(file, 7);
+
+    Assert.assertEquals(1000, table.size());
+    Assert.assertEquals(2048, table.capacity());
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(i, table.getScore("BITO." + i, -1));
+    }
+    Assert.assertEquals(-1, table.getScore("BITO.1000", -1));
+    try {
+      table.put("BITO.1000", 1);
+      Assert.fail();
+    } catch (UnsupportedOperationException e) {
+      // read only mapping
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void mapTest_Version() throws Exception {
+    ScoreSnapshots.map(writeSnapshot(7), 8);
+  }
+
+  @Test
+  public void mapTest_Corrupted() throws Exception {
+    final Path file = writeSnapshot(7);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(ScoreSnapshots.HEADER_BYTES + 100);
+      raf.write(raf.read() ^ 1);
+    }
+    try {
+      ScoreSnapshots.map(file, 7);
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("Snapshot checksum mismatch", e.getMessage());
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(raf.length() - 16);
+    }
+    try {
+      ScoreSnapshots.map(file, 7);
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage()
+                                         .contains("does not match its layout"));
+    }
+  }
+}
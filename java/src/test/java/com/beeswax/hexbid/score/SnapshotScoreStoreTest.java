@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.score;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Ticker;
+
+public class SnapshotScoreStoreTest {
+  private static final int USERS = 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path directory;
+  private VarRegistry registry;
+  private SnapshotScoreStore store;
+
+  @Before
+  public void setUp() {
+    directory = folder.getRoot()
+                      .toPath();
+    registry = new VarRegistry();
+    store = new SnapshotScoreStore(directory, 1000, registry, Ticker.systemTicker());
+  }
+
+  /**
+   * Write a snapshot in which every user has the version as score.
+   */
+  private void writeSnapshot(long version) throws IOException {
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(USERS);
+    for (int i = 0; i < USERS; i++) {
+      table.put("BITO." + i, version);
+    }
+    ScoreSnapshots.write(table, version, directory.resolve("scores-" + version + ".snapshot"));
+  }
+
+  private void appendDelta(long version, String lines) throws IOException {
+    Files.write(directory.resolve("scores-" + version + ".delta"),
+        lines.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+
+  @Test
+  public void pollTest() throws Exception {
+    store.poll();
+    Assert.assertEquals(-1, store.getVersion());
+    Assert.assertEquals(-5, store.getScore("BITO.1", -5));
+
+    writeSnapshot(1);
+    appendDelta(1, "BITO.1 100\n");
+    store.poll();
+    Assert.assertEquals(1, store.getVersion());
+    Assert.assertEquals(100, store.getScore("BITO.1", -5));
+    Assert.assertEquals(1, store.getScore("BITO.2", -5));
+    Assert.assertEquals(-5, store.getScore("BITO.new", -5));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("user_scores.snapshot.version"));
+    Assert.assertEquals((long) USERS, registry.snapshot()
+                                              .get("user_scores.snapshot.entries"));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("user_scores.delta.entries"));
+
+    // lines appended between snapshots, the incomplete one waits for its end
+    appendDelta(1, "BITO.2 200\nBITO.new 300\nBITO.3 4");
+    store.poll();
+    Assert.assertEquals(100, store.getScore("BITO.1", -5));
+    Assert.assertEquals(200, store.getScore("BITO.2", -5));
+    Assert.assertEquals(300, store.getScore("BITO.new", -5));
+    Assert.assertEquals(1, store.getScore("BITO.3", -5));
+    appendDelta(1, "00\nmalformed\n");
+    store.poll();
+    Assert.assertEquals(400, store.getScore("BITO.3", -5));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("user_scores.delta.errors"));
+    Assert.assertEquals(4L, registry.snapshot()
+                                    .get("user_scores.delta.entries"));
+
+    // a new snapshot replaces the snapshot and its delta
+    writeSnapshot(2);
+    store.poll();
+    Assert.assertEquals(2, store.getVersion());
+    Assert.assertEquals(2, store.getScore("BITO.1", -5));
+    Assert.assertEquals(-5, store.getScore("BITO.new", -5));
+    Assert.assertEquals(0L, registry.snapshot()
+                                    .get("user_scores.delta.entries"));
+    Assert.assertEquals(2L, registry.snapshot()
+                                    .get("user_scores.swaps"));
+  }
+
+  @Test
+  public void pollTest_InvalidSnapshot() throws Exception {
+    writeSnapshot(1);
+    store.poll();
+    Files.write(directory.resolve("scores-2.snapshot"), new byte[100]);
+    store.poll();
+    store.poll();
+
+    Assert.assertEquals(1, store.getVersion());
+    Assert.assertEquals(1, store.getScore("BITO.1", -5));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("user_scores.load_failures"));
+
+    // a later valid snapshot is still picked up
+    writeSnapshot(3);
+    store.poll();
+    Assert.assertEquals(3, store.getVersion());
+  }
+
+  @Test
+  public void getScoreTest_Swaps() throws Exception {
+    writeSnapshot(1);
+    store.poll();
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicReference<String> failure = new AtomicReference<>();
+    final Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        long previous = 1;
+        while (!done.get()) {
+          for (int i = 0; i < USERS; i++) {
+            // each user has the score of a whole snapshot, never older than the previous lookup
+            final long score = store.getScore("BITO." + i, -1);
+            if (score < previous) {
+              failure.compareAndSet(null, "BITO." + i + " : " + score + " after " + previous);
+            }
+            previous = score;
+          }
+        }
+      }
+    });
+    reader.start();
+    try {
+      for (long version = 2; version <= 20; version++) {
+        writeSnapshot(version);
+        store.poll();
+        Assert.assertEquals(version, store.getVersion());
+      }
+    } finally {
+      done.set(true);
+      reader.join();
+    }
+    Assert.assertNull(failure.get());
+  }
+}
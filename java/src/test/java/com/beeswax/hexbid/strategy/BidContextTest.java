@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.hexbid.model.FeatureHasher;
+import com.beeswax.hexbid.score.OffHeapScoreTable;
+import com.beeswax.openrtb.Extension.UserExtensions;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.App;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.DeviceType;
+import com.beeswax.openrtb.Openrtb.BidRequest.Geo;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.beeswax.openrtb.Openrtb.BidRequest.User;
+import com.beeswax.test.AllocationAssert;
+import com.google.protobuf.ByteString;
+
+public class BidContextTest {
+  // 1970-01-01T23:30Z
+  private static final long NOW_MILLIS = (23 * 60 + 30) * 60000L;
+
+  private static BidRequest newRequest() {
+    return BidRequest.newBuilder()
+                     .setSite(Site.newBuilder()
+                                  .setId("site-1")
+                                  .setDomain("example.com"))
+                     .setDevice(Device.newBuilder()
+                                      .setDevicetype(DeviceType.TABLET)
+                                      .setGeo(Geo.newBuilder()
+                                                 .setCountry("FRA")
+                                                 .setUtcoffset(60)))
+                     .setUser(User.newBuilder()
+                                  .setExt(UserExtensions.newBuilder()
+                                                        .setUserId("BITO.123456")))
+                     .buildPartial();
+  }
+
+  @Test
+  public void getTest() {
+    final BidRequest request = newRequest();
+    final BidContext context = BidContext.get(request, NOW_MILLIS);
+
+    Assert.assertSame(request, context.getRequest());
+    Assert.assertEquals(NOW_MILLIS, context.getNowMillis());
+    Assert.assertEquals("BITO.123456", context.getUserId());
+    // remembered for the other adcandidates
+    Assert.assertSame(context.getUserId(), context.getUserId());
+    Assert.assertEquals(OffHeapScoreTable.hash("BITO.123456"), context.getUserIdHash());
+    Assert.assertEquals(FeatureHasher.hash(FeatureHasher.SITE,
+        ByteString.copyFromUtf8("example.com")), context.getInventoryHash());
+    Assert.assertEquals("FRA", context.getGeo()
+                                      .getCountry());
+    Assert.assertEquals(DeviceType.TABLET, context.getDeviceType());
+    Assert.assertEquals(0, context.getLocalHour());
+  }
+
+  @Test
+  public void getTest_Reset() {
+    final BidContext context = BidContext.get(newRequest(), NOW_MILLIS);
+    context.getUserId();
+    context.getInventoryHash();
+    context.getLocalHour();
+
+    // the context of the thread is reused, without the features of the previous request
+    final BidRequest request = BidRequest.newBuilder()
+                                         .setApp(App.newBuilder()
+                                                    .setId("app-1"))
+                                         .buildPartial();
+    Assert.assertSame(context, BidContext.get(request, NOW_MILLIS + 3600000));
+    Assert.assertNull(context.getUserId());
+    Assert.assertEquals(BidContext.NO_USER, context.getUserIdHash());
+    Assert.assertEquals(FeatureHasher.hash(FeatureHasher.APP,
+        ByteString.copyFromUtf8("app-1")), context.getInventoryHash());
+    Assert.assertEquals(Geo.getDefaultInstance(), context.getGeo());
+    Assert.assertNull(context.getDeviceType());
+    Assert.assertEquals(0, context.getLocalHour());
+
+    Assert.assertEquals(BidContext.NO_INVENTORY,
+        BidContext.get(BidRequest.getDefaultInstance(), NOW_MILLIS)
+                  .getInventoryHash());
+  }
+
+  @Test
+  public void getLocalHourTest() {
+    Assert.assertEquals(23, BidContext.getLocalHour(NOW_MILLIS, 0));
+    Assert.assertEquals(0, BidContext.getLocalHour(NOW_MILLIS, 30));
+    Assert.assertEquals(18, BidContext.getLocalHour(NOW_MILLIS, -5 * 60));
+    Assert.assertEquals(19, BidContext.getLocalHour(-1, -4 * 60));
+    Assert.assertEquals(23, BidContext.getLocalHour(-60001, 0));
+    Assert.assertEquals(0, BidContext.getLocalHour(-2 * 86400000L, 59));
+    Assert.assertEquals(23, BidContext.getLocalHour(-2 * 86400000L, -1));
+    Assert.assertEquals(11, BidContext.getLocalHour(NOW_MILLIS, 12 * 60));
+  }
+
+  @Test
+  public void clearTest() {
+    final BidContext context = BidContext.get(newRequest(), NOW_MILLIS);
+    context.getUserId();
+    context.clear();
+
+    // the request is no longer reachable from the thread
+    Assert.assertNull(context.getRequest());
+    Assert.assertSame(context, BidContext.get(BidRequest.getDefaultInstance(), NOW_MILLIS));
+    Assert.assertNull(context.getUserId());
+  }
+
+  @Test
+  public void getTest_NoAllocation() {
+    final BidRequest[] requests = {newRequest(), BidRequest.getDefaultInstance()};
+    final long[] sum = new long[1];
+    final Runnable contexts = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100000; i++) {
+          final BidContext context = BidContext.get(requests[i & 1], NOW_MILLIS);
+          sum[0] += context.getInventoryHash() + context.getLocalHour();
+          if (context.getUserId() != null) {
+            sum[0] += context.getUserId()
+                             .length();
+          }
+        }
+      }
+    };
+    AllocationAssert.assertAllocatesLessThan(1024, contexts, contexts);
+    Assert.assertTrue(sum[0] != 0);
+  }
+}
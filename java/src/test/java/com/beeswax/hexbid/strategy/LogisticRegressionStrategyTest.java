@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.SimpleTimeZone;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.model.FeatureHasher;
+import com.beeswax.hexbid.model.LogisticModel;
+import com.beeswax.hexbid.strategy.LogisticRegressionStrategy.Clock;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.openrtb.Openrtb.BidRequest.App;
+import com.beeswax.openrtb.Openrtb.BidRequest.Device;
+import com.beeswax.openrtb.Openrtb.BidRequest.DeviceType;
+import com.beeswax.openrtb.Openrtb.BidRequest.Geo;
+import com.beeswax.openrtb.Openrtb.BidRequest.Site;
+import com.beeswax.test.AllocationAssert;
+import com.google.common.base.Suppliers;
+
+public class LogisticRegressionStrategyTest {
+  private static final String STRATEGY_NAME = LogisticRegressionStrategy.STRATEGY_NAME;
+  private static final int BITS = 12;
+  private static final String[] DOMAINS = {"example.com", "news.example.org", "émission.fr"};
+  private static final String[] OS = {"iOS", "Android"};
+  private static final String[] COUNTRIES = {"USA", "FRA", "JPN"};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private final Random random = new Random(42);
+  private Path file;
+  private LogisticModel model;
+
+  @Before
+  public void setUp() throws Exception {
+    final float[] weights = new float[1 << BITS];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = (float) (random.nextGaussian() * 0.5);
+    }
+    file = folder.getRoot()
+                 .toPath()
+                 .resolve("model-1.lr");
+    LogisticModel.write(file, 1, -2, weights);
+    model = LogisticModel.map(file, 1);
+  }
+
+  /**
+   * Straightforward scorer of the documented features, built from strings with the model weights
+   * read into an array.
+   */
+  private static class ReferenceScorer {
+    private final float[] weights;
+    private final double bias;
+
+    ReferenceScorer(Path file) throws Exception {
+      final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file))
+                                         .order(ByteOrder.LITTLE_ENDIAN);
+      bias = bytes.getDouble(24);
+      weights = new float[(bytes.capacity() - LogisticModel.HEADER_BYTES) / 4];
+      bytes.position(LogisticModel.HEADER_BYTES);
+      bytes.asFloatBuffer()
+           .get(weights);
+    }
+
+    private static byte[] number(long value) {
+      return ByteBuffer.allocate(8)
+                       .order(ByteOrder.LITTLE_ENDIAN)
+                       .putLong(value)
+                       .array();
+    }
+
+    private static long fnv(byte[]... parts) {
+      long hash = 0xcbf29ce484222325L;
+      for (byte[] part : parts) {
+        for (byte b : part) {
+          hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+      }
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9cc1a85ec53L;
+      return hash ^ (hash >>> 33);
+    }
+
+    private static long feature(long namespace, String value) {
+      return fnv(number(namespace), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long feature(long namespace, long value) {
+      return fnv(number(namespace), number(value));
+    }
+
+    private static long cross(long first, long second) {
+      return fnv(number(first), number(second));
+    }
+
+    double predict(Adcandidate adcandidate, BidRequest request, long nowMillis) {
+      final List<Long> features = new ArrayList<>();
+      Long inventory = null;
+      if (request.hasSite() && request.getSite()
+                                      .hasDomain()) {
+        inventory = feature(FeatureHasher.SITE, request.getSite()
+                                                       .getDomain());
+      } else if (request.hasSite() && request.getSite()
+                                             .hasId()) {
+        inventory = feature(FeatureHasher.SITE, request.getSite()
+                                                       .getId());
+      } else if (request.hasApp() && request.getApp()
+                                            .hasBundle()) {
+        inventory = feature(FeatureHasher.APP, request.getApp()
+                                                      .getBundle());
+      }
+      if (inventory != null) {
+        features.add(inventory);
+      }
+      final Device device = request.getDevice();
+      if (device.hasOs()) {
+        features.add(feature(FeatureHasher.DEVICE_OS, device.getOs()));
+      }
+      if (device.hasDevicetype()) {
+        features.add(feature(FeatureHasher.DEVICE_TYPE, device.getDevicetype()
+                                                              .getNumber()));
+      }
+      if (device.getGeo()
+                .hasCountry()) {
+        features.add(feature(FeatureHasher.GEO_COUNTRY, device.getGeo()
+                                                              .getCountry()));
+      }
+      final int offsetMillis = device.getGeo()
+                                     .getUtcoffset()
+          * 60000;
+      final Calendar calendar = Calendar.getInstance(new SimpleTimeZone(offsetMillis, "geo"));
+      calendar.setTimeInMillis(nowMillis);
+      final int hourOfDay = calendar.get(Calendar.HOUR_OF_DAY);
+      final long hour = feature(FeatureHasher.HOUR, hourOfDay);
+      final long lineItem = feature(FeatureHasher.LINE_ITEM, adcandidate.getLineItemId());
+      features.add(hour);
+      features.add(lineItem);
+      if (adcandidate.hasCampaignId()) {
+        features.add(feature(FeatureHasher.CAMPAIGN, adcandidate.getCampaignId()));
+      }
+      if (inventory != null) {
+        features.add(cross(lineItem, inventory));
+      }
+      features.add(cross(lineItem, hour));
+
+      double logit = bias;
+      for (long feature : features) {
+        logit += weights[(int) (feature & (weights.length - 1))];
+      }
+      return 1 / (1 + Math.exp(-logit));
+    }
+  }
+
+  private BidRequest newRequest() {
+    final BidRequest.Builder request = BidRequest.newBuilder();
+    switch (random.nextInt(4)) {
+      case 0:
+        request.setSite(Site.newBuilder()
+                            .setDomain(DOMAINS[random.nextInt(DOMAINS.length)]));
+        break;
+      case 1:
+        request.setSite(Site.newBuilder()
+                            .setId("site-" + random.nextInt(5)));
+        break;
+      case 2:
+        request.setApp(App.newBuilder()
+                          .setBundle("com.example.app" + random.nextInt(5)));
+        break;
+      default:
+        break;
+    }
+    final Device.Builder device = Device.newBuilder();
+    if (random.nextBoolean()) {
+      device.setOs(OS[random.nextInt(OS.length)]);
+    }
+    if (random.nextBoolean()) {
+      device.setDevicetype(random.nextBoolean() ? DeviceType.MOBILE : DeviceType.TABLET);
+    }
+    final Geo.Builder geo = Geo.newBuilder();
+    if (random.nextBoolean()) {
+      geo.setCountry(COUNTRIES[random.nextInt(COUNTRIES.length)]);
+    }
+    if (random.nextBoolean()) {
+      geo.setUtcoffset(random.nextInt(24 * 60 + 1) - 12 * 60);
+    }
+    return request.setDevice(device.setGeo(geo))
+                  .buildPartial();
+  }
+
+  private Adcandidate newAdcandidate(long lineItemId, String value) {
+    final Adcandidate.Builder adcandidate = Adcandidate.newBuilder()
+                                                       .setLineItemId(lineItemId);
+    if (lineItemId % 2 == 0) {
+      adcandidate.setCampaignId(lineItemId / 2);
+    }
+    final Params param = Params.newBuilder()
+                               .setKey("value_micros_usd")
+                               .setValue(value)
+                               .buildPartial();
+    final CustomStrategy.Builder strategy = CustomStrategy.newBuilder()
+                                                          .setName(STRATEGY_NAME)
+                                                          .addCustomParams(param);
+    return adcandidate.setBidding(Bidding.newBuilder()
+                                         .setCustomStrategy(strategy))
+                      .buildPartial();
+  }
+
+  @Test
+  public void predictTest_Parity() throws Exception {
+    final ReferenceScorer reference = new ReferenceScorer(file);
+    for (int i = 0; i < 10000; i++) {
+      final Adcandidate adcandidate = newAdcandidate(random.nextInt(20), "1000");
+      final BidRequest request = newRequest();
+      final long nowMillis = Math.abs(random.nextLong() % 2_000_000_000_000L);
+      Assert.assertEquals(request.toString(), reference.predict(adcandidate, request, nowMillis),
+          LogisticRegressionStrategy.predict(model, adcandidate, request, nowMillis), 1e-9);
+    }
+  }
+
+  @Test
+  public void getBidPriceTest() {
+    final Clock clock = new Clock() {
+      @Override
+      public long millis() {
+        return 1_500_000_000_000L;
+      }
+    };
+    final LogisticRegressionStrategy strategy =
+        new LogisticRegressionStrategy(Suppliers.ofInstance(model), clock);
+    final Adcandidate adcandidate = newAdcandidate(7, "2000000");
+    final BidRequest request = newRequest();
+
+    final double probability =
+        LogisticRegressionStrategy.predict(model, adcandidate, request, clock.millis());
+    Assert.assertEquals(Math.round(probability * 2000000),
+        strategy.getBidPriceMicrosUSD(adcandidate, request));
+    Assert.assertEquals(0, strategy.getBidPriceMicrosUSD(newAdcandidate(8, "abc"), request));
+    // no model
+    Assert.assertEquals(0, new LogisticRegressionStrategy().getBidPriceMicrosUSD(adcandidate,
+        request));
+  }
+
+  @Test
+  public void getBidPricesTest() {
+    final Clock clock = new Clock() {
+      @Override
+      public long millis() {
+        return 1_500_000_000_000L;
+      }
+    };
+    final LogisticRegressionStrategy strategy =
+        new LogisticRegressionStrategy(Suppliers.ofInstance(model), clock);
+    final Adcandidate[] adcandidates = new Adcandidate[20];
+    for (int i = 0; i < adcandidates.length; i++) {
+      adcandidates[i] = newAdcandidate(i, i == 5 ? "abc" : String.valueOf(1000000 + i));
+    }
+    final long[] prices = new long[adcandidates.length];
+    for (int i = 0; i < 1000; i++) {
+      final BidRequest request = newRequest();
+      final BidContext context = BidContext.get(request, clock.millis());
+      final int count = 1 + random.nextInt(adcandidates.length);
+      strategy.getBidPricesMicrosUSD(adcandidates, count, context, prices);
+      for (int j = 0; j < count; j++) {
+        // same price as one at a time, with or without context
+        final long price = strategy.getBidPriceMicrosUSD(adcandidates[j], request);
+        Assert.assertEquals(price, prices[j]);
+        Assert.assertEquals(price, strategy.getBidPriceMicrosUSD(adcandidates[j], context));
+      }
+    }
+
+    Arrays.fill(prices, -1);
+    new LogisticRegressionStrategy().getBidPricesMicrosUSD(adcandidates, 2,
+        BidContext.get(newRequest(), clock.millis()), prices);
+    Assert.assertEquals(0, prices[0]);
+    Assert.assertEquals(0, prices[1]);
+    Assert.assertEquals(-1, prices[2]);
+  }
+
+  @Test
+  public void getBidPriceTest_NoAllocation() {
+    final LogisticRegressionStrategy strategy =
+        new LogisticRegressionStrategy(Suppliers.ofInstance(model));
+    final Adcandidate[] adcandidates = new Adcandidate[16];
+    final BidRequest[] requests = new BidRequest[64];
+    for (int i = 0; i < adcandidates.length; i++) {
+      adcandidates[i] = newAdcandidate(1000 + i, "1000000");
+    }
+    for (int i = 0; i < requests.length; i++) {
+      requests[i] = newRequest();
+    }
+    final long[] sum = new long[1];
+    final Runnable scoring = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100000; i++) {
+          sum[0] += strategy.getBidPriceMicrosUSD(adcandidates[i & 15], requests[i & 63]);
+        }
+      }
+    };
+    AllocationAssert.assertAllocatesLessThan(1024, scoring, scoring);
+    Assert.assertTrue(sum[0] > 0);
+  }
+}
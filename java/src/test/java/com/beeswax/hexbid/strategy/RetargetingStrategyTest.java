@@ -18,6 +18,7 @@ import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.hexbid.score.OffHeapScoreTable;
 import com.beeswax.openrtb.Extension.UserExtensions;
 import com.beeswax.openrtb.Openrtb.BidRequest;
 import com.beeswax.openrtb.Openrtb.BidRequest.User;
@@ -55,5 +56,18 @@ public class RetargetingStrategyTest {
 
     final RetargetingStrategy customStrategy = new RetargetingStrategy();
     Assert.assertEquals(550, customStrategy.getBidPriceMicrosUSD(adcandidate, bidRequest));
+    Assert.assertEquals(550, customStrategy.getBidPriceMicrosUSD(adcandidate,
+        BidContext.get(bidRequest, 0)));
+    // no user
+    Assert.assertEquals(0, customStrategy.getBidPriceMicrosUSD(adcandidate,
+        BidContext.get(BidRequest.getDefaultInstance(), 0)));
+
+    // looked up by the hash of the context
+    final OffHeapScoreTable table = OffHeapScoreTable.allocate(16);
+    table.put("BITO.123456", 3);
+    final RetargetingStrategy tableStrategy = new RetargetingStrategy(table);
+    Assert.assertEquals(150, tableStrategy.getBidPriceMicrosUSD(adcandidate,
+        BidContext.get(bidRequest, 0)));
+    Assert.assertEquals(150, tableStrategy.getBidPriceMicrosUSD(adcandidate, bidRequest));
   }
 }
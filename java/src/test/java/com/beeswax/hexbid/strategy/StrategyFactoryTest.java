@@ -11,6 +11,8 @@
  *******************************************************************************/
 package com.beeswax.hexbid.strategy;
 
+import java.util.EnumSet;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -18,6 +20,9 @@ import org.mockito.Mockito;
 import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding;
 import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.hexbid.parser.BidRequestField;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.google.common.collect.ImmutableList;
 
 public class StrategyFactoryTest {
 
@@ -63,6 +68,32 @@ public class StrategyFactoryTest {
     Assert.assertTrue(factory.getStrategy(adcandidate) instanceof RetargetingStrategy);
   }
   
+  @Test
+  public void getStrategyTest_Singleton() {
+    final Adcandidate adcandidate = Adcandidate.newBuilder()
+                                               .setBidding(Bidding.newBuilder()
+                                                                  .setCustomStrategy(
+                                                                      CustomStrategy.newBuilder()
+                                                                                    .setName("flat_price_strategy")))
+                                               .buildPartial();
+
+    final StrategyFactory factory = new StrategyFactory();
+    final BidStrategy strategy = factory.getStrategy(adcandidate);
+    Assert.assertTrue(strategy instanceof FlatPriceStrategy);
+    Assert.assertSame(strategy, factory.getStrategy(adcandidate));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getStrategyTest_Unsupported() {
+    final Adcandidate adcandidate = Adcandidate.newBuilder()
+                                               .setBidding(Bidding.newBuilder()
+                                                                  .setCustomStrategy(
+                                                                      CustomStrategy.newBuilder()
+                                                                                    .setName("UNSUPPORTED_STRATEGY")))
+                                               .buildPartial();
+    new StrategyFactory().getStrategy(adcandidate);
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void getStrategyTest_Invalid() {
     final Adcandidate.Builder adcandidateBuilder = Adcandidate.newBuilder();
@@ -73,4 +104,24 @@ public class StrategyFactoryTest {
     final StrategyFactory factory = new StrategyFactory();
     Mockito.verify(factory.getStrategy(adcandidateBuilder.buildPartial()));
   }
+
+  @Test
+  public void getRequestFieldsTest() {
+    // only the retargeting strategy reads the bid request
+    Assert.assertEquals(EnumSet.of(BidRequestField.USER),
+        new StrategyFactory().getRequestFields());
+  }
+
+  @Test
+  public void getRequestFieldsTest_NotSelective() {
+    // a strategy which does not declare its fields may read any of them
+    final BidStrategy strategy = new BidStrategy() {
+      public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
+        return 1000L;
+      }
+    };
+    Assert.assertEquals(EnumSet.allOf(BidRequestField.class),
+        new StrategyFactory(new StrategyRegistry(ImmutableList.of(new FlatPriceStrategy(),
+            strategy))).getRequestFields());
+  }
 }
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy;
+import com.beeswax.bid.AdcandidateOuterClass.Bidding.CustomStrategy.Params;
+import com.beeswax.http.metrics.VarRegistry;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.test.AllocationAssert;
+
+public class StrategyParamsCacheTest {
+
+  /**
+   * Counts compilations of its price parameter.
+   */
+  private static class CountingStrategy extends CompiledParamsStrategy<Long> {
+    private final AtomicInteger compilations = new AtomicInteger();
+
+    CountingStrategy(StrategyParamsCache cache) {
+      super(cache);
+    }
+
+    @Override
+    protected Long compile(long lineItemId, CustomStrategy customStrategy) {
+      compilations.incrementAndGet();
+      try {
+        return Long.parseLong(customStrategy.getCustomParams(0)
+                                            .getValue());
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    @Override
+    protected long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request, Long price) {
+      return price == null ? 0L : price;
+    }
+  }
+
+  private static Adcandidate newAdcandidate(long lineItemId, String price) {
+    final CustomStrategy strategy = CustomStrategy.newBuilder()
+                                                  .setName("COUNTING_STRATEGY")
+                                                  .addCustomParams(Params.newBuilder()
+                                                                         .setKey("price")
+                                                                         .setValue(price))
+                                                  .buildPartial();
+    return Adcandidate.newBuilder()
+                      .setLineItemId(lineItemId)
+                      .setBidding(Bidding.newBuilder()
+                                         .setCustomStrategy(strategy))
+                      .buildPartial();
+  }
+
+  @Test
+  public void getTest() {
+    final VarRegistry registry = new VarRegistry();
+    final StrategyParamsCache cache = new StrategyParamsCache(16, registry);
+    final CountingStrategy strategy = new CountingStrategy(cache);
+    final BidRequest request = BidRequest.getDefaultInstance();
+
+    // the parameters are compiled once per line item, also from other request instances
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(100L, strategy.getBidPriceMicrosUSD(newAdcandidate(1, "100"), request));
+      Assert.assertEquals(200L, strategy.getBidPriceMicrosUSD(newAdcandidate(2, "200"), request));
+    }
+    Assert.assertEquals(2, strategy.compilations.get());
+
+    // invalid parameters are cached too, so they are reported once
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(0L, strategy.getBidPriceMicrosUSD(newAdcandidate(3, "abc"), request));
+    }
+    Assert.assertEquals(3, strategy.compilations.get());
+
+    Assert.assertEquals(27L, registry.snapshot()
+                                     .get("strategy.params_cache.hits"));
+    Assert.assertEquals(3L, registry.snapshot()
+                                    .get("strategy.params_cache.misses"));
+    Assert.assertEquals(0.9, registry.snapshot()
+                                     .get("strategy.params_cache.hit_rate"));
+    Assert.assertEquals(3, registry.snapshot()
+                                   .get("strategy.params_cache.size"));
+  }
+
+  @Test
+  public void getTest_ParamsChange() {
+    final VarRegistry registry = new VarRegistry();
+    final StrategyParamsCache cache = new StrategyParamsCache(16, registry);
+    final CountingStrategy strategy = new CountingStrategy(cache);
+    final BidRequest request = BidRequest.getDefaultInstance();
+
+    Assert.assertEquals(100L, strategy.getBidPriceMicrosUSD(newAdcandidate(1, "100"), request));
+    Assert.assertEquals(150L, strategy.getBidPriceMicrosUSD(newAdcandidate(1, "150"), request));
+    Assert.assertEquals(150L, strategy.getBidPriceMicrosUSD(newAdcandidate(1, "150"), request));
+    Assert.assertEquals(2, strategy.compilations.get());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("strategy.params_cache.invalidations"));
+
+    // another strategy for the same line item compiles its own parameters
+    final CountingStrategy other = new CountingStrategy(cache);
+    Assert.assertEquals(150L, other.getBidPriceMicrosUSD(newAdcandidate(1, "150"), request));
+    Assert.assertEquals(1, other.compilations.get());
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void getTest_Bounded() {
+    final VarRegistry registry = new VarRegistry();
+    final StrategyParamsCache cache = new StrategyParamsCache(8, registry);
+    final CountingStrategy strategy = new CountingStrategy(cache);
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(i, strategy.getBidPriceMicrosUSD(newAdcandidate(i, String.valueOf(i)),
+          BidRequest.getDefaultInstance()));
+    }
+    Assert.assertTrue(cache.size() <= 8);
+    Assert.assertTrue((Long) registry.snapshot()
+                                     .get("strategy.params_cache.evictions") >= 1000 - 8);
+  }
+
+  @Test
+  public void getTest_CollidingLineItems() {
+    final VarRegistry registry = new VarRegistry();
+    // a single set, every line item collides
+    final StrategyParamsCache cache = new StrategyParamsCache(2, registry);
+    final CountingStrategy strategy = new CountingStrategy(cache);
+    final BidRequest request = BidRequest.getDefaultInstance();
+
+    // two line items of the same set keep their entries, invalid parameters are compiled once
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(0L, strategy.getBidPriceMicrosUSD(newAdcandidate(1, "abc"), request));
+      Assert.assertEquals(0L, strategy.getBidPriceMicrosUSD(newAdcandidate(2, "xyz"), request));
+    }
+    Assert.assertEquals(2, strategy.compilations.get());
+    Assert.assertEquals(0L, registry.snapshot()
+                                    .get("strategy.params_cache.evictions"));
+
+    // a third line item evicts the least recently used one
+    Assert.assertEquals(300L, strategy.getBidPriceMicrosUSD(newAdcandidate(3, "300"), request));
+    Assert.assertEquals(0L, strategy.getBidPriceMicrosUSD(newAdcandidate(2, "xyz"), request));
+    Assert.assertEquals(3, strategy.compilations.get());
+    Assert.assertEquals(0L, strategy.getBidPriceMicrosUSD(newAdcandidate(1, "abc"), request));
+    Assert.assertEquals(4, strategy.compilations.get());
+    Assert.assertEquals(0L, strategy.getBidPriceMicrosUSD(newAdcandidate(2, "xyz"), request));
+    Assert.assertEquals(4, strategy.compilations.get());
+    Assert.assertEquals(2L, registry.snapshot()
+                                    .get("strategy.params_cache.evictions"));
+    Assert.assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void fingerprintTest() {
+    final long fingerprint = StrategyParamsCache.fingerprint(newAdcandidate(1, "100").getBidding()
+                                                                                    .getCustomStrategy());
+    Assert.assertEquals(fingerprint,
+        StrategyParamsCache.fingerprint(newAdcandidate(2, "100").getBidding()
+                                                                .getCustomStrategy()));
+    Assert.assertNotEquals(fingerprint,
+        StrategyParamsCache.fingerprint(newAdcandidate(1, "101").getBidding()
+                                                                .getCustomStrategy()));
+    // bytes moved from the key to the value change the fingerprint
+    final CustomStrategy moved = CustomStrategy.newBuilder()
+                                               .addCustomParams(Params.newBuilder()
+                                                                      .setKey("pric")
+                                                                      .setValue("e100"))
+                                               .buildPartial();
+    Assert.assertNotEquals(fingerprint, StrategyParamsCache.fingerprint(moved));
+  }
+
+  @Test
+  public void getTest_NoAllocation() throws Exception {
+    final StrategyParamsCache cache = new StrategyParamsCache(16, new VarRegistry());
+    final FlatPriceStrategy strategy = new FlatPriceStrategy();
+    // parameters of a received request are bytes, not strings
+    final CustomStrategy customStrategy =
+        CustomStrategy.parseFrom(CustomStrategy.newBuilder()
+                                               .setName(FlatPriceStrategy.STRATEGY_NAME)
+                                               .addCustomParams(Params.newBuilder()
+                                                                      .setKey("flat_price_micros_usd")
+                                                                      .setValue("1000"))
+                                               .buildPartial()
+                                               .toByteArray());
+    final Runnable lookups = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100000; i++) {
+          cache.get(1000L, customStrategy, strategy);
+        }
+      }
+    };
+    AllocationAssert.assertAllocatesLessThan(1024, lookups, lookups);
+  }
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.hexbid.strategy;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.beeswax.bid.AdcandidateOuterClass.Adcandidate;
+import com.beeswax.hexbid.model.LogisticModel;
+import com.beeswax.hexbid.parser.BidRequestField;
+import com.beeswax.openrtb.Openrtb.BidRequest;
+import com.beeswax.test.AllocationAssert;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class StrategyRegistryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Strategy outside of the built-ins, loaded by the {@link java.util.ServiceLoader}.
+   */
+  public static class CustomStrategy implements SelectiveBidStrategy {
+    public static final String STRATEGY_NAME = "CUSTOM_TEST_STRATEGY";
+
+    public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
+      return 42L;
+    }
+
+    public Set<BidRequestField> getRequestFields() {
+      return ImmutableSet.of(BidRequestField.DEVICE);
+    }
+  }
+
+  /**
+   * Strategy without a STRATEGY_NAME field.
+   */
+  public static class UnnamedStrategy implements BidStrategy {
+    public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
+      return 0L;
+    }
+  }
+
+  @Test
+  public void getTest() {
+    final StrategyRegistry registry = StrategyRegistry.load();
+
+    final BidStrategy strategy = registry.get(FlatPriceStrategy.STRATEGY_NAME);
+    Assert.assertTrue(strategy instanceof FlatPriceStrategy);
+    // names are matched ignoring case and the same instance is shared
+    Assert.assertSame(strategy, registry.get("flat_price_strategy"));
+    Assert.assertSame(strategy, registry.get("Flat_Price_Strategy"));
+    Assert.assertTrue(registry.get("retargeting_STRATEGY") instanceof RetargetingStrategy);
+    Assert.assertTrue(registry.get("random_price_strategy") instanceof RandomPriceStrategy);
+
+    Assert.assertNull(registry.get("FLAT_PRICE"));
+    Assert.assertNull(registry.get(""));
+    Assert.assertEquals(3, registry.getStrategies()
+                                   .size());
+  }
+
+  @Test
+  public void loadTest_Model() {
+    Assert.assertNull(StrategyRegistry.load(null, null)
+                                      .get(LogisticRegressionStrategy.STRATEGY_NAME));
+
+    final StrategyRegistry registry =
+        StrategyRegistry.load(null, Suppliers.<LogisticModel>ofInstance(null));
+    Assert.assertTrue(
+        registry.get("logistic_regression_strategy") instanceof LogisticRegressionStrategy);
+    Assert.assertEquals(4, registry.getStrategies()
+                                   .size());
+  }
+
+  @Test
+  public void getTest_NoAllocation() {
+    final StrategyRegistry registry = StrategyRegistry.load();
+    final String[] names = {"FLAT_PRICE_STRATEGY", "random_price_strategy",
+        "Retargeting_Strategy", "UNKNOWN_STRATEGY"};
+    final Runnable lookups = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100000; i++) {
+          registry.get(names[i & 3]);
+        }
+      }
+    };
+    AllocationAssert.assertAllocatesLessThan(1024, lookups, lookups);
+  }
+
+  @Test
+  public void registryTest_DuplicateName() {
+    try {
+      new StrategyRegistry(ImmutableMap.of(FlatPriceStrategy.STRATEGY_NAME,
+          new FlatPriceStrategy(), RetargetingStrategy.STRATEGY_NAME, new RetargetingStrategy(),
+          "flat_price_strategy", new FlatPriceStrategy()));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage()
+                                         .contains("flat_price_strategy"));
+    }
+  }
+
+  @Test
+  public void registryTest_DuplicateClassName() {
+    try {
+      // a subclass inherits the name of its super class
+      new StrategyRegistry(ImmutableList.of(new FlatPriceStrategy(), new FlatPriceStrategy() {}));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage()
+                                         .contains(FlatPriceStrategy.STRATEGY_NAME));
+    }
+  }
+
+  @Test
+  public void registryTest_Names() {
+    final BidStrategy unnamed = new UnnamedStrategy();
+    final StrategyRegistry registry = new StrategyRegistry(
+        ImmutableMap.of("MY_STRATEGY", new FlatPriceStrategy(), "OTHER_STRATEGY", unnamed));
+    Assert.assertTrue(registry.get("my_strategy") instanceof FlatPriceStrategy);
+    Assert.assertSame(unnamed, registry.get("other_strategy"));
+    // the registration key replaces the name of the class
+    Assert.assertNull(registry.get(FlatPriceStrategy.STRATEGY_NAME));
+    Assert.assertNull(registry.get("UnnamedStrategy"));
+  }
+
+  @Test
+  public void nameOfTest() {
+    Assert.assertEquals("FLAT_PRICE_STRATEGY", StrategyRegistry.nameOf(FlatPriceStrategy.class));
+    Assert.assertEquals("LOGISTIC_REGRESSION_STRATEGY",
+        StrategyRegistry.nameOf(LogisticRegressionStrategy.class));
+    Assert.assertEquals("CUSTOM_TEST_STRATEGY", StrategyRegistry.nameOf(CustomStrategy.class));
+    Assert.assertEquals("UnnamedStrategy", StrategyRegistry.nameOf(UnnamedStrategy.class));
+    final BidStrategy anonymous = new BidStrategy() {
+      public long getBidPriceMicrosUSD(Adcandidate adcandidate, BidRequest request) {
+        return 0L;
+      }
+    };
+    Assert.assertEquals(anonymous.getClass()
+                                 .getName(),
+        StrategyRegistry.nameOf(anonymous.getClass()));
+  }
+
+  @Test
+  public void loadTest_ServiceLoader() throws Exception {
+    final File services = new File(folder.newFolder("META-INF", "services"),
+        BidStrategy.class.getName());
+    Files.write(services.toPath(), (CustomStrategy.class.getName() + "\n").getBytes(
+        StandardCharsets.UTF_8));
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {folder.getRoot()
+                                                                          .toURI()
+                                                                          .toURL()},
+        getClass().getClassLoader())) {
+      final StrategyRegistry registry = StrategyRegistry.load(classLoader);
+      Assert.assertEquals(4, registry.getStrategies()
+                                     .size());
+      Assert.assertTrue(registry.get("custom_test_strategy") instanceof CustomStrategy);
+      Assert.assertTrue(new StrategyFactory(registry).getRequestFields()
+                                                     .contains(BidRequestField.DEVICE));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void loadTest_ServiceLoaderDuplicate() throws Exception {
+    final File services = new File(folder.newFolder("META-INF", "services"),
+        BidStrategy.class.getName());
+    // a built-in strategy listed as service is registered twice
+    Files.write(services.toPath(), (FlatPriceStrategy.class.getName() + "\n").getBytes(
+        StandardCharsets.UTF_8));
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {folder.getRoot()
+                                                                          .toURI()
+                                                                          .toURL()},
+        getClass().getClassLoader())) {
+      StrategyRegistry.load(classLoader);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.config;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class PropertyParserUtilsTest {
+
+  private static Properties newProperties(String key, String value) {
+    final Properties properties = new Properties();
+    properties.setProperty(key, value);
+    return properties;
+  }
+
+  @Test
+  public void getIntegerListPropertyTest() {
+    Assert.assertEquals(ImmutableList.of(2, 3, 10), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", "2,3,10")));
+    Assert.assertEquals(ImmutableList.of(2, 3), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", " 2 , 3 ")));
+    Assert.assertEquals(ImmutableList.of(1, 1), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", "1,1")));
+  }
+
+  @Test
+  public void getIntegerListPropertyTest_Empty() {
+    Assert.assertEquals(Collections.emptyList(),
+        PropertyParserUtils.getIntegerListProperty("server.worker_cpus", new Properties()));
+    Assert.assertEquals(Collections.emptyList(), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", "")));
+    Assert.assertEquals(Collections.emptyList(), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", " , ,")));
+  }
+
+  @Test
+  public void getIntegerListPropertyTest_Malformed() {
+    // invalid values are skipped, valid values around them are kept
+    Assert.assertEquals(ImmutableList.of(0, 2), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", "0,,a,2")));
+    // ranges and other separators of CPU lists are not supported
+    Assert.assertEquals(ImmutableList.of(6), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", "2-5,6,7;8,9 10,1.5")));
+    Assert.assertEquals(Collections.emptyList(), PropertyParserUtils.getIntegerListProperty(
+        "server.worker_cpus", newProperties("server.worker_cpus", "cpu0,99999999999,0x1")));
+  }
+}
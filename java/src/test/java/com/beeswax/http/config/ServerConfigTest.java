@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.config;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.http.config.ServerConfig.ServerConfigBuilder;
+import com.beeswax.http.server.Transport;
+import com.google.common.collect.ImmutableList;
+
+import io.netty.channel.epoll.Epoll;
+
+public class ServerConfigTest {
+
+  private static ServerConfig newConfig(String... keyValues) {
+    final Properties properties = new Properties();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      properties.setProperty(keyValues[i], keyValues[i + 1]);
+    }
+    return new ServerConfigBuilder().fromProperties(properties)
+                                    .build();
+  }
+
+  /**
+   * Transport selected by "auto": epoll on platforms with the native library, else nio.
+   */
+  private static final Transport AUTO = Epoll.isAvailable() ? Transport.EPOLL : Transport.NIO;
+
+  @Test
+  public void transportTest() {
+    Assert.assertEquals(AUTO, newConfig().transport);
+    Assert.assertEquals(AUTO, newConfig("server.transport", "auto").transport);
+    Assert.assertEquals(Transport.NIO, newConfig("server.transport", "nio").transport);
+    Assert.assertEquals(Transport.NIO, newConfig("server.transport", " NIO ").transport);
+  }
+
+  @Test
+  public void transportTest_Epoll() {
+    // epoll falls back to nio where the native library is not available
+    Assert.assertEquals(AUTO, newConfig("server.transport", "epoll").transport);
+    Assert.assertEquals(AUTO, newConfig("server.transport", "EPOLL").transport);
+  }
+
+  @Test
+  public void transportTest_Unknown() {
+    Assert.assertEquals(AUTO, newConfig("server.transport", "kqueue").transport);
+    Assert.assertEquals(AUTO, newConfig("server.transport", "").transport);
+    try {
+      Transport.fromName("kqueue");
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void acceptorCountTest() {
+    Assert.assertEquals(1, newConfig().acceptorCount);
+    // SO_REUSEPORT acceptors need epoll, an unknown transport falls back to auto
+    final int reusePortAcceptors = AUTO.supportsReusePort() ? 4 : 1;
+    Assert.assertEquals(reusePortAcceptors,
+        newConfig("server.transport", "epoll", "server.acceptor_count", "4").acceptorCount);
+    Assert.assertEquals(reusePortAcceptors,
+        newConfig("server.transport", "unknown", "server.acceptor_count", "4").acceptorCount);
+    Assert.assertEquals(1,
+        newConfig("server.transport", "nio", "server.acceptor_count", "4").acceptorCount);
+  }
+
+  @Test
+  public void cpusTest() {
+    final ServerConfig config =
+        newConfig("server.boss_cpus", "0", "server.worker_cpus", "1,2,3");
+    Assert.assertEquals(ImmutableList.of(0), config.bossCpus);
+    Assert.assertEquals(ImmutableList.of(1, 2, 3), config.workerCpus);
+    // one worker loop per worker CPU
+    Assert.assertEquals(3, config.workerGroupSize);
+  }
+
+  @Test
+  public void cpusTest_Default() {
+    final ServerConfig config = newConfig();
+    Assert.assertEquals(Collections.emptyList(), config.bossCpus);
+    Assert.assertEquals(Collections.emptyList(), config.workerCpus);
+    // Netty default
+    Assert.assertEquals(0, config.workerGroupSize);
+  }
+
+  @Test
+  public void cpusTest_WorkerGroupSize() {
+    final ServerConfig config =
+        newConfig("server.worker_cpus", "1,2", "server.worker_group_size", "4");
+    Assert.assertEquals(ImmutableList.of(1, 2), config.workerCpus);
+    Assert.assertEquals(4, config.workerGroupSize);
+  }
+
+  @Test
+  public void cpusTest_Malformed() {
+    // invalid CPU ids are skipped and the worker loops follow the valid ones
+    final ServerConfig config =
+        newConfig("server.boss_cpus", "zero", "server.worker_cpus", "1,x,2-3,,4");
+    Assert.assertEquals(Collections.emptyList(), config.bossCpus);
+    Assert.assertEquals(ImmutableList.of(1, 4), config.workerCpus);
+    Assert.assertEquals(2, config.workerGroupSize);
+  }
+}
@@ -0,0 +1,435 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.http.metrics.VarRegistry;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+public class GlobalHandlerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return now.get();
+    }
+  };
+
+  /**
+   * Answers with the name of the thread processing the request.
+   */
+  private static final RequestHandler THREAD_NAME_HANDLER = new RequestHandler() {
+    @Override
+    public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+      return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+          Unpooled.copiedBuffer(Thread.currentThread()
+                                      .getName(),
+              StandardCharsets.UTF_8));
+    }
+  };
+
+  private static HandlerFactory newFactory(final Executor executor) {
+    return newFactory(THREAD_NAME_HANDLER, executor);
+  }
+
+  private static HandlerFactory newFactory(final RequestHandler handler, final Executor executor) {
+    return newFactory(new Route(handler, executor));
+  }
+
+  private static HandlerFactory newFactory(final Route route) {
+    return new HandlerFactory() {
+      @Override
+      public Route getRoute(String uri) {
+        return route;
+      }
+    };
+  }
+
+  private static FullHttpRequest newRequest() {
+    return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/bid",
+        Unpooled.copiedBuffer("body", StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void channelReadTest_Offloaded() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final EmbeddedChannel channel =
+        new EmbeddedChannel(new GlobalHandler(newFactory(executor), 0, new VarRegistry(), ticker));
+    final FullHttpRequest first = newRequest();
+    final FullHttpRequest second = newRequest();
+    channel.writeInbound(first);
+    channel.writeInbound(second);
+
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    channel.runPendingTasks();
+
+    for (int i = 0; i < 2; i++) {
+      final FullHttpResponse response = channel.readOutbound();
+      Assert.assertEquals(HttpResponseStatus.OK, response.status());
+      Assert.assertNotEquals(Thread.currentThread()
+                                   .getName(),
+          response.content()
+                  .toString(StandardCharsets.UTF_8));
+      response.release();
+    }
+    Assert.assertEquals(0, first.refCnt());
+    Assert.assertEquals(0, second.refCnt());
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_Rejected() {
+    final VarRegistry registry = new VarRegistry();
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    final EmbeddedChannel channel =
+        new EmbeddedChannel(new GlobalHandler(newFactory(executor), 0, registry, ticker));
+    final FullHttpRequest request = newRequest();
+    channel.writeInbound(request);
+
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, response.status());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("http.rejected"));
+    Assert.assertEquals(0, request.refCnt());
+    response.release();
+  }
+
+  @Test
+  public void channelReadTest_ClosedWhileOffloaded() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch closed = new CountDownLatch(1);
+    // the response is only produced once the channel is closed
+    final RequestHandler handler = new RequestHandler() {
+      @Override
+      public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+        try {
+          Assert.assertTrue(closed.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          Thread.currentThread()
+                .interrupt();
+        }
+        return THREAD_NAME_HANDLER.processRequest(ctx, request);
+      }
+    };
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new GlobalHandler(newFactory(handler, executor), 0, new VarRegistry(), ticker));
+    final FullHttpRequest request = newRequest();
+    channel.writeInbound(request);
+    channel.close();
+    closed.countDown();
+
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    channel.runPendingTasks();
+    Assert.assertNull(channel.readOutbound());
+    Assert.assertEquals(0, request.refCnt());
+  }
+
+  @Test
+  public void channelInactiveTest_NoRequest() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new GlobalHandler(
+        newFactory(MoreExecutors.directExecutor()), 0, new VarRegistry(), ticker));
+    channel.close();
+    // closing a connection which never sent a request does not create its sequencer
+    Assert.assertNull(ResponseSequencer.find(channel));
+  }
+
+  /**
+   * Returns the promise of the test, created on the I/O thread of the request.
+   */
+  private static class PromiseHandler implements AsyncRequestHandler {
+    Promise<FullHttpResponse> promise;
+
+    @Override
+    public Future<FullHttpResponse> processRequestAsync(ChannelHandlerContext ctx,
+        FullHttpRequest request) {
+      promise = ctx.executor()
+                   .newPromise();
+      return promise;
+    }
+
+    @Override
+    public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @Test
+  public void channelReadTest_Async() {
+    final PromiseHandler handler = new PromiseHandler();
+    final EmbeddedChannel channel = new EmbeddedChannel(new GlobalHandler(
+        newFactory(handler, MoreExecutors.directExecutor()), 1000, new VarRegistry(), ticker));
+    final FullHttpRequest request = newRequest();
+    channel.writeInbound(request);
+    Assert.assertNull(channel.readOutbound());
+    Assert.assertEquals(1, request.refCnt());
+
+    handler.promise.setSuccess(
+        new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.OK, response.status());
+    Assert.assertEquals(0, request.refCnt());
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_AsyncFailure() {
+    final PromiseHandler handler = new PromiseHandler();
+    final EmbeddedChannel channel = new EmbeddedChannel(new GlobalHandler(
+        newFactory(handler, MoreExecutors.directExecutor()), 1000, new VarRegistry(), ticker));
+
+    channel.writeInbound(newRequest());
+    handler.promise.setFailure(new IllegalArgumentException());
+    Assert.assertEquals(HttpResponseStatus.BAD_REQUEST,
+        ((FullHttpResponse) channel.readOutbound()).status());
+
+    channel.writeInbound(newRequest());
+    handler.promise.setFailure(new IllegalStateException());
+    Assert.assertEquals(HttpResponseStatus.INTERNAL_SERVER_ERROR,
+        ((FullHttpResponse) channel.readOutbound()).status());
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_AsyncTimeout() throws Exception {
+    final VarRegistry registry = new VarRegistry();
+    final PromiseHandler handler = new PromiseHandler();
+    final EmbeddedChannel channel = new EmbeddedChannel(new GlobalHandler(
+        newFactory(handler, MoreExecutors.directExecutor()), 20, registry, ticker));
+    final FullHttpRequest request = newRequest();
+    channel.writeInbound(request);
+
+    Thread.sleep(50);
+    channel.runScheduledPendingTasks();
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, response.status());
+    Assert.assertTrue(handler.promise.isCancelled());
+    Assert.assertEquals(0, request.refCnt());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("http.async_timeouts"));
+
+    // a response completed after the timeout is dropped
+    Assert.assertFalse(handler.promise.trySuccess(
+        new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK)));
+    Assert.assertNull(channel.readOutbound());
+    Assert.assertFalse(channel.finish());
+  }
+
+  /**
+   * Admits requests until it is given a shed response and records their completion.
+   */
+  private static class RecordingAdmission implements Admission {
+    FullHttpResponse shed;
+    int admitted;
+    int rejected;
+    final List<Long> completed = new ArrayList<>();
+
+    @Override
+    public FullHttpResponse admit(ChannelHandlerContext ctx) {
+      Assert.assertTrue(ctx.executor()
+                           .inEventLoop());
+      if (shed != null) {
+        return shed;
+      }
+      admitted++;
+      return null;
+    }
+
+    @Override
+    public FullHttpResponse reject() {
+      rejected++;
+      return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NO_CONTENT);
+    }
+
+    @Override
+    public void complete(long nanos) {
+      completed.add(nanos);
+    }
+  }
+
+  @Test
+  public void channelReadTest_AdmittedBeforeQueueing() {
+    final List<Runnable> queue = new ArrayList<>();
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        queue.add(command);
+      }
+    };
+    final RecordingAdmission admission = new RecordingAdmission();
+    final EmbeddedChannel channel = new EmbeddedChannel(new GlobalHandler(
+        newFactory(new Route(THREAD_NAME_HANDLER, executor, admission)), 0, new VarRegistry(),
+        ticker));
+    channel.writeInbound(newRequest());
+
+    // admitted when received, completed with the time it was queued
+    Assert.assertEquals(1, admission.admitted);
+    Assert.assertTrue(admission.completed.isEmpty());
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(5));
+    queue.get(0)
+         .run();
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(5), (long) admission.completed.get(0));
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.OK, response.status());
+    response.release();
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_Shed() {
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        Assert.fail();
+      }
+    };
+    final RecordingAdmission admission = new RecordingAdmission();
+    admission.shed = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+        HttpResponseStatus.NO_CONTENT);
+    final EmbeddedChannel channel = new EmbeddedChannel(new GlobalHandler(
+        newFactory(new Route(THREAD_NAME_HANDLER, executor, admission)), 0, new VarRegistry(),
+        ticker));
+    final FullHttpRequest request = newRequest();
+    channel.writeInbound(request);
+
+    Assert.assertSame(admission.shed, channel.readOutbound());
+    Assert.assertTrue(admission.completed.isEmpty());
+    Assert.assertEquals(0, request.refCnt());
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_AdmittedAndRejected() {
+    final VarRegistry registry = new VarRegistry();
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    final RecordingAdmission admission = new RecordingAdmission();
+    final EmbeddedChannel channel = new EmbeddedChannel(new GlobalHandler(
+        newFactory(new Route(THREAD_NAME_HANDLER, executor, admission)), 0, registry, ticker));
+    final FullHttpRequest request = newRequest();
+    channel.writeInbound(request);
+
+    // answered by the admission, which frees the slot of the request
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.NO_CONTENT, response.status());
+    Assert.assertEquals(1, admission.rejected);
+    Assert.assertTrue(admission.completed.isEmpty());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("http.rejected"));
+    Assert.assertEquals(0, request.refCnt());
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_QueuedTimedHandler() {
+    final List<Runnable> queue = new ArrayList<>();
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        queue.add(command);
+      }
+    };
+    final AtomicLong arrival = new AtomicLong(-1);
+    final TimedRequestHandler handler = new TimedRequestHandler() {
+      @Override
+      public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request,
+          long arrivalNanos) {
+        arrival.set(arrivalNanos);
+        return THREAD_NAME_HANDLER.processRequest(ctx, request);
+      }
+
+      @Override
+      public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new GlobalHandler(newFactory(handler, executor), 0, new VarRegistry(), ticker));
+    now.set(TimeUnit.MILLISECONDS.toNanos(7));
+    channel.writeInbound(newRequest());
+
+    // picked up after waiting in the queue, the handler still sees when it was received
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(5));
+    queue.get(0)
+         .run();
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(7), arrival.get());
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.OK, response.status());
+    response.release();
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void exceptionCaughtTest_Pipelined() {
+    final List<Runnable> queue = new ArrayList<>();
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        queue.add(command);
+      }
+    };
+    final EmbeddedChannel channel =
+        new EmbeddedChannel(new GlobalHandler(newFactory(executor), 0, new VarRegistry(), ticker));
+    channel.writeInbound(newRequest());
+    channel.pipeline()
+           .fireExceptionCaught(new IllegalStateException());
+
+    // the error response waits for the response to the request read before it
+    Assert.assertNull(channel.readOutbound());
+    queue.get(0)
+         .run();
+    final FullHttpResponse first = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.OK, first.status());
+    first.release();
+    final FullHttpResponse second = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.INTERNAL_SERVER_ERROR, second.status());
+    Assert.assertFalse(channel.finish());
+  }
+}
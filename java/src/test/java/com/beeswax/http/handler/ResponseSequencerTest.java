@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class ResponseSequencerTest {
+
+  private static FullHttpResponse newResponse(HttpResponseStatus status) {
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+  }
+
+  @Test
+  public void writeTest_InOrder() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    final ChannelHandlerContext ctx = channel.pipeline()
+                                             .firstContext();
+    final ResponseSequencer sequencer = ResponseSequencer.get(channel);
+
+    sequencer.write(ctx, sequencer.nextSequence(), newResponse(HttpResponseStatus.OK));
+    Assert.assertEquals(HttpResponseStatus.OK, ((FullHttpResponse) channel.readOutbound()).status());
+    Assert.assertEquals(0, sequencer.pendingCount());
+  }
+
+  @Test
+  public void writeTest_OutOfOrder() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    final ChannelHandlerContext ctx = channel.pipeline()
+                                             .firstContext();
+    final ResponseSequencer sequencer = ResponseSequencer.get(channel);
+    final int first = sequencer.nextSequence();
+    final int second = sequencer.nextSequence();
+    final int third = sequencer.nextSequence();
+
+    sequencer.write(ctx, third, newResponse(HttpResponseStatus.NOT_FOUND));
+    sequencer.write(ctx, second, newResponse(HttpResponseStatus.NO_CONTENT));
+    Assert.assertNull(channel.readOutbound());
+    Assert.assertEquals(2, sequencer.pendingCount());
+
+    sequencer.write(ctx, first, newResponse(HttpResponseStatus.OK));
+    Assert.assertEquals(HttpResponseStatus.OK, ((FullHttpResponse) channel.readOutbound()).status());
+    Assert.assertEquals(HttpResponseStatus.NO_CONTENT,
+        ((FullHttpResponse) channel.readOutbound()).status());
+    Assert.assertEquals(HttpResponseStatus.NOT_FOUND,
+        ((FullHttpResponse) channel.readOutbound()).status());
+    Assert.assertEquals(0, sequencer.pendingCount());
+  }
+
+  @Test
+  public void releaseTest() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    final ResponseSequencer sequencer = ResponseSequencer.get(channel);
+    sequencer.nextSequence();
+    final FullHttpResponse response = newResponse(HttpResponseStatus.OK);
+    sequencer.write(channel.pipeline()
+                           .firstContext(),
+        sequencer.nextSequence(), response);
+
+    sequencer.release();
+    Assert.assertEquals(0, response.refCnt());
+    Assert.assertEquals(0, sequencer.pendingCount());
+  }
+
+  @Test
+  public void findTest() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    // looking the sequencer up does not create it
+    Assert.assertNull(ResponseSequencer.find(channel));
+    Assert.assertNull(ResponseSequencer.find(channel));
+
+    final ResponseSequencer sequencer = ResponseSequencer.get(channel);
+    Assert.assertSame(sequencer, ResponseSequencer.find(channel));
+    Assert.assertSame(sequencer, ResponseSequencer.get(channel));
+  }
+}
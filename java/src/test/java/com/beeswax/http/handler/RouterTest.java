@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.test.AllocationAssert;
+import com.google.common.collect.ImmutableMap;
+
+public class RouterTest {
+
+  private static final Router<String> ROUTER = new Router<>(
+      ImmutableMap.of("/bid", "bid", "/health/", "health", "/var", "var"), "default");
+
+  @Test
+  public void routeTest() {
+    Assert.assertEquals("bid", ROUTER.route("/bid"));
+    Assert.assertEquals("bid", ROUTER.route("/bid/"));
+    Assert.assertEquals("bid", ROUTER.route("/bid?debug=1"));
+    Assert.assertEquals("bid", ROUTER.route("/bid/?debug=1&x=/"));
+    Assert.assertEquals("bid", ROUTER.route("/bid#top"));
+    Assert.assertEquals("health", ROUTER.route("/health"));
+    Assert.assertEquals("var", ROUTER.route("/var/"));
+  }
+
+  @Test
+  public void routeTest_Default() {
+    Assert.assertEquals("default", ROUTER.route(""));
+    Assert.assertEquals("default", ROUTER.route("/"));
+    Assert.assertEquals("default", ROUTER.route("/bi"));
+    Assert.assertEquals("default", ROUTER.route("/bidder"));
+    Assert.assertEquals("default", ROUTER.route("/bid//"));
+    Assert.assertEquals("default", ROUTER.route("?/bid"));
+    Assert.assertEquals("default", ROUTER.route("random"));
+  }
+
+  @Test
+  public void routeTest_Collisions() {
+    // "Aa" and "BB" have the same String hash code
+    final Router<String> router =
+        new Router<>(ImmutableMap.of("Aa", "first", "BB", "second"), "default");
+    Assert.assertEquals("first", router.route("Aa"));
+    Assert.assertEquals("second", router.route("BB/"));
+    Assert.assertEquals("default", router.route("AaBB"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void routerTest_DuplicatePath() {
+    new Router<>(ImmutableMap.of("/bid", "bid", "/bid/", "bid"), "default");
+  }
+
+  @Test
+  public void routeTest_NoAllocation() {
+    final String[] uris = {"/bid", "/bid/?debug=1", "/health/", "/unknown"};
+    final Runnable lookups = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100000; i++) {
+          ROUTER.route(uris[i & 3]);
+        }
+      }
+    };
+    AllocationAssert.assertAllocatesLessThan(1024, lookups, lookups);
+  }
+}
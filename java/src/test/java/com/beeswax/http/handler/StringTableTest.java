@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringTableTest {
+
+  @Test
+  public void getTest() {
+    final StringTable.Builder<String> builder = StringTable.builder(false);
+    for (int i = 0; i < 100; i++) {
+      Assert.assertNull(builder.put("key" + i, "value" + i));
+    }
+    final StringTable<String> table = builder.build();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals("value" + i, table.get("key" + i));
+    }
+    Assert.assertNull(table.get("KEY1"));
+    Assert.assertNull(table.get("key100"));
+    Assert.assertNull(table.get(""));
+  }
+
+  @Test
+  public void getTest_Prefix() {
+    final StringTable.Builder<String> builder = StringTable.builder(false);
+    builder.put("/bid", "bid");
+    final StringTable<String> table = builder.build();
+    Assert.assertEquals("bid", table.get("/bid?debug=1", 4));
+    Assert.assertNull(table.get("/bid?debug=1", 3));
+    Assert.assertNull(table.get("/bid?debug=1", 5));
+  }
+
+  @Test
+  public void getTest_IgnoreCase() {
+    final StringTable.Builder<String> builder = StringTable.builder(true);
+    builder.put("flat_price_strategy", "flat");
+    // folded as String#equalsIgnoreCase, e.g. the Kelvin sign and K
+    builder.put("Kelvin", "kelvin");
+    final StringTable<String> table = builder.build();
+    Assert.assertEquals("flat", table.get("FLAT_PRICE_STRATEGY"));
+    Assert.assertEquals("flat", table.get("Flat_Price_Strategy"));
+    Assert.assertEquals("kelvin", table.get("kelvin"));
+    Assert.assertEquals("kelvin", table.get("\u212Aelvin"));
+    Assert.assertNull(table.get("flat_price"));
+  }
+
+  @Test
+  public void putTest_Duplicate() {
+    final StringTable.Builder<String> builder = StringTable.builder(true);
+    Assert.assertNull(builder.put("name", "first"));
+    Assert.assertEquals("first", builder.put("NAME", "second"));
+    Assert.assertEquals("first", builder.build()
+                                        .get("Name"));
+  }
+}
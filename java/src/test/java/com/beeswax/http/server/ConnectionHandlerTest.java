@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.http.handler.ConnectionStats;
+import com.beeswax.http.metrics.VarRegistry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+
+public class ConnectionHandlerTest {
+
+  private static ByteBuf newBytes(String content) {
+    return Unpooled.copiedBuffer(content, StandardCharsets.US_ASCII);
+  }
+
+  private static void releaseInbound(EmbeddedChannel channel) {
+    ByteBuf buf;
+    while ((buf = channel.readInbound()) != null) {
+      buf.release();
+    }
+  }
+
+  @Test
+  public void channelActiveTest_MaxConnections() {
+    final VarRegistry registry = new VarRegistry();
+    final ConnectionMetrics metrics = new ConnectionMetrics(1, registry);
+    final EmbeddedChannel first = new EmbeddedChannel(new ConnectionHandler(metrics, 0));
+    final EmbeddedChannel second = new EmbeddedChannel(new ConnectionHandler(metrics, 0));
+
+    Assert.assertTrue(first.isOpen());
+    Assert.assertFalse(second.isOpen());
+    Assert.assertEquals(1, registry.snapshot()
+                                   .get("http.connections.open"));
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("http.connections.rejected"));
+
+    // the slot is freed once the connection closes
+    first.close();
+    Assert.assertTrue(new EmbeddedChannel(new ConnectionHandler(metrics, 0)).isOpen());
+  }
+
+  @Test
+  public void channelReadTest_ReadTimeout() throws Exception {
+    final VarRegistry registry = new VarRegistry();
+    final EmbeddedChannel channel =
+        new EmbeddedChannel(new ConnectionHandler(new ConnectionMetrics(0, registry), 20));
+    channel.writeInbound(newBytes("POST /bid HTTP/1.1\r\n"));
+    releaseInbound(channel);
+
+    Thread.sleep(50);
+    channel.runScheduledPendingTasks();
+    Assert.assertFalse(channel.isOpen());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("http.connections.read_timeouts"));
+  }
+
+  @Test
+  public void channelReadTest_RequestReceived() throws Exception {
+    final VarRegistry registry = new VarRegistry();
+    final EmbeddedChannel channel =
+        new EmbeddedChannel(new ConnectionHandler(new ConnectionMetrics(0, registry), 20));
+    channel.writeInbound(newBytes("GET /health HTTP/1.1\r\n\r\n"));
+    releaseInbound(channel);
+    ConnectionStats.get(channel)
+                   .requestReceived();
+    channel.writeOutbound(newBytes("HTTP/1.1 200 OK\r\n\r\n"));
+    ((ByteBuf) channel.readOutbound()).release();
+
+    Thread.sleep(50);
+    channel.runScheduledPendingTasks();
+    Assert.assertTrue(channel.isOpen());
+    Assert.assertEquals(24L, registry.snapshot()
+                                     .get("http.connections.bytes_in"));
+    Assert.assertEquals(19L, registry.snapshot()
+                                     .get("http.connections.bytes_out"));
+
+    channel.close();
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("http.connections.closed"));
+    Assert.assertEquals(1.0, registry.snapshot()
+                                     .get("http.connections.requests_per_connection"));
+  }
+
+  @Test
+  public void stopReadTimeoutTest() throws Exception {
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new ConnectionHandler(new ConnectionMetrics(0, new VarRegistry()), 20));
+    channel.writeInbound(newBytes("PRI * HTTP/2.0"));
+    releaseInbound(channel);
+    channel.pipeline()
+           .get(ConnectionHandler.class)
+           .stopReadTimeout();
+
+    Thread.sleep(50);
+    channel.runScheduledPendingTasks();
+    Assert.assertTrue(channel.isOpen());
+  }
+
+  @Test
+  public void userEventTriggeredTest_Idle() {
+    final VarRegistry registry = new VarRegistry();
+    final EmbeddedChannel channel =
+        new EmbeddedChannel(new ConnectionHandler(new ConnectionMetrics(0, registry), 0));
+    channel.pipeline()
+           .fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+
+    Assert.assertFalse(channel.isOpen());
+    Assert.assertEquals(1L, registry.snapshot()
+                                    .get("http.connections.idle_timeouts"));
+  }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.http.metrics.VarRegistry;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+public class EventLoopStatsTest {
+
+  private static EventLoopGroup newGroup(int threads) {
+    return new NioEventLoopGroup(threads,
+        new EventLoopThreadFactory("test-worker", Collections.<Integer>emptyList()));
+  }
+
+  /**
+   * Wait until every loop ran the tasks submitted before, i.e. recorded its thread.
+   */
+  private static void awaitLoops(EventLoopGroup group) throws Exception {
+    for (EventExecutor loop : group) {
+      loop.submit(new Runnable() {
+        @Override
+        public void run() {}
+      })
+          .get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void registerTest() throws Exception {
+    final VarRegistry registry = new VarRegistry();
+    final EventLoopGroup group = newGroup(2);
+    try {
+      EventLoopStats.register("worker", group, registry);
+      awaitLoops(group);
+
+      final SortedMap<String, Object> vars = registry.snapshot();
+      Assert.assertEquals(6, vars.size());
+      Assert.assertEquals("test-worker-0", vars.get("eventloop.worker.0.thread"));
+      Assert.assertEquals("test-worker-1", vars.get("eventloop.worker.1.thread"));
+      Assert.assertEquals(0, vars.get("eventloop.worker.0.pending_tasks"));
+      Assert.assertEquals(0, vars.get("eventloop.worker.1.pending_tasks"));
+      // -1 where thread CPU time is not supported
+      Assert.assertTrue((Long) vars.get("eventloop.worker.0.busy_ms") >= -1);
+    } finally {
+      group.shutdownGracefully(0, 0, TimeUnit.SECONDS)
+           .syncUninterruptibly();
+    }
+  }
+
+  @Test
+  public void registerTest_Replace() throws Exception {
+    final VarRegistry registry = new VarRegistry();
+    registry.constant("eventloop.boss.0.thread", "boss");
+    final EventLoopGroup first = newGroup(2);
+    final EventLoopGroup second = newGroup(1);
+    try {
+      EventLoopStats.register("worker", first, registry);
+      EventLoopStats.register("worker", second, registry);
+      awaitLoops(second);
+
+      // the loops of the first group are gone, other groups are kept
+      final SortedMap<String, Object> vars = registry.snapshot();
+      Assert.assertEquals(4, vars.size());
+      Assert.assertEquals("boss", vars.get("eventloop.boss.0.thread"));
+      Assert.assertNull(vars.get("eventloop.worker.1.thread"));
+      Assert.assertEquals("test-worker-0", vars.get("eventloop.worker.0.thread"));
+    } finally {
+      first.shutdownGracefully(0, 0, TimeUnit.SECONDS)
+           .syncUninterruptibly();
+      second.shutdownGracefully(0, 0, TimeUnit.SECONDS)
+            .syncUninterruptibly();
+    }
+  }
+}
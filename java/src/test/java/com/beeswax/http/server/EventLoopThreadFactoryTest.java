@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.FastThreadLocalThread;
+
+public class EventLoopThreadFactoryTest {
+
+  /**
+   * Records whether it ran and the value of a {@link FastThreadLocal} it set.
+   */
+  private static class RecordingRunnable implements Runnable {
+    private final FastThreadLocal<String> local = new FastThreadLocal<>();
+    private final AtomicBoolean ran = new AtomicBoolean();
+    private final AtomicReference<Thread> thread = new AtomicReference<>();
+
+    @Override
+    public void run() {
+      local.set("value");
+      thread.set(Thread.currentThread());
+      ran.set(true);
+    }
+  }
+
+  private static RecordingRunnable run(List<Integer> cpus) throws InterruptedException {
+    final RecordingRunnable runnable = new RecordingRunnable();
+    final Thread thread = new EventLoopThreadFactory("test", cpus).newThread(runnable);
+    thread.start();
+    thread.join(10000);
+    Assert.assertFalse(thread.isAlive());
+    return runnable;
+  }
+
+  @Test
+  public void newThreadTest() throws Exception {
+    final EventLoopThreadFactory factory =
+        new EventLoopThreadFactory("test-worker", Collections.<Integer>emptyList());
+    final Thread first = factory.newThread(new RecordingRunnable());
+    final Thread second = factory.newThread(new RecordingRunnable());
+
+    Assert.assertTrue(first instanceof FastThreadLocalThread);
+    Assert.assertEquals("test-worker-0", first.getName());
+    Assert.assertEquals("test-worker-1", second.getName());
+    Assert.assertFalse(first.isAlive());
+  }
+
+  @Test
+  public void newThreadTest_Run() throws Exception {
+    final RecordingRunnable runnable = run(Collections.<Integer>emptyList());
+    Assert.assertTrue(runnable.ran.get());
+    Assert.assertEquals("test-0", runnable.thread.get()
+                                                 .getName());
+  }
+
+  @Test
+  public void newThreadTest_Pinned() throws Exception {
+    // pinning to CPU 0 works or is skipped, the loop runs either way
+    Assert.assertTrue(run(ImmutableList.of(0)).ran.get());
+  }
+
+  @Test
+  public void newThreadTest_InvalidCpu() throws Exception {
+    // pinning is best effort, a CPU which does not exist does not stop the loop
+    Assert.assertTrue(run(ImmutableList.of(100000)).ran.get());
+  }
+
+  @Test
+  public void newThreadTest_CpuRoundRobin() throws Exception {
+    final EventLoopThreadFactory factory =
+        new EventLoopThreadFactory("test", ImmutableList.of(100000, 100001));
+    for (int i = 0; i < 3; i++) {
+      final RecordingRunnable runnable = new RecordingRunnable();
+      final Thread thread = factory.newThread(runnable);
+      thread.start();
+      thread.join(10000);
+      Assert.assertEquals("test-" + i, thread.getName());
+      Assert.assertTrue(runnable.ran.get());
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.http.config.ServerConfig;
+import com.beeswax.http.config.ServerConfig.ServerConfigBuilder;
+import com.beeswax.http.handler.HandlerFactory;
+import com.beeswax.http.handler.RequestHandler;
+import com.beeswax.http.handler.Route;
+import com.beeswax.http.metrics.VarRegistry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+
+public class HttpServerChannelInitializerTest {
+
+  /**
+   * Echoes the request path.
+   */
+  private static final HandlerFactory ECHO_FACTORY = new HandlerFactory() {
+    private final Route route = new Route(new RequestHandler() {
+      @Override
+      public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+        return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+            Unpooled.copiedBuffer(request.uri(), StandardCharsets.UTF_8));
+      }
+    });
+
+    @Override
+    public Route getRoute(String uri) {
+      return route;
+    }
+  };
+
+  private static ServerConfig newConfig(boolean h2cEnabled) {
+    final Properties properties = new Properties();
+    properties.setProperty("server.h2c_enabled", Boolean.toString(h2cEnabled));
+    return new ServerConfigBuilder().fromProperties(properties)
+                                    .build();
+  }
+
+  private static EmbeddedChannel newServerChannel(boolean h2cEnabled) {
+    return new EmbeddedChannel(new HttpServerChannelInitializer(newConfig(h2cEnabled),
+        ECHO_FACTORY));
+  }
+
+  private static EmbeddedChannel newHttp2ClientChannel() {
+    final Http2Connection connection = new DefaultHttp2Connection(false);
+    return new EmbeddedChannel(new HttpToHttp2ConnectionHandlerBuilder()
+        .connection(connection)
+        .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+            .maxContentLength(1024)
+            .propagateSettings(false)
+            .build())
+        .build());
+  }
+
+  /**
+   * Move bytes between the channels until neither has anything left to write.
+   */
+  private static void exchange(EmbeddedChannel client, EmbeddedChannel server) {
+    boolean moved = true;
+    while (moved) {
+      moved = false;
+      ByteBuf bytes;
+      while ((bytes = client.readOutbound()) != null) {
+        server.writeInbound(bytes);
+        moved = true;
+      }
+      while ((bytes = server.readOutbound()) != null) {
+        client.writeInbound(bytes);
+        moved = true;
+      }
+    }
+  }
+
+  /**
+   * @return connection flow control window of the HTTP/2 handler of the channel, as seen from its
+   *         side
+   */
+  private static int connectionWindow(EmbeddedChannel channel, boolean local) {
+    final Http2ConnectionHandler handler = channel.pipeline()
+                                                  .get(Http2ConnectionHandler.class);
+    final Http2Connection connection = handler.connection();
+    return local ? connection.local()
+                             .flowController()
+                             .windowSize(connection.connectionStream())
+        : connection.remote()
+                    .flowController()
+                    .windowSize(connection.connectionStream());
+  }
+
+  private static FullHttpRequest newRequest(String uri, int streamId) {
+    final FullHttpRequest request =
+        new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri);
+    request.headers()
+           .setInt(ExtensionHeaderNames.STREAM_ID.text(), streamId)
+           .set(ExtensionHeaderNames.SCHEME.text(), "http");
+    return request;
+  }
+
+  @Test
+  public void initChannelTest_Http2PriorKnowledge() {
+    final EmbeddedChannel server = newServerChannel(true);
+    final EmbeddedChannel client = newHttp2ClientChannel();
+
+    // several streams in flight on the same connection
+    client.write(newRequest("/first", 3));
+    client.write(newRequest("/second", 5));
+    client.flush();
+    exchange(client, server);
+
+    Assert.assertNull(server.pipeline()
+                            .get("codec"));
+    Assert.assertNull(server.pipeline()
+                            .get("http-aggregator"));
+    for (String path : new String[] {"/first", "/second"}) {
+      final FullHttpResponse response = client.readInbound();
+      Assert.assertEquals(HttpResponseStatus.OK, response.status());
+      Assert.assertEquals(path, response.content()
+                                        .toString(StandardCharsets.UTF_8));
+      Assert.assertEquals(path.equals("/first") ? 3 : 5, response.headers()
+                                                                 .getInt(
+                                                                     ExtensionHeaderNames.STREAM_ID.text())
+                                                                 .intValue());
+      response.release();
+    }
+    // the client may send a whole stream window on the connection
+    Assert.assertEquals(newConfig(true).http2InitialWindowSize, connectionWindow(client, false));
+  }
+
+  @Test
+  public void initChannelTest_Http2Upgrade() {
+    final EmbeddedChannel server = newServerChannel(true);
+    server.writeInbound(Unpooled.copiedBuffer("GET /upgraded HTTP/1.1\r\n" + "Host: localhost\r\n"
+        + "Connection: Upgrade, HTTP2-Settings\r\n" + "Upgrade: h2c\r\n"
+        + "HTTP2-Settings: AAMAAABkAAQAAP__\r\n" + "\r\n", StandardCharsets.US_ASCII));
+
+    final ByteBuf upgradeResponse = server.readOutbound();
+    Assert.assertTrue(upgradeResponse.toString(StandardCharsets.US_ASCII)
+                                     .startsWith("HTTP/1.1 101 Switching Protocols"));
+    upgradeResponse.release();
+    Assert.assertNotNull(server.pipeline()
+                               .get("http2"));
+    Assert.assertNull(server.pipeline()
+                            .get("codec"));
+    Assert.assertNull(server.pipeline()
+                            .get("http-aggregator"));
+    Assert.assertNull(server.pipeline()
+                            .get("h2c-upgrade-listener"));
+    // server preface and the response to the upgrade request on stream 1
+    Assert.assertNotNull(server.readOutbound());
+    Assert.assertEquals(newConfig(true).http2InitialWindowSize, connectionWindow(server, true));
+    server.finishAndReleaseAll();
+  }
+
+  @Test
+  public void initChannelTest_Http1() {
+    final EmbeddedChannel server = newServerChannel(true);
+    server.writeInbound(Unpooled.copiedBuffer("GET /plain HTTP/1.1\r\nHost: localhost\r\n\r\n",
+        StandardCharsets.US_ASCII));
+
+    final ByteBuf response = server.readOutbound();
+    final String responseText = response.toString(StandardCharsets.US_ASCII);
+    response.release();
+    Assert.assertTrue(responseText.startsWith("HTTP/1.1 200 OK"));
+    Assert.assertTrue(responseText.endsWith("/plain"));
+    Assert.assertNull(server.pipeline()
+                            .get("h2c-preface"));
+    Assert.assertNotNull(server.pipeline()
+                               .get("codec"));
+  }
+
+  @Test
+  public void initChannelTest_Http1Pipelining() {
+    final EmbeddedChannel server = newServerChannel(true);
+    final AtomicLong flushes = VarRegistry.getDefault()
+                                          .counter("http.flushes");
+    final long flushesBefore = flushes.get();
+    server.writeInbound(Unpooled.copiedBuffer("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+        + "GET /second HTTP/1.1\r\nHost: localhost\r\n\r\n", StandardCharsets.US_ASCII));
+
+    final StringBuilder responses = new StringBuilder();
+    ByteBuf response;
+    while ((response = server.readOutbound()) != null) {
+      responses.append(response.toString(StandardCharsets.US_ASCII));
+      response.release();
+    }
+    Assert.assertTrue(responses.indexOf("/first") > 0);
+    Assert.assertTrue(responses.indexOf("/second") > responses.indexOf("/first"));
+    // both responses are flushed together when the read completes
+    Assert.assertEquals(1, flushes.get() - flushesBefore);
+  }
+
+  @Test
+  public void initChannelTest_H2cDisabled() {
+    final EmbeddedChannel server = newServerChannel(false);
+    Assert.assertNull(server.pipeline()
+                            .get("h2c-preface"));
+    Assert.assertNull(server.pipeline()
+                            .get("h2c-upgrade"));
+    Assert.assertNotNull(server.pipeline()
+                               .get("http-aggregator"));
+  }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.beeswax.http.config.ServerConfig.ServerConfigBuilder;
+import com.beeswax.http.handler.ExecutorHandlerFactory;
+import com.beeswax.http.handler.RequestHandler;
+import com.beeswax.http.handler.Route;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+
+public class HttpServerTest {
+
+  private static final Route ROUTE = new Route(new RequestHandler() {
+    @Override
+    public FullHttpResponse processRequest(ChannelHandlerContext ctx, FullHttpRequest request) {
+      return null;
+    }
+  });
+
+  @Test
+  public void stopTest_Executor() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final HttpServer server = new HttpServer(
+        new ServerConfigBuilder().fromProperties(new Properties())
+                                 .build(),
+        new ExecutorHandlerFactory() {
+          @Override
+          public Route getRoute(String uri) {
+            return ROUTE;
+          }
+
+          @Override
+          public ExecutorService getExecutor() {
+            return executor;
+          }
+        });
+
+    server.stop();
+    Assert.assertTrue(executor.isShutdown());
+    Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.http.server;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+
+public class StreamingBodyHandlerTest {
+
+  private static EmbeddedChannel newChannel(int maxContentLength) {
+    return new EmbeddedChannel(
+        new StreamingBodyHandler(ImmutableSet.of("/bid"), maxContentLength),
+        new HttpObjectAggregator(maxContentLength));
+  }
+
+  private static HttpRequest newRequest(String uri) {
+    return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri);
+  }
+
+  private static HttpContent newContent(String content) {
+    return new DefaultHttpContent(Unpooled.copiedBuffer(content, StandardCharsets.UTF_8));
+  }
+
+  private static LastHttpContent newLastContent(String content) {
+    return new DefaultLastHttpContent(Unpooled.copiedBuffer(content, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void channelReadTest_StreamingPath() {
+    final EmbeddedChannel channel = newChannel(1024);
+    Assert.assertFalse(channel.writeInbound(newRequest("/bid/?debug=1")));
+    Assert.assertFalse(channel.writeInbound(newContent("hello ")));
+    Assert.assertTrue(channel.writeInbound(newLastContent("world")));
+
+    final FullHttpRequest request = channel.readInbound();
+    Assert.assertEquals("/bid/?debug=1", request.uri());
+    Assert.assertTrue(request.content() instanceof CompositeByteBuf);
+    Assert.assertEquals(2, ((CompositeByteBuf) request.content()).numComponents());
+    Assert.assertEquals("hello world", request.content()
+                                              .toString(StandardCharsets.UTF_8));
+    request.release();
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_OtherPathAggregated() {
+    final EmbeddedChannel channel = newChannel(1024);
+    channel.writeInbound(newRequest("/health"));
+    channel.writeInbound(newContent("hello "));
+    channel.writeInbound(newLastContent("world"));
+
+    final FullHttpRequest request = channel.readInbound();
+    Assert.assertEquals("/health", request.uri());
+    Assert.assertEquals("hello world", request.content()
+                                              .toString(StandardCharsets.UTF_8));
+    request.release();
+    Assert.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void channelReadTest_ContentLengthTooLarge() {
+    final EmbeddedChannel channel = newChannel(8);
+    final HttpRequest httpRequest = newRequest("/bid");
+    httpRequest.headers()
+               .set(HttpHeaderNames.CONTENT_LENGTH, 9);
+    channel.writeInbound(httpRequest);
+
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, response.status());
+    Assert.assertNull(channel.readInbound());
+    Assert.assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void channelReadTest_ChunksTooLarge() {
+    final EmbeddedChannel channel = newChannel(8);
+    channel.writeInbound(newRequest("/bid"));
+    channel.writeInbound(newContent("12345"));
+    channel.writeInbound(newContent("6789"));
+
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, response.status());
+    Assert.assertNull(channel.readInbound());
+    Assert.assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void channelReadTest_MalformedContent() {
+    final EmbeddedChannel channel = newChannel(1024);
+    channel.writeInbound(newRequest("/bid"));
+    final HttpContent content = newContent("12345");
+    content.setDecoderResult(DecoderResult.failure(new IllegalStateException("bad chunk")));
+    channel.writeInbound(content);
+
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(HttpResponseStatus.BAD_REQUEST, response.status());
+    Assert.assertNull(channel.readInbound());
+    Assert.assertFalse(channel.isOpen());
+  }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2014-2017 BeeswaxIO Corporation.
+ * Portions may be licensed to BeeswaxIO Corporation under one or more contributor license agreements.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package com.beeswax.test;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assert;
+
+/**
+ * Asserts on the bytes allocated by the current thread, for tests of code which must not
+ * allocate on the request path.</br>
+ * </br>
+ * The code is run once to warm up, so that it and the allocation measurement are compiled, and
+ * once more while the allocated bytes are measured. Both usually run the same loop.
+ * Thresholds leave room for the few bytes the allocation counter itself may account for.
+ *
+ */
+public final class AllocationAssert {
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private AllocationAssert() {}
+
+  /**
+   * @param warmup
+   * @param measured
+   * @return bytes allocated by the current thread while running measured, after warmup
+   */
+  public static long allocatedBytes(Runnable warmup, Runnable measured) {
+    final long threadId = Thread.currentThread()
+                                .getId();
+    warmup.run();
+    THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+
+    final long before = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+    measured.run();
+    return THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - before;
+  }
+
+  /**
+   * Assert that measured allocates less than the given bytes once warmup ran.
+   *
+   * @param bytes
+   * @param warmup
+   * @param measured
+   */
+  public static void assertAllocatesLessThan(long bytes, Runnable warmup, Runnable measured) {
+    final long allocated = allocatedBytes(warmup, measured);
+    Assert.assertTrue("allocated " + allocated + " bytes", allocated < bytes);
+  }
+}